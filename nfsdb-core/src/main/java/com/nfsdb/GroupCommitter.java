@@ -0,0 +1,337 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb;
+
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.concurrent.*;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.logging.Logger;
+import com.nfsdb.storage.TxListener;
+import com.nfsdb.utils.Numbers;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Commits journal writer on dedicated thread on behalf of appenders. Appenders call {@link #commitAsync(boolean)}
+ * instead of {@link JournalWriter#commit()}, which queues commit request and returns immediately. Committer thread
+ * takes all requests queued so far and satisfies them with single commit of writer, which is one Tx record and,
+ * when any of requests is durable, one force of journal files.
+ * <p>
+ * Writer is not thread safe. Appenders must hold writer's monitor while appending and committer holds the same
+ * monitor for duration of commit:
+ * <pre>
+ *     synchronized (writer) {
+ *         writer.append(obj);
+ *     }
+ *     committer.commitAsync(true).get();
+ * </pre>
+ * Committer must be halted before writer is closed.
+ */
+public class GroupCommitter implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(GroupCommitter.class);
+    private static final int DEFAULT_CYCLE = 1024;
+    private final JournalWriter<?> writer;
+    private final RingQueue<CommitRequest> requests;
+    private final MPSequence pubSeq;
+    private final SCSequence subSeq;
+    private volatile boolean running = false;
+    // set by halt() once committer thread has exited, guarded by this
+    private boolean stopped = false;
+    private volatile Thread thread;
+    private volatile long commitCount;
+
+    public GroupCommitter(JournalWriter<?> writer) {
+        this(writer, DEFAULT_CYCLE);
+    }
+
+    /**
+     * @param writer writer to commit
+     * @param cycle  capacity of request queue, rounded up to power of two
+     */
+    public GroupCommitter(JournalWriter<?> writer, int cycle) {
+        this.writer = writer;
+        int c = Numbers.ceilPow2(cycle);
+        this.requests = new RingQueue<>(CommitRequest.FACTORY, c);
+        this.pubSeq = new MPSequence(c, null);
+        this.subSeq = new SCSequence();
+        pubSeq.followedBy(subSeq);
+        subSeq.followedBy(pubSeq);
+    }
+
+    /**
+     * Queues commit request. Returned future completes once writer is committed on committer thread,
+     * including all data appended before this call.
+     *
+     * @param durable true when data has to be forced to disk before future completes
+     * @return future of commit
+     */
+    public Future<Void> commitAsync(boolean durable) {
+        CommitFuture future = new CommitFuture();
+        commitAsync(durable, future);
+        return future;
+    }
+
+    /**
+     * Queues commit request. Listener is called on committer thread once writer is committed, including all
+     * data appended before this call. When commit fails listener's {@link TxListener#onError()} is called instead.
+     *
+     * @param durable  true when data has to be forced to disk before listener is called
+     * @param listener commit listener
+     */
+    public void commitAsync(boolean durable, TxListener listener) {
+        if (!running) {
+            throw new IllegalStateException("Group committer is not running");
+        }
+        long cursor = next();
+        CommitRequest r = requests.get(cursor);
+        r.durable = durable;
+        r.listener = listener;
+        pubSeq.done(cursor);
+        LockSupport.unpark(thread);
+
+        if (!running) {
+            // halt() could have started after check above, committer thread
+            // might have drained queue for the last time before this request
+            synchronized (this) {
+                if (stopped) {
+                    fail();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of writer commits made by committer thread, each of them satisfied one or more requests
+     */
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * Stops committer thread. Requests queued before this call are committed before it returns. Requests,
+     * which race with this call and miss the final commit, are failed.
+     */
+    public void halt() {
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(t);
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        thread = null;
+
+        synchronized (this) {
+            stopped = true;
+            // requests published after committer thread checked queue for the last time
+            ObjList<TxListener> batch = new ObjList<>();
+            boolean durable = drain(batch);
+            if (batch.size() > 0) {
+                commit(durable, batch);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        ObjList<TxListener> batch = new ObjList<>();
+        while (true) {
+            // once halted queue is drained one last time
+            boolean halted = !running;
+
+            boolean durable = drain(batch);
+            if (batch.size() > 0) {
+                commit(durable, batch);
+            } else if (halted) {
+                break;
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * Starts committer thread.
+     */
+    public void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Group committer is already running");
+        }
+        synchronized (this) {
+            stopped = false;
+        }
+        running = true;
+        Thread t = new Thread(this, "nfsdb-group-commit");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    @SuppressFBWarnings({"REC_CATCH_EXCEPTION"})
+    private void commit(boolean durable, ObjList<TxListener> batch) {
+        boolean success;
+        try {
+            synchronized (writer) {
+                writer.commit(durable, -1L, -1L);
+            }
+            commitCount++;
+            success = true;
+        } catch (Throwable e) {
+            LOGGER.error("Group commit failed: " + writer, e);
+            success = false;
+        }
+
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            TxListener l = batch.getQuick(i);
+            try {
+                if (success) {
+                    l.onCommit();
+                } else {
+                    l.onError();
+                }
+            } catch (Throwable e) {
+                LOGGER.error("Error in listener", e);
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Takes queued requests. Only committer thread calls it while committer is running.
+     *
+     * @param batch listeners of requests taken
+     * @return true when any of requests is durable
+     */
+    private boolean drain(ObjList<TxListener> batch) {
+        long cursor;
+        boolean durable = false;
+        while ((cursor = subSeq.next()) > -1) {
+            CommitRequest r = requests.get(cursor);
+            durable |= r.durable;
+            batch.add(r.listener);
+            r.listener = null;
+            subSeq.done(cursor);
+        }
+        return durable;
+    }
+
+    /**
+     * Fails requests queued after committer has stopped, writer might be closed already.
+     */
+    private void fail() {
+        ObjList<TxListener> batch = new ObjList<>();
+        drain(batch);
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            try {
+                batch.getQuick(i).onError();
+            } catch (Throwable e) {
+                LOGGER.error("Error in listener", e);
+            }
+        }
+    }
+
+    private long next() {
+        while (true) {
+            long cursor = pubSeq.next();
+            if (cursor > -1) {
+                return cursor;
+            }
+
+            if (cursor == -1) {
+                // queue is full, committer is busy with previous batch
+                LockSupport.unpark(thread);
+                Thread.yield();
+            }
+        }
+    }
+
+    private static class CommitRequest {
+        private static final RingEntryFactory<CommitRequest> FACTORY = new RingEntryFactory<CommitRequest>() {
+            @Override
+            public CommitRequest newInstance() {
+                return new CommitRequest();
+            }
+        };
+        private boolean durable;
+        private TxListener listener;
+    }
+
+    private static class CommitFuture implements Future<Void>, TxListener {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile boolean success;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            latch.await();
+            return result();
+        }
+
+        @Override
+        public Void get(long timeout, @NotNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!latch.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return latch.getCount() == 0;
+        }
+
+        @Override
+        public void onCommit() {
+            success = true;
+            latch.countDown();
+        }
+
+        @Override
+        public void onError() {
+            latch.countDown();
+        }
+
+        private Void result() throws ExecutionException {
+            if (!success) {
+                throw new ExecutionException(new JournalException("Group commit failed"));
+            }
+            return null;
+        }
+    }
+}
@@ -40,6 +40,7 @@ import com.nfsdb.query.spi.QueryImpl;
 import com.nfsdb.storage.*;
 import com.nfsdb.utils.Dates;
 import com.nfsdb.utils.Interval;
+import com.nfsdb.utils.Numbers;
 import com.nfsdb.utils.Rows;
 import com.nfsdb.utils.Unsafe;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -333,10 +334,21 @@ public class Journal<T> implements Iterable<T>, Closeable {
         return timestampComparator;
     }
 
+    /**
+     * @return address of current transaction in transaction log, see {@link Tx#address}
+     */
+    public long getTxAddress() {
+        return txLog.getCurrentTxAddress();
+    }
+
     public long getTxPin() {
         return txLog.getCurrentTxnPin();
     }
 
+    public long getTxTimestamp() {
+        return txLog.getCurrentTxTimestamp();
+    }
+
     public long getTxn() {
         return txLog.getCurrentTxn();
     }
@@ -412,6 +424,15 @@ public class Journal<T> implements Iterable<T>, Closeable {
         return -1;
     }
 
+    /**
+     * @param txAddress address of transaction, which is not newer than current one
+     * @return true when out-of-order merge rewrote partitions after transaction, rows of such partitions can be
+     * different from what they were at transaction, see {@link JournalWriter#appendOutOfOrder(java.util.List)}
+     */
+    public boolean isMergedSince(long txAddress) {
+        return txLog.hasCommand(txAddress, txLog.getCurrentTxAddress(), Tx.TX_MERGE);
+    }
+
     public boolean isOpen() {
         return open;
     }
@@ -494,8 +515,34 @@ public class Journal<T> implements Iterable<T>, Closeable {
     }
 
     public boolean refresh() throws JournalException {
+        long address = tx.address;
         if (txLog.head(tx)) {
-            refreshInternal();
+            refreshInternal(address);
+            for (int i = 0, sz = symbolTables.size(); i < sz; i++) {
+                symbolTables.getQuick(i).applyTx(tx.symbolTableSizes[i], tx.symbolTableIndexPointers[i]);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves journal to transaction txn, which can be older than the latest. Readers of the same journal
+     * can be moved to transactions committed together and see consistent view of several journals,
+     * regardless of what was committed since. Plain refresh() moves journal back to latest transaction.
+     *
+     * @param txn   transaction number
+     * @param txPin transaction pin
+     * @return false when transaction is not in transaction log
+     * @throws JournalException if journal is writer or partitions cannot be opened
+     */
+    public boolean refresh(long txn, long txPin) throws JournalException {
+        if (getMode() == JournalMode.APPEND || getMode() == JournalMode.BULK_APPEND) {
+            throw new JournalException("Writer cannot move to old transaction: %s", location);
+        }
+        long address = tx.address;
+        if (txLog.seek(txn, txPin, tx)) {
+            refreshInternal(address);
             for (int i = 0, sz = symbolTables.size(); i < sz; i++) {
                 symbolTables.getQuick(i).applyTx(tx.symbolTableSizes[i], tx.symbolTableIndexPointers[i]);
             }
@@ -593,23 +640,30 @@ public class Journal<T> implements Iterable<T>, Closeable {
         }
     }
 
-    private void configurePartitions() throws JournalException {
-        File[] files = getLocation().listFiles(new FileFilter() {
-            public boolean accept(File f) {
-                return f.isDirectory() && !f.getName().startsWith(Constants.TEMP_DIRECTORY_PREFIX);
-            }
-        });
+    void configurePartitions() throws JournalException {
+        File[] files = listPartitionDirs();
 
         int partitionIndex = 0;
         if (files != null && tx.journalMaxRowID > 0) {
-            Arrays.sort(files);
-            for (int i = 0; i < files.length; i++) {
-                File f = files[i];
+            int i = 0;
+            while (i < files.length) {
+                String name = partitionName(files[i].getName());
+                int hi = i + 1;
+                while (hi < files.length && name.equals(partitionName(files[hi].getName()))) {
+                    hi++;
+                }
+                File f = visiblePartitionDir(files, i, hi, tx.address);
+                i = hi;
 
                 if (partitionIndex > Rows.toPartitionIndex(tx.journalMaxRowID)) {
                     break;
                 }
 
+                if (f == null) {
+                    LOGGER.warn("Foreign directory: %s", name);
+                    continue;
+                }
+
                 long txLimit = Journal.TX_LIMIT_EVAL;
                 long[] indexTxAddresses = null;
                 if (partitionIndex == Rows.toPartitionIndex(tx.journalMaxRowID)) {
@@ -618,11 +672,16 @@ public class Journal<T> implements Iterable<T>, Closeable {
                 }
 
                 try {
-                    Interval interval = new Interval(f.getName(), getMetadata().getPartitionType());
+                    Interval interval = new Interval(name, getMetadata().getPartitionType());
                     if (partitionIndex < partitions.size()) {
                         Partition<T> partition = partitions.getQuick(partitionIndex);
                         Interval that = partition.getInterval();
                         if (that == null || that.equals(interval)) {
+                            // partition was rewritten by out-of-order merge
+                            if (!f.equals(partition.getPartitionDir())) {
+                                partition.close();
+                                partition.setPartitionDir(f, indexTxAddresses);
+                            }
                             partition.applyTx(txLimit, indexTxAddresses);
                             partitionIndex++;
                         } else {
@@ -630,7 +689,9 @@ public class Journal<T> implements Iterable<T>, Closeable {
                             partitions.remove(partitionIndex);
                         }
                     } else {
-                        partitions.add(new Partition<>(this, interval, partitionIndex++, txLimit, indexTxAddresses));
+                        Partition<T> partition = new Partition<>(this, interval, partitionIndex++, txLimit, indexTxAddresses);
+                        partition.setPartitionDir(f, indexTxAddresses);
+                        partitions.add(partition);
                     }
                 } catch (NumericException e) {
                     LOGGER.warn("Foreign directory: %s", f.getName());
@@ -698,16 +759,37 @@ public class Journal<T> implements Iterable<T>, Closeable {
         }
     }
 
+    /**
+     * Lists partition directories sorted by name. Partition rewritten by out-of-order merge has directory
+     * per version, see {@link #partitionVersion(String)}, versions of the same partition are next to each other.
+     *
+     * @return partition directories or null when journal directory cannot be listed
+     */
+    File[] listPartitionDirs() {
+        File[] files = getLocation().listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.isDirectory() && !f.getName().startsWith(Constants.TEMP_DIRECTORY_PREFIX);
+            }
+        });
+        if (files != null) {
+            Arrays.sort(files);
+        }
+        return files;
+    }
+
     /**
      * Replaces current Lag partition, which is cached in this instance of Partition Manager with Lag partition,
-     * which was written to _lag file by another process.
+     * which was written to _lag file by another process. Partitions are reconfigured when their number changes
+     * or when transactions since previous one have merged rows into existing partitions.
+     *
+     * @param address address of previous transaction
      */
-    private void refreshInternal() throws JournalException {
+    private void refreshInternal(long address) throws JournalException {
 
         assert tx.address > 0;
 
         int txPartitionIndex = tx.journalMaxRowID == -1 ? 0 : Rows.toPartitionIndex(tx.journalMaxRowID);
-        if (partitions.size() != txPartitionIndex + 1 || tx.journalMaxRowID < 1) {
+        if (partitions.size() != txPartitionIndex + 1 || tx.journalMaxRowID < 1 || txLog.hasCommand(address, tx.address, Tx.TX_MERGE)) {
             if (tx.journalMaxRowID < 1 || partitions.size() > txPartitionIndex + 1) {
                 closePartitions();
             }
@@ -719,6 +801,35 @@ public class Journal<T> implements Iterable<T>, Closeable {
         }
     }
 
+    /**
+     * @param dirName name of partition directory
+     * @return name of partition, which is directory name without version
+     */
+    static String partitionName(String dirName) {
+        int dot = dirName.indexOf('.');
+        return dot == -1 ? dirName : dirName.substring(0, dot);
+    }
+
+    /**
+     * Out-of-order merge writes partition into new directory named "partition.address", where address is
+     * address of transaction, which makes new directory current. Readers of older transactions keep using
+     * previous directory, see {@link #visiblePartitionDir(File[], int, int, long)}.
+     *
+     * @param dirName name of partition directory
+     * @return version of partition directory, 0 for directory without version, -1 when version is not a number
+     */
+    static long partitionVersion(String dirName) {
+        int dot = dirName.indexOf('.');
+        if (dot == -1) {
+            return 0;
+        }
+        try {
+            return Numbers.parseLong(dirName, dot + 1, dirName.length());
+        } catch (NumericException e) {
+            return -1;
+        }
+    }
+
     void removeIrregularPartitionInternal() {
         if (irregularPartition != null) {
             if (irregularPartition.isOpen()) {
@@ -727,4 +838,36 @@ public class Journal<T> implements Iterable<T>, Closeable {
             irregularPartition = null;
         }
     }
+
+    /**
+     * Picks version of partition for transaction. This is the newest version not newer than transaction,
+     * or the oldest available version when older versions have already been purged by writer.
+     *
+     * @param files     sorted partition directories
+     * @param lo        first version of partition in files
+     * @param hi        last version of partition in files, exclusive
+     * @param txAddress address of transaction
+     * @return partition directory or null when there are no valid versions
+     */
+    static File visiblePartitionDir(File[] files, int lo, int hi, long txAddress) {
+        File visible = null;
+        File oldest = null;
+        long visibleVersion = -1;
+        long oldestVersion = Long.MAX_VALUE;
+        for (int i = lo; i < hi; i++) {
+            long version = partitionVersion(files[i].getName());
+            if (version < 0) {
+                continue;
+            }
+            if (version <= txAddress && version > visibleVersion) {
+                visible = files[i];
+                visibleVersion = version;
+            }
+            if (version < oldestVersion) {
+                oldest = files[i];
+                oldestVersion = version;
+            }
+        }
+        return visible != null ? visible : oldest;
+    }
 }
@@ -0,0 +1,365 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb;
+
+import com.nfsdb.collections.LongList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.storage.*;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Hash;
+import com.nfsdb.utils.Unsafe;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.Arrays;
+
+/**
+ * Appends blocks of rows given as column values, such as primitive arrays filled by feed handler. Values
+ * of fixed width columns are copied into column files page at a time, symbols are resolved for whole
+ * block and append offsets are updated once per block rather than once per row:
+ * <pre>
+ *     JournalColumnWriter w = writer.columnWriter();
+ *     w.putSym(0, syms);
+ *     w.putDate(1, timestamps);
+ *     w.putDouble(2, prices);
+ *     w.append(count);
+ *     writer.commit();
+ * </pre>
+ * Rows are split between partitions by timestamp, same as rows appended one by one. Columns, which
+ * values were not given, are filled with nulls. Binary columns are always null, they are written via
+ * {@link JournalEntryWriter}. Values are not copied until {@link #append(int)}, arrays must not be modified
+ * before that.
+ */
+@SuppressFBWarnings({"PL_PARALLEL_LISTS", "CD_CIRCULAR_DEPENDENCY"})
+public class JournalColumnWriter {
+    private static final long BOOL_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(boolean[].class);
+    private static final long SHORT_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(short[].class);
+    private static final long FLOAT_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(float[].class);
+    private final JournalWriter journal;
+    private final ColumnMetadata meta[];
+    private final int timestampIndex;
+    // array of values or null when values are off-heap
+    private final Object[] arrays;
+    // offset of first value in array or address of off-heap values
+    private final long[] offsets;
+    private final int[] counts;
+    private final CharSequence[][] strings;
+    private final boolean[] given;
+    // partitions block is written to and their sizes before block
+    private final ObjList<Partition> touched = new ObjList<>();
+    private final LongList touchedSizes = new LongList();
+    private int[] keys = new int[0];
+    private CharSequence[] nulls = new CharSequence[0];
+
+    JournalColumnWriter(JournalWriter journal) {
+        this.journal = journal;
+        this.meta = new ColumnMetadata[journal.getMetadata().getColumnCount()];
+        journal.getMetadata().copyColumnMetadata(meta);
+        this.timestampIndex = journal.getMetadata().getTimestampIndex();
+        this.arrays = new Object[meta.length];
+        this.offsets = new long[meta.length];
+        this.counts = new int[meta.length];
+        this.strings = new CharSequence[meta.length][];
+        this.given = new boolean[meta.length];
+    }
+
+    /**
+     * Appends first "count" rows of given column values. Column values are forgotten afterwards, even
+     * when append fails, next block starts with all columns being null.
+     * <p>
+     * Append of block is all or nothing. When it fails, rows of the block already written, to any of
+     * partitions, are truncated. Rows appended earlier in the same transaction are kept, symbol values of
+     * the block may remain in symbol tables.
+     *
+     * @param count number of rows
+     * @throws JournalException when rows are out of timestamp order or cannot be written
+     */
+    public void append(int count) throws JournalException {
+        long timestampLo = timestampIndex == -1 ? -1 : journal.getAppendTimestampLo();
+        touched.clear();
+        touchedSizes.clear();
+        try {
+            for (int i = 0; i < meta.length; i++) {
+                if (Unsafe.arrayGet(given, i) && Unsafe.arrayGet(counts, i) < count) {
+                    throw new JournalRuntimeException("Column %s has %d values, %d expected", meta[i].name, counts[i], count);
+                }
+            }
+
+            if (timestampIndex != -1 && !Unsafe.arrayGet(given, timestampIndex)) {
+                throw new JournalException("Timestamp column %s is not set", meta[timestampIndex].name);
+            }
+
+            int lo = 0;
+            while (lo < count) {
+                long timestamp = timestamp(lo);
+                Partition partition = journal.appendPartition(timestamp);
+                if (touched.size() == 0 || touched.getLast() != partition) {
+                    touched.add(partition);
+                    touchedSizes.add(partition.size());
+                }
+                int hi = count;
+
+                if (journal.isCheckOrder()) {
+                    long timestampHi = journal.getAppendTimestampHi();
+                    long last = timestamp;
+                    for (hi = lo + 1; hi < count; hi++) {
+                        long t = timestamp(hi);
+                        if (t > timestampHi) {
+                            break;
+                        }
+
+                        if (t < last) {
+                            throw new JournalException("Cannot insert records out of order. timestamp=%d (%s) follows %d (%s): %s"
+                                    , t, Dates.toString(t), last, Dates.toString(last), journal);
+                        }
+                        last = t;
+                    }
+                }
+
+                append(partition, lo, hi);
+                if (timestampIndex != -1) {
+                    journal.updateTsLo(timestamp(hi - 1));
+                }
+                lo = hi;
+            }
+        } catch (JournalException | RuntimeException e) {
+            for (int i = 0, n = touched.size(); i < n; i++) {
+                touched.getQuick(i).truncateColumns(touchedSizes.getQuick(i));
+            }
+            if (timestampIndex != -1) {
+                journal.updateTsLo(timestampLo);
+            }
+            throw e;
+        } finally {
+            touched.clear();
+            Arrays.fill(given, false);
+            Arrays.fill(arrays, null);
+            Arrays.fill(strings, null);
+        }
+    }
+
+    public void put(int index, byte[] values) {
+        assertType(index, ColumnType.BYTE);
+        set(index, values, Unsafe.BYTE_OFFSET, values.length);
+    }
+
+    /**
+     * Values of fixed width column held off-heap, laid out the same way as in column file.
+     *
+     * @param index   column index
+     * @param address address of first value
+     * @param count   number of values
+     */
+    public void putAddress(int index, long address, int count) {
+        switch (meta[index].type) {
+            case STRING:
+            case SYMBOL:
+            case BINARY:
+                throw new JournalRuntimeException("Expected fixed width column: %s", meta[index].name);
+            default:
+                set(index, null, address, count);
+        }
+    }
+
+    public void putBool(int index, boolean[] values) {
+        assertType(index, ColumnType.BOOLEAN);
+        set(index, values, BOOL_OFFSET, values.length);
+    }
+
+    public void putDate(int index, long[] values) {
+        assertType(index, ColumnType.DATE);
+        set(index, values, Unsafe.LONG_OFFSET, values.length);
+    }
+
+    public void putDouble(int index, double[] values) {
+        assertType(index, ColumnType.DOUBLE);
+        set(index, values, Unsafe.DOUBLE_OFFSET, values.length);
+    }
+
+    public void putFloat(int index, float[] values) {
+        assertType(index, ColumnType.FLOAT);
+        set(index, values, FLOAT_OFFSET, values.length);
+    }
+
+    public void putInt(int index, int[] values) {
+        assertType(index, ColumnType.INT);
+        set(index, values, Unsafe.INT_OFFSET, values.length);
+    }
+
+    public void putLong(int index, long[] values) {
+        assertType(index, ColumnType.LONG);
+        set(index, values, Unsafe.LONG_OFFSET, values.length);
+    }
+
+    public void putShort(int index, short[] values) {
+        assertType(index, ColumnType.SHORT);
+        set(index, values, SHORT_OFFSET, values.length);
+    }
+
+    public void putStr(int index, CharSequence[] values) {
+        assertType(index, ColumnType.STRING);
+        setStrings(index, values);
+    }
+
+    public void putSym(int index, CharSequence[] values) {
+        assertType(index, ColumnType.SYMBOL);
+        setStrings(index, values);
+    }
+
+    private void append(Partition partition, int lo, int hi) throws JournalException {
+        int count = hi - lo;
+        if (keys.length < count) {
+            keys = new int[count];
+        }
+
+        for (int i = 0; i < meta.length; i++) {
+            ColumnMetadata m = Unsafe.arrayGet(meta, i);
+            AbstractColumn column = Unsafe.arrayGet(partition.columns, i);
+            long row = column.size();
+
+            switch (m.type) {
+                case STRING:
+                    appendStr(partition, i, m, (VariableColumn) column, lo, hi, row);
+                    break;
+                case SYMBOL:
+                    if (Unsafe.arrayGet(given, i)) {
+                        m.symbolTable.put(Unsafe.arrayGet(strings, i), lo, hi, keys);
+                    } else {
+                        Arrays.fill(keys, 0, count, SymbolTable.VALUE_IS_NULL);
+                    }
+                    ((FixedColumn) column).copy(keys, Unsafe.INT_OFFSET, count);
+                    if (m.indexed) {
+                        KVIndex index = partition.sparseIndexProxies[i].getIndex();
+                        for (int k = 0; k < count; k++) {
+                            index.add(keys[k], row + k);
+                        }
+                    }
+                    break;
+                case INT:
+                    Object src;
+                    long offset;
+                    if (Unsafe.arrayGet(given, i)) {
+                        src = Unsafe.arrayGet(arrays, i);
+                        offset = Unsafe.arrayGet(offsets, i) + lo * 4L;
+                    } else {
+                        Arrays.fill(keys, 0, count, Integer.MIN_VALUE);
+                        src = keys;
+                        offset = Unsafe.INT_OFFSET;
+                    }
+                    ((FixedColumn) column).copy(src, offset, count);
+                    if (m.indexed) {
+                        KVIndex index = partition.sparseIndexProxies[i].getIndex();
+                        for (int k = 0; k < count; k++) {
+                            index.add(Unsafe.getUnsafe().getInt(src, offset + k * 4L) & m.distinctCountHint, row + k);
+                        }
+                    }
+                    break;
+                case BINARY:
+                    for (int k = 0; k < count; k++) {
+                        ((VariableColumn) column).putNull();
+                        column.commit();
+                    }
+                    break;
+                default:
+                    FixedColumn col = (FixedColumn) column;
+                    if (Unsafe.arrayGet(given, i)) {
+                        col.copy(Unsafe.arrayGet(arrays, i), Unsafe.arrayGet(offsets, i) + (long) lo * col.getWidth(), count);
+                    } else {
+                        for (int k = 0; k < count; k++) {
+                            putNull(col, m.type);
+                            col.commit();
+                        }
+                    }
+                    break;
+            }
+            column.commit();
+        }
+        partition.applyTx(Journal.TX_LIMIT_EVAL, null);
+    }
+
+    private void appendStr(Partition partition, int i, ColumnMetadata m, VariableColumn column, int lo, int hi, long row) throws JournalException {
+        CharSequence[] values;
+        if (Unsafe.arrayGet(given, i)) {
+            values = Unsafe.arrayGet(strings, i);
+        } else {
+            if (nulls.length < hi - lo) {
+                nulls = new CharSequence[hi - lo];
+            }
+            values = nulls;
+            hi -= lo;
+            lo = 0;
+        }
+
+        column.putStr(values, lo, hi);
+        if (m.indexed) {
+            KVIndex index = partition.sparseIndexProxies[i].getIndex();
+            for (int k = lo; k < hi; k++) {
+                CharSequence v = values[k];
+                index.add(v == null ? SymbolTable.VALUE_IS_NULL : Hash.boundedHash(v, m.distinctCountHint), row + k - lo);
+            }
+        }
+    }
+
+    private void assertType(int index, ColumnType t) {
+        if (meta[index].type != t) {
+            throw new JournalRuntimeException("Expected type: " + meta[index].type);
+        }
+    }
+
+    private void putNull(FixedColumn column, ColumnType type) {
+        switch (type) {
+            case DOUBLE:
+                column.putDouble(Double.NaN);
+                break;
+            case FLOAT:
+                column.putFloat(Float.NaN);
+                break;
+            case LONG:
+                column.putLong(Long.MIN_VALUE);
+                break;
+            default:
+                column.putNull();
+        }
+    }
+
+    private void set(int index, Object array, long offset, int count) {
+        Unsafe.arrayPut(arrays, index, array);
+        Unsafe.arrayPut(offsets, index, offset);
+        Unsafe.arrayPut(counts, index, count);
+        Unsafe.arrayPut(given, index, true);
+    }
+
+    private void setStrings(int index, CharSequence[] values) {
+        Unsafe.arrayPut(strings, index, values);
+        Unsafe.arrayPut(counts, index, values.length);
+        Unsafe.arrayPut(given, index, true);
+    }
+
+    private long timestamp(int row) {
+        if (timestampIndex == -1) {
+            return 0;
+        }
+        return Unsafe.getUnsafe().getLong(Unsafe.arrayGet(arrays, timestampIndex), Unsafe.arrayGet(offsets, timestampIndex) + row * 8L);
+    }
+}
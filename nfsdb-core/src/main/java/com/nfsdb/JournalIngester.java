@@ -0,0 +1,558 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb;
+
+import com.nfsdb.collections.DirectCharSequence;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.concurrent.*;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.logging.Logger;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.LongPairSort;
+import com.nfsdb.utils.Numbers;
+import com.nfsdb.utils.Unsafe;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.InputStream;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets several threads write to one journal. Each thread writes rows into off-heap buffer of its own
+ * {@link JournalProducer}, full buffers are passed to committer thread through ring queue in exchange for
+ * empty ones, so that producers neither lock nor allocate per row. Committer takes all buffers queued so far,
+ * sorts their rows by timestamp, appends them with {@link JournalWriter#entryWriter(long)} and commits writer
+ * once per batch.
+ * <pre>
+ *     JournalIngester ingester = new JournalIngester(writer);
+ *     ingester.start();
+ *
+ *     // on each feed thread
+ *     try (JournalProducer p = ingester.producer()) {
+ *         ...
+ *     }
+ *
+ *     ingester.halt();
+ * </pre>
+ * Writer belongs to committer thread until ingester is halted.
+ * <p>
+ * Rows of ordered journal cannot be appended once newer rows are committed. Producers are expected to write
+ * rows in timestamp order, so committer only commits rows, which are not newer than low watermark: the oldest
+ * of latest timestamps handed over by open producers. Newer rows are held back off-heap until every open
+ * producer has caught up with them, or is closed, or ingester is halted. Producers, which have not handed
+ * over any rows yet or have not handed over rows for longer than idle timeout, do not hold back the others.
+ * Rows held back are also committed regardless of watermark once their total size exceeds the limit given
+ * to constructor, oldest rows first, so that memory taken by rows held back is bounded.
+ * <p>
+ * Producer, which goes back in time after rows are committed, can still give rows older than journal.
+ * Such rows are not appended and are counted as rejected, see {@link #getRejectCount()}.
+ */
+public class JournalIngester implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(JournalIngester.class);
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final int DEFAULT_CYCLE = 16;
+    private static final long DEFAULT_IDLE_TIMEOUT = 5000;
+    private static final long DEFAULT_MAX_HELD_SIZE = 64 * 1024 * 1024;
+    private final JournalWriter<?> writer;
+    private final ColumnMetadata meta[];
+    private final int timestampIndex;
+    private final int bufferSize;
+    private final long idleTimeout;
+    private final long maxHeldSize;
+    private final RingQueue<Buffer> buffers;
+    private final MPSequence pubSeq;
+    private final SCSequence subSeq;
+    private final DirectCharSequence charSequence = new DirectCharSequence();
+    private final BinInputStream binIn = new BinInputStream();
+    private final ObjList<JournalProducer> producers = new ObjList<>();
+    private volatile boolean running = false;
+    private boolean closed = false;
+    private volatile Thread thread;
+    private volatile long rowCount;
+    private volatile long rejectCount;
+    // (timestamp, row number) pairs of batch and addresses of rows by row number
+    private long pairs;
+    private long rows;
+    private long rowCapacity;
+    // rows held back by low watermark, copied out of producer buffers
+    private long held;
+    private long heldSize;
+    private long heldCapacity;
+    private long spare;
+    private long spareCapacity;
+    // time of last batch, rows held back are looked at again when producers go idle
+    private long appliedAt;
+
+    public JournalIngester(JournalWriter<?> writer) {
+        this(writer, DEFAULT_BUFFER_SIZE, DEFAULT_CYCLE);
+    }
+
+    /**
+     * @param writer     writer of journal
+     * @param bufferSize size of producer buffer in bytes, largest row must fit it
+     * @param cycle      number of buffers in committer queue, rounded up to power of two
+     */
+    public JournalIngester(JournalWriter<?> writer, final int bufferSize, int cycle) {
+        this(writer, bufferSize, cycle, DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_HELD_SIZE);
+    }
+
+    /**
+     * @param writer      writer of journal
+     * @param bufferSize  size of producer buffer in bytes, largest row must fit it
+     * @param cycle       number of buffers in committer queue, rounded up to power of two
+     * @param idleTimeout milliseconds after which producer, which does not hand over rows, no longer holds back rows of others
+     * @param maxHeldSize bytes of rows held back by low watermark, oldest rows above this limit are committed
+     */
+    public JournalIngester(JournalWriter<?> writer, final int bufferSize, int cycle, long idleTimeout, long maxHeldSize) {
+        this.writer = writer;
+        this.idleTimeout = idleTimeout * 1000000L;
+        this.maxHeldSize = maxHeldSize;
+        this.meta = new ColumnMetadata[writer.getMetadata().getColumnCount()];
+        writer.getMetadata().copyColumnMetadata(meta);
+        this.timestampIndex = writer.getMetadata().getTimestampIndex();
+        this.bufferSize = bufferSize;
+        int c = Numbers.ceilPow2(cycle);
+        this.buffers = new RingQueue<>(new RingEntryFactory<Buffer>() {
+            @Override
+            public Buffer newInstance() {
+                return new Buffer(bufferSize);
+            }
+        }, c);
+        this.pubSeq = new MPSequence(c, null);
+        this.subSeq = new SCSequence();
+        pubSeq.followedBy(subSeq);
+        subSeq.followedBy(pubSeq);
+    }
+
+    /**
+     * @return number of rows, which were older than journal and were not appended
+     */
+    public long getRejectCount() {
+        return rejectCount;
+    }
+
+    /**
+     * @return number of rows appended and committed
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Stops committer thread once buffers queued so far and rows held back by low watermark are appended and
+     * releases queue buffers. Producers must be flushed before this call. Halted ingester cannot be started again.
+     */
+    public void halt() {
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(t);
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        thread = null;
+        closed = true;
+
+        for (int i = 0, n = buffers.getCycle(); i < n; i++) {
+            Buffer b = buffers.get(i);
+            Unsafe.getUnsafe().freeMemory(b.address);
+            b.address = 0;
+        }
+    }
+
+    /**
+     * Creates producer for calling thread. Producer owns off-heap buffer, which is released by
+     * {@link JournalProducer#close()}. Once producer hands over rows, newer rows of other producers are
+     * held back until this one catches up with them, is closed or goes idle.
+     *
+     * @return new producer
+     */
+    public JournalProducer producer() {
+        JournalProducer p = new JournalProducer(this, meta, timestampIndex, bufferSize);
+        synchronized (producers) {
+            producers.add(p);
+        }
+        return p;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                // once halted queue is drained one last time
+                boolean halted = !running;
+
+                long lo = subSeq.next();
+                if (lo > -1) {
+                    long hi = pubSeq.availableIndex(lo);
+                    apply(lo, hi, false);
+                    subSeq.done(hi);
+                } else if (halted) {
+                    // producers are done, rows held back are committed
+                    apply(0, -1, true);
+                    break;
+                } else if (heldSize > 0 && System.nanoTime() - appliedAt > idleTimeout) {
+                    // producers, which went idle, no longer hold back rows
+                    apply(0, -1, false);
+                } else if (heldSize > 0) {
+                    LockSupport.parkNanos(this, idleTimeout);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            if (pairs != 0) {
+                Unsafe.getUnsafe().freeMemory(pairs);
+                Unsafe.getUnsafe().freeMemory(rows);
+                pairs = rows = rowCapacity = 0;
+            }
+            if (held != 0) {
+                Unsafe.getUnsafe().freeMemory(held);
+                held = heldSize = heldCapacity = 0;
+            }
+            if (spare != 0) {
+                Unsafe.getUnsafe().freeMemory(spare);
+                spare = spareCapacity = 0;
+            }
+        }
+    }
+
+    /**
+     * Starts committer thread.
+     */
+    public void start() {
+        if (thread != null || closed) {
+            throw new IllegalStateException("Ingester is already running or is halted");
+        }
+        running = true;
+        Thread t = new Thread(this, "nfsdb-ingester");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    void done(long cursor) {
+        pubSeq.done(cursor);
+        LockSupport.unpark(thread);
+    }
+
+    Buffer get(long cursor) {
+        return buffers.get(cursor);
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    long next() {
+        if (!running) {
+            throw new IllegalStateException("Ingester is not running");
+        }
+
+        while (true) {
+            long cursor = pubSeq.next();
+            if (cursor > -1) {
+                return cursor;
+            }
+
+            if (cursor == -1) {
+                // queue is full, committer is busy with previous batch
+                LockSupport.unpark(thread);
+                Thread.yield();
+            }
+        }
+    }
+
+    void release(JournalProducer producer) {
+        synchronized (producers) {
+            producers.remove(producer);
+        }
+    }
+
+    /**
+     * Appends rows held back by previous batches and rows of buffers lo..hi, which are not newer than
+     * low watermark, and holds back the rest.
+     *
+     * @param all true to append all rows regardless of watermark
+     */
+    @SuppressFBWarnings({"REC_CATCH_EXCEPTION"})
+    private void apply(long lo, long hi, boolean all) {
+        long now = appliedAt = System.nanoTime();
+        long n = 0;
+        for (long p = held, lim = held + heldSize; p < lim; p += Unsafe.getUnsafe().getInt(p)) {
+            n++;
+        }
+        for (long cursor = lo; cursor <= hi; cursor++) {
+            Buffer b = buffers.get(cursor);
+            for (long p = b.address, lim = p + b.size; p < lim; p += Unsafe.getUnsafe().getInt(p)) {
+                n++;
+            }
+        }
+
+        if (n > rowCapacity) {
+            if (pairs != 0) {
+                Unsafe.getUnsafe().freeMemory(pairs);
+                Unsafe.getUnsafe().freeMemory(rows);
+            }
+            rowCapacity = Numbers.ceilPow2((int) Math.min(n, Integer.MAX_VALUE / LongPairSort.PAIR_SIZE));
+            pairs = Unsafe.getUnsafe().allocateMemory(rowCapacity * LongPairSort.PAIR_SIZE);
+            rows = Unsafe.getUnsafe().allocateMemory(rowCapacity * 8);
+        }
+
+        long row = 0;
+        for (long p = held, lim = held + heldSize; p < lim; p += Unsafe.getUnsafe().getInt(p)) {
+            row = put(row, p);
+        }
+        for (long cursor = lo; cursor <= hi; cursor++) {
+            Buffer b = buffers.get(cursor);
+            for (long p = b.address, lim = p + b.size; p < lim; p += Unsafe.getUnsafe().getInt(p)) {
+                row = put(row, p);
+            }
+            b.size = 0;
+
+            JournalProducer producer = b.producer;
+            if (b.timestamp > producer.flushedTimestamp) {
+                producer.flushedTimestamp = b.timestamp;
+            }
+            producer.flushedAt = now;
+            if (b.last) {
+                release(producer);
+            }
+            b.producer = null;
+        }
+        if (n > 0) {
+            LongPairSort.sort(pairs, 0, n - 1);
+        }
+
+        // rows newer than watermark are moved out of producer buffers, which are about to be reused
+        long watermark = all ? Long.MAX_VALUE : watermark(now);
+        long split = n;
+        while (split > 0 && LongPairSort.first(pairs, split - 1) > watermark) {
+            split--;
+        }
+
+        // oldest rows, which do not fit limit of rows held back, are committed regardless of watermark
+        long size = 0;
+        for (long i = n - 1; i >= split; i--) {
+            size += Unsafe.getUnsafe().getInt(Unsafe.getUnsafe().getLong(rows + LongPairSort.second(pairs, i) * 8));
+            if (size > maxHeldSize) {
+                split = i + 1;
+                break;
+            }
+        }
+        hold(split, n);
+
+        if (split > 0) {
+            commit(split);
+        }
+
+        long t = held;
+        held = spare;
+        spare = t;
+        t = heldCapacity;
+        heldCapacity = spareCapacity;
+        spareCapacity = t;
+    }
+
+    private void append(long timestamp, long row) throws JournalException {
+        JournalEntryWriter w = writer.entryWriter(timestamp);
+        long p = row + 12;
+        long lim = row + Unsafe.getUnsafe().getInt(row);
+        while (p < lim) {
+            int i = Unsafe.getUnsafe().getInt(p);
+            p += 4;
+            switch (meta[i].type) {
+                case BOOLEAN:
+                    w.putBool(i, Unsafe.getUnsafe().getByte(p) == 1);
+                    p += 1;
+                    break;
+                case BYTE:
+                    w.put(i, Unsafe.getUnsafe().getByte(p));
+                    p += 1;
+                    break;
+                case SHORT:
+                    w.putShort(i, Unsafe.getUnsafe().getShort(p));
+                    p += 2;
+                    break;
+                case INT:
+                    w.putInt(i, Unsafe.getUnsafe().getInt(p));
+                    p += 4;
+                    break;
+                case FLOAT:
+                    w.putFloat(i, Unsafe.getUnsafe().getFloat(p));
+                    p += 4;
+                    break;
+                case LONG:
+                    w.putLong(i, Unsafe.getUnsafe().getLong(p));
+                    p += 8;
+                    break;
+                case DATE:
+                    w.putDate(i, Unsafe.getUnsafe().getLong(p));
+                    p += 8;
+                    break;
+                case DOUBLE:
+                    w.putDouble(i, Unsafe.getUnsafe().getDouble(p));
+                    p += 8;
+                    break;
+                case STRING:
+                case SYMBOL:
+                    int len = Unsafe.getUnsafe().getInt(p);
+                    p += 4;
+                    CharSequence cs = null;
+                    if (len > -1) {
+                        cs = charSequence.init(p, p + len * 2);
+                        p += len * 2;
+                    }
+                    if (meta[i].type == ColumnType.STRING) {
+                        w.putStr(i, cs);
+                    } else {
+                        w.putSym(i, cs);
+                    }
+                    break;
+                default:
+                    int size = Unsafe.getUnsafe().getInt(p);
+                    p += 4;
+                    w.putBin(i, binIn.init(p, size));
+                    p += size;
+                    break;
+            }
+        }
+        w.append();
+    }
+
+    private void commit(long n) {
+        try {
+            long appended = 0;
+            long rejected = 0;
+            long tsLo = writer.isCheckOrder() ? writer.getAppendTimestampLo() : Long.MIN_VALUE;
+            for (long i = 0; i < n; i++) {
+                long ts = LongPairSort.first(pairs, i);
+                if (ts < tsLo) {
+                    rejected++;
+                } else {
+                    append(ts, Unsafe.getUnsafe().getLong(rows + LongPairSort.second(pairs, i) * 8));
+                    appended++;
+                }
+            }
+            writer.commit();
+            rowCount += appended;
+            rejectCount += rejected;
+            if (rejected > 0) {
+                LOGGER.info("Rejected " + rejected + " rows older than " + Dates.toString(tsLo) + " in " + writer);
+            }
+        } catch (Throwable e) {
+            LOGGER.error("Cannot append batch of " + n + " rows to " + writer, e);
+            rejectCount += n;
+            try {
+                writer.rollback();
+            } catch (Throwable e1) {
+                LOGGER.error("Cannot rollback " + writer, e1);
+            }
+        }
+    }
+
+    /**
+     * Copies rows lo..hi-1 in sort order into spare area.
+     */
+    private void hold(long lo, long hi) {
+        long size = 0;
+        for (long i = lo; i < hi; i++) {
+            size += Unsafe.getUnsafe().getInt(Unsafe.getUnsafe().getLong(rows + LongPairSort.second(pairs, i) * 8));
+        }
+
+        if (size > spareCapacity) {
+            if (spare != 0) {
+                Unsafe.getUnsafe().freeMemory(spare);
+            }
+            spareCapacity = Math.max(size, spareCapacity * 2);
+            spare = Unsafe.getUnsafe().allocateMemory(spareCapacity);
+        }
+
+        long p = spare;
+        for (long i = lo; i < hi; i++) {
+            long row = Unsafe.getUnsafe().getLong(rows + LongPairSort.second(pairs, i) * 8);
+            int len = Unsafe.getUnsafe().getInt(row);
+            Unsafe.getUnsafe().copyMemory(row, p, len);
+            p += len;
+        }
+        heldSize = size;
+    }
+
+    private long put(long row, long address) {
+        LongPairSort.put(pairs, row, Unsafe.getUnsafe().getLong(address + 4), row);
+        Unsafe.getUnsafe().putLong(rows + row * 8, address);
+        return row + 1;
+    }
+
+    /**
+     * @param now current value of {@link System#nanoTime()}
+     * @return oldest of latest timestamps committer has received from open producers, which are not idle
+     */
+    private long watermark(long now) {
+        synchronized (producers) {
+            long watermark = Long.MAX_VALUE;
+            for (int i = 0, n = producers.size(); i < n; i++) {
+                JournalProducer p = producers.getQuick(i);
+                if (p.flushedTimestamp != Long.MIN_VALUE && now - p.flushedAt <= idleTimeout) {
+                    watermark = Math.min(watermark, p.flushedTimestamp);
+                }
+            }
+            return watermark;
+        }
+    }
+
+    static class Buffer {
+        long address;
+        long size;
+        JournalProducer producer;
+        // newest row producer appended before handing buffer over
+        long timestamp;
+        // true when producer is closed
+        boolean last;
+
+        private Buffer(int capacity) {
+            this.address = Unsafe.getUnsafe().allocateMemory(capacity);
+        }
+    }
+
+    private static class BinInputStream extends InputStream {
+        private long address;
+        private long limit;
+
+        @Override
+        public int read() {
+            return address < limit ? Unsafe.getUnsafe().getByte(address++) & 0xff : -1;
+        }
+
+        private BinInputStream init(long address, int size) {
+            this.address = address;
+            this.limit = address + size;
+            return this;
+        }
+    }
+}
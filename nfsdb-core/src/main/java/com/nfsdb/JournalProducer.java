@@ -0,0 +1,307 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb;
+
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.Unsafe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Row buffer of one producer thread of {@link JournalIngester}. Rows are written the same way they are
+ * written with {@link JournalWriter#entryWriter(long)}, except that values are copied into off-heap buffer of
+ * producer rather than into journal:
+ * <pre>
+ *     JournalEntryWriter w = producer.entryWriter(timestamp);
+ *     w.putSym(0, sym);
+ *     w.putDouble(1, price);
+ *     w.append();
+ * </pre>
+ * Full buffer is handed over to committer thread in exchange for an empty one, {@link #flush()} hands over
+ * rows written so far. Producer is not thread safe, each thread is to have its own producer.
+ * <p>
+ * Rows of each producer are expected in timestamp order. Committer holds back rows newer than the
+ * oldest of latest rows handed over by open producers, so producers must be closed once they are done.
+ * Producer, which has not handed over rows yet or has been idle for longer than timeout of ingester,
+ * does not hold back rows.
+ * <p>
+ * Row is laid out as int row size, long timestamp and then (int column index, value) for each column,
+ * which value was given. Strings are stored as int length, -1 for null, followed by characters, binary values
+ * as int length followed by bytes.
+ */
+public class JournalProducer implements JournalEntryWriter, Closeable {
+    private static final int ROW_HEADER_SIZE = 12;
+    private final JournalIngester ingester;
+    private final ColumnMetadata meta[];
+    private final int timestampIndex;
+    private final int capacity;
+    private long address;
+    private long pos;
+    private long rowStart;
+    private byte[] binBuf;
+    // newest row appended, accessed by producer thread
+    private long maxTimestamp = Long.MIN_VALUE;
+    // newest row committer has received, accessed by committer thread
+    long flushedTimestamp = Long.MIN_VALUE;
+    // System.nanoTime() when committer received rows last time, accessed by committer thread
+    long flushedAt;
+
+    JournalProducer(JournalIngester ingester, ColumnMetadata meta[], int timestampIndex, int capacity) {
+        this.ingester = ingester;
+        this.meta = meta;
+        this.timestampIndex = timestampIndex;
+        this.capacity = capacity;
+        this.address = Unsafe.getUnsafe().allocateMemory(capacity);
+    }
+
+    @Override
+    public void append() {
+        Unsafe.getUnsafe().putInt(address + rowStart, (int) (pos - rowStart));
+        long timestamp = Unsafe.getUnsafe().getLong(address + rowStart + 4);
+        if (timestamp > maxTimestamp) {
+            maxTimestamp = timestamp;
+        }
+        rowStart = pos;
+    }
+
+    /**
+     * Flushes complete rows, lets committer know that producer is done and releases buffer.
+     */
+    @Override
+    public void close() {
+        if (address != 0) {
+            try {
+                if (rowStart > 0 || ingester.isRunning()) {
+                    handOver(true);
+                } else {
+                    ingester.release(this);
+                }
+            } finally {
+                Unsafe.getUnsafe().freeMemory(address);
+                address = 0;
+            }
+        }
+    }
+
+    /**
+     * Starts new row. Row, which was started and was not appended, is discarded.
+     *
+     * @param timestamp timestamp of row
+     * @return this producer
+     */
+    public JournalEntryWriter entryWriter(long timestamp) {
+        pos = rowStart;
+        ensure(ROW_HEADER_SIZE);
+        Unsafe.getUnsafe().putLong(address + pos + 4, timestamp);
+        pos += ROW_HEADER_SIZE;
+        return this;
+    }
+
+    /**
+     * Hands rows appended so far over to committer thread. Waits for free slot in committer's queue when
+     * committer falls behind.
+     */
+    public void flush() {
+        if (rowStart > 0) {
+            handOver(false);
+        }
+    }
+
+    @Override
+    public void put(int index, byte value) {
+        assertType(index, ColumnType.BYTE);
+        putField(index, 1);
+        Unsafe.getUnsafe().putByte(address + pos, value);
+        pos += 1;
+    }
+
+    @Override
+    public void putBin(int index, InputStream value) {
+        assertType(index, ColumnType.BINARY);
+        if (value == null) {
+            return;
+        }
+
+        if (binBuf == null) {
+            binBuf = new byte[4096];
+        }
+
+        putField(index, 4);
+        long lenOffset = pos - rowStart;
+        pos += 4;
+        try {
+            int n;
+            while ((n = value.read(binBuf)) != -1) {
+                ensure(n);
+                Unsafe.getUnsafe().copyMemory(binBuf, Unsafe.BYTE_OFFSET, null, address + pos, n);
+                pos += n;
+            }
+        } catch (IOException e) {
+            throw new JournalRuntimeException(e);
+        }
+        Unsafe.getUnsafe().putInt(address + rowStart + lenOffset, (int) (pos - rowStart - lenOffset - 4));
+    }
+
+    @Override
+    public OutputStream putBin(int index) {
+        throw new JournalRuntimeException("Binary stream is not supported by producer, use putBin(int, InputStream)");
+    }
+
+    @Override
+    public void putBool(int index, boolean value) {
+        assertType(index, ColumnType.BOOLEAN);
+        putField(index, 1);
+        Unsafe.getUnsafe().putByte(address + pos, (byte) (value ? 1 : 0));
+        pos += 1;
+    }
+
+    @Override
+    public void putDate(int index, long value) {
+        assertType(index, ColumnType.DATE);
+        // timestamp is part of row header
+        if (index != timestampIndex) {
+            putLong0(index, value);
+        }
+    }
+
+    @Override
+    public void putDouble(int index, double value) {
+        assertType(index, ColumnType.DOUBLE);
+        putField(index, 8);
+        Unsafe.getUnsafe().putDouble(address + pos, value);
+        pos += 8;
+    }
+
+    @Override
+    public void putFloat(int index, float value) {
+        assertType(index, ColumnType.FLOAT);
+        putField(index, 4);
+        Unsafe.getUnsafe().putFloat(address + pos, value);
+        pos += 4;
+    }
+
+    @Override
+    public void putInt(int index, int value) {
+        assertType(index, ColumnType.INT);
+        putField(index, 4);
+        Unsafe.getUnsafe().putInt(address + pos, value);
+        pos += 4;
+    }
+
+    @Override
+    public void putLong(int index, long value) {
+        assertType(index, ColumnType.LONG);
+        putLong0(index, value);
+    }
+
+    /**
+     * Columns, which values are not given, are null, so there is nothing to write.
+     */
+    @Override
+    public void putNull(int index) {
+    }
+
+    @Override
+    public void putShort(int index, short value) {
+        assertType(index, ColumnType.SHORT);
+        putField(index, 2);
+        Unsafe.getUnsafe().putShort(address + pos, value);
+        pos += 2;
+    }
+
+    @Override
+    public void putStr(int index, CharSequence value) {
+        assertType(index, ColumnType.STRING);
+        putStr0(index, value);
+    }
+
+    @Override
+    public void putSym(int index, CharSequence value) {
+        assertType(index, ColumnType.SYMBOL);
+        putStr0(index, value);
+    }
+
+    private void assertType(int index, ColumnType t) {
+        if (meta[index].type != t) {
+            throw new JournalRuntimeException("Expected type: " + meta[index].type);
+        }
+    }
+
+    private void ensure(long size) {
+        if (pos + size > capacity) {
+            flush();
+            if (pos + size > capacity) {
+                throw new JournalRuntimeException("Row does not fit producer buffer of %d bytes", capacity);
+            }
+        }
+    }
+
+    private void handOver(boolean last) {
+        long cursor = ingester.next();
+        JournalIngester.Buffer b = ingester.get(cursor);
+        long fresh = b.address;
+        // row in progress moves to the start of fresh buffer
+        Unsafe.getUnsafe().copyMemory(address + rowStart, fresh, pos - rowStart);
+        b.address = address;
+        b.size = rowStart;
+        b.producer = this;
+        b.timestamp = maxTimestamp;
+        b.last = last;
+        ingester.done(cursor);
+        address = fresh;
+        pos -= rowStart;
+        rowStart = 0;
+    }
+
+    private void putField(int index, int size) {
+        ensure(4 + size);
+        Unsafe.getUnsafe().putInt(address + pos, index);
+        pos += 4;
+    }
+
+    private void putLong0(int index, long value) {
+        putField(index, 8);
+        Unsafe.getUnsafe().putLong(address + pos, value);
+        pos += 8;
+    }
+
+    private void putStr0(int index, CharSequence value) {
+        int len = value == null ? 0 : value.length();
+        putField(index, 4 + len * 2);
+        if (value == null) {
+            Unsafe.getUnsafe().putInt(address + pos, -1);
+            pos += 4;
+        } else {
+            Unsafe.getUnsafe().putInt(address + pos, len);
+            pos += 4;
+            for (int i = 0; i < len; i++) {
+                Unsafe.getUnsafe().putChar(address + pos, value.charAt(i));
+                pos += 2;
+            }
+        }
+    }
+}
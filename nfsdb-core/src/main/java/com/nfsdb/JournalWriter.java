@@ -57,11 +57,15 @@ public class JournalWriter<T> extends Journal<T> {
     private final PeekingListIterator<T> peekingListIterator = new PeekingListIterator<>();
     private final MergingIterator<T> mergingIterator = new MergingIterator<>();
     private final JournalEntryWriterImpl journalEntryWriter;
+    private final JournalColumnWriter columnWriter;
+    private OutOfOrderMerger<T> outOfOrderMerger;
     // discard.txt related
     private final File discardTxt;
     private Lock writeLock;
     private TxListener txListener;
     private boolean txActive = false;
+    private boolean mergeStaged = false;
+    private boolean replicated = false;
     private int txPartitionIndex = -1;
     private long appendTimestampLo = -1;
     private PartitionCleaner partitionCleaner;
@@ -84,6 +88,7 @@ public class JournalWriter<T> extends Journal<T> {
         this.lagSwellMillis = lagMillis * 3;
         this.checkOrder = key.isOrdered() && getTimestampOffset() != -1;
         this.journalEntryWriter = new JournalEntryWriterImpl(this);
+        this.columnWriter = new JournalColumnWriter(this);
         this.discardTxt = new File(metadata.getLocation(), "discard.txt");
     }
 
@@ -159,6 +164,29 @@ public class JournalWriter<T> extends Journal<T> {
         }
     }
 
+    /**
+     * Adds objects regardless of their timestamps. Objects are sorted by timestamp and those older than
+     * newest row of journal are merged into partitions their timestamps fall into, see {@link OutOfOrderMerger}.
+     * The rest are appended. Unlike {@link #mergeAppend(List)} this does not require lag partition.
+     * <p>
+     * Affected partitions are rewritten into new directories, which replace current ones with the commit
+     * made on completion. Readers see either all or none of merged rows. When merge fails writer is rolled
+     * back to the last commit.
+     * <p>
+     * Replication only sends rows appended after those client has, so merge is refused on journal published
+     * to replicas, see {@link #setReplicated(boolean)}. Clients, which are behind merge made before journal was
+     * published, are refused by server and have to be synchronised again from empty journal.
+     *
+     * @param objects objects to add in any order
+     * @throws com.nfsdb.exceptions.JournalException if timestamp of object falls outside of existing partitions
+     */
+    public void appendOutOfOrder(List<T> objects) throws JournalException {
+        if (outOfOrderMerger == null) {
+            outOfOrderMerger = new OutOfOrderMerger<>(this);
+        }
+        outOfOrderMerger.merge(objects);
+    }
+
     public void beginTx() {
         if (!txActive) {
             this.txActive = true;
@@ -245,6 +273,7 @@ public class JournalWriter<T> extends Journal<T> {
         beginTx();
         rollback();
         rollbackPartitionDirs();
+        purgePartitionVersions();
 
         if (tx.journalMaxRowID > 0 && getPartitionCount() <= Rows.toPartitionIndex(tx.journalMaxRowID)) {
             beginTx();
@@ -257,6 +286,16 @@ public class JournalWriter<T> extends Journal<T> {
 
     }
 
+    /**
+     * Writer of blocks of rows given column by column, see {@link JournalColumnWriter}.
+     * Writer instance is reused by subsequent calls.
+     *
+     * @return column writer
+     */
+    public JournalColumnWriter columnWriter() {
+        return columnWriter;
+    }
+
     public void commit() throws JournalException {
         commit(false, -1L, -1L);
     }
@@ -304,27 +343,8 @@ public class JournalWriter<T> extends Journal<T> {
     }
 
     public JournalEntryWriter entryWriter(long timestamp) throws JournalException {
-        if (!txActive) {
-            beginTx();
-        }
-
-        if (checkOrder) {
-            if (timestamp > appendTimestampHi) {
-                switchAppendPartition(timestamp);
-            }
-
-            if (timestamp < appendTimestampLo) {
-                throw new JournalException("Cannot insert records out of order. maxHardTimestamp=%d (%s), timestamp=%d (%s): %s"
-                        , appendTimestampLo, Dates.toString(appendTimestampLo), timestamp, Dates.toString(timestamp), this);
-            }
-
-            journalEntryWriter.setPartition(appendPartition, timestamp);
-            return journalEntryWriter;
-
-        } else {
-            journalEntryWriter.setPartition(getAppendPartition(), timestamp);
-            return journalEntryWriter;
-        }
+        journalEntryWriter.setPartition(appendPartition(timestamp), timestamp);
+        return journalEntryWriter;
     }
 
     public Partition<T> getAppendPartition(long timestamp) throws JournalException {
@@ -608,6 +628,28 @@ public class JournalWriter<T> extends Journal<T> {
         rollback0(txLog.findAddress(txn, txPin), true);
     }
 
+    /**
+     * Compresses column files of all partitions except the last one, which is still appended to, and
+     * the lag partition. Sealed partitions are read-only and are skipped by subsequent calls.
+     *
+     * @throws JournalException when partition cannot be compressed
+     */
+    public void seal() throws JournalException {
+        for (int i = 0, n = nonLagPartitionCount() - 1; i < n; i++) {
+            getPartition(i, true).seal();
+        }
+    }
+
+    /**
+     * Marks journal, which changes are sent to replicas. Such journal refuses out-of-order append,
+     * see {@link #appendOutOfOrder(List)}.
+     *
+     * @param replicated true when journal is published to replicas
+     */
+    public void setReplicated(boolean replicated) {
+        this.replicated = replicated;
+    }
+
     public void setTxListener(TxListener txListener) {
         this.txListener = txListener;
     }
@@ -618,8 +660,7 @@ public class JournalWriter<T> extends Journal<T> {
         for (int i = 0; i < partitionCount; i++) {
             Partition<T> partition = getPartition(i, true);
             partition.truncate(0);
-            partition.close();
-            Files.deleteOrException(partition.getPartitionDir());
+            deletePartitionDirs(partition);
         }
 
         closePartitions();
@@ -632,7 +673,10 @@ public class JournalWriter<T> extends Journal<T> {
     }
 
     private void commit(byte command, long txn, long txPin) throws JournalException {
-        boolean force = command == Tx.TX_FORCE;
+        if (mergeStaged) {
+            command |= Tx.TX_MERGE;
+        }
+        boolean force = (command & Tx.TX_FORCE) != 0;
         Partition<T> partition = lastNonEmptyNonLag();
         Partition<T> lag = getIrregularPartition();
 
@@ -683,12 +727,30 @@ public class JournalWriter<T> extends Journal<T> {
         if (force) {
             txLog.force();
         }
+
+        if (mergeStaged) {
+            mergeStaged = false;
+            purgePartitionVersions();
+        }
     }
 
     private Partition<T> createTempPartition() throws JournalException {
         return createTempPartition(Constants.TEMP_DIRECTORY_PREFIX + '.' + System.currentTimeMillis() + '.' + UUID.randomUUID());
     }
 
+    private void deletePartitionDirs(Partition<T> partition) throws JournalException {
+        partition.close();
+        String name = partitionName(partition.getName());
+        File[] files = listPartitionDirs();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                if (name.equals(partitionName(files[i].getName()))) {
+                    Files.deleteOrException(files[i]);
+                }
+            }
+        }
+    }
+
     private Partition<T> getAppendPartition() throws JournalException {
         if (this.appendPartition != null) {
             return appendPartition;
@@ -711,6 +773,51 @@ public class JournalWriter<T> extends Journal<T> {
         }
     }
 
+    /**
+     * Removes versions of partitions, which are no longer needed. Versions newer than current transaction were
+     * never committed. Of older versions only the one replaced by the latest merge is kept for readers of
+     * transactions before that merge.
+     */
+    private void purgePartitionVersions() {
+        File[] files = listPartitionDirs();
+        if (files == null) {
+            return;
+        }
+
+        long address = txLog.getCurrentTxAddress();
+        int i = 0;
+        while (i < files.length) {
+            String name = partitionName(files[i].getName());
+            int hi = i + 1;
+            while (hi < files.length && name.equals(partitionName(files[hi].getName()))) {
+                hi++;
+            }
+
+            File current = hi - i > 1 ? visiblePartitionDir(files, i, hi, address) : null;
+            if (current != null) {
+                long currentVersion = partitionVersion(current.getName());
+                long previousVersion = -1;
+                for (int k = i; k < hi; k++) {
+                    long version = partitionVersion(files[k].getName());
+                    if (version < currentVersion && version > previousVersion) {
+                        previousVersion = version;
+                    }
+                }
+
+                for (int k = i; k < hi; k++) {
+                    long version = partitionVersion(files[k].getName());
+                    if (version > -1 && version != currentVersion && version != previousVersion) {
+                        LOGGER.trace("Purging : %s", files[k]);
+                        if (!Files.delete(files[k])) {
+                            LOGGER.info("Could not purge: %s", files[k]);
+                        }
+                    }
+                }
+            }
+            i = hi;
+        }
+    }
+
     private void replaceIrregularPartition(Partition<T> temp) {
         setIrregularPartition(temp);
         purgeTempPartitions();
@@ -723,12 +830,19 @@ public class JournalWriter<T> extends Journal<T> {
             throw new IncompatibleJournalException("Server txn is not compatible with %s", this.getLocation());
         }
 
+        // partitions merged since transaction being restored, or staged for merge, go back to their old versions
+        boolean merged = mergeStaged || txLog.hasCommand(txLog.getCurrentTxAddress(), address, Tx.TX_MERGE);
         txLog.read(address, tx);
 
         if (tx.address == 0) {
             throw new JournalException("Invalid transaction address");
         }
 
+        if (merged) {
+            closePartitions();
+            configurePartitions();
+        }
+
         if (writeDiscard) {
             LOGGER.info("Journal %s is rolling back to transaction #%d, timestamp %s", metadata.getLocation(), tx.txn, Dates.toString(tx.timestamp));
             writeDiscardFile(tx.journalMaxRowID);
@@ -763,19 +877,29 @@ public class JournalWriter<T> extends Journal<T> {
         appendPartition = null;
         txLog.writeTxAddress(tx.address);
         txActive = false;
+
+        if (merged) {
+            mergeStaged = false;
+            rollbackPartitionDirs();
+            purgePartitionVersions();
+        }
     }
 
     private void rollbackPartitionDirs() throws JournalException {
-        File[] files = getLocation().listFiles(new FileFilter() {
-            public boolean accept(File f) {
-                return f.isDirectory() && !f.getName().startsWith(Constants.TEMP_DIRECTORY_PREFIX);
-            }
-        });
+        File[] files = listPartitionDirs();
 
         if (files != null) {
-            Arrays.sort(files);
-            for (int i = getPartitionCount(); i < files.length; i++) {
-                Files.deleteOrException(files[i]);
+            int partitionIndex = -1;
+            String name = null;
+            for (int i = 0; i < files.length; i++) {
+                // all versions of partition go together
+                if (!partitionName(files[i].getName()).equals(name)) {
+                    name = partitionName(files[i].getName());
+                    partitionIndex++;
+                }
+                if (partitionIndex >= getPartitionCount()) {
+                    Files.deleteOrException(files[i]);
+                }
             }
         }
     }
@@ -789,8 +913,7 @@ public class JournalWriter<T> extends Journal<T> {
             }
 
             if (p.getPartitionIndex() > partitionIndex) {
-                p.close();
-                Files.deleteOrException(p.getPartitionDir());
+                deletePartitionDirs(p);
                 partitions.remove(partitions.size() - 1);
             } else if (p.getPartitionIndex() == partitionIndex) {
                 p.open();
@@ -850,6 +973,82 @@ public class JournalWriter<T> extends Journal<T> {
         }
     }
 
+    /**
+     * Partition to append row of timestamp to. Begins transaction when there is none and, for ordered
+     * journal, checks that timestamp is not older than last appended one.
+     */
+    Partition<T> appendPartition(long timestamp) throws JournalException {
+        if (!txActive) {
+            beginTx();
+        }
+
+        if (checkOrder) {
+            if (timestamp > appendTimestampHi) {
+                switchAppendPartition(timestamp);
+            }
+
+            if (timestamp < appendTimestampLo) {
+                throw new JournalException("Cannot insert records out of order. maxHardTimestamp=%d (%s), timestamp=%d (%s): %s"
+                        , appendTimestampLo, Dates.toString(appendTimestampLo), timestamp, Dates.toString(timestamp), this);
+            }
+            return appendPartition;
+        }
+        return getAppendPartition();
+    }
+
+    /**
+     * @return newest timestamp partition returned by last call to {@link #appendPartition(long)} accepts
+     */
+    long getAppendTimestampHi() {
+        return checkOrder ? appendTimestampHi : Long.MAX_VALUE;
+    }
+
+    /**
+     * Extends active transaction to partition, which is modified before current append partition.
+     */
+    void includeInTx(int partitionIndex) {
+        beginTx();
+        if (partitionIndex < txPartitionIndex) {
+            txPartitionIndex = partitionIndex;
+        }
+    }
+
+    boolean isCheckOrder() {
+        return checkOrder;
+    }
+
+    boolean isReplicated() {
+        return replicated;
+    }
+
+    /**
+     * Writes first rows of partition into new version of its directory, see {@link Journal#partitionVersion(String)},
+     * and switches writer to the copy, which can then be rewritten from row lo onward. Only column data before lo
+     * is copied, column files are linked when partition has no rows after lo, see {@link Partition#copyTo(File, long)}.
+     * Readers keep using current directory until transaction is committed. Rollback switches writer back and
+     * removes the copy.
+     *
+     * @param partitionIndex index of partition
+     * @param lo             first row to be rewritten
+     * @return partition open in new directory
+     * @throws JournalException when partition cannot be copied
+     */
+    Partition<T> stagePartition(int partitionIndex, long lo) throws JournalException {
+        Partition<T> partition = getPartition(partitionIndex, true);
+        File dir = new File(getLocation(), partitionName(partition.getName()) + '.' + txLog.getNextTxAddress());
+        if (!dir.equals(partition.getPartitionDir())) {
+            includeInTx(partitionIndex);
+            mergeStaged = true;
+            partition.commit();
+            // left behind by crash before commit
+            Files.deleteOrException(dir);
+            partition.copyTo(dir, lo);
+            partition.close();
+            partition.setPartitionDir(dir, null);
+        }
+        return partition.open();
+    }
+
     void updateTsLo(long ts) {
         if (checkOrder) {
             appendTimestampLo = ts;
@@ -0,0 +1,313 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb;
+
+import com.nfsdb.collections.IntList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.storage.AbstractColumn;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.FixedColumn;
+import com.nfsdb.storage.SymbolTable;
+import com.nfsdb.storage.VariableColumn;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Interval;
+import com.nfsdb.utils.LongPairSort;
+import com.nfsdb.utils.Unsafe;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges rows, which are older than newest row of journal, into partitions their timestamps fall into.
+ * Incoming rows are sorted off-heap as (timestamp, position) pairs. Each affected partition is staged in
+ * new version of its directory, see {@link JournalWriter#stagePartition(int, long)}, and is rewritten from
+ * first of its rows newer than oldest incoming row, one column at a time: merge order of existing and
+ * incoming rows is worked out once from timestamps and is applied to every column. Displaced rows are read
+ * from previous version of partition. Index entries, zone maps and bitmap indexes are replaced for rewritten
+ * rows only.
+ * <p>
+ * Column data before first rewritten row is still copied, each column is single file mapped by readers and
+ * rows they can see must not change under them. Column files are linked rather than copied when incoming
+ * rows all go after the last row of partition. Directories in use are never modified otherwise. Staged
+ * versions become current with the commit, which completes merge, so readers and writer reopened after
+ * crash see either all or none of merged rows. Partitions without incoming rows are not staged.
+ * Timestamps of incoming rows must fall into existing partitions.
+ */
+class OutOfOrderMerger<T> {
+    private final JournalWriter<T> writer;
+    private final ColumnMetadata meta[];
+    private final IntList runs = new IntList();
+    private CharSequence[] strings = new CharSequence[0];
+
+    OutOfOrderMerger(JournalWriter<T> writer) {
+        this.writer = writer;
+        this.meta = new ColumnMetadata[writer.getMetadata().getColumnCount()];
+        writer.getMetadata().copyColumnMetadata(meta);
+    }
+
+    void merge(List<T> objects) throws JournalException {
+        int n = objects.size();
+        if (n == 0) {
+            return;
+        }
+
+        if (!writer.isCheckOrder()) {
+            throw new JournalException("Out-of-order append requires ordered journal with timestamp: %s", writer);
+        }
+
+        if (writer.getIrregularPartition() != null) {
+            throw new JournalException("Out-of-order append is not supported with lag partition: %s", writer);
+        }
+
+        if (writer.isReplicated()) {
+            // replicas would not get rows merged into partitions they already have
+            throw new JournalException("Out-of-order append is not supported on replicated journal: %s", writer);
+        }
+
+        long pairs = Unsafe.getUnsafe().allocateMemory((long) n * LongPairSort.PAIR_SIZE);
+        try {
+            for (int i = 0; i < n; i++) {
+                T obj = objects.get(i);
+                if (obj == null) {
+                    throw new JournalException("Cannot append NULL to %s", writer);
+                }
+                LongPairSort.put(pairs, i, writer.getTimestamp(obj), i);
+            }
+            LongPairSort.sort(pairs, 0, n - 1);
+
+            // rows older than newest row are merged, the rest are appended
+            long maxTimestamp = writer.getMaxTimestamp();
+            int split = 0;
+            while (split < n && LongPairSort.first(pairs, split) < maxTimestamp) {
+                split++;
+            }
+
+            plan(pairs, split);
+            try {
+                for (int i = 0, k = runs.size(); i < k; i += 3) {
+                    mergePartition(runs.getQuick(i), objects, pairs, runs.getQuick(i + 1), runs.getQuick(i + 2));
+                }
+
+                for (int i = split; i < n; i++) {
+                    writer.append(objects.get((int) LongPairSort.second(pairs, i)));
+                }
+            } catch (JournalException | RuntimeException e) {
+                // staged copies must not be committed half way through
+                writer.rollback();
+                throw e;
+            }
+            writer.commit();
+        } finally {
+            Unsafe.getUnsafe().freeMemory(pairs);
+        }
+    }
+
+    /**
+     * @return first row of partition, which timestamp is newer than timestamp
+     */
+    private static long upperBound(FixedColumn column, long timestamp, long size) {
+        long lo = 0;
+        long hi = size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (column.getLong(mid) <= timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return true when timestamp is older than start of partition
+     */
+    private boolean isBefore(int partitionIndex, long timestamp) throws JournalException {
+        Interval interval = writer.getPartition(partitionIndex, false).getInterval();
+        return interval != null && timestamp < interval.getLo();
+    }
+
+    private void mergeColumn(Partition<T> partition, AbstractColumn source, int columnIndex, List<T> objects, long order, int count, long lo) {
+        ColumnMetadata m = meta[columnIndex];
+        switch (m.type) {
+            case STRING:
+                VariableColumn ss = (VariableColumn) source;
+                VariableColumn sc = partition.varCol(columnIndex);
+                if (strings.length < count) {
+                    strings = new CharSequence[count];
+                }
+                for (int r = 0; r < count; r++) {
+                    long src = Unsafe.getUnsafe().getLong(order + r * 8L);
+                    strings[r] = src > -1 ? ss.getStr(src) : (String) Unsafe.getUnsafe().getObject(objects.get((int) (-src - 1)), m.offset);
+                }
+                sc.truncate(lo);
+                sc.commit();
+                sc.putStr(strings, 0, count);
+                sc.commit();
+                Arrays.fill(strings, 0, count, null);
+                break;
+            case BINARY:
+                VariableColumn bs = (VariableColumn) source;
+                VariableColumn bc = partition.varCol(columnIndex);
+                ByteBuffer values[] = new ByteBuffer[count];
+                for (int r = 0; r < count; r++) {
+                    long src = Unsafe.getUnsafe().getLong(order + r * 8L);
+                    if (src > -1) {
+                        int size = bs.getBinSize(src);
+                        if (size > -1) {
+                            values[r] = ByteBuffer.allocate(size);
+                            bs.getBin(src, values[r]);
+                            values[r].flip();
+                        }
+                    } else {
+                        values[r] = (ByteBuffer) Unsafe.getUnsafe().getObject(objects.get((int) (-src - 1)), m.offset);
+                    }
+                }
+                bc.truncate(lo);
+                bc.commit();
+                for (int r = 0; r < count; r++) {
+                    if (values[r] == null) {
+                        bc.putNull();
+                    } else {
+                        bc.putBin(values[r]);
+                    }
+                    bc.commit();
+                }
+                break;
+            default:
+                FixedColumn fs = (FixedColumn) source;
+                FixedColumn fc = partition.fixCol(columnIndex);
+                int width = fc.getWidth();
+                long buf = Unsafe.getUnsafe().allocateMemory((long) count * width);
+                try {
+                    for (int r = 0; r < count; r++) {
+                        long src = Unsafe.getUnsafe().getLong(order + r * 8L);
+                        long dst = buf + (long) r * width;
+                        if (src > -1) {
+                            Unsafe.getUnsafe().copyMemory(fs.getAddress(src, 1), dst, width);
+                        } else if (m.type == ColumnType.SYMBOL) {
+                            String sym = (String) Unsafe.getUnsafe().getObject(objects.get((int) (-src - 1)), m.offset);
+                            Unsafe.getUnsafe().putInt(dst, sym == null ? SymbolTable.VALUE_IS_NULL : m.symbolTable.put(sym));
+                        } else {
+                            Unsafe.getUnsafe().copyMemory(objects.get((int) (-src - 1)), m.offset, null, dst, width);
+                        }
+                    }
+                    fc.truncate(lo);
+                    fc.commit();
+                    fc.copy(null, buf, count);
+                    fc.commit();
+                } finally {
+                    Unsafe.getUnsafe().freeMemory(buf);
+                }
+                break;
+        }
+    }
+
+    private void mergePartition(int partitionIndex, List<T> objects, long pairs, int lo, int hi) throws JournalException {
+        Partition<T> partition = writer.getPartition(partitionIndex, true);
+        FixedColumn timestamps = partition.getTimestampColumn();
+        long size = partition.size();
+        long first = upperBound(timestamps, LongPairSort.first(pairs, lo), size);
+        long count = size - first + hi - lo;
+        if (count > Integer.MAX_VALUE) {
+            throw new JournalException("Too many rows to merge into %s: %d", partition, count);
+        }
+
+        // merge order of rows, existing row as its number, incoming row as -(position + 1)
+        long order = Unsafe.getUnsafe().allocateMemory(count * 8);
+        AbstractColumn[] source = null;
+        try {
+            long row = first;
+            int i = lo;
+            for (long r = 0; r < count; r++) {
+                long src;
+                if (row < size && (i == hi || timestamps.getLong(row) <= LongPairSort.first(pairs, i))) {
+                    src = row++;
+                } else {
+                    src = -LongPairSort.second(pairs, i++) - 1;
+                }
+                Unsafe.getUnsafe().putLong(order + r * 8, src);
+            }
+
+            File dir = partition.getPartitionDir();
+            partition = writer.stagePartition(partitionIndex, first);
+            if (first < size && !dir.equals(partition.getPartitionDir())) {
+                // staged version has no rows from first onward
+                source = partition.openColumns(dir, JournalMode.READ);
+            }
+
+            for (int c = 0; c < meta.length; c++) {
+                mergeColumn(partition, source == null ? partition.getAbstractColumn(c) : source[c], c, objects, order, (int) count, first);
+            }
+            partition.applyTx(Journal.TX_LIMIT_EVAL, null);
+            partition.reindex(first);
+        } finally {
+            if (source != null) {
+                for (int c = 0; c < source.length; c++) {
+                    source[c].close();
+                }
+            }
+            Unsafe.getUnsafe().freeMemory(order);
+        }
+    }
+
+    /**
+     * Splits rows [0, split) into runs of rows of the same partition. Nothing is modified until all
+     * rows are known to have a partition to go to.
+     */
+    private void plan(long pairs, int split) throws JournalException {
+        runs.clear();
+        int partitionIndex = 0;
+        int partitionCount = writer.nonLagPartitionCount();
+        int i = 0;
+        while (i < split) {
+            long ts = LongPairSort.first(pairs, i);
+            // partition of row is the last one, which starts before row
+            while (partitionIndex + 1 < partitionCount && !isBefore(partitionIndex + 1, ts)) {
+                partitionIndex++;
+            }
+
+            Partition<T> partition = writer.getPartition(partitionIndex, true);
+            Interval interval = partition.getInterval();
+            if (interval != null && (ts < interval.getLo() || ts > interval.getHi())) {
+                throw new JournalException("There is no partition for timestamp %s in %s", Dates.toString(ts), writer);
+            }
+
+            if (partition.isSealed()) {
+                throw new JournalException("Cannot merge rows into sealed partition %s", partition);
+            }
+
+            int hi = i + 1;
+            while (hi < split && (interval == null || LongPairSort.first(pairs, hi) <= interval.getHi())
+                    && (partitionIndex + 1 == partitionCount || isBefore(partitionIndex + 1, LongPairSort.first(pairs, hi)))) {
+                hi++;
+            }
+            runs.add(partitionIndex);
+            runs.add(i);
+            runs.add(hi);
+            i = hi;
+        }
+    }
+}
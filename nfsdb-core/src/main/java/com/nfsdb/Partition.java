@@ -24,6 +24,7 @@ package com.nfsdb;
 import com.nfsdb.collections.DirectInputStream;
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalNoSuchFileException;
 import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.factory.configuration.JournalMetadata;
@@ -31,7 +32,9 @@ import com.nfsdb.io.sink.CharSink;
 import com.nfsdb.logging.Logger;
 import com.nfsdb.query.iterator.PartitionBufferedIterator;
 import com.nfsdb.storage.*;
+import com.nfsdb.storage.codec.Codecs;
 import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Files;
 import com.nfsdb.utils.Hash;
 import com.nfsdb.utils.Interval;
 import com.nfsdb.utils.Unsafe;
@@ -54,6 +57,8 @@ public class Partition<T> implements Closeable {
     private final ColumnMetadata[] columnMetadata;
     SymbolIndexProxy<T> sparseIndexProxies[];
     AbstractColumn[] columns;
+    ZoneMap[] zoneMaps;
+    BitmapIndex[] bitmapIndexes;
     private int partitionIndex;
     private File partitionDir;
     private long lastAccessed = System.currentTimeMillis();
@@ -98,6 +103,20 @@ public class Partition<T> implements Closeable {
                 }
             }
             columns = null;
+
+            for (int i = 0; i < zoneMaps.length; i++) {
+                if (Unsafe.arrayGet(zoneMaps, i) != null) {
+                    Unsafe.arrayGet(zoneMaps, i).close();
+                }
+            }
+            zoneMaps = null;
+
+            for (int i = 0; i < bitmapIndexes.length; i++) {
+                if (Unsafe.arrayGet(bitmapIndexes, i) != null) {
+                    Unsafe.arrayGet(bitmapIndexes, i).close();
+                }
+            }
+            bitmapIndexes = null;
             LOGGER.trace("Partition %s closed", partitionDir);
         }
 
@@ -117,6 +136,7 @@ public class Partition<T> implements Closeable {
                 col.commit();
             }
         }
+        updateZoneMaps();
     }
 
     public void compact() throws JournalException {
@@ -128,6 +148,10 @@ public class Partition<T> implements Closeable {
             if (columns[i] != null) {
                 columns[i].compact();
             }
+
+            if (zoneMaps[i] != null) {
+                zoneMaps[i].compact();
+            }
         }
 
         for (int i = 0, k = indexProxies.size(); i < k; i++) {
@@ -135,6 +159,45 @@ public class Partition<T> implements Closeable {
         }
     }
 
+    /**
+     * Writes copy of first rows of partition into directory. Column files are copied up to row, files of
+     * indexes and zone maps, which are rewritten in place, are copied whole. When there are no rows after
+     * first rows column files are linked instead, rows appended to them are beyond the end readers of
+     * this directory know about.
+     *
+     * @param dir directory to write copy to
+     * @param lo  number of rows to copy
+     * @throws JournalException when copy cannot be written
+     */
+    void copyTo(File dir, long lo) throws JournalException {
+        File[] files = partitionDir.listFiles();
+        if (files == null) {
+            throw new JournalException("Cannot list %s", partitionDir);
+        }
+
+        Files.mkDirsOrException(dir);
+        if (lo < size()) {
+            for (int i = 0; i < columns.length; i++) {
+                Unsafe.arrayGet(columns, i).copyTo(dir, lo);
+            }
+            for (File f : files) {
+                File to = new File(dir, f.getName());
+                if (!to.exists()) {
+                    Files.copyOrException(f, to);
+                }
+            }
+        } else {
+            for (File f : files) {
+                File to = new File(dir, f.getName());
+                if (f.getName().endsWith(".d") || f.getName().endsWith(".i")) {
+                    Files.linkOrCopy(f, to);
+                } else {
+                    Files.copyOrException(f, to);
+                }
+            }
+        }
+    }
+
     public FixedColumn fixCol(int i) {
         checkColumnIndex(i);
         return (FixedColumn) Unsafe.arrayGet(columns, i);
@@ -145,6 +208,18 @@ public class Partition<T> implements Closeable {
         return Unsafe.arrayGet(columns, i);
     }
 
+    /**
+     * Address of block of "count" values of fixed width column, see {@link FixedColumn#getAddress(long, int)}
+     *
+     * @param localRowID  first row of block
+     * @param columnIndex index of fixed width column
+     * @param count       number of rows in block
+     * @return address of first value
+     */
+    public long getAddress(long localRowID, int columnIndex, int count) {
+        return fixCol(columnIndex).getAddress(localRowID, count);
+    }
+
     public void getBin(long localRowID, int columnIndex, OutputStream s) {
         varCol(columnIndex).getBin(localRowID, s);
     }
@@ -153,6 +228,23 @@ public class Partition<T> implements Closeable {
         return varCol(columnIndex).getBin(localRowID);
     }
 
+    /**
+     * Bitmap index of column, which is brought up to date with committed rows of partition.
+     *
+     * @param columnIndex index of column
+     * @return bitmap index
+     * @throws JournalException when column has no bitmap index
+     */
+    public BitmapIndex getBitmapIndex(int columnIndex) throws JournalException {
+        checkColumnIndex(columnIndex);
+        BitmapIndex index = Unsafe.arrayGet(bitmapIndexes, columnIndex);
+        if (index == null) {
+            throw new JournalException("There is no bitmap index for column '%s' in %s", columnMetadata[columnIndex].name, this);
+        }
+        index.update(fixCol(columnIndex), size());
+        return index;
+    }
+
     public boolean getBool(long localRowID, int columnIndex) {
         return fixCol(columnIndex).getBool(localRowID);
     }
@@ -205,8 +297,11 @@ public class Partition<T> implements Closeable {
         return fixCol(columnIndex).getLong(localRowID);
     }
 
+    /**
+     * @return name of partition, which is the same for all versions of its directory
+     */
     public String getName() {
-        return partitionDir.getName();
+        return Journal.partitionName(partitionDir.getName());
     }
 
     public File getPartitionDir() {
@@ -254,6 +349,18 @@ public class Partition<T> implements Closeable {
         return timestampColumn;
     }
 
+    /**
+     * Block summaries of column, see {@link ZoneMap}. Summaries are maintained for numeric and date
+     * columns and are brought up to date when partition is committed.
+     *
+     * @param columnIndex index of column
+     * @return zone map or null when column is not summarised
+     */
+    public ZoneMap getZoneMap(int columnIndex) {
+        checkColumnIndex(columnIndex);
+        return Unsafe.arrayGet(zoneMaps, columnIndex);
+    }
+
     public long indexOf(long timestamp, BSearchType type) {
         return getTimestampColumn().bsearchEdge(timestamp, type);
     }
@@ -266,6 +373,23 @@ public class Partition<T> implements Closeable {
         return columns != null;
     }
 
+    /**
+     * @return true when column files of partition are compressed, see {@link #seal()}
+     */
+    public boolean isSealed() {
+        if (!isOpen()) {
+            throw new JournalRuntimeException("Closed partition: %s", this);
+        }
+
+        for (int i = 0; i < columns.length; i++) {
+            AbstractColumn c = Unsafe.arrayGet(columns, i);
+            if (c != null && !c.isSealed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public Partition<T> open() throws JournalException {
         access();
         if (columns == null) {
@@ -333,6 +457,41 @@ public class Partition<T> implements Closeable {
         }
     }
 
+    /**
+     * Replaces column files with their compressed copies. Column values are compressed by codec of column
+     * type, see {@link Codecs#forType(ColumnType)}, index and symbol files are left as they are. Sealed
+     * partition is read-only, it is meant for partitions, which are no longer appended to.
+     * <p>
+     * Compressed copies are written in full before originals are removed, partition interrupted half way
+     * through is readable and can be sealed again.
+     *
+     * @throws JournalException when compressed files cannot be written
+     */
+    void seal() throws JournalException {
+        open();
+        if (isSealed()) {
+            return;
+        }
+
+        for (int i = 0; i < columns.length; i++) {
+            AbstractColumn c = Unsafe.arrayGet(columns, i);
+            if (c != null && !c.isSealed()) {
+                c.seal(Codecs.forType(Unsafe.arrayGet(columnMetadata, i).type));
+            }
+        }
+        close();
+
+        for (int i = 0; i < columnCount; i++) {
+            ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
+            Files.delete(new File(partitionDir, m.name + ".d"));
+            if (m.type == ColumnType.STRING || m.type == ColumnType.BINARY) {
+                Files.delete(new File(partitionDir, m.name + ".i"));
+            }
+        }
+        open();
+        LOGGER.info("Sealed %s", this);
+    }
+
     public long size() {
         if (!isOpen()) {
             throw new JournalRuntimeException("Closed partition: %s", this);
@@ -488,6 +647,7 @@ public class Partition<T> implements Closeable {
         for (int i = 0, k = indexProxies.size(); i < k; i++) {
             indexProxies.getQuick(i).getIndex().commit();
         }
+        updateZoneMaps();
     }
 
     @SuppressWarnings("unchecked")
@@ -519,6 +679,11 @@ public class Partition<T> implements Closeable {
                 if (column != null) {
                     column.force();
                 }
+
+                ZoneMap zoneMap = Unsafe.arrayGet(zoneMaps, i);
+                if (zoneMap != null) {
+                    zoneMap.force();
+                }
             }
         }
     }
@@ -532,44 +697,92 @@ public class Partition<T> implements Closeable {
 
     @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
     private void open0() throws JournalException {
-        columns = new AbstractColumn[journal.getMetadata().getColumnCount()];
+        columns = openColumns(partitionDir, journal.getMode());
+
+        zoneMaps = new ZoneMap[columns.length];
+        for (int i = 0; i < zoneMaps.length; i++) {
+            ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
+            if (ZoneMap.isSupported(m.type)) {
+                try {
+                    Unsafe.arrayPut(zoneMaps, i, new ZoneMap(new File(partitionDir, m.name + ".zm"), journal.getMode(), fixCol(i), m.type));
+                } catch (JournalNoSuchFileException e) {
+                    // partition was written before zone maps were introduced, readers go without
+                    LOGGER.debug("No zone map for %s in %s", m.name, partitionDir);
+                }
+            }
+        }
 
-        for (int i = 0; i < columns.length; i++) {
+        bitmapIndexes = new BitmapIndex[columns.length];
+        for (int i = 0; i < bitmapIndexes.length; i++) {
+            ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
+            if (m.bitmapIndexed && m.type == ColumnType.SYMBOL) {
+                // readers of partition share index, writer has rows readers must not see
+                Unsafe.arrayPut(bitmapIndexes, i, journal.getMode() == JournalMode.READ ?
+                        BitmapIndex.shared(new File(partitionDir, m.name + ".d")) :
+                        new BitmapIndex(fixCol(i)));
+            }
+        }
+
+        int tsIndex = journal.getMetadata().getTimestampIndex();
+        if (tsIndex > -1) {
+            timestampColumn = fixCol(tsIndex);
+        }
+    }
+
+    /**
+     * Opens columns of partition, which are stored in directory. Used by writer to read previous version
+     * of partition, see {@link JournalWriter#stagePartition(int, long)}. Caller closes columns.
+     *
+     * @param dir  directory of partition
+     * @param mode mode to open column files in
+     * @return columns in order of journal metadata
+     * @throws JournalException when column files cannot be opened
+     */
+    @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
+    AbstractColumn[] openColumns(File dir, JournalMode mode) throws JournalException {
+        AbstractColumn[] result = new AbstractColumn[columnMetadata.length];
+
+        for (int i = 0; i < result.length; i++) {
             switch (Unsafe.arrayGet(columnMetadata, i).type) {
                 case STRING:
                 case BINARY:
-                    Unsafe.arrayPut(columns, i,
+                    Unsafe.arrayPut(result, i,
                             new VariableColumn(
-                                    new MemoryFile(
-                                            new File(partitionDir, Unsafe.arrayGet(columnMetadata, i).name + ".d"),
-                                            Unsafe.arrayGet(columnMetadata, i).bitHint, journal.getMode()
+                                    openFile(
+                                            new File(dir, Unsafe.arrayGet(columnMetadata, i).name + ".d"),
+                                            Unsafe.arrayGet(columnMetadata, i).bitHint,
+                                            mode
                                     ),
-                                    new MemoryFile(
-                                            new File(partitionDir, Unsafe.arrayGet(columnMetadata, i).name + ".i"),
+                                    openFile(
+                                            new File(dir, Unsafe.arrayGet(columnMetadata, i).name + ".i"),
                                             Unsafe.arrayGet(columnMetadata, i).indexBitHint,
-                                            journal.getMode()
+                                            mode
                                     )
                             )
                     );
                     break;
                 default:
-                    Unsafe.arrayPut(columns, i,
+                    Unsafe.arrayPut(result, i,
                             new FixedColumn(
-                                    new MemoryFile(
-                                            new File(partitionDir, Unsafe.arrayGet(columnMetadata, i).name + ".d"),
+                                    openFile(
+                                            new File(dir, Unsafe.arrayGet(columnMetadata, i).name + ".d"),
                                             Unsafe.arrayGet(columnMetadata, i).bitHint,
-                                            journal.getMode()
+                                            mode
                                     ),
                                     Unsafe.arrayGet(columnMetadata, i).size
                             )
                     );
             }
         }
+        return result;
+    }
 
-        int tsIndex = journal.getMetadata().getTimestampIndex();
-        if (tsIndex > -1) {
-            timestampColumn = fixCol(tsIndex);
+    private MemoryFile openFile(File file, int bitHint, JournalMode mode) throws JournalException {
+        File z = CompressedMemoryFile.compressedFile(file);
+        if (!file.exists() && z.exists()) {
+            return new CompressedMemoryFile(z, bitHint);
         }
+        return new MemoryFile(file, bitHint, mode);
     }
 
     private void readBin(long localRowID, T obj, int i, ColumnMetadata m) {
@@ -635,6 +848,48 @@ public class Partition<T> implements Closeable {
         LOGGER.debug("REBUILT %s [%dms]", base, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time));
     }
 
+    /**
+     * Replaces index entries, zone map and bitmap index summaries of rows from lo onwards with those of
+     * current column values. Used after rows were rewritten in place, rows before lo must be unchanged.
+     *
+     * @param lo first rewritten row
+     * @throws JournalException if index cannot be updated
+     */
+    void reindex(long lo) throws JournalException {
+        long size = size();
+        for (int n = 0, k = indexProxies.size(); n < k; n++) {
+            SymbolIndexProxy<T> proxy = indexProxies.getQuick(n);
+            KVIndex index = proxy.getIndex();
+            int i = proxy.getColumnIndex();
+            ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
+
+            index.truncate(lo);
+            switch (m.type) {
+                case STRING:
+                    VariableColumn vc = varCol(i);
+                    for (long row = lo; row < size; row++) {
+                        CharSequence s = vc.getFlyweightStr(row);
+                        index.add(s == null ? SymbolTable.VALUE_IS_NULL : Hash.boundedHash(s, m.distinctCountHint), row);
+                    }
+                    break;
+                case INT:
+                    FixedColumn ic = fixCol(i);
+                    for (long row = lo; row < size; row++) {
+                        index.add(ic.getInt(row) & m.distinctCountHint, row);
+                    }
+                    break;
+                default:
+                    FixedColumn fc = fixCol(i);
+                    for (long row = lo; row < size; row++) {
+                        index.add(fc.getInt(row), row);
+                    }
+                    break;
+            }
+        }
+        truncateSummaries(lo);
+        updateZoneMaps();
+    }
+
     final void setPartitionDir(File partitionDir, long[] indexTxAddresses) {
         boolean create = partitionDir != null && !partitionDir.equals(this.partitionDir);
         this.partitionDir = partitionDir;
@@ -645,17 +900,58 @@ public class Partition<T> implements Closeable {
 
     void truncate(long newSize) throws JournalException {
         if (isOpen() && size() > newSize) {
-            for (int i = 0, k = indexProxies.size(); i < k; i++) {
-                indexProxies.getQuick(i).getIndex().truncate(newSize);
+            truncateColumns(newSize);
+        }
+    }
+
+    /**
+     * Truncates every column and index to newSize. Unlike {@link #truncate(long)} this does not go by size of
+     * partition, which is size of the last column, and also removes rows written to some of columns only.
+     *
+     * @param newSize number of rows to keep
+     * @throws JournalException when index cannot be opened
+     */
+    void truncateColumns(long newSize) throws JournalException {
+        for (int i = 0, k = indexProxies.size(); i < k; i++) {
+            indexProxies.getQuick(i).getIndex().truncate(newSize);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (Unsafe.arrayGet(columns, i) != null) {
+                Unsafe.arrayGet(columns, i).truncate(newSize);
             }
-            for (int i = 0; i < columns.length; i++) {
-                if (Unsafe.arrayGet(columns, i) != null) {
-                    Unsafe.arrayGet(columns, i).truncate(newSize);
+        }
+
+        truncateSummaries(newSize);
+        commitColumns();
+        clearTx();
+    }
+
+    private void truncateSummaries(long newSize) {
+        if (zoneMaps != null) {
+            for (int i = 0; i < zoneMaps.length; i++) {
+                if (Unsafe.arrayGet(zoneMaps, i) != null) {
+                    Unsafe.arrayGet(zoneMaps, i).truncate(newSize);
                 }
             }
+        }
+
+        if (bitmapIndexes != null) {
+            for (int i = 0; i < bitmapIndexes.length; i++) {
+                if (Unsafe.arrayGet(bitmapIndexes, i) != null) {
+                    Unsafe.arrayGet(bitmapIndexes, i).truncate(newSize);
+                }
+            }
+        }
+    }
 
-            commitColumns();
-            clearTx();
+    private void updateZoneMaps() {
+        if (zoneMaps != null) {
+            for (int i = 0; i < zoneMaps.length; i++) {
+                ZoneMap zoneMap = Unsafe.arrayGet(zoneMaps, i);
+                if (zoneMap != null) {
+                    zoneMap.update();
+                }
+            }
         }
     }
 }
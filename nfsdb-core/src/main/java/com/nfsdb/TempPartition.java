@@ -43,4 +43,9 @@ public class TempPartition<T> extends Partition<T> {
         super.close();
         LockManager.release(lock);
     }
+
+    @Override
+    public String getName() {
+        return getPartitionDir().getName();
+    }
 }
@@ -96,7 +96,7 @@ public class JournalMetadataException extends JournalException {
     }
 
     private void col(ColumnMetadata m) {
-        pad((m.distinctCountHint > 0 ? m.distinctCountHint + " ~ " : "") + (m.indexed ? '#' : "") + m.name + (m.sameAs != null ? " -> " + m.sameAs : "") + ' ' + m.type.name() + '(' + m.size + ')');
+        pad((m.distinctCountHint > 0 ? m.distinctCountHint + " ~ " : "") + (m.indexed ? '#' : "") + (m.bitmapIndexed ? '%' : "") + m.name + (m.sameAs != null ? " -> " + m.sameAs : "") + ' ' + m.type.name() + '(' + m.size + ')');
     }
 
     private void e() {
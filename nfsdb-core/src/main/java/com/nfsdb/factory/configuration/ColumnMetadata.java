@@ -34,6 +34,7 @@ public class ColumnMetadata implements RecordColumnMetadata {
     public int size;
     public int avgSize = Constants.DEFAULT_STRING_AVG_SIZE;
     public boolean indexed;
+    public boolean bitmapIndexed;
     public int bitHint;
     public int indexBitHint;
     public int distinctCountHint;
@@ -48,6 +49,7 @@ public class ColumnMetadata implements RecordColumnMetadata {
         this.size = from.size;
         this.avgSize = from.avgSize;
         this.indexed = from.indexed;
+        this.bitmapIndexed = from.bitmapIndexed;
         this.bitHint = from.bitHint;
         this.indexBitHint = from.indexBitHint;
         this.distinctCountHint = from.distinctCountHint;
@@ -98,6 +100,7 @@ public class ColumnMetadata implements RecordColumnMetadata {
         result = 31 * result + size;
         result = 31 * result + avgSize;
         result = 31 * result + (indexed ? 1 : 0);
+        result = 31 * result + (bitmapIndexed ? 1 : 0);
         result = 31 * result + bitHint;
         result = 31 * result + indexBitHint;
         result = 31 * result + distinctCountHint;
@@ -117,6 +120,7 @@ public class ColumnMetadata implements RecordColumnMetadata {
                 && distinctCountHint == that.distinctCountHint
                 && indexBitHint == that.indexBitHint
                 && indexed == that.indexed
+                && bitmapIndexed == that.bitmapIndexed
                 && noCache == that.noCache
                 && size == that.size
                 && name.equals(that.name)
@@ -134,6 +138,7 @@ public class ColumnMetadata implements RecordColumnMetadata {
                 ", size*=" + size +
                 ", avgSize=" + avgSize +
                 ", indexed=" + indexed +
+                ", bitmapIndexed=" + bitmapIndexed +
                 ", bitHint=" + bitHint +
                 ", indexBitHint=" + indexBitHint +
                 ", distinctCountHint=" + distinctCountHint +
@@ -31,6 +31,15 @@ public class GenericSymbolBuilder extends AbstractGenericMetadataBuilder {
         meta.size = 4;
     }
 
+    /**
+     * Adds compressed bitmap index, which suits symbols of few distinct values and lets queries
+     * combine conditions on several such symbols before reading column data.
+     */
+    public GenericSymbolBuilder bitmapIndex() {
+        this.meta.bitmapIndexed = true;
+        return this;
+    }
+
     public GenericSymbolBuilder index() {
         this.meta.indexed = true;
         return this;
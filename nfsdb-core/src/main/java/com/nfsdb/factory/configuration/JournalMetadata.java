@@ -124,6 +124,12 @@ public class JournalMetadata<T> implements RecordMetadata {
         ioBlockTxCount = buf.getInt();
         keyColumn = buf.getStr();
         lag = buf.getInt();
+        // bitmap index flags follow journal attributes, metadata written before them ends here
+        if (buf.getPos() < buf.getAppendOffset()) {
+            for (int i = 0; i < columnCount; i++) {
+                columnMetadata[i].bitmapIndexed = buf.getBool();
+            }
+        }
         constructor = null;
         partialMapping = false;
         this.key = new JournalKey<>(id);
@@ -241,6 +247,7 @@ public class JournalMetadata<T> implements RecordMetadata {
                     || thisM.size != thatM.size
                     || thisM.distinctCountHint != thatM.distinctCountHint
                     || thisM.indexed != thatM.indexed
+                    || thisM.bitmapIndexed != thatM.bitmapIndexed
                     || (thisM.sameAs == null && thatM.sameAs != null)
                     || (thisM.sameAs != null && !thisM.sameAs.equals(thatM.sameAs))
                     ) {
@@ -310,11 +317,14 @@ public class JournalMetadata<T> implements RecordMetadata {
         buf.put(ioBlockTxCount);
         buf.put(keyColumn);
         buf.put(lag);
+        for (int i = 0; i < columnMetadata.length; i++) {
+            buf.put(columnMetadata[i].bitmapIndexed);
+        }
         buf.setAppendOffset(buf.getPos());
     }
 
     private void col(StringBuilder b, ColumnMetadata m) {
-        pad(b, TO_STRING_COL2_PAD, (m.distinctCountHint > 0 ? m.distinctCountHint + " ~ " : "") + (m.indexed ? '#' : "") + m.name + (m.sameAs != null ? " -> " + m.sameAs : "") + ' ' + m.type.name() + '(' + m.size + ')');
+        pad(b, TO_STRING_COL2_PAD, (m.distinctCountHint > 0 ? m.distinctCountHint + " ~ " : "") + (m.indexed ? '#' : "") + (m.bitmapIndexed ? '%' : "") + m.name + (m.sameAs != null ? " -> " + m.sameAs : "") + ' ' + m.type.name() + '(' + m.size + ')');
     }
 
     private StringBuilder pad(StringBuilder b, int w, String value) {
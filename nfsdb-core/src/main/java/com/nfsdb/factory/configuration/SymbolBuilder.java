@@ -35,6 +35,17 @@ public class SymbolBuilder<T> extends AbstractMetadataBuilder<T> {
         meta.size = 4;
     }
 
+    /**
+     * Adds compressed bitmap index, which suits symbols of few distinct values and lets queries
+     * combine conditions on several such symbols before reading column data. Index is not stored,
+     * it is built in memory by scanning symbol column once and shared by readers of partition, see
+     * {@link com.nfsdb.storage.BitmapIndex}.
+     */
+    public SymbolBuilder<T> bitmapIndex() {
+        this.meta.bitmapIndexed = true;
+        return this;
+    }
+
     public SymbolBuilder<T> index() {
         this.meta.indexed = true;
         return this;
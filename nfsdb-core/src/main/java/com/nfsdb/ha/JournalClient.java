@@ -93,6 +93,8 @@ public class JournalClient {
     private ByteChannel channel;
     private StatsCollectingReadableByteChannel statsChannel;
     private Future handlerFuture;
+    private volatile long latency;
+    private volatile ReplicaSnapshot snapshot;
 
     public JournalClient(JournalWriterFactory factory) {
         this(factory, null);
@@ -131,6 +133,26 @@ public class JournalClient {
         }
     }
 
+    /**
+     * Time between server committing transaction and client receiving it. Measured against clocks
+     * of both server and client, so it includes skew between them.
+     *
+     * @return latency of last received transaction in milliseconds
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Transactions of subscribed journals as of the end of last replication round. Readers moved
+     * to snapshot do not see journals with deltas of another round partially applied.
+     *
+     * @return last snapshot or null when client has not completed a round yet
+     */
+    public ReplicaSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     public boolean isRunning() {
         return running.get();
     }
@@ -277,6 +299,12 @@ public class JournalClient {
     private void handshake() throws JournalNetworkException {
         openChannel(null);
         sendProtocolVersion();
+        if (config.isCompression()) {
+            sendCompression();
+        }
+        if (config.isStreaming()) {
+            sendStreaming();
+        }
         sendKeys();
         checkAuthAndSendCredential();
         sendState();
@@ -309,6 +337,12 @@ public class JournalClient {
         return charSequenceResponseConsumer.getValue();
     }
 
+    private void sendCompression() throws JournalNetworkException {
+        commandProducer.write(channel, Command.COMPRESSION);
+        intResponseProducer.write(channel, 1);
+        checkAck();
+    }
+
     private void sendDisconnect() throws JournalNetworkException {
         commandProducer.write(channel, Command.CLIENT_DISCONNECT);
     }
@@ -368,9 +402,15 @@ public class JournalClient {
         sendReady();
     }
 
+    private void sendStreaming() throws JournalNetworkException {
+        commandProducer.write(channel, Command.STREAMING);
+        intResponseProducer.write(channel, 1);
+        checkAck();
+    }
+
     private <T> void set0(int index, JournalWriter<T> writer, TxListener txListener) {
         statusSentList.extendAndSet(index, 0);
-        deltaConsumers.extendAndSet(index, new JournalDeltaConsumer(writer.setCommitOnClose(false)));
+        deltaConsumers.extendAndSet(index, new JournalDeltaConsumer(writer.setCommitOnClose(false), config.isCompression()));
         writers.extendAndSet(index, writer);
         if (txListener != null) {
             writer.setTxListener(txListener);
@@ -447,13 +487,23 @@ public class JournalClient {
                         case JOURNAL_DELTA_CMD:
                             statsChannel.setDelegate(channel);
                             int index = intResponseConsumer.getValue(statsChannel);
-                            deltaConsumers.getQuick(index).read(statsChannel);
-                            statusSentList.set(index, 0);
+                            JournalDeltaConsumer consumer = deltaConsumers.getQuick(index);
+                            consumer.read(statsChannel);
                             statsChannel.logStats();
+                            latency = System.currentTimeMillis() - consumer.getTxTimestamp();
+                            if (LOGGER.isDebugEnabled()) {
+                                LOGGER.debug("Received transaction of %s, latency %d ms", remoteKeys.getQuick(index), latency);
+                            }
+                            if (!config.isStreaming()) {
+                                statusSentList.set(index, 0);
+                            }
                             break;
                         case SERVER_READY_CMD:
                             if (isRunning()) {
-                                sendState();
+                                snapshot = new ReplicaSnapshot(writers);
+                                if (!config.isStreaming()) {
+                                    sendState();
+                                }
                             } else {
                                 sendDisconnect();
                                 reason = DisconnectReason.CLIENT_HALT;
@@ -462,6 +512,7 @@ public class JournalClient {
                             break;
                         case SERVER_HEARTBEAT:
                             if (isRunning()) {
+                                snapshot = new ReplicaSnapshot(writers);
                                 sendReady();
                             } else {
                                 sendDisconnect();
@@ -118,6 +118,10 @@ public class JournalServer {
         return bridge;
     }
 
+    public ServerConfig getConfig() {
+        return config;
+    }
+
     public int getConnectedClients() {
         return channels.size();
     }
@@ -201,6 +205,7 @@ public class JournalServer {
     }
 
     public void publish(JournalWriter journal) {
+        journal.setReplicated(true);
         writers.put(journal, writerIdGenerator.getAndIncrement());
     }
 
@@ -76,6 +76,8 @@ public class JournalServerAgent {
     private final ByteArrayResponseConsumer byteArrayResponseConsumer = new ByteArrayResponseConsumer();
     private final SocketAddress socketAddress;
     private boolean authorized;
+    private boolean compressed;
+    private boolean streaming;
 
     public JournalServerAgent(JournalServer server, SocketAddress socketAddress, AuthorizationHandler authorizationHandler) {
         this.server = server;
@@ -117,7 +119,11 @@ public class JournalServerAgent {
             case CLIENT_READY_CMD:
                 checkAuthorized(channel);
                 statsChannel.setDelegate(channel);
-                dispatch(statsChannel);
+                if (streaming) {
+                    stream(statsChannel);
+                } else {
+                    dispatch(statsChannel);
+                }
                 statsChannel.logStats();
                 break;
             case CLIENT_DISCONNECT:
@@ -136,6 +142,12 @@ public class JournalServerAgent {
                 byteArrayResponseConsumer.read(channel);
                 authorize(channel, byteArrayResponseConsumer.getValue());
                 break;
+            case COMPRESSION:
+                setCompression(channel, intResponseConsumer.getValue(channel));
+                break;
+            case STREAMING:
+                setStreaming(channel, intResponseConsumer.getValue(channel));
+                break;
             case ELECTION:
                 server.handleElectionMessage(channel);
                 break;
@@ -193,7 +205,9 @@ public class JournalServerAgent {
 
         JournalDeltaProducer producer = producers.getQuiet(index);
         if (producer == null) {
-            producers.extendAndSet(index, new JournalDeltaProducer(journal));
+            producer = new JournalDeltaProducer(journal, compressed);
+            producer.setMaxDeltaRows(server.getConfig().getMaxDeltaRows());
+            producers.extendAndSet(index, producer);
         }
     }
 
@@ -224,8 +238,11 @@ public class JournalServerAgent {
 
 
         try {
-            boolean dataSent = dispatchProducer(channel, state.getTxn(), state.getTxPin(), getProducer(journalIndex), journalIndex);
-            if (dataSent) {
+            boolean dataSent = dispatchProducer(channel, state, getProducer(journalIndex), journalIndex);
+            if (dataSent && streaming) {
+                // client state has moved on with delta, check for more data straight away
+                state.setClientStateSyncTime(0);
+            } else if (dataSent) {
                 state.invalidateClientState();
             } else {
                 state.setClientStateSyncTime(time);
@@ -244,14 +261,18 @@ public class JournalServerAgent {
 
     private boolean dispatchProducer(
             WritableByteChannel channel
-            , long txn
-            , long txPin
+            , JournalClientState state
             , JournalDeltaProducer journalDeltaProducer
             , int index) throws JournalNetworkException, JournalException {
 
-        journalDeltaProducer.configure(txn, txPin);
+        journalDeltaProducer.configure(state.getTxn(), state.getTxPin());
         if (journalDeltaProducer.hasContent()) {
             server.getLogger().msg().setMessage("Sending data").setSocketAddress(socketAddress).send();
+            if (streaming) {
+                // client does not send its state between streamed deltas, assume it applies this one
+                state.setTxn(journalDeltaProducer.getTxn());
+                state.setTxPin(journalDeltaProducer.getTxPin());
+            }
             commandProducer.write(channel, Command.JOURNAL_DELTA_CMD);
             intResponseProducer.write(channel, index);
             journalDeltaProducer.write(channel);
@@ -261,6 +282,22 @@ public class JournalServerAgent {
 
     }
 
+    private boolean dispatchWaiting(WritableByteChannel channel) {
+        // handler would have dispatched those journals, which received updates
+        // this loop does two things:
+        // 1. attempts to dispatch0 journals that didn't receive updates, dispatch0 method would check timeout and decide.
+        // 2. reset writer update received status
+        boolean dataSent = false;
+        for (int i = 0, k = clientStates.size(); i < k; i++) {
+            JournalClientState state = clientStates.getQuick(i);
+            if (state.isWaitingOnEvents()) {
+                dataSent = dispatch0(channel, i) || dataSent;
+            }
+            state.setWaitingOnEvents(true);
+        }
+        return dataSent;
+    }
+
     private void error(WritableByteChannel channel, String message) throws JournalNetworkException {
         error(channel, message, null);
     }
@@ -301,19 +338,7 @@ public class JournalServerAgent {
         handler.setChannel(channel);
         boolean dataSent = false;
         if (eventProcessor.process(handler, blocking)) {
-            dataSent = handler.isDataSent();
-
-            // handler would have dispatched those journals, which received updates
-            // this loop does two things:
-            // 1. attempts to dispatch0 journals that didn't receive updates, dispatch0 method would check timeout and decide.
-            // 2. reset writer update received status
-            for (int i = 0, k = clientStates.size(); i < k; i++) {
-                JournalClientState state = clientStates.getQuick(i);
-                if (state.isWaitingOnEvents()) {
-                    dataSent = dispatch0(channel, i) || dataSent;
-                }
-                state.setWaitingOnEvents(true);
-            }
+            dataSent = dispatchWaiting(channel) || handler.isDataSent();
 
             if (dataSent) {
                 commandProducer.write(channel, Command.SERVER_READY_CMD);
@@ -325,20 +350,24 @@ public class JournalServerAgent {
                         .send();
             }
         } else {
-            if (server.isRunning()) {
-                commandProducer.write(channel, Command.SERVER_HEARTBEAT);
-                server.getLogger().msg()
-                        .setLevel(ServerLogMsg.Level.TRACE)
-                        .setSocketAddress(socketAddress)
-                        .setMessage("Heartbeat")
-                        .send();
-            } else {
-                commandProducer.write(channel, Command.SERVER_SHUTDOWN);
-            }
+            sendHeartbeat(channel);
         }
         return dataSent;
     }
 
+    private void sendHeartbeat(WritableByteChannel channel) throws JournalNetworkException {
+        if (server.isRunning()) {
+            commandProducer.write(channel, Command.SERVER_HEARTBEAT);
+            server.getLogger().msg()
+                    .setLevel(ServerLogMsg.Level.TRACE)
+                    .setSocketAddress(socketAddress)
+                    .setMessage("Heartbeat")
+                    .send();
+        } else {
+            commandProducer.write(channel, Command.SERVER_SHUTDOWN);
+        }
+    }
+
     private void sendMetadata(WritableByteChannel channel, int index) throws JournalException, JournalNetworkException {
         try (HugeBufferProducer h = new HugeBufferProducer(new File(readers.get(index).getLocation(), JournalConfiguration.FILE_NAME))) {
             h.write(channel);
@@ -370,6 +399,24 @@ public class JournalServerAgent {
         }
     }
 
+    private void setCompression(WritableByteChannel channel, int value) throws JournalNetworkException {
+        if (producers.size() > 0) {
+            error(channel, "Compression must be negotiated before journal keys are set");
+        } else {
+            compressed = value != 0;
+            ok(channel);
+        }
+    }
+
+    private void setStreaming(WritableByteChannel channel, int value) throws JournalNetworkException {
+        if (producers.size() > 0) {
+            error(channel, "Streaming must be negotiated before journal keys are set");
+        } else {
+            streaming = value != 0;
+            ok(channel);
+        }
+    }
+
     private void storeDeltaRequest(WritableByteChannel channel, JournalClientState request) throws JournalNetworkException {
         int index = request.getJournalIndex();
 
@@ -390,6 +437,36 @@ public class JournalServerAgent {
         }
     }
 
+    /**
+     * Sends deltas to streaming client for as long as journals receive commits. Agent advances client
+     * state itself, so client does not have to request each delta and deltas of commits made while channel
+     * is busy go out together. Each batch of deltas is followed by SERVER_READY, which tells client that
+     * journals are consistent. Agent blocks for commits only when there is nothing to send and returns to
+     * client with heartbeat once blocking times out.
+     */
+    private void stream(WritableByteChannel channel) throws JournalNetworkException {
+        boolean blocking = false;
+        while (true) {
+            handler.setChannel(channel);
+            if (!eventProcessor.process(handler, blocking)) {
+                sendHeartbeat(channel);
+                return;
+            }
+
+            if (!server.isRunning()) {
+                commandProducer.write(channel, Command.SERVER_SHUTDOWN);
+                return;
+            }
+
+            if (dispatchWaiting(channel) || handler.isDataSent()) {
+                commandProducer.write(channel, Command.SERVER_READY_CMD);
+                blocking = false;
+            } else {
+                blocking = true;
+            }
+        }
+    }
+
     private class EventHandler implements JournalEventHandler {
 
         private WritableByteChannel channel;
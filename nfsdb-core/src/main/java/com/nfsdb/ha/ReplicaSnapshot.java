@@ -0,0 +1,101 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ha;
+
+import com.nfsdb.Journal;
+import com.nfsdb.JournalWriter;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+
+import java.io.File;
+
+/**
+ * Transactions of journals replicated by {@link JournalClient} at the end of replication round, when client
+ * has applied every delta server sent in that round. Readers of replicated journals, which are moved to
+ * snapshot, see all of them as of the same round and are not affected by deltas client applies after.
+ * Snapshot remains usable for as long as its transactions are in journal transaction logs, i.e. until
+ * journal is rolled back by server.
+ */
+public class ReplicaSnapshot {
+    private final ObjList<File> locations;
+    private final long txns[];
+    private final long txPins[];
+
+    ReplicaSnapshot(ObjList<JournalWriter> writers) {
+        int n = writers.size();
+        this.locations = new ObjList<>(n);
+        this.txns = new long[n];
+        this.txPins = new long[n];
+        for (int i = 0; i < n; i++) {
+            JournalWriter w = writers.getQuick(i);
+            locations.add(w.getLocation());
+            txns[i] = w.getTxn();
+            txPins[i] = w.getTxPin();
+        }
+    }
+
+    /**
+     * Moves readers to transactions of their journals in this snapshot.
+     *
+     * @param journals readers of replicated journals
+     * @throws JournalException when journal is not replicated by client or its transaction is no longer in log
+     */
+    public void apply(Journal... journals) throws JournalException {
+        for (int i = 0; i < journals.length; i++) {
+            Journal journal = journals[i];
+            int index = indexOf(journal.getLocation());
+            if (index == -1) {
+                throw new JournalException("Journal is not replicated: %s", journal.getLocation());
+            }
+
+            if (!journal.refresh(txns[index], txPins[index])) {
+                throw new JournalException("Transaction %d is not in log of %s", txns[index], journal.getLocation());
+            }
+        }
+    }
+
+    public long getTxPin(int index) {
+        return txPins[index];
+    }
+
+    /**
+     * @param index index of journal in order of subscription
+     * @return transaction of journal
+     */
+    public long getTxn(int index) {
+        return txns[index];
+    }
+
+    public int size() {
+        return txns.length;
+    }
+
+    private int indexOf(File location) {
+        for (int i = 0, n = locations.size(); i < n; i++) {
+            if (locations.getQuick(i).equals(location)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
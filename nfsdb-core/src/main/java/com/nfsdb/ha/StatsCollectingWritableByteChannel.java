@@ -22,13 +22,15 @@
 package com.nfsdb.ha;
 
 import com.nfsdb.logging.Logger;
+import com.nfsdb.storage.AbstractColumn;
 
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 
-class StatsCollectingWritableByteChannel implements WritableByteChannel {
+class StatsCollectingWritableByteChannel implements TransferChannel {
 
     private final static Logger LOGGER = Logger.getLogger(StatsCollectingWritableByteChannel.class);
 
@@ -66,6 +68,14 @@ class StatsCollectingWritableByteChannel implements WritableByteChannel {
         this.callCount = 0;
     }
 
+    @Override
+    public long transfer(AbstractColumn column, long offset, long count) throws IOException {
+        callCount++;
+        long n = column.transferTo(offset, count, delegate);
+        this.byteCount += n;
+        return n;
+    }
+
     @Override
     public int write(ByteBuffer src) throws IOException {
         callCount++;
@@ -74,4 +84,29 @@ class StatsCollectingWritableByteChannel implements WritableByteChannel {
         return count;
     }
 
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        callCount++;
+        long count;
+        if (delegate instanceof GatheringByteChannel) {
+            count = ((GatheringByteChannel) delegate).write(srcs, offset, length);
+        } else {
+            count = 0;
+            for (int i = offset, n = offset + length; i < n; i++) {
+                ByteBuffer b = srcs[i];
+                count += delegate.write(b);
+                if (b.hasRemaining()) {
+                    break;
+                }
+            }
+        }
+        this.byteCount += count;
+        return count;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
 }
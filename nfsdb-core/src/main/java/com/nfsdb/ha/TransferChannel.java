@@ -0,0 +1,43 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ha;
+
+import com.nfsdb.storage.AbstractColumn;
+
+import java.io.IOException;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Channel, which wraps another channel, typically socket. Column data is handed down to wrapped
+ * channel as file region, so that it can be sent by sendfile rather than copied through user space.
+ */
+public interface TransferChannel extends GatheringByteChannel {
+
+    /**
+     * @param column column to send data of
+     * @param offset offset of data in column
+     * @param count  maximum number of bytes to send
+     * @return number of bytes sent
+     * @throws IOException when channel cannot be written to
+     */
+    long transfer(AbstractColumn column, long offset, long count) throws IOException;
+}
@@ -24,6 +24,7 @@ package com.nfsdb.ha.comsumer;
 import com.nfsdb.exceptions.JournalNetworkException;
 import com.nfsdb.ha.AbstractChannelConsumer;
 import com.nfsdb.storage.AbstractColumn;
+import com.nfsdb.storage.codec.Codec;
 import com.nfsdb.utils.ByteBuffers;
 import com.nfsdb.utils.Unsafe;
 
@@ -33,17 +34,32 @@ import java.nio.channels.ReadableByteChannel;
 
 public class FixedColumnDeltaConsumer extends AbstractChannelConsumer {
 
+    // fragment is read into mapped window of up to this many bytes rather than a page at a time
+    private static final int RECEIVE_WINDOW = 1 << 26;
     private final ByteBuffer header = ByteBuffer.allocateDirect(8).order(ByteOrder.LITTLE_ENDIAN);
     private final long headerAddress = ByteBuffers.getAddress(header);
     private final AbstractColumn column;
+    private final Codec codec;
+    private ByteBuffer block;
+    private long blockAddress;
     private long targetOffset = -1;
 
     public FixedColumnDeltaConsumer(AbstractColumn column) {
+        this(column, null);
+    }
+
+    /**
+     * @param column column to receive data into
+     * @param codec  codec of compressed blocks, null when server sends data as is
+     */
+    public FixedColumnDeltaConsumer(AbstractColumn column, Codec codec) {
         this.column = column;
+        this.codec = codec;
     }
 
     public void free() {
         ByteBuffers.release(header);
+        block = ByteBuffers.release(block);
     }
 
     @Override
@@ -56,10 +72,15 @@ public class FixedColumnDeltaConsumer extends AbstractChannelConsumer {
         header.position(0);
         ByteBuffers.copy(channel, header);
         long offset = column.getOffset();
-        targetOffset = offset + Unsafe.getUnsafe().getInt(headerAddress);
+        targetOffset = offset + Unsafe.getUnsafe().getLong(headerAddress);
+
+        if (codec != null) {
+            readCompressed(channel, offset);
+            return;
+        }
 
         while (offset < targetOffset) {
-            int sz = ByteBuffers.copy(channel, column.getBuffer(offset, 1), targetOffset - offset);
+            int sz = ByteBuffers.copy(channel, column.getBuffer(offset, (int) Math.min(targetOffset - offset, RECEIVE_WINDOW)), targetOffset - offset);
             // using non-blocking IO it should be possible not to read anything
             // we need to give up here and let the rest of execution continue
             if (sz == 0) {
@@ -68,4 +89,36 @@ public class FixedColumnDeltaConsumer extends AbstractChannelConsumer {
             offset += sz;
         }
     }
+
+    private void readCompressed(ReadableByteChannel channel, long offset) throws JournalNetworkException {
+        while (offset < targetOffset) {
+            // block header is read into fragment header buffer, which is no longer needed
+            header.position(0);
+            ByteBuffers.copy(channel, header);
+            int len = Unsafe.getUnsafe().getInt(headerAddress);
+            int n = Unsafe.getUnsafe().getInt(headerAddress + 4);
+
+            ByteBuffer data = column.getBuffer(offset, len);
+            if (n < 0) {
+                int limit = data.limit();
+                data.limit(data.position() + len);
+                try {
+                    ByteBuffers.copy(channel, data);
+                } finally {
+                    data.limit(limit);
+                }
+            } else {
+                if (block == null || block.capacity() < n) {
+                    ByteBuffers.release(block);
+                    block = ByteBuffer.allocateDirect(n).order(ByteOrder.LITTLE_ENDIAN);
+                    blockAddress = ByteBuffers.getAddress(block);
+                }
+                block.clear();
+                block.limit(n);
+                ByteBuffers.copy(channel, block);
+                codec.decompress(blockAddress, n, ByteBuffers.getAddress(data) + data.position(), len);
+            }
+            offset += len;
+        }
+    }
 }
@@ -39,12 +39,22 @@ public class JournalDeltaConsumer extends AbstractChannelConsumer {
     private final JournalServerStateConsumer journalServerStateConsumer = new JournalServerStateConsumer();
     private final JournalSymbolTableConsumer journalSymbolTableConsumer;
     private final ObjList<PartitionDeltaConsumer> partitionDeltaConsumers = new ObjList<>();
+    private final boolean compressed;
     private JournalServerState state;
     private PartitionDeltaConsumer lagPartitionDeltaConsumer;
 
     public JournalDeltaConsumer(JournalWriter journal) {
+        this(journal, false);
+    }
+
+    /**
+     * @param journal    journal to apply deltas to
+     * @param compressed true when server was asked to compress deltas
+     */
+    public JournalDeltaConsumer(JournalWriter journal, boolean compressed) {
         this.journal = journal;
-        this.journalSymbolTableConsumer = new JournalSymbolTableConsumer(journal);
+        this.compressed = compressed;
+        this.journalSymbolTableConsumer = new JournalSymbolTableConsumer(journal, compressed);
     }
 
     @Override
@@ -59,6 +69,13 @@ public class JournalDeltaConsumer extends AbstractChannelConsumer {
         }
     }
 
+    /**
+     * @return server commit time of transaction last read, 0 when nothing was read yet
+     */
+    public long getTxTimestamp() {
+        return state == null ? 0 : state.getTxTimestamp();
+    }
+
     @Override
     protected void commit() throws JournalNetworkException {
         try {
@@ -110,7 +127,7 @@ public class JournalDeltaConsumer extends AbstractChannelConsumer {
                 if (lagPartitionDeltaConsumer == null || !journal.hasIrregularPartition()
                         || !state.getLagPartitionName().equals(journal.getIrregularPartition().getName())) {
                     Partition temp = journal.createTempPartition(state.getLagPartitionName());
-                    lagPartitionDeltaConsumer = new PartitionDeltaConsumer(temp.open());
+                    lagPartitionDeltaConsumer = new PartitionDeltaConsumer(temp.open(), compressed);
                     journal.setIrregularPartition(temp);
                 }
                 lagPartitionDeltaConsumer.read(channel);
@@ -134,7 +151,7 @@ public class JournalDeltaConsumer extends AbstractChannelConsumer {
     private PartitionDeltaConsumer getPartitionDeltaConsumer(int partitionIndex) throws JournalException {
         PartitionDeltaConsumer consumer = partitionDeltaConsumers.getQuiet(partitionIndex);
         if (consumer == null) {
-            consumer = new PartitionDeltaConsumer(journal.getPartition(partitionIndex, true));
+            consumer = new PartitionDeltaConsumer(journal.getPartition(partitionIndex, true), compressed);
             partitionDeltaConsumers.extendAndSet(partitionIndex, consumer);
         }
 
@@ -40,6 +40,7 @@ public class JournalServerStateConsumer extends AbstractMutableObjectConsumer<Jo
         obj.reset();
         obj.setTxn(buffer.getLong());
         obj.setTxPin(buffer.getLong());
+        obj.setTxTimestamp(buffer.getLong());
         obj.setSymbolTables(buffer.get() == 1);
         int partitionCount = buffer.getInt();
 
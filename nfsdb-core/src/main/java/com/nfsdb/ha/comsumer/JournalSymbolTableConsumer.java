@@ -44,6 +44,10 @@ public class JournalSymbolTableConsumer extends AbstractChannelConsumer {
     private final int tabCount;
 
     public JournalSymbolTableConsumer(Journal journal) {
+        this(journal, false);
+    }
+
+    public JournalSymbolTableConsumer(Journal journal, boolean compressed) {
         this.tabCount = journal.getSymbolTableCount();
         this.buffer = ByteBuffer.allocateDirect(tabCount).order(ByteOrder.LITTLE_ENDIAN);
         this.address = ByteBuffers.getAddress(buffer);
@@ -57,7 +61,7 @@ public class JournalSymbolTableConsumer extends AbstractChannelConsumer {
 
         for (int i = 0; i < tabCount; i++) {
             SymbolTable tab = journal.getSymbolTable(i);
-            symbolTableConsumers.extendAndSet(i, new VariableColumnDeltaConsumer(tab.getDataColumn()));
+            symbolTableConsumers.extendAndSet(i, new VariableColumnDeltaConsumer(tab.getDataColumn(), compressed));
             symbolTables.extendAndSet(i, tab);
             symbolTableSizes.setQuick(i, tab.size());
         }
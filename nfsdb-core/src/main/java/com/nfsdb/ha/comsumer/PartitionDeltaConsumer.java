@@ -24,9 +24,11 @@ package com.nfsdb.ha.comsumer;
 import com.nfsdb.Journal;
 import com.nfsdb.Partition;
 import com.nfsdb.exceptions.JournalNetworkException;
+import com.nfsdb.factory.configuration.JournalMetadata;
 import com.nfsdb.ha.ChannelConsumer;
 import com.nfsdb.storage.AbstractColumn;
 import com.nfsdb.storage.VariableColumn;
+import com.nfsdb.storage.codec.Codecs;
 
 public class PartitionDeltaConsumer extends ChannelConsumerGroup {
 
@@ -34,19 +36,24 @@ public class PartitionDeltaConsumer extends ChannelConsumerGroup {
     private long oldSize;
 
     public PartitionDeltaConsumer(Partition partition) {
-        super(getColumnConsumers(partition));
+        this(partition, false);
+    }
+
+    public PartitionDeltaConsumer(Partition partition, boolean compressed) {
+        super(getColumnConsumers(partition, compressed));
         this.partition = partition;
         this.oldSize = partition.size();
     }
 
-    private static ChannelConsumer[] getColumnConsumers(Partition partition) {
-        ChannelConsumer consumers[] = new ChannelConsumer[partition.getJournal().getMetadata().getColumnCount()];
+    private static ChannelConsumer[] getColumnConsumers(Partition partition, boolean compressed) {
+        JournalMetadata metadata = partition.getJournal().getMetadata();
+        ChannelConsumer consumers[] = new ChannelConsumer[metadata.getColumnCount()];
         for (int i = 0; i < consumers.length; i++) {
             AbstractColumn column = partition.getAbstractColumn(i);
             if (column instanceof VariableColumn) {
-                consumers[i] = new VariableColumnDeltaConsumer((VariableColumn) column);
+                consumers[i] = new VariableColumnDeltaConsumer((VariableColumn) column, compressed);
             } else {
-                consumers[i] = new FixedColumnDeltaConsumer(column);
+                consumers[i] = new FixedColumnDeltaConsumer(column, compressed ? Codecs.forType(metadata.getColumnQuick(i).type) : null);
             }
         }
         return consumers;
@@ -22,9 +22,18 @@
 package com.nfsdb.ha.comsumer;
 
 import com.nfsdb.storage.VariableColumn;
+import com.nfsdb.storage.codec.DeltaOfDeltaCodec;
+import com.nfsdb.storage.codec.LzCodec;
 
 public class VariableColumnDeltaConsumer extends ChannelConsumerGroup {
     public VariableColumnDeltaConsumer(VariableColumn column) {
-        super(new FixedColumnDeltaConsumer(column), new FixedColumnDeltaConsumer(column.getIndexColumn()));
+        this(column, false);
+    }
+
+    public VariableColumnDeltaConsumer(VariableColumn column, boolean compressed) {
+        super(
+                new FixedColumnDeltaConsumer(column, compressed ? new LzCodec() : null),
+                new FixedColumnDeltaConsumer(column.getIndexColumn(), compressed ? new DeltaOfDeltaCodec() : null)
+        );
     }
 }
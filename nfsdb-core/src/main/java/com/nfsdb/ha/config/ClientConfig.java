@@ -45,6 +45,8 @@ public class ClientConfig extends NetworkConfig {
     private boolean tcpNoDelay = true;
     private int linger = 0;
     private long connectionTimeout = 500; //millis
+    private boolean compression = false;
+    private boolean streaming = false;
 
     public ClientConfig() {
         this(null);
@@ -94,6 +96,35 @@ public class ClientConfig extends NetworkConfig {
         this.soSndBuf = soSndBuf;
     }
 
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Asks server to compress column data and symbol tables it sends. Compression trades server and client
+     * CPU for bandwidth, which pays off on slow links, such as between data centers.
+     *
+     * @param compression true to receive compressed data
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Asks server to push transactions as they are committed instead of waiting for client to request
+     * next delta. Server then keeps sending deltas for as long as there are commits and only exchanges
+     * heartbeats with client when idle, which saves a round trip per commit.
+     *
+     * @return true when client asks server to stream transactions
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
     public boolean isTcpNoDelay() {
         return tcpNoDelay;
     }
@@ -38,6 +38,7 @@ public class ServerConfig extends NetworkConfig {
     private static final Logger LOGGER = Logger.getLogger(ServerConfig.class);
 
     private long heartbeatFrequency = DEFAULT_HEARTBEAT_FREQUENCY;
+    private long maxDeltaRows = 0;
 
     public long getHeartbeatFrequency() {
         return heartbeatFrequency;
@@ -47,6 +48,21 @@ public class ServerConfig extends NetworkConfig {
         this.heartbeatFrequency = heartbeatFrequency;
     }
 
+    public long getMaxDeltaRows() {
+        return maxDeltaRows;
+    }
+
+    /**
+     * Limits number of rows server sends to client in one go for each journal. Client, which is far behind,
+     * then catches up in several rounds and updates of other journals it subscribes to are not held up by
+     * catch-up. Delta can only end at transaction, so a single large transaction is still sent whole.
+     *
+     * @param maxDeltaRows maximum number of rows, 0 for no limit
+     */
+    public void setMaxDeltaRows(long maxDeltaRows) {
+        this.maxDeltaRows = maxDeltaRows;
+    }
+
     public NetworkInterface getMultiCastInterface(int instance) throws JournalNetworkException {
         NetworkInterface ifn = getMultiCastInterface0(instance);
         try {
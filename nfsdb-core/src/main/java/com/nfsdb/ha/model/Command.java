@@ -37,6 +37,8 @@ public enum Command {
     SERVER_SHUTDOWN(0x0c),
     ELECTION(0x0d),
     ELECTED(0x0e),
+    COMPRESSION(0x0f),
+    STREAMING(0x10),
     UNAUTHENTIC(0xFC),
     UNKNOWN_CMD(0xFE);
 
@@ -34,6 +34,7 @@ public class JournalServerState {
     private boolean detachLag = false;
     private long txn;
     private long txPin;
+    private long txTimestamp;
 
     public void addPartitionMetadata(int partitionIndex, long intervalStart, long intervalEnd, byte empty) {
         PartitionMetadata partitionMetadata = getMeta(addIndex++);
@@ -84,6 +85,17 @@ public class JournalServerState {
         this.txPin = txPin;
     }
 
+    /**
+     * @return time transaction was committed on server, milliseconds since epoch
+     */
+    public long getTxTimestamp() {
+        return txTimestamp;
+    }
+
+    public void setTxTimestamp(long txTimestamp) {
+        this.txTimestamp = txTimestamp;
+    }
+
     public long getTxn() {
         return txn;
     }
@@ -114,6 +126,7 @@ public class JournalServerState {
         detachLag = false;
         txn = 0;
         txPin = 0;
+        txTimestamp = 0;
         lagPartitionName = null;
     }
 
@@ -22,25 +22,56 @@
 package com.nfsdb.ha.producer;
 
 import com.nfsdb.exceptions.JournalNetworkException;
+import com.nfsdb.ha.TransferChannel;
 import com.nfsdb.storage.AbstractColumn;
+import com.nfsdb.storage.codec.Codec;
 import com.nfsdb.utils.ByteBuffers;
+import com.nfsdb.utils.Unsafe;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 
+/**
+ * Sends column data between two offsets as one fragment, which is 8-byte length header followed by data.
+ * Small fragments, typically tail of active partition, are sent together with header by gathering write.
+ * Larger ones, such as whole columns of historical partitions, are transferred straight from column file,
+ * see {@link AbstractColumn#transferTo}.
+ * <p>
+ * When producer is given a codec, data after header is sent as compressed blocks of up to {@link #BLOCK_SIZE}
+ * bytes instead. Each block starts with two ints, length of data and length of compressed data, negative
+ * when block did not compress and data follows as is.
+ */
 public class FixedColumnDeltaProducer implements ColumnDeltaProducer {
 
     private static final int REPLICATION_FRAGMENT_HEADER_SIZE = 8;
+    private static final int TRANSFER_THRESHOLD = 64 * 1024;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int BLOCK_HEADER_SIZE = 8;
     private final ByteBuffer header = ByteBuffer.allocateDirect(REPLICATION_FRAGMENT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer[] fragment = new ByteBuffer[2];
     private final AbstractColumn column;
+    private final Codec codec;
+    private ByteBuffer block;
+    private long blockAddress;
     private long offset;
     private long targetOffset;
     private long nextOffset;
     private boolean hasContent = false;
 
     public FixedColumnDeltaProducer(AbstractColumn column) {
+        this(column, null);
+    }
+
+    /**
+     * @param column column to send data of
+     * @param codec  codec to compress data with, null to send data as is
+     */
+    public FixedColumnDeltaProducer(AbstractColumn column, Codec codec) {
         this.column = column;
+        this.codec = codec;
     }
 
     public void configure(long localRowID, long limit) {
@@ -57,6 +88,7 @@ public class FixedColumnDeltaProducer implements ColumnDeltaProducer {
     @Override
     public void free() {
         ByteBuffers.release(header);
+        block = ByteBuffers.release(block);
     }
 
     @Override
@@ -67,9 +99,16 @@ public class FixedColumnDeltaProducer implements ColumnDeltaProducer {
     @Override
     public void write(WritableByteChannel channel) throws JournalNetworkException {
         if (hasContent()) {
-            ByteBuffers.copy(header, channel);
-            while (offset < targetOffset) {
-                offset += ByteBuffers.copy(column.getBuffer(offset, 1), channel, targetOffset - offset);
+            long count = targetOffset - offset;
+            if (codec != null) {
+                writeCompressed(channel);
+            } else if (count < TRANSFER_THRESHOLD && channel instanceof GatheringByteChannel) {
+                writeFragment((GatheringByteChannel) channel, (int) count);
+            } else {
+                ByteBuffers.copy(header, channel);
+                while (offset < targetOffset) {
+                    offset += transfer(channel, targetOffset - offset);
+                }
             }
             hasContent = false;
         }
@@ -84,4 +123,70 @@ public class FixedColumnDeltaProducer implements ColumnDeltaProducer {
                 ", column=" + column +
                 '}';
     }
+
+    private long transfer(WritableByteChannel channel, long count) throws JournalNetworkException {
+        try {
+            long n = channel instanceof TransferChannel ? ((TransferChannel) channel).transfer(column, offset, count) : column.transferTo(offset, count, channel);
+            if (n < 1) {
+                throw new JournalNetworkException("Write to closed channel");
+            }
+            return n;
+        } catch (IOException e) {
+            throw new JournalNetworkException(e);
+        }
+    }
+
+    private void writeCompressed(WritableByteChannel channel) throws JournalNetworkException {
+        if (block == null) {
+            block = ByteBuffer.allocateDirect(BLOCK_HEADER_SIZE + codec.getMaxCompressedSize(BLOCK_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+            blockAddress = ByteBuffers.getAddress(block);
+        }
+
+        ByteBuffers.copy(header, channel);
+        while (offset < targetOffset) {
+            int len = (int) Math.min(BLOCK_SIZE, targetOffset - offset);
+            ByteBuffer data = column.getBuffer(offset, len);
+            int n = codec.compress(ByteBuffers.getAddress(data) + data.position(), len, blockAddress + BLOCK_HEADER_SIZE);
+            Unsafe.getUnsafe().putInt(blockAddress, len);
+            block.clear();
+            if (n < len) {
+                Unsafe.getUnsafe().putInt(blockAddress + 4, n);
+                block.limit(BLOCK_HEADER_SIZE + n);
+                writeFully(block, channel, BLOCK_HEADER_SIZE + n);
+            } else {
+                Unsafe.getUnsafe().putInt(blockAddress + 4, -len);
+                block.limit(BLOCK_HEADER_SIZE);
+                writeFully(block, channel, BLOCK_HEADER_SIZE);
+                writeFully(data, channel, len);
+            }
+            offset += len;
+        }
+    }
+
+    private void writeFragment(GatheringByteChannel channel, int count) throws JournalNetworkException {
+        ByteBuffer data = column.getBuffer(offset, count);
+        int limit = data.limit();
+        data.limit(data.position() + count);
+        fragment[0] = header;
+        fragment[1] = data;
+        try {
+            while (data.hasRemaining()) {
+                if (channel.write(fragment) < 1) {
+                    throw new JournalNetworkException("Write to closed channel");
+                }
+            }
+            offset = targetOffset;
+        } catch (IOException e) {
+            throw new JournalNetworkException(e);
+        } finally {
+            data.limit(limit);
+            fragment[1] = null;
+        }
+    }
+
+    private void writeFully(ByteBuffer buf, WritableByteChannel channel, int count) throws JournalNetworkException {
+        while (count > 0) {
+            count -= ByteBuffers.copy(buf, channel, count);
+        }
+    }
 }
\ No newline at end of file
@@ -35,6 +35,12 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.nio.channels.WritableByteChannel;
 
+/**
+ * Sends client changes to journal since transaction client has. Delta normally brings client up to
+ * current transaction. When row budget is set, see {@link #setMaxDeltaRows(long)}, delta of client, which is
+ * far behind, ends at newest transaction within budget instead, so that catch-up of large journal is
+ * sent in several rounds and deltas of other journals on same connection are sent in between.
+ */
 @SuppressFBWarnings({"LII_LIST_INDEXED_ITERATING"})
 public class JournalDeltaProducer implements ChannelProducer {
     private static final Logger LOGGER = Logger.getLogger(JournalDeltaProducer.class);
@@ -44,12 +50,26 @@ public class JournalDeltaProducer implements ChannelProducer {
     private final ObjList<PartitionDeltaProducer> partitionDeltaProducers = new ObjList<>();
     private final ObjList<PartitionDeltaProducer> partitionDeltaProducerCache = new ObjList<>();
     private final JournalSymbolTableProducer journalSymbolTableProducer;
+    private final boolean compressed;
+    private final Tx target = new Tx();
+    // transaction cached partition producers were created at
+    private long cacheTxAddress = -1;
     private PartitionDeltaProducer lagPartitionDeltaProducer;
     private boolean rollback;
+    private long maxDeltaRows = 0;
 
     public JournalDeltaProducer(Journal journal) {
+        this(journal, false);
+    }
+
+    /**
+     * @param journal    journal to send deltas of
+     * @param compressed true to compress column data and symbol tables, client must have asked for it
+     */
+    public JournalDeltaProducer(Journal journal, boolean compressed) {
         this.journal = journal;
-        journalSymbolTableProducer = new JournalSymbolTableProducer(journal);
+        this.compressed = compressed;
+        journalSymbolTableProducer = new JournalSymbolTableProducer(journal, compressed);
     }
 
     public void configure(long txn, long txPin) throws JournalException {
@@ -60,18 +80,31 @@ public class JournalDeltaProducer implements ChannelProducer {
         // even though journal has not refreshed we have to compare client and server txns
 
         journal.refresh();
+        if (cacheTxAddress != -1 && journal.isMergedSince(cacheTxAddress)) {
+            // merged partitions are in new directories, cached producers hold columns of old ones
+            freePartitionDeltaProducers();
+        }
+        cacheTxAddress = journal.getTxAddress();
+
         long thisTxn = journal.getTxn();
         this.rollback = thisTxn < txn;
         journalServerState.setTxn(thisTxn);
         journalServerState.setTxPin(journal.getTxPin());
+        journalServerState.setTxTimestamp(journal.getTxTimestamp());
 
         if (thisTxn > txn) {
             Tx tx = journal.find(txn, txPin);
-            if (tx == null) {
-                // indicate to client that their txn is invalid
+            if (tx == null || (tx.journalMaxRowID != -1 && journal.isMergedSince(tx.address))) {
+                // indicate to client that their txn is invalid, rows client has may have been
+                // rewritten by out-of-order merge, which deltas cannot bring up to date
                 journalServerState.setTxn(-1);
+            } else if (findTarget(tx)) {
+                journalServerState.setTxn(target.txn);
+                journalServerState.setTxPin(target.txPin);
+                journalServerState.setTxTimestamp(target.timestamp);
+                configure0(tx, target);
             } else {
-                configure0(tx);
+                configure0(tx, null);
             }
         }
     }
@@ -84,12 +117,32 @@ public class JournalDeltaProducer implements ChannelProducer {
             lagPartitionDeltaProducer.free();
         }
 
-        for (int i = 0, sz = partitionDeltaProducerCache.size(); i < sz; i++) {
-            PartitionDeltaProducer p = partitionDeltaProducerCache.getQuick(i);
-            if (p != null) {
-                p.free();
-            }
-        }
+        freePartitionDeltaProducers();
+    }
+
+    public long getMaxDeltaRows() {
+        return maxDeltaRows;
+    }
+
+    /**
+     * @param maxDeltaRows maximum number of rows in delta, when there are transactions to end delta at, 0 for no limit
+     */
+    public void setMaxDeltaRows(long maxDeltaRows) {
+        this.maxDeltaRows = maxDeltaRows;
+    }
+
+    /**
+     * @return transaction client will be at once it applies delta, valid after configure() until write()
+     */
+    public long getTxn() {
+        return journalServerState.getTxn();
+    }
+
+    /**
+     * @return pin of transaction client will be at, see {@link #getTxn()}
+     */
+    public long getTxPin() {
+        return journalServerState.getTxPin();
     }
 
     @Override
@@ -118,7 +171,7 @@ public class JournalDeltaProducer implements ChannelProducer {
     }
 
     @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
-    private void configure0(Tx tx) throws JournalException {
+    private void configure0(Tx tx, Tx target) throws JournalException {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Journal %s size: %d", journal.getLocation(), journal.size());
         }
@@ -126,11 +179,11 @@ public class JournalDeltaProducer implements ChannelProducer {
         int startPartitionIndex;
         long localRowID;
 
-        journalSymbolTableProducer.configure(tx);
+        journalSymbolTableProducer.configure(tx, target == null ? null : target.symbolTableSizes);
         journalServerState.setSymbolTables(journalSymbolTableProducer.hasContent());
 
         // get non lag partition information
-        int nonLagPartitionCount = journal.nonLagPartitionCount();
+        int nonLagPartitionCount = target == null ? journal.nonLagPartitionCount() : Rows.toPartitionIndex(target.journalMaxRowID) + 1;
 
         if (tx.journalMaxRowID == -1) {
             startPartitionIndex = 0;
@@ -157,7 +210,11 @@ public class JournalDeltaProducer implements ChannelProducer {
         partitionDeltaProducers.clear();
         for (int i = startPartitionIndex; i < nonLagPartitionCount; i++) {
             PartitionDeltaProducer producer = getPartitionDeltaProducer(i);
-            producer.configure(localRowID);
+            if (target != null && i == nonLagPartitionCount - 1) {
+                producer.configure(localRowID, Rows.toLocalRowID(target.journalMaxRowID));
+            } else {
+                producer.configure(localRowID);
+            }
             partitionDeltaProducers.add(producer);
             Partition partition = journal.getPartition(i, false);
             journalServerState.addPartitionMetadata(partition.getPartitionIndex()
@@ -173,10 +230,15 @@ public class JournalDeltaProducer implements ChannelProducer {
 
         journalServerState.setLagPartitionName(null);
 
+        if (target != null) {
+            // target is only chosen for journals without lag partition
+            return;
+        }
+
         if (lag != null) {
 
             if (lagPartitionDeltaProducer == null || lagPartitionDeltaProducer.getPartition() != lag) {
-                lagPartitionDeltaProducer = new PartitionDeltaProducer(lag.open());
+                lagPartitionDeltaProducer = new PartitionDeltaProducer(lag.open(), compressed);
             }
 
             if (lag.getName().equals(tx.lagName)) {
@@ -194,13 +256,91 @@ public class JournalDeltaProducer implements ChannelProducer {
         }
     }
 
+    private void copy(Tx t) {
+        target.txn = t.txn;
+        target.txPin = t.txPin;
+        target.timestamp = t.timestamp;
+        target.journalMaxRowID = t.journalMaxRowID;
+        target.symbolTableSizes = t.symbolTableSizes == null ? null : t.symbolTableSizes.clone();
+    }
+
+    /**
+     * Chooses transaction to end delta at, when delta up to current transaction has more rows than budget.
+     * It is newest transaction within budget or, when there is none, the one following client transaction.
+     * Lag partition is not kept in transaction log, so journals with lag always get full delta.
+     *
+     * @param tx client transaction
+     * @return true when {@link #target} is set, false to send delta up to current transaction
+     */
+    private boolean findTarget(Tx tx) throws JournalException {
+        if (maxDeltaRows < 1 || tx.lagName != null || journal.getIrregularPartition() != null) {
+            return false;
+        }
+
+        int partitionIndex = tx.journalMaxRowID == -1 ? 0 : Rows.toPartitionIndex(tx.journalMaxRowID);
+        long localRowID = tx.journalMaxRowID == -1 ? 0 : Rows.toLocalRowID(tx.journalMaxRowID);
+        long clientTxn = tx.txn;
+        boolean head = true;
+        boolean found = false;
+
+        for (Tx t : journal.transactions()) {
+            if (t.txn <= clientTxn) {
+                break;
+            }
+
+            if (t.lagName != null || t.journalMaxRowID == -1) {
+                // cannot end delta here, look for older transaction
+                head = false;
+                continue;
+            }
+
+            if (rowCount(partitionIndex, localRowID, t.journalMaxRowID) <= maxDeltaRows) {
+                if (head) {
+                    // whole delta is within budget
+                    return false;
+                }
+                copy(t);
+                return true;
+            }
+
+            // remember oldest transaction after client's to make progress when even that is over budget
+            copy(t);
+            found = true;
+            head = false;
+        }
+        return found;
+    }
+
+    private void freePartitionDeltaProducers() {
+        for (int i = 0, sz = partitionDeltaProducerCache.size(); i < sz; i++) {
+            PartitionDeltaProducer p = partitionDeltaProducerCache.getQuick(i);
+            if (p != null) {
+                p.free();
+            }
+        }
+        partitionDeltaProducerCache.clear();
+    }
+
     private PartitionDeltaProducer getPartitionDeltaProducer(int partitionIndex) throws JournalException {
         PartitionDeltaProducer producer = partitionDeltaProducerCache.getQuiet(partitionIndex);
         if (producer == null) {
-            producer = new PartitionDeltaProducer(journal.getPartition(partitionIndex, true));
+            producer = new PartitionDeltaProducer(journal.getPartition(partitionIndex, true), compressed);
             partitionDeltaProducerCache.extendAndSet(partitionIndex, producer);
         }
 
         return producer;
     }
+
+    private long rowCount(int partitionIndex, long localRowID, long maxRowID) throws JournalException {
+        int hi = Rows.toPartitionIndex(maxRowID);
+        if (hi == partitionIndex) {
+            return Rows.toLocalRowID(maxRowID) - localRowID;
+        }
+
+        long count = journal.getPartition(partitionIndex, true).size() - localRowID;
+        for (int i = partitionIndex + 1; i < hi; i++) {
+            count += journal.getPartition(i, true).size();
+        }
+        return count + Rows.toLocalRowID(maxRowID);
+    }
 }
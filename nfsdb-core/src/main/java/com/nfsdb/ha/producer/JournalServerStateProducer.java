@@ -33,7 +33,7 @@ public class JournalServerStateProducer extends AbstractObjectProducer<JournalSe
 
     @Override
     protected int getBufferSize(JournalServerState value) {
-        return 8 + 8 + 4 + 1 + value.getNonLagPartitionCount() * SUMMARY_RECORD_SIZE
+        return 8 + 8 + 8 + 4 + 1 + value.getNonLagPartitionCount() * SUMMARY_RECORD_SIZE
                 + 2 + (value.getLagPartitionName() != null ? 2 * value.getLagPartitionName().length() : 0)
                 + SUMMARY_RECORD_SIZE;
     }
@@ -42,6 +42,7 @@ public class JournalServerStateProducer extends AbstractObjectProducer<JournalSe
     protected void write(JournalServerState value, ByteBuffer buffer) {
         buffer.putLong(value.getTxn());
         buffer.putLong(value.getTxPin());
+        buffer.putLong(value.getTxTimestamp());
         buffer.put((byte) (value.isSymbolTables() ? 1 : 0));
         buffer.putInt(value.getNonLagPartitionCount());
         for (int i = 0; i < value.getNonLagPartitionCount(); i++) {
@@ -41,23 +41,35 @@ public class JournalSymbolTableProducer implements ChannelProducer {
     private boolean hasContent = false;
 
     public JournalSymbolTableProducer(Journal journal) {
+        this(journal, false);
+    }
+
+    public JournalSymbolTableProducer(Journal journal, boolean compressed) {
         int tabCount = journal.getSymbolTableCount();
         for (int i = 0; i < tabCount; i++) {
             SymbolTable tab = journal.getSymbolTable(i);
             symbolTables.add(tab);
-            symbolTableProducers.add(new VariableColumnDeltaProducer(tab.getDataColumn()));
+            symbolTableProducers.add(new VariableColumnDeltaProducer(tab.getDataColumn(), compressed));
         }
         buffer = ByteBuffer.allocateDirect(journal.getMetadata().getColumnCount()).order(ByteOrder.LITTLE_ENDIAN);
     }
 
     public void configure(Tx tx) {
+        configure(tx, null);
+    }
+
+    /**
+     * @param tx    client transaction
+     * @param sizes symbol table sizes to send values up to, null for current sizes
+     */
+    public void configure(Tx tx, int[] sizes) {
         hasContent = false;
         buffer.rewind();
         for (int i = 0, k = symbolTables.size(); i < k; i++) {
             SymbolTable tab = symbolTables.getQuick(i);
             if (tab != null) {
                 VariableColumnDeltaProducer p = symbolTableProducers.getQuick(i);
-                p.configure(i < tx.symbolTableSizes.length ? tx.symbolTableSizes[i] : 0, tab.size());
+                p.configure(i < tx.symbolTableSizes.length ? tx.symbolTableSizes[i] : 0, sizes == null ? tab.size() : sizes[i]);
                 if (p.hasContent()) {
                     buffer.put((byte) 1);
                     hasContent = true;
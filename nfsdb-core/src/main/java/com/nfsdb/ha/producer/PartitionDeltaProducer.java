@@ -25,8 +25,10 @@ import com.nfsdb.Partition;
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.JournalNetworkException;
+import com.nfsdb.factory.configuration.JournalMetadata;
 import com.nfsdb.storage.AbstractColumn;
 import com.nfsdb.storage.VariableColumn;
+import com.nfsdb.storage.codec.Codecs;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.nio.channels.WritableByteChannel;
@@ -37,16 +39,37 @@ public class PartitionDeltaProducer extends ChannelProducerGroup<ColumnDeltaProd
     private final Partition partition;
 
     public PartitionDeltaProducer(Partition partition) {
+        this(partition, false);
+    }
+
+    /**
+     * @param partition  partition to send data of
+     * @param compressed true to compress data of each column with codec, which suits column type
+     */
+    public PartitionDeltaProducer(Partition partition, boolean compressed) {
         this.partition = partition;
-        for (int i = 0, c = partition.getJournal().getMetadata().getColumnCount(); i < c; i++) {
+        JournalMetadata metadata = partition.getJournal().getMetadata();
+        for (int i = 0, c = metadata.getColumnCount(); i < c; i++) {
             AbstractColumn col = partition.getAbstractColumn(i);
-            addProducer(col instanceof VariableColumn ? new VariableColumnDeltaProducer((VariableColumn) col) : new FixedColumnDeltaProducer(col));
+            if (col instanceof VariableColumn) {
+                addProducer(new VariableColumnDeltaProducer((VariableColumn) col, compressed));
+            } else {
+                addProducer(new FixedColumnDeltaProducer(col, compressed ? Codecs.forType(metadata.getColumnQuick(i).type) : null));
+            }
         }
     }
 
     public void configure(long localRowID) throws JournalException {
+        configure(localRowID, partition.open().size());
+    }
+
+    /**
+     * @param localRowID first row to send
+     * @param limit      row to stop at, exclusive
+     * @throws JournalException when partition cannot be opened
+     */
+    public void configure(long localRowID, long limit) throws JournalException {
         partition.open();
-        long limit = partition.size();
         ObjList<ColumnDeltaProducer> producers = getProducers();
         for (int i = 0, sz = producers.size(); i < sz; i++) {
             producers.getQuick(i).configure(localRowID, limit);
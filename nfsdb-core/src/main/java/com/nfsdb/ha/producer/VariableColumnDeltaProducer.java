@@ -23,14 +23,20 @@ package com.nfsdb.ha.producer;
 
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.storage.VariableColumn;
+import com.nfsdb.storage.codec.DeltaOfDeltaCodec;
+import com.nfsdb.storage.codec.LzCodec;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 @SuppressFBWarnings({"LII_LIST_INDEXED_ITERATING"})
 public class VariableColumnDeltaProducer extends ChannelProducerGroup<ColumnDeltaProducer> implements ColumnDeltaProducer {
 
     public VariableColumnDeltaProducer(VariableColumn column) {
-        addProducer(new FixedColumnDeltaProducer(column));
-        addProducer(new FixedColumnDeltaProducer(column.getIndexColumn()));
+        this(column, false);
+    }
+
+    public VariableColumnDeltaProducer(VariableColumn column, boolean compressed) {
+        addProducer(new FixedColumnDeltaProducer(column, compressed ? new LzCodec() : null));
+        addProducer(new FixedColumnDeltaProducer(column.getIndexColumn(), compressed ? new DeltaOfDeltaCodec() : null));
     }
 
     public void configure(long localRowID, long limit) {
@@ -23,7 +23,7 @@ package com.nfsdb.ha.protocol;
 
 public final class Version {
 
-    public static final int PROTOCOL_VERSION = 2;
+    public static final int PROTOCOL_VERSION = 4;
 
     private Version() {
     }
@@ -28,6 +28,20 @@ public interface AggregatorFunction {
 
     void calculate(Record rec, MapValues values);
 
+    /**
+     * Merges partial aggregate into target values. This is used when rows of the same key are
+     * aggregated independently, for example by parallel workers, each into its own map. Partial
+     * values are always combined in the order of rows they were calculated from, so order
+     * sensitive functions such as "first" and "last" can rely on partial following the target.
+     * <p/>
+     * This method is only called when target values already exist for the key, which means
+     * neither target nor partial are "new".
+     *
+     * @param values  target values
+     * @param partial values calculated over rows following those of target
+     */
+    void combine(MapValues values, MapValues partial);
+
     /**
      * Columns that aggregation function writes out. Out of {#ColumnMetadata} objects
      * returned significant fields are "name" and "type". All other fields are ignored.
@@ -68,4 +82,12 @@ public interface AggregatorFunction {
      * @param source record source
      */
     void prepareSource(RecordSource<? extends Record> source);
+
+    /**
+     * Renames column function writes its result to, so that several functions can aggregate the same
+     * source column. Must be called before {@link #getColumns()}.
+     *
+     * @param name column name
+     */
+    void setName(String name);
 }
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql.collections;
+
+import com.nfsdb.collections.DirectMemoryStructure;
+import com.nfsdb.collections.Mutable;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.factory.configuration.RecordColumnMetadata;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.utils.Unsafe;
+
+import java.util.Arrays;
+
+/**
+ * Map of values keyed by single symbol column. Symbol keys are dense, from 0 to size of symbol table, so
+ * entry of key is found by indexing array of entry offsets instead of writing key out and hashing it.
+ * Entries are laid out the same way as those of {@link MultiMap}, map has the same metadata and its cursor
+ * returns entries in the order keys were added.
+ */
+public class DenseSymbolMap extends DirectMemoryStructure implements Mutable {
+    private final MapValues values;
+    private final MapMetadata metadata;
+    private final MapRecordSource recordSource;
+    private final int keyBlockOffset;
+    private final int keyDataOffset;
+    private final int entrySize;
+    // entry offsets indexed by symbol key + 1, so that null symbol has a slot too
+    private long[] offsets;
+    private long capacity;
+    private long pos;
+    private int size;
+
+    /**
+     * @param capacity     number of entries to allocate memory for, map grows when there are more keys
+     * @param valueColumns value columns
+     * @param keyColumn    symbol column
+     * @param interceptors interceptors of records returned by cursor, can be null
+     */
+    public DenseSymbolMap(int capacity, ObjList<RecordColumnMetadata> valueColumns, RecordColumnMetadata keyColumn, ObjList<MapRecordValueInterceptor> interceptors) {
+        int[] valueOffsets = new int[valueColumns.size()];
+        this.keyBlockOffset = MultiMap.layoutValues(valueColumns, valueOffsets);
+        this.keyDataOffset = keyBlockOffset + 4;
+        this.entrySize = keyDataOffset + 4;
+        this.capacity = Math.max(capacity, 1);
+        this.address = Unsafe.getUnsafe().allocateMemory(this.capacity * entrySize);
+        this.offsets = new long[(int) this.capacity];
+        Arrays.fill(offsets, -1);
+
+        ObjList<RecordColumnMetadata> keyColumns = new ObjList<>(1);
+        keyColumns.add(keyColumn);
+        this.values = new MapValues(valueOffsets);
+        this.metadata = new MapMetadata(valueColumns, keyColumns);
+        this.recordSource = new MapRecordSource(new MapRecord(metadata, valueOffsets, keyDataOffset, keyBlockOffset), values, interceptors);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(offsets, -1);
+        pos = 0;
+        size = 0;
+    }
+
+    public RecordCursor<Record> getCursor() {
+        return recordSource.init(address, size);
+    }
+
+    public RecordMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @param key symbol key, -1 for null symbol
+     * @return values of key, which are new when key was not in map
+     */
+    public MapValues getOrCreateValues(int key) {
+        int slot = key + 1;
+        if (slot >= offsets.length) {
+            // symbol table grew
+            int n = offsets.length;
+            offsets = Arrays.copyOf(offsets, Math.max(slot + 1, n << 1));
+            Arrays.fill(offsets, n, offsets.length, -1);
+        }
+
+        long offset = Unsafe.arrayGet(offsets, slot);
+        if (offset != -1) {
+            return values.init(address + offset, false);
+        }
+
+        if (size == capacity) {
+            capacity <<= 1;
+            address = Unsafe.getUnsafe().reallocateMemory(address, capacity * entrySize);
+        }
+
+        Unsafe.arrayPut(offsets, slot, offset = pos);
+        pos += entrySize;
+        size++;
+
+        long p = address + offset;
+        Unsafe.getUnsafe().putInt(p, entrySize);
+        Unsafe.getUnsafe().putInt(p + keyBlockOffset, entrySize);
+        Unsafe.getUnsafe().putInt(p + keyDataOffset, key);
+        return values.init(p, true);
+    }
+
+    public int size() {
+        return size;
+    }
+}
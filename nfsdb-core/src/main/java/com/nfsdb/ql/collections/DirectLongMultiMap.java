@@ -0,0 +1,244 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql.collections;
+
+import com.nfsdb.collections.Mutable;
+import com.nfsdb.ql.RowCursor;
+import com.nfsdb.utils.Hash;
+import com.nfsdb.utils.Numbers;
+import com.nfsdb.utils.Unsafe;
+
+import java.io.Closeable;
+
+/**
+ * Off-heap multi-map of long keys to long values, such as row ids. Values of the same key are
+ * returned in the order they were added.
+ * <p>
+ * Keys are stored as they are, there is no serialisation. Map consists of two memory regions:
+ * <pre>
+ *     slots:   [ first entry | last entry ] * capacity, open addressing with linear probing
+ *     entries: [ key | value | next entry ] * size, in the order entries were added
+ * </pre>
+ * Empty slot has first entry of -1. Entries of the same key are chained via "next".
+ */
+public class DirectLongMultiMap implements Closeable, Mutable {
+    private static final int SLOT_SIZE = 16;
+    private static final int ENTRY_SIZE = 24;
+    private static final int MIN_KEY_CAPACITY = 64;
+    private static final int MIN_ENTRY_CAPACITY = 1024;
+    private final float loadFactor;
+    private final ValueCursor cursor = new ValueCursor();
+    private long slots;
+    private long entries;
+    private int keyCapacity;
+    private int mask;
+    private int free;
+    private int keys;
+    private long entryCapacity;
+    private long size;
+
+    public DirectLongMultiMap(int keyCapacity, long entryCapacity, float loadFactor) {
+        this.loadFactor = loadFactor;
+        int capacity = (int) (keyCapacity / loadFactor);
+        this.keyCapacity = capacity < MIN_KEY_CAPACITY ? MIN_KEY_CAPACITY : Numbers.ceilPow2(capacity);
+        this.mask = this.keyCapacity - 1;
+        this.free = (int) (this.keyCapacity * loadFactor);
+        this.slots = allocateSlots(this.keyCapacity);
+        this.entryCapacity = entryCapacity < MIN_ENTRY_CAPACITY ? MIN_ENTRY_CAPACITY : entryCapacity;
+        this.entries = Unsafe.getUnsafe().allocateMemory(this.entryCapacity * ENTRY_SIZE);
+    }
+
+    public void add(long key, long value) {
+        if (size == entryCapacity) {
+            entryCapacity <<= 1;
+            entries = Unsafe.getUnsafe().reallocateMemory(entries, entryCapacity * ENTRY_SIZE);
+        }
+
+        long e = entries + size * ENTRY_SIZE;
+        Unsafe.getUnsafe().putLong(e, key);
+        Unsafe.getUnsafe().putLong(e + 8, value);
+        Unsafe.getUnsafe().putLong(e + 16, -1);
+
+        long slot = slot(key);
+        if (Unsafe.getUnsafe().getLong(slot) == -1) {
+            Unsafe.getUnsafe().putLong(slot, size);
+            Unsafe.getUnsafe().putLong(slot + 8, size);
+            size++;
+            keys++;
+            if (--free == 0) {
+                rehash();
+            }
+        } else {
+            long last = Unsafe.getUnsafe().getLong(slot + 8);
+            Unsafe.getUnsafe().putLong(entries + last * ENTRY_SIZE + 16, size);
+            Unsafe.getUnsafe().putLong(slot + 8, size);
+            size++;
+        }
+    }
+
+    @Override
+    public void clear() {
+        Unsafe.getUnsafe().setMemory(slots, (long) keyCapacity * SLOT_SIZE, (byte) -1);
+        free = (int) (keyCapacity * loadFactor);
+        keys = 0;
+        size = 0;
+    }
+
+    @Override
+    public void close() {
+        if (slots != 0) {
+            Unsafe.getUnsafe().freeMemory(slots);
+            slots = 0;
+        }
+
+        if (entries != 0) {
+            Unsafe.getUnsafe().freeMemory(entries);
+            entries = 0;
+        }
+    }
+
+    /**
+     * Cursor over values of key. Cursor instance is reused by subsequent calls.
+     *
+     * @param key key to look up
+     * @return cursor, which is empty when key is not found
+     */
+    public RowCursor get(long key) {
+        long slot = slot(key);
+        return cursor.init(Unsafe.getUnsafe().getLong(slot));
+    }
+
+    /**
+     * @param index entry index, 0..size()-1
+     * @return key of entry in the order entries were added
+     */
+    public long getKey(long index) {
+        return Unsafe.getUnsafe().getLong(entries + index * ENTRY_SIZE);
+    }
+
+    /**
+     * @return bytes of memory currently allocated by map
+     */
+    public long getMemorySize() {
+        return (long) keyCapacity * SLOT_SIZE + entryCapacity * ENTRY_SIZE;
+    }
+
+    /**
+     * @param index entry index, 0..size()-1
+     * @return value of entry in the order entries were added
+     */
+    public long getValue(long index) {
+        return Unsafe.getUnsafe().getLong(entries + index * ENTRY_SIZE + 8);
+    }
+
+    /**
+     * @return number of distinct keys
+     */
+    public int keys() {
+        return keys;
+    }
+
+    /**
+     * @return number of entries, which is number of values of all keys
+     */
+    public long size() {
+        return size;
+    }
+
+    private static long allocateSlots(int capacity) {
+        long address = Unsafe.getUnsafe().allocateMemory((long) capacity * SLOT_SIZE);
+        Unsafe.getUnsafe().setMemory(address, (long) capacity * SLOT_SIZE, (byte) -1);
+        return address;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        close();
+        super.finalize();
+    }
+
+    private long emptySlot(long key) {
+        int index = (int) Hash.hashLong(key) & mask;
+        long slot;
+        while (Unsafe.getUnsafe().getLong(slot = slots + (long) index * SLOT_SIZE) != -1) {
+            index = (index + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        int capacity = keyCapacity << 1;
+        long old = slots;
+        int oldCapacity = keyCapacity;
+
+        this.slots = allocateSlots(capacity);
+        this.keyCapacity = capacity;
+        this.mask = capacity - 1;
+        this.free += (capacity - oldCapacity) * loadFactor;
+
+        for (int i = 0; i < oldCapacity; i++) {
+            long p = old + (long) i * SLOT_SIZE;
+            long first = Unsafe.getUnsafe().getLong(p);
+            if (first == -1) {
+                continue;
+            }
+
+            long slot = emptySlot(getKey(first));
+            Unsafe.getUnsafe().putLong(slot, first);
+            Unsafe.getUnsafe().putLong(slot + 8, Unsafe.getUnsafe().getLong(p + 8));
+        }
+        Unsafe.getUnsafe().freeMemory(old);
+    }
+
+    private long slot(long key) {
+        int index = (int) Hash.hashLong(key) & mask;
+        while (true) {
+            long slot = slots + (long) index * SLOT_SIZE;
+            long first = Unsafe.getUnsafe().getLong(slot);
+            if (first == -1 || getKey(first) == key) {
+                return slot;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private class ValueCursor implements RowCursor {
+        private long entry;
+
+        @Override
+        public boolean hasNext() {
+            return entry != -1;
+        }
+
+        @Override
+        public long next() {
+            long e = entries + entry * ENTRY_SIZE;
+            entry = Unsafe.getUnsafe().getLong(e + 16);
+            return Unsafe.getUnsafe().getLong(e + 8);
+        }
+
+        private ValueCursor init(long entry) {
+            this.entry = entry;
+            return this;
+        }
+    }
+}
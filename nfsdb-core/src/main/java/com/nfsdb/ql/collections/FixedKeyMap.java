@@ -0,0 +1,347 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.nfsdb.ql.collections;
+
+import com.nfsdb.collections.Mutable;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.factory.configuration.RecordColumnMetadata;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.ql.AggregatorFunction;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.utils.Hash;
+import com.nfsdb.utils.Numbers;
+import com.nfsdb.utils.Unsafe;
+
+import java.io.Closeable;
+
+/**
+ * Map of values keyed by one or two INT, SYMBOL, LONG or DATE columns, such as symbol key of group by
+ * or (timestamp, symbol) key of resampling. Unlike {@link MultiMap} keys are not written out and hashed
+ * as memory. They are passed as long values and kept in hash table slots next to entry offsets, so that
+ * linear probing compares keys without reading entries. Entries are laid out the same way as those of
+ * MultiMap, map has the same metadata and its cursor returns entries in the order keys were added.
+ * <p>
+ * Map consists of three off-heap memory regions:
+ * <pre>
+ *     entries: [ entry ] * size, in the order keys were added
+ *     slots:   [ key0 | key1 | entry offset ] * keyCapacity, open addressing with linear probing
+ *     used:    [ slot index ] * size, slot of each entry
+ * </pre>
+ * Free slot has entry offset of -1. Clearing map frees only slots of its entries, so that map can be
+ * cleared for every sample at cost of the number of keys rather than hash table capacity.
+ */
+public class FixedKeyMap implements Closeable, Mutable {
+
+    private static final int MIN_INITIAL_CAPACITY = 128;
+    // slot is key0, key1 and entry offset, which is -1 for free slot
+    private static final int SLOT_SIZE = 3;
+    private final float loadFactor;
+    private final MapValues values;
+    private final MapMetadata metadata;
+    private final MapRecordSource recordSource;
+    private final int keyBlockOffset;
+    private final int keyDataOffset;
+    private final int entrySize;
+    private final int keyCount;
+    private final boolean wide0;
+    private final boolean wide1;
+    private long address;
+    private long slots;
+    private long used;
+    private long capacity;
+    private long pos;
+    private int keyCapacity;
+    private int mask;
+    private int free;
+    private int size;
+
+    /**
+     * @param capacity     number of keys to allocate memory for, map grows when there are more keys
+     * @param loadFactor   hash table load factor
+     * @param valueColumns value columns
+     * @param keyColumns   one or two key columns, see {@link #supports(ObjList)}
+     * @param interceptors interceptors of records returned by cursor, can be null
+     */
+    public FixedKeyMap(int capacity,
+                       float loadFactor,
+                       ObjList<RecordColumnMetadata> valueColumns,
+                       ObjList<RecordColumnMetadata> keyColumns,
+                       ObjList<MapRecordValueInterceptor> interceptors) {
+        this.loadFactor = loadFactor;
+        this.keyCount = keyColumns.size();
+        this.wide0 = isWide(keyColumns.getQuick(0));
+        this.wide1 = keyCount > 1 && isWide(keyColumns.getQuick(1));
+
+        int[] valueOffsets = new int[valueColumns.size()];
+        this.keyBlockOffset = MultiMap.layoutValues(valueColumns, valueOffsets);
+        this.keyDataOffset = keyBlockOffset + 4 * keyCount;
+        this.entrySize = keyDataOffset + (wide0 ? 8 : 4) + (keyCount > 1 ? (wide1 ? 8 : 4) : 0);
+        this.capacity = Math.max(capacity, 1);
+        this.address = Unsafe.getUnsafe().allocateMemory(this.capacity * entrySize);
+        this.used = Unsafe.getUnsafe().allocateMemory(this.capacity * 4);
+
+        this.keyCapacity = (int) (capacity / loadFactor);
+        this.keyCapacity = keyCapacity < MIN_INITIAL_CAPACITY ? MIN_INITIAL_CAPACITY : Numbers.ceilPow2(keyCapacity);
+        this.mask = keyCapacity - 1;
+        this.free = (int) (keyCapacity * loadFactor);
+        this.slots = allocateSlots(keyCapacity);
+
+        this.values = new MapValues(valueOffsets);
+        this.metadata = new MapMetadata(valueColumns, keyColumns);
+        this.recordSource = new MapRecordSource(new MapRecord(metadata, valueOffsets, keyDataOffset, keyBlockOffset), values, interceptors);
+    }
+
+    /**
+     * @param keyColumns key columns
+     * @return true when values of key columns can be passed to this map as long values
+     */
+    public static boolean supports(ObjList<RecordColumnMetadata> keyColumns) {
+        if (keyColumns.size() < 1 || keyColumns.size() > 2) {
+            return false;
+        }
+
+        for (int i = 0, n = keyColumns.size(); i < n; i++) {
+            switch (keyColumns.getQuick(i).getType()) {
+                case INT:
+                case SYMBOL:
+                case LONG:
+                case DATE:
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            Unsafe.getUnsafe().putLong(slot(Unsafe.getUnsafe().getInt(used + i * 4L)) + 16, -1);
+        }
+        free = (int) (keyCapacity * loadFactor);
+        pos = 0;
+        size = 0;
+    }
+
+    @Override
+    public void close() {
+        free();
+    }
+
+    public void free() {
+        if (address != 0) {
+            Unsafe.getUnsafe().freeMemory(address);
+            address = 0;
+        }
+
+        if (slots != 0) {
+            Unsafe.getUnsafe().freeMemory(slots);
+            slots = 0;
+        }
+
+        if (used != 0) {
+            Unsafe.getUnsafe().freeMemory(used);
+            used = 0;
+        }
+    }
+
+    public RecordCursor<Record> getCursor() {
+        return recordSource.init(address, size);
+    }
+
+    public RecordMetadata getMetadata() {
+        return metadata;
+    }
+
+    public MapValues getOrCreateValues(long key) {
+        return getOrCreateValues(key, 0);
+    }
+
+    /**
+     * @param key0 value of first key column
+     * @param key1 value of second key column, 0 when map has single key column
+     * @return values of key, which are new when key was not in map
+     */
+    public MapValues getOrCreateValues(long key0, long key1) {
+        int index = hash(key0, key1) & mask;
+        long slot;
+        long offset;
+        while ((offset = Unsafe.getUnsafe().getLong((slot = slot(index)) + 16)) != -1) {
+            if (Unsafe.getUnsafe().getLong(slot) == key0 && Unsafe.getUnsafe().getLong(slot + 8) == key1) {
+                return values.init(address + offset, false);
+            }
+            index = (index + 1) & mask;
+        }
+
+        if (size == capacity) {
+            capacity <<= 1;
+            address = Unsafe.getUnsafe().reallocateMemory(address, capacity * entrySize);
+            used = Unsafe.getUnsafe().reallocateMemory(used, capacity * 4);
+        }
+
+        offset = pos;
+        pos += entrySize;
+        Unsafe.getUnsafe().putInt(used + size * 4L, index);
+        size++;
+
+        Unsafe.getUnsafe().putLong(slot, key0);
+        Unsafe.getUnsafe().putLong(slot + 8, key1);
+        Unsafe.getUnsafe().putLong(slot + 16, offset);
+        if (--free == 0) {
+            rehash();
+        }
+
+        long p = address + offset;
+        Unsafe.getUnsafe().putInt(p, entrySize);
+        long k = p + keyDataOffset;
+        k = putKey(k, key0, wide0);
+        Unsafe.getUnsafe().putInt(p + keyBlockOffset, (int) (k - p));
+        if (keyCount > 1) {
+            k = putKey(k, key1, wide1);
+            Unsafe.getUnsafe().putInt(p + keyBlockOffset + 4, (int) (k - p));
+        }
+        return values.init(p, true);
+    }
+
+    public MapValues getValues(long key) {
+        return getValues(key, 0);
+    }
+
+    /**
+     * @param key0 value of first key column
+     * @param key1 value of second key column, 0 when map has single key column
+     * @return values of key or null when key is not in map
+     */
+    public MapValues getValues(long key0, long key1) {
+        int index = hash(key0, key1) & mask;
+        long slot;
+        long offset;
+        while ((offset = Unsafe.getUnsafe().getLong((slot = slot(index)) + 16)) != -1) {
+            if (Unsafe.getUnsafe().getLong(slot) == key0 && Unsafe.getUnsafe().getLong(slot + 8) == key1) {
+                return values.init(address + offset, false);
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Adds single entry of another map to this one. Values of key that is not yet in this map are copied,
+     * values of existing key are combined by aggregator functions. Both maps must have been created with
+     * the same key and value columns.
+     *
+     * @param that        map entry belongs to
+     * @param rowId       row id of record returned by cursor of "that" map
+     * @param aggregators functions to combine values of existing key
+     */
+    public void merge(FixedKeyMap that, long rowId, ObjList<AggregatorFunction> aggregators) {
+        long k = rowId + keyDataOffset;
+        long key0 = wide0 ? Unsafe.getUnsafe().getLong(k) : Unsafe.getUnsafe().getInt(k);
+        long key1 = 0;
+        if (keyCount > 1) {
+            k += wide0 ? 8 : 4;
+            key1 = wide1 ? Unsafe.getUnsafe().getLong(k) : Unsafe.getUnsafe().getInt(k);
+        }
+        MapValues v = getOrCreateValues(key0, key1);
+        if (v.isNew()) {
+            Unsafe.getUnsafe().copyMemory(rowId + 4, address + pos - entrySize + 4, keyBlockOffset - 4);
+        } else {
+            MapValues partial = that.values.init(rowId, false);
+            for (int i = 0, n = aggregators.size(); i < n; i++) {
+                aggregators.getQuick(i).combine(v, partial);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static long allocateSlots(int keyCapacity) {
+        long bytes = (long) keyCapacity * SLOT_SIZE * 8;
+        long slots = Unsafe.getUnsafe().allocateMemory(bytes);
+        Unsafe.getUnsafe().setMemory(slots, bytes, (byte) -1);
+        return slots;
+    }
+
+    private static int hash(long key0, long key1) {
+        return (int) Hash.hashLong(key0 * 31 + key1);
+    }
+
+    private static boolean isWide(RecordColumnMetadata m) {
+        switch (m.getType()) {
+            case LONG:
+            case DATE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static long putKey(long address, long key, boolean wide) {
+        if (wide) {
+            Unsafe.getUnsafe().putLong(address, key);
+            return address + 8;
+        }
+        Unsafe.getUnsafe().putInt(address, (int) key);
+        return address + 4;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        free();
+        super.finalize();
+    }
+
+    private void rehash() {
+        int capacity = keyCapacity << 1;
+        int mask = capacity - 1;
+        long slots = allocateSlots(capacity);
+
+        for (int i = 0; i < size; i++) {
+            long from = slot(Unsafe.getUnsafe().getInt(used + i * 4L));
+            long key0 = Unsafe.getUnsafe().getLong(from);
+            long key1 = Unsafe.getUnsafe().getLong(from + 8);
+            int index = hash(key0, key1) & mask;
+            long to;
+            while (Unsafe.getUnsafe().getLong((to = slots + (long) index * SLOT_SIZE * 8) + 16) != -1) {
+                index = (index + 1) & mask;
+            }
+            Unsafe.getUnsafe().putLong(to, key0);
+            Unsafe.getUnsafe().putLong(to + 8, key1);
+            Unsafe.getUnsafe().putLong(to + 16, Unsafe.getUnsafe().getLong(from + 16));
+            Unsafe.getUnsafe().putInt(used + i * 4L, index);
+        }
+        Unsafe.getUnsafe().freeMemory(this.slots);
+        this.slots = slots;
+        this.mask = mask;
+        this.free += (capacity - keyCapacity) * loadFactor;
+        this.keyCapacity = capacity;
+    }
+
+    private long slot(int index) {
+        return slots + (long) index * SLOT_SIZE * 8;
+    }
+}
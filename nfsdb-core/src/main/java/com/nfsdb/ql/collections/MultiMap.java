@@ -25,6 +25,7 @@ import com.nfsdb.collections.*;
 import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.configuration.RecordColumnMetadata;
 import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.ql.AggregatorFunction;
 import com.nfsdb.ql.Record;
 import com.nfsdb.ql.RecordCursor;
 import com.nfsdb.utils.Hash;
@@ -74,26 +75,8 @@ public class MultiMap extends DirectMemoryStructure implements Mutable {
         this.offsets = new LongList(keyCapacity);
         this.offsets.setPos(keyCapacity);
         this.offsets.zero((byte) -1);
-        int columnSplit = valueColumns.size();
-        int[] valueOffsets = new int[columnSplit];
-
-        int offset = 4;
-        for (int i = 0; i < valueOffsets.length; i++) {
-            valueOffsets[i] = offset;
-            switch (valueColumns.get(i).getType()) {
-                case INT:
-                case FLOAT:
-                    offset += 4;
-                    break;
-                case LONG:
-                case DOUBLE:
-                case DATE:
-                    offset += 8;
-                    break;
-                default:
-                    throw new JournalRuntimeException("value type is not supported: " + valueColumns.get(i));
-            }
-        }
+        int[] valueOffsets = new int[valueColumns.size()];
+        int offset = layoutValues(valueColumns, valueOffsets);
 
         this.values = new MapValues(valueOffsets);
         this.metadata = new MapMetadata(valueColumns, keyColumns);
@@ -161,10 +144,65 @@ public class MultiMap extends DirectMemoryStructure implements Mutable {
         return keyWriter.init();
     }
 
+    /**
+     * Adds all entries of another map to this one. Keys that are not yet in this map are copied
+     * together with their values, values of existing keys are combined by aggregator functions.
+     * Both maps must have been created with the same key and value columns.
+     *
+     * @param that        map to merge, it is not modified
+     * @param aggregators functions to combine values of existing keys
+     */
+    public void merge(MultiMap that, ObjList<AggregatorFunction> aggregators) {
+        long p = that.kStart;
+        for (int i = 0, n = that.size; i < n; i++) {
+            p += merge0(that, p, aggregators);
+        }
+    }
+
+    /**
+     * Adds single entry of another map to this one. This is a counterpart of {@link #merge(MultiMap, ObjList)}
+     * for callers that need to inspect entries while they are being merged.
+     *
+     * @param that        map entry belongs to
+     * @param rowId       row id of record returned by cursor of "that" map
+     * @param aggregators functions to combine values of existing key
+     */
+    public void merge(MultiMap that, long rowId, ObjList<AggregatorFunction> aggregators) {
+        merge0(that, rowId, aggregators);
+    }
+
     public int size() {
         return size;
     }
 
+    /**
+     * Calculates offsets of values in map entry, which starts with entry length.
+     *
+     * @param valueColumns value columns
+     * @param valueOffsets array to store offsets to, one per value column
+     * @return offset of the first byte after values
+     */
+    static int layoutValues(ObjList<RecordColumnMetadata> valueColumns, int[] valueOffsets) {
+        int offset = 4;
+        for (int i = 0; i < valueOffsets.length; i++) {
+            valueOffsets[i] = offset;
+            switch (valueColumns.get(i).getType()) {
+                case INT:
+                case FLOAT:
+                    offset += 4;
+                    break;
+                case LONG:
+                case DOUBLE:
+                case DATE:
+                    offset += 8;
+                    break;
+                default:
+                    throw new JournalRuntimeException("value type is not supported: " + valueColumns.get(i));
+            }
+        }
+        return offset;
+    }
+
     private boolean eq(KeyWriter keyWriter, long offset) {
         long a = kStart + offset;
         long b = keyWriter.startAddr;
@@ -196,6 +234,25 @@ public class MultiMap extends DirectMemoryStructure implements Mutable {
         return true;
     }
 
+    private int merge0(MultiMap that, long p, ObjList<AggregatorFunction> aggregators) {
+        int len = Unsafe.getUnsafe().getInt(p);
+        keyWriter.init();
+        while (keyWriter.startAddr + len > kLimit) {
+            resize();
+        }
+        Unsafe.getUnsafe().copyMemory(p, keyWriter.startAddr, len);
+        keyWriter.appendAddr = keyWriter.startAddr + len;
+
+        MapValues v = getOrCreateValues(keyWriter);
+        if (!v.isNew()) {
+            MapValues partial = that.values.init(p, false);
+            for (int k = 0, m = aggregators.size(); k < m; k++) {
+                aggregators.getQuick(k).combine(v, partial);
+            }
+        }
+        return len;
+    }
+
     private MapValues probe0(KeyWriter keyWriter, int index) {
         long offset;
         while ((offset = offsets.get(index = (++index & mask))) != -1) {
@@ -36,23 +36,37 @@ import java.io.IOException;
 public class MultiRecordMap implements Closeable, Mutable {
     private static final ObjList<RecordColumnMetadata> valueCols = new ObjList<>(2);
     private final MultiMap map;
+    private final FixedKeyMap fixedMap;
     private final RecordDequeue records;
 
     public MultiRecordMap(ObjList<RecordColumnMetadata> keyColumns, RecordMetadata valueMetadata) {
-        map = new MultiMap(valueCols, keyColumns, null);
+        this(keyColumns, valueMetadata, false);
+    }
+
+    /**
+     * @param keyColumns    key columns
+     * @param valueMetadata metadata of records to keep
+     * @param fixedKey      true to pass values of single INT, LONG or DATE key column to {@link #add(long, Record)}
+     *                      and {@link #get(long)} instead of writing keys out via {@link #claimKey()}
+     */
+    public MultiRecordMap(ObjList<RecordColumnMetadata> keyColumns, RecordMetadata valueMetadata, boolean fixedKey) {
+        if (fixedKey) {
+            fixedMap = new FixedKeyMap(1024, 0.5f, valueCols, keyColumns, null);
+            map = null;
+        } else {
+            fixedMap = null;
+            map = new MultiMap(valueCols, keyColumns, null);
+        }
         //todo: extract config
         records = new RecordDequeue(valueMetadata, 4 * 1024 * 1024);
     }
 
     public void add(MultiMap.KeyWriter key, Record record) {
-        MapValues values = map.getOrCreateValues(key);
-        if (values.isNew()) {
-            long offset = records.append(record, -1);
-            values.putLong(0, offset);
-            values.putLong(1, offset);
-        } else {
-            values.putLong(1, records.append(record, values.getLong(1)));
-        }
+        add(map.getOrCreateValues(key), record);
+    }
+
+    public void add(long key, Record record) {
+        add(fixedMap.getOrCreateValues(key), record);
     }
 
     public MultiMap.KeyWriter claimKey() {
@@ -60,18 +74,43 @@ public class MultiRecordMap implements Closeable, Mutable {
     }
 
     public void clear() {
-        map.clear();
+        if (fixedMap != null) {
+            fixedMap.clear();
+        } else {
+            map.clear();
+        }
         records.clear();
     }
 
     @Override
     public void close() throws IOException {
-        map.free();
+        if (fixedMap != null) {
+            fixedMap.free();
+        } else {
+            map.free();
+        }
         records.close();
     }
 
     public RecordCursor<Record> get(MultiMap.KeyWriter key) {
-        MapValues values = map.getValues(key);
+        return get(map.getValues(key));
+    }
+
+    public RecordCursor<Record> get(long key) {
+        return get(fixedMap.getValues(key));
+    }
+
+    private void add(MapValues values, Record record) {
+        if (values.isNew()) {
+            long offset = records.append(record, -1);
+            values.putLong(0, offset);
+            values.putLong(1, offset);
+        } else {
+            values.putLong(1, records.append(record, values.getLong(1)));
+        }
+    }
+
+    private RecordCursor<Record> get(MapValues values) {
         records.init(values == null ? -1 : values.getLong(0));
         return records;
     }
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.AbstractImmutableIterator;
+import com.nfsdb.collections.IntList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.factory.configuration.RecordColumnMetadata;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.ql.RecordSource;
+import com.nfsdb.ql.StorageFacade;
+import com.nfsdb.ql.collections.MapValues;
+import com.nfsdb.ql.collections.MultiMap;
+import com.nfsdb.storage.ColumnType;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.Closeable;
+
+import static com.nfsdb.ql.impl.KeyWriterHelper.setKey;
+
+/**
+ * Joins each master record to the most recent slave record, which timestamp is not after that of
+ * master. When key columns are given, slave record must also have the same key. Master records
+ * without such slave record are joined to nulls.
+ * <p>
+ * Both sources must be ordered by their timestamps, they are then merged in a single pass. Slave
+ * records are not stored, instead row id of last slave record of each key is kept in off-heap map,
+ * therefore slave source must support row id access.
+ */
+public class AsOfJoinRecordSource extends AbstractImmutableIterator<Record> implements RecordSource<Record>, Closeable, RecordCursor<Record> {
+    private static final int MAP_CAPACITY = 1024;
+    private static final int MAP_DATA_SIZE = 64 * 1024;
+    private static final ObjList<RecordColumnMetadata> valueCols = new ObjList<>(1);
+    private final RecordSource<? extends Record> masterSource;
+    private final RecordSource<? extends Record> slaveSource;
+    private final int masterTimestampIndex;
+    private final int slaveTimestampIndex;
+    private final SplitRecordMetadata metadata;
+    private final SplitRecord currentRecord;
+    private final NullRecord nullRecord;
+    private final ObjList<RecordColumnMetadata> masterColumns = new ObjList<>();
+    private final ObjList<RecordColumnMetadata> slaveColumns = new ObjList<>();
+    private final IntList masterColIndex = new IntList();
+    private final IntList slaveColIndex = new IntList();
+    private MultiMap map;
+    private RecordCursor<? extends Record> masterCursor;
+    private RecordCursor<? extends Record> slaveCursor;
+    private long lastRowId = -1;
+    private boolean pending = false;
+    private long pendingRowId;
+    private long pendingTimestamp;
+
+    /**
+     * @param masterTimestampIndex index of timestamp column of master
+     * @param slaveTimestampIndex  index of timestamp column of slave
+     * @param masterColumns        key columns of master, null or empty to join on time alone
+     * @param slaveColumns         key columns of slave in the same order as those of master
+     */
+    @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
+    public AsOfJoinRecordSource(
+            RecordSource<? extends Record> masterSource,
+            int masterTimestampIndex,
+            RecordSource<? extends Record> slaveSource,
+            int slaveTimestampIndex,
+            ObjList<CharSequence> masterColumns,
+            ObjList<CharSequence> slaveColumns) {
+        this.masterSource = masterSource;
+        this.slaveSource = slaveSource;
+        this.masterTimestampIndex = masterTimestampIndex;
+        this.slaveTimestampIndex = slaveTimestampIndex;
+        this.metadata = new SplitRecordMetadata(masterSource.getMetadata(), slaveSource.getMetadata());
+        this.currentRecord = new SplitRecord(metadata, masterSource.getMetadata().getColumnCount());
+        this.nullRecord = new NullRecord(slaveSource.getMetadata());
+
+        if (masterColumns != null && masterColumns.size() > 0) {
+            RecordMetadata mm = masterSource.getMetadata();
+            for (int i = 0, k = masterColumns.size(); i < k; i++) {
+                int index = mm.getColumnIndex(masterColumns.getQuick(i));
+                this.masterColIndex.add(index);
+                this.masterColumns.add(mm.getColumnQuick(index));
+            }
+
+            RecordMetadata sm = slaveSource.getMetadata();
+            for (int i = 0, k = slaveColumns.size(); i < k; i++) {
+                int index = sm.getColumnIndex(slaveColumns.getQuick(i));
+                this.slaveColIndex.add(index);
+                this.slaveColumns.add(sm.getColumnQuick(index));
+            }
+            this.map = new MultiMap(MAP_CAPACITY, MAP_DATA_SIZE, 0.5f, valueCols, this.slaveColumns, null);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (map != null) {
+            map.free();
+            map = null;
+        }
+    }
+
+    @Override
+    public Record getByRowId(long rowId) {
+        return null;
+    }
+
+    @Override
+    public StorageFacade getSymFacade() {
+        return null;
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public RecordCursor<Record> prepareCursor(JournalReaderFactory factory) throws JournalException {
+        this.masterCursor = masterSource.prepareCursor(factory);
+        this.slaveCursor = slaveSource.prepareCursor(factory);
+        clearState();
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        masterSource.reset();
+        slaveSource.reset();
+        clearState();
+    }
+
+    @Override
+    public boolean supportsRowIdAccess() {
+        return false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!masterCursor.hasNext()) {
+            return false;
+        }
+
+        Record master = masterCursor.next();
+        currentRecord.setA(master);
+        advanceSlave(master.getDate(masterTimestampIndex));
+
+        long rowId;
+        if (map == null) {
+            rowId = lastRowId;
+        } else {
+            MultiMap.KeyWriter key = map.keyWriter();
+            for (int i = 0, k = masterColumns.size(); i < k; i++) {
+                setKey(key, master, masterColumns.getQuick(i).getType(), masterColIndex.getQuick(i));
+            }
+            MapValues values = map.getValues(key);
+            rowId = values == null ? -1 : values.getLong(0);
+        }
+        currentRecord.setB(rowId == -1 ? nullRecord : slaveCursor.getByRowId(rowId));
+        return true;
+    }
+
+    @SuppressFBWarnings({"IT_NO_SUCH_ELEMENT"})
+    @Override
+    public SplitRecord next() {
+        return currentRecord;
+    }
+
+    @Override
+    public String toString() {
+        return "AsOfJoinRecordSource{" +
+                "masterSource=" + masterSource +
+                ", slaveSource=" + slaveSource +
+                ", keys=" + slaveColumns.size() +
+                '}';
+    }
+
+    /**
+     * Consumes slave records up to and including timestamp. First record beyond timestamp is
+     * remembered by row id, because slave cursor cannot be rewound.
+     *
+     * @param timestamp timestamp of master record
+     */
+    private void advanceSlave(long timestamp) {
+        if (pending) {
+            if (pendingTimestamp > timestamp) {
+                return;
+            }
+            remember(slaveCursor.getByRowId(pendingRowId));
+            pending = false;
+        }
+
+        while (slaveCursor.hasNext()) {
+            Record r = slaveCursor.next();
+            long ts = r.getDate(slaveTimestampIndex);
+            if (ts > timestamp) {
+                pendingRowId = r.getRowId();
+                pendingTimestamp = ts;
+                pending = true;
+                return;
+            }
+            remember(r);
+        }
+    }
+
+    private void clearState() {
+        if (map != null) {
+            map.clear();
+        }
+        lastRowId = -1;
+        pending = false;
+    }
+
+    private void remember(Record slave) {
+        if (map == null) {
+            lastRowId = slave.getRowId();
+        } else {
+            MultiMap.KeyWriter key = map.keyWriter();
+            for (int i = 0, k = slaveColumns.size(); i < k; i++) {
+                setKey(key, slave, slaveColumns.getQuick(i).getType(), slaveColIndex.getQuick(i));
+            }
+            map.getOrCreateValues(key).putLong(0, slave.getRowId());
+        }
+    }
+
+    static {
+        ColumnMetadata rowId = new ColumnMetadata();
+        rowId.setName("rowId");
+        rowId.setType(ColumnType.LONG);
+        valueCols.add(rowId);
+    }
+}
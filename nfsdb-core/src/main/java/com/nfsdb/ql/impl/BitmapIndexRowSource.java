@@ -0,0 +1,237 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.IntList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.configuration.JournalMetadata;
+import com.nfsdb.ql.PartitionSlice;
+import com.nfsdb.ql.RowCursor;
+import com.nfsdb.ql.StorageFacade;
+import com.nfsdb.storage.BitmapIndex;
+import com.nfsdb.storage.SymbolTable;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.Arrays;
+
+/**
+ * Rows, which satisfy combination of symbol lookups on bitmap indexed columns. Combination is
+ * expressed in postfix notation, for example:
+ * <pre>
+ *     new BitmapIndexRowSource().lookup("sym", "A").lookup("sym", "B").or().lookup("ex", "X").and()
+ * </pre>
+ * is (sym = 'A' or sym = 'B') and ex = 'X'. Expression is evaluated for one chunk of
+ * {@link BitmapIndex#CHUNK_ROWS} rows at a time by combining bitmaps of chunk, rows are then
+ * read off resulting bitmap in ascending order.
+ */
+@SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CHECKED"})
+public class BitmapIndexRowSource extends AbstractRowSource {
+    private static final int OP_AND = -1;
+    private static final int OP_OR = -2;
+    private static final int WORDS = BitmapIndex.BITMAP_WORDS;
+    // lookup number or operation code
+    private final IntList program = new IntList();
+    private final ObjList<String> columns = new ObjList<>();
+    private final ObjList<String> values = new ObjList<>();
+    private final IntList columnIndexes = new IntList();
+    private final IntList keys = new IntList();
+    private final ObjList<BitmapIndex> indexes = new ObjList<>();
+    private int depth;
+    private int maxDepth;
+    private long[] stack;
+    private int chunk;
+    private int chunkHi;
+    private long lo;
+    private long hi;
+    private int wordPos;
+    private long word;
+    private long rowid;
+
+    public BitmapIndexRowSource and() {
+        return op(OP_AND);
+    }
+
+    @Override
+    public void configure(JournalMetadata metadata) {
+        if (depth != 1) {
+            throw new JournalRuntimeException("Incomplete bitmap index expression: %s", this);
+        }
+        columnIndexes.clear();
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            columnIndexes.add(metadata.getColumnIndex(columns.getQuick(i)));
+        }
+        stack = new long[maxDepth * WORDS];
+    }
+
+    /**
+     * Adds rows, which have symbol value in column, to expression.
+     *
+     * @param column name of bitmap indexed symbol column
+     * @param value  symbol value, null for rows of null symbol
+     * @return this source
+     */
+    public BitmapIndexRowSource lookup(String column, String value) {
+        program.add(columns.size());
+        columns.add(column);
+        values.add(value);
+        if (++depth > maxDepth) {
+            maxDepth = depth;
+        }
+        return this;
+    }
+
+    public BitmapIndexRowSource or() {
+        return op(OP_OR);
+    }
+
+    @Override
+    public void prepare(StorageFacade facade) {
+        keys.clear();
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            keys.add(facade.getSymbolTable(columns.getQuick(i)).getQuick(values.getQuick(i)));
+        }
+    }
+
+    @Override
+    public RowCursor prepareCursor(PartitionSlice slice) {
+        try {
+            indexes.clear();
+            for (int i = 0, n = columnIndexes.size(); i < n; i++) {
+                indexes.add(slice.partition.open().getBitmapIndex(columnIndexes.getQuick(i)));
+            }
+            this.lo = slice.lo;
+            this.hi = slice.calcHi ? slice.partition.size() - 1 : slice.hi;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+
+        this.chunk = (int) (lo >>> BitmapIndex.CHUNK_BITS) - 1;
+        this.chunkHi = (int) (hi >>> BitmapIndex.CHUNK_BITS);
+        this.wordPos = WORDS;
+        this.word = 0;
+        return this;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (word == 0) {
+            if (++wordPos >= WORDS) {
+                if (lo > hi || ++chunk > chunkHi) {
+                    return false;
+                }
+                evaluate();
+                long first = (long) chunk << BitmapIndex.CHUNK_BITS;
+                if (first < lo) {
+                    // drop rows below lo in first chunk of slice
+                    wordPos = (int) ((lo - first) >>> 6);
+                    word = stack[wordPos] & (-1L << (lo & 63));
+                } else {
+                    wordPos = 0;
+                    word = stack[0];
+                }
+            } else {
+                word = stack[wordPos];
+            }
+        }
+
+        rowid = ((long) chunk << BitmapIndex.CHUNK_BITS) + ((long) wordPos << 6) + Long.numberOfTrailingZeros(word);
+        if (rowid > hi) {
+            word = 0;
+            chunk = chunkHi;
+            wordPos = WORDS;
+            return false;
+        }
+        word &= word - 1;
+        return true;
+    }
+
+    @Override
+    public long next() {
+        return rowid;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("BitmapIndexRowSource{");
+        for (int i = 0, n = program.size(); i < n; i++) {
+            if (i > 0) {
+                b.append(' ');
+            }
+            int op = program.getQuick(i);
+            switch (op) {
+                case OP_AND:
+                    b.append("and");
+                    break;
+                case OP_OR:
+                    b.append("or");
+                    break;
+                default:
+                    b.append(columns.getQuick(op)).append('=').append(values.getQuick(op));
+                    break;
+            }
+        }
+        return b.append('}').toString();
+    }
+
+    private void evaluate() {
+        int top = -1;
+        for (int i = 0, n = program.size(); i < n; i++) {
+            int op = program.getQuick(i);
+            switch (op) {
+                case OP_AND:
+                    top--;
+                    for (int p = top * WORDS, q = p + WORDS, lim = q; p < lim; p++, q++) {
+                        stack[p] &= stack[q];
+                    }
+                    break;
+                case OP_OR:
+                    top--;
+                    for (int p = top * WORDS, q = p + WORDS, lim = q; p < lim; p++, q++) {
+                        stack[p] |= stack[q];
+                    }
+                    break;
+                default:
+                    top++;
+                    Arrays.fill(stack, top * WORDS, (top + 1) * WORDS, 0L);
+                    int key = keys.getQuick(op);
+                    if (key != SymbolTable.VALUE_NOT_FOUND) {
+                        indexes.getQuick(op).or(key, chunk, stack, top * WORDS);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private BitmapIndexRowSource op(int code) {
+        if (--depth < 1) {
+            throw new JournalRuntimeException("Not enough operands for bitmap index expression: %s", this);
+        }
+        program.add(code);
+        return this;
+    }
+}
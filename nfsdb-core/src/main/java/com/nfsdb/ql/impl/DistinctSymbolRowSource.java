@@ -21,7 +21,6 @@
 
 package com.nfsdb.ql.impl;
 
-import com.nfsdb.collections.IntHashSet;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.configuration.JournalMetadata;
@@ -31,18 +30,23 @@ import com.nfsdb.ql.RowSource;
 import com.nfsdb.ql.StorageFacade;
 import com.nfsdb.storage.FixedColumn;
 
+import java.util.BitSet;
+
 /**
  * Takes stream of rowids, converts them to int values of FixedColumn and
  * returns rowids for non-repeated int values. Rowids returned on first in - first out basis.
  * <p/>
  * One of use cases might be streaming of journal in reverse chronological order (latest rows first)
  * via this filter to receive last records for every value of given column.
+ * <p/>
+ * Symbol keys are dense, so values seen so far are kept in bit set indexed by symbol key rather than in hash set.
  */
 public class DistinctSymbolRowSource extends AbstractRowSource {
 
     private final RowSource delegate;
     private final String symbol;
-    private final IntHashSet set = new IntHashSet();
+    // indexed by symbol key + 1, so that null symbol has a bit too
+    private final BitSet seen = new BitSet();
     private FixedColumn column;
     private int columnIndex = -1;
     private RowCursor cursor;
@@ -79,7 +83,9 @@ public class DistinctSymbolRowSource extends AbstractRowSource {
     public boolean hasNext() {
         while (cursor.hasNext()) {
             long rowid = cursor.next();
-            if (set.add(column.getInt(rowid))) {
+            int bit = column.getInt(rowid) + 1;
+            if (!seen.get(bit)) {
+                seen.set(bit);
                 this.rowid = rowid;
                 return true;
             }
@@ -95,6 +101,6 @@ public class DistinctSymbolRowSource extends AbstractRowSource {
     @Override
     public void prepare(StorageFacade storageFacade) {
         delegate.prepare(storageFacade);
-        set.clear();
+        seen.clear();
     }
 }
@@ -21,23 +21,46 @@
 
 package com.nfsdb.ql.impl;
 
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.configuration.JournalMetadata;
 import com.nfsdb.ql.PartitionSlice;
 import com.nfsdb.ql.RowCursor;
 import com.nfsdb.ql.RowSource;
 import com.nfsdb.ql.StorageFacade;
+import com.nfsdb.ql.ops.VectorFilter;
+import com.nfsdb.ql.ops.VectorFilters;
 import com.nfsdb.ql.ops.VirtualColumn;
+import com.nfsdb.storage.ZoneMap;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 public class FilteredRowSource extends AbstractRowSource {
 
+    // number of rows filter evaluates at once in vectorized mode, blocks are aligned
+    // with those of zone maps, so that whole block can be skipped by its summary
+    private static final int BLOCK_SIZE = ZoneMap.BLOCK_ROWS;
     private final RowSource delegate;
     private final VirtualColumn filter;
+    private final VectorFilter vectorFilter;
+    private final long[] bitmap;
     private RowCursor underlying;
     private JournalRecord rec;
+    private long blockLo;
+    private int blockCount;
+    private int blockPos;
+    private long hi;
 
     public FilteredRowSource(RowSource delegate, VirtualColumn filter) {
         this.delegate = delegate;
         this.filter = filter;
+        // filter can be evaluated in blocks only when it scans consecutive rows
+        if (delegate instanceof AllRowSource && VectorFilters.isVectorizable(filter)) {
+            this.vectorFilter = (VectorFilter) filter;
+            this.bitmap = new long[VectorFilters.words(BLOCK_SIZE)];
+        } else {
+            this.vectorFilter = null;
+            this.bitmap = null;
+        }
     }
 
     @Override
@@ -46,10 +69,21 @@ public class FilteredRowSource extends AbstractRowSource {
         this.rec = new JournalRecord(metadata);
     }
 
+    @SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CHECKED"})
     @Override
     public RowCursor prepareCursor(PartitionSlice slice) {
         this.underlying = delegate.prepareCursor(slice);
         this.rec.partition = slice.partition;
+        if (vectorFilter != null) {
+            try {
+                this.hi = slice.calcHi ? slice.partition.open().size() - 1 : slice.hi;
+            } catch (JournalException e) {
+                throw new JournalRuntimeException(e);
+            }
+            this.blockLo = slice.lo;
+            this.blockCount = 0;
+            this.blockPos = 0;
+        }
         return this;
     }
 
@@ -60,6 +94,10 @@ public class FilteredRowSource extends AbstractRowSource {
 
     @Override
     public boolean hasNext() {
+        if (vectorFilter != null) {
+            return hasNextInBlock();
+        }
+
         while (underlying.hasNext()) {
             rec.rowid = underlying.next();
             if (filter.getBool(rec)) {
@@ -82,6 +120,32 @@ public class FilteredRowSource extends AbstractRowSource {
 
     @Override
     public String toString() {
-        return "FilteredRowSource{}";
+        return "FilteredRowSource{delegate=" + delegate + '}';
+    }
+
+    private boolean hasNextInBlock() {
+        while (true) {
+            int i = VectorFilters.nextSetBit(bitmap, blockPos, blockCount);
+            if (i > -1) {
+                rec.rowid = blockLo + i;
+                blockPos = i + 1;
+                return true;
+            }
+
+            blockLo += blockCount;
+            if (blockLo > hi) {
+                return false;
+            }
+
+            long remaining = hi - blockLo + 1;
+            int size = BLOCK_SIZE - (int) (blockLo & (BLOCK_SIZE - 1));
+            blockCount = remaining < size ? (int) remaining : size;
+            if (vectorFilter.mayMatch(rec, blockLo, blockCount)) {
+                blockPos = 0;
+                vectorFilter.evaluate(rec, blockLo, blockCount, bitmap);
+            } else {
+                blockPos = blockCount;
+            }
+        }
     }
 }
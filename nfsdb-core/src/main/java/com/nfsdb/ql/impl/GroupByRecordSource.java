@@ -0,0 +1,278 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.AbstractImmutableIterator;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.factory.configuration.RecordColumnMetadata;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.ql.*;
+import com.nfsdb.ql.collections.DenseSymbolMap;
+import com.nfsdb.ql.collections.FixedKeyMap;
+import com.nfsdb.ql.collections.MapRecordValueInterceptor;
+import com.nfsdb.ql.collections.MapValues;
+import com.nfsdb.ql.collections.MultiMap;
+import com.nfsdb.storage.ColumnType;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.Closeable;
+
+/**
+ * Aggregates records by key columns, for example "select sym, sum(bid) from quote group by sym".
+ * Unlike {@link ResampledSource} records do not have to be in timestamp order: whole source is
+ * aggregated on first call to hasNext() and groups come out in the order their keys were first seen.
+ * Source without key columns is aggregated into single group.
+ * <p>
+ * When the only key column is symbol, values are kept in {@link DenseSymbolMap}, which looks them up
+ * by symbol key without writing key out and hashing it. Other keys of one or two INT, SYMBOL, LONG
+ * or DATE columns are kept in {@link FixedKeyMap}, which takes key values as they are.
+ */
+@SuppressFBWarnings({"LII_LIST_INDEXED_ITERATING"})
+public class GroupByRecordSource extends AbstractImmutableIterator<Record> implements RecordSource<Record>, Closeable, RecordCursor<Record> {
+
+    private static final int MAP_CAPACITY = 1024;
+    private static final int MAP_DATA_SIZE = 64 * 1024;
+    private final RecordSource<? extends Record> recordSource;
+    private final int[] keyIndices;
+    private final ColumnType[] keyTypes;
+    private final ObjList<AggregatorFunction> aggregators;
+    private final MultiMap map;
+    private final DenseSymbolMap symbolMap;
+    private final FixedKeyMap fixedMap;
+    private RecordCursor<? extends Record> recordCursor;
+    private RecordCursor<Record> mapCursor;
+
+    @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
+    public GroupByRecordSource(RecordSource<? extends Record> recordSource, ObjList<CharSequence> keyColumns, ObjList<AggregatorFunction> aggregators) {
+        this.recordSource = recordSource;
+        this.aggregators = aggregators;
+
+        RecordMetadata rm = recordSource.getMetadata();
+        int keyColumnsSize = keyColumns.size();
+        this.keyIndices = new int[keyColumnsSize];
+        this.keyTypes = new ColumnType[keyColumnsSize];
+
+        final ObjList<RecordColumnMetadata> keyCols = new ObjList<>();
+        for (int i = 0; i < keyColumnsSize; i++) {
+            keyIndices[i] = rm.getColumnIndex(keyColumns.getQuick(i));
+            RecordColumnMetadata cm = rm.getColumnQuick(keyIndices[i]);
+            keyTypes[i] = cm.getType();
+            if (keyTypes[i] == ColumnType.BINARY) {
+                throw new JournalRuntimeException("Cannot group by binary column %s", keyColumns.getQuick(i));
+            }
+            keyCols.add(cm);
+        }
+
+        final ObjList<RecordColumnMetadata> valueCols = new ObjList<>();
+        final ObjList<MapRecordValueInterceptor> interceptors = new ObjList<>();
+        int index = 0;
+        for (int i = 0, sz = aggregators.size(); i < sz; i++) {
+            AggregatorFunction func = aggregators.getQuick(i);
+
+            func.prepareSource(recordSource);
+
+            ColumnMetadata[] columns = func.getColumns();
+            for (int k = 0, len = columns.length; k < len; k++) {
+                valueCols.add(columns[k]);
+                func.mapColumn(k, index++);
+            }
+
+            if (func instanceof MapRecordValueInterceptor) {
+                interceptors.add((MapRecordValueInterceptor) func);
+            }
+        }
+
+        if (keyColumnsSize == 1 && keyTypes[0] == ColumnType.SYMBOL) {
+            // symbol table is not always open at this point, map grows when it meets larger keys
+            this.symbolMap = new DenseSymbolMap(MAP_CAPACITY, valueCols, keyCols.getQuick(0), interceptors);
+            this.fixedMap = null;
+            this.map = null;
+        } else if (FixedKeyMap.supports(keyCols)) {
+            this.symbolMap = null;
+            this.fixedMap = new FixedKeyMap(MAP_CAPACITY, 0.5f, valueCols, keyCols, interceptors);
+            this.map = null;
+        } else {
+            this.symbolMap = null;
+            this.fixedMap = null;
+            this.map = new MultiMap(MAP_CAPACITY, MAP_DATA_SIZE, 0.5f, valueCols, keyCols, interceptors);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (symbolMap != null) {
+            symbolMap.free();
+        } else if (fixedMap != null) {
+            fixedMap.free();
+        } else {
+            map.free();
+        }
+    }
+
+    @Override
+    public Record getByRowId(long rowId) {
+        return null;
+    }
+
+    @Override
+    public StorageFacade getSymFacade() {
+        return recordCursor.getSymFacade();
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        if (symbolMap != null) {
+            return symbolMap.getMetadata();
+        }
+        return fixedMap != null ? fixedMap.getMetadata() : map.getMetadata();
+    }
+
+    @Override
+    public RecordCursor<Record> prepareCursor(JournalReaderFactory factory) throws JournalException {
+        this.recordCursor = recordSource.prepareCursor(factory);
+        this.mapCursor = null;
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        recordSource.reset();
+        mapCursor = null;
+    }
+
+    @Override
+    public boolean supportsRowIdAccess() {
+        return false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mapCursor == null) {
+            if (symbolMap != null) {
+                mapCursor = aggregateSymbols();
+            } else if (fixedMap != null) {
+                mapCursor = aggregateFixed();
+            } else {
+                mapCursor = aggregate();
+            }
+        }
+        return mapCursor.hasNext();
+    }
+
+    @Override
+    public Record next() {
+        return mapCursor.next();
+    }
+
+    @Override
+    public String toString() {
+        return "GroupByRecordSource{" +
+                "recordSource=" + recordSource +
+                ", dense=" + (symbolMap != null) +
+                ", fixed=" + (fixedMap != null) +
+                '}';
+    }
+
+    private RecordCursor<Record> aggregate() {
+        map.clear();
+        for (Record rec : recordCursor) {
+            MultiMap.KeyWriter keyWriter = map.keyWriter();
+            for (int i = 0; i < keyIndices.length; i++) {
+                int col = keyIndices[i];
+                switch (keyTypes[i]) {
+                    case BOOLEAN:
+                        keyWriter.putBoolean(rec.getBool(col));
+                        break;
+                    case BYTE:
+                        keyWriter.putByte(rec.get(col));
+                        break;
+                    case SHORT:
+                        keyWriter.putShort(rec.getShort(col));
+                        break;
+                    case INT:
+                    case SYMBOL:
+                        keyWriter.putInt(rec.getInt(col));
+                        break;
+                    case LONG:
+                        keyWriter.putLong(rec.getLong(col));
+                        break;
+                    case DATE:
+                        keyWriter.putLong(rec.getDate(col));
+                        break;
+                    case FLOAT:
+                        keyWriter.putFloat(rec.getFloat(col));
+                        break;
+                    case DOUBLE:
+                        keyWriter.putDouble(rec.getDouble(col));
+                        break;
+                    case STRING:
+                        // null and empty strings are the same key
+                        CharSequence cs = rec.getFlyweightStr(col);
+                        keyWriter.putStr(cs == null ? "" : cs);
+                        break;
+                    default:
+                        throw new JournalRuntimeException("Unsupported type: " + keyTypes[i]);
+                }
+            }
+            calculate(rec, map.getOrCreateValues(keyWriter));
+        }
+        return map.getCursor();
+    }
+
+    private RecordCursor<Record> aggregateFixed() {
+        fixedMap.clear();
+        for (Record rec : recordCursor) {
+            calculate(rec, fixedMap.getOrCreateValues(fixedKey(rec, 0), keyIndices.length > 1 ? fixedKey(rec, 1) : 0));
+        }
+        return fixedMap.getCursor();
+    }
+
+    private RecordCursor<Record> aggregateSymbols() {
+        symbolMap.clear();
+        int col = keyIndices[0];
+        for (Record rec : recordCursor) {
+            calculate(rec, symbolMap.getOrCreateValues(rec.getInt(col)));
+        }
+        return symbolMap.getCursor();
+    }
+
+    private void calculate(Record rec, MapValues values) {
+        for (int i = 0, sz = aggregators.size(); i < sz; i++) {
+            aggregators.getQuick(i).calculate(rec, values);
+        }
+    }
+
+    private long fixedKey(Record rec, int i) {
+        switch (keyTypes[i]) {
+            case LONG:
+                return rec.getLong(keyIndices[i]);
+            case DATE:
+                return rec.getDate(keyIndices[i]);
+            default:
+                return rec.getInt(keyIndices[i]);
+        }
+    }
+}
@@ -22,26 +22,44 @@
 package com.nfsdb.ql.impl;
 
 import com.nfsdb.collections.AbstractImmutableIterator;
+import com.nfsdb.collections.IntIntHashMap;
 import com.nfsdb.collections.IntList;
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.JournalReaderFactory;
 import com.nfsdb.factory.configuration.RecordColumnMetadata;
 import com.nfsdb.factory.configuration.RecordMetadata;
-import com.nfsdb.ql.Record;
-import com.nfsdb.ql.RecordCursor;
-import com.nfsdb.ql.RecordSource;
-import com.nfsdb.ql.StorageFacade;
+import com.nfsdb.ql.*;
+import com.nfsdb.ql.collections.DirectLongMultiMap;
 import com.nfsdb.ql.collections.MultiMap;
 import com.nfsdb.ql.collections.MultiRecordMap;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.SymbolTable;
+import com.nfsdb.utils.Hash;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
-import java.io.Closeable;
-import java.io.IOException;
+import java.io.*;
 
 import static com.nfsdb.ql.impl.KeyWriterHelper.setKey;
 
+/**
+ * Joins master and slave sources on equality of key columns. Slave source is loaded into hash
+ * table, which is then probed by master records.
+ * <p>
+ * When join is on single INT, LONG, DATE or SYMBOL column and slave supports row id access, hash
+ * table is {@link DirectLongMultiMap} of key values to slave row ids, which avoids key
+ * serialisation. Symbol keys of master are translated into key space of slave symbol table.
+ * Slave records of other sources are kept in {@link MultiRecordMap}, which is keyed by single INT, LONG or
+ * DATE value as it is, other keys are serialised.
+ * Should this table grow beyond memory budget and master supports row id access too, both sides
+ * are partitioned by key hash into temporary files and partitions are joined one at a time. In this
+ * case output is no longer in master order.
+ */
 public class HashJoinRecordSource extends AbstractImmutableIterator<Record> implements RecordSource<Record>, Closeable, RecordCursor<Record> {
+    public static final long DEFAULT_MEMORY_BUDGET = 512 * 1024 * 1024L;
+    private static final int SPILL_PARTITION_BITS = 5;
+    private static final int SPILL_PARTITIONS = 1 << SPILL_PARTITION_BITS;
     private final RecordSource<? extends Record> masterSource;
     private final RecordSource<? extends Record> slaveSource;
     private final SplitRecordMetadata metadata;
@@ -54,26 +72,63 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
     private final boolean byRowId;
     private final boolean outer;
     private final NullRecord nullRecord;
+    private final ColumnType keyType;
+    private final long memoryBudget;
+    private final File spillDirectory;
+    private final IntIntHashMap symbolKeys = new IntIntHashMap();
+    private final SpillFile[] slaveSpill = new SpillFile[SPILL_PARTITIONS];
+    private final SpillFile[] masterSpill = new SpillFile[SPILL_PARTITIONS];
     private RecordCursor<? extends Record> slaveCursor;
     private RecordCursor<? extends Record> masterCursor;
     private MultiRecordMap hashTable;
     private RecordCursor<? extends Record> hashTableCursor;
+    private DirectLongMultiMap rowIdTable;
+    private RowCursor rowIdCursor;
+    private SymbolTable slaveSymbols;
+    private boolean built = false;
+    private boolean spilled = false;
+    private int spillPartition;
+    private SpillFile spillReader;
 
-    @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
     public HashJoinRecordSource(
             RecordSource<? extends Record> masterSource,
             ObjList<CharSequence> masterColumns,
             RecordSource<? extends Record> slaveSource,
             ObjList<CharSequence> slaveColumns,
             boolean outer) {
+        this(masterSource, masterColumns, slaveSource, slaveColumns, outer, DEFAULT_MEMORY_BUDGET, null);
+    }
+
+    /**
+     * @param memoryBudget   bytes of memory hash table of slave row ids is allowed to take before
+     *                       both sides are spilled to disk.
+     * @param spillDirectory directory for temporary files, null for default temporary directory.
+     */
+    @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
+    public HashJoinRecordSource(
+            RecordSource<? extends Record> masterSource,
+            ObjList<CharSequence> masterColumns,
+            RecordSource<? extends Record> slaveSource,
+            ObjList<CharSequence> slaveColumns,
+            boolean outer,
+            long memoryBudget,
+            File spillDirectory) {
         this.masterSource = masterSource;
         this.slaveSource = slaveSource;
         this.metadata = new SplitRecordMetadata(masterSource.getMetadata(), slaveSource.getMetadata());
         this.currentRecord = new SplitRecord(metadata, masterSource.getMetadata().getColumnCount());
         this.byRowId = slaveSource.supportsRowIdAccess();
-        this.hashTable = createRecordMap(masterSource, masterColumns, slaveSource, slaveColumns);
         this.outer = outer;
         this.nullRecord = new NullRecord(slaveSource.getMetadata());
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        ObjList<RecordColumnMetadata> keyCols = mapColumns(masterSource, masterColumns, slaveSource, slaveColumns);
+        this.keyType = primitiveKeyType();
+        if (keyType != null && byRowId) {
+            this.rowIdTable = new DirectLongMultiMap(1024, 1024 * 1024, 0.5f);
+        } else {
+            this.hashTable = byRowId ? new MultiRecordMap(keyCols, rowIdRecord.getMetadata()) : new MultiRecordMap(keyCols, slaveSource.getMetadata(), keyType != null);
+        }
     }
 
     @Override
@@ -82,6 +137,12 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
             hashTable.close();
             hashTable = null;
         }
+
+        if (rowIdTable != null) {
+            rowIdTable.close();
+            rowIdTable = null;
+        }
+        closeSpill();
     }
 
     @Override
@@ -103,15 +164,33 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
     public RecordCursor<Record> prepareCursor(JournalReaderFactory factory) throws JournalException {
         this.slaveCursor = slaveSource.prepareCursor(factory);
         this.masterCursor = masterSource.prepareCursor(factory);
-        buildHashTable();
+        if (rowIdTable == null) {
+            buildHashTable();
+        } else {
+            if (keyType == ColumnType.SYMBOL) {
+                slaveSymbols = slaveCursor.getSymFacade().getSymbolTable(slaveColumns.getQuick(0).getName());
+                symbolKeys.clear();
+            }
+            closeSpill();
+            rowIdCursor = null;
+            built = false;
+        }
         return this;
     }
 
     @Override
     public void reset() {
         hashTableCursor = null;
+        rowIdCursor = null;
         masterSource.reset();
-        hashTable.clear();
+        if (rowIdTable == null) {
+            hashTable.clear();
+        } else if (spilled) {
+            // partitions are consumed as they are joined, slave has to be loaded again
+            closeSpill();
+            slaveSource.reset();
+            built = false;
+        }
     }
 
     @Override
@@ -121,6 +200,18 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
 
     @Override
     public boolean hasNext() {
+        if (rowIdTable != null) {
+            if (rowIdCursor != null && rowIdCursor.hasNext()) {
+                currentRecord.setB(slaveCursor.getByRowId(rowIdCursor.next()));
+                return true;
+            }
+
+            if (!built) {
+                buildRowIdTable();
+            }
+            return spilled ? hasNextSpilled() : hasNextRowId();
+        }
+
         if (hashTableCursor != null && hashTableCursor.hasNext()) {
             Record rec = hashTableCursor.next();
             currentRecord.setB(byRowId ? slaveCursor.getByRowId(rec.getLong(0)) : rec);
@@ -135,8 +226,17 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
         return currentRecord;
     }
 
+    private static int spillPartition(long key) {
+        return (int) (Hash.hashLong(key) >>> (64 - SPILL_PARTITION_BITS));
+    }
+
     private void buildHashTable() {
         for (Record r : slaveCursor) {
+            if (keyType != null) {
+                hashTable.add(slaveKey(r), r);
+                continue;
+            }
+
             MultiMap.KeyWriter key = hashTable.claimKey();
             for (int i = 0, k = slaveColumns.size(); i < k; i++) {
                 setKey(key, r, slaveColumns.getQuick(i).getType(), slaveColIndex.getQuick(i));
@@ -149,26 +249,46 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
         }
     }
 
-    private MultiRecordMap createRecordMap(RecordSource<? extends Record> masterSource,
-                                           ObjList<CharSequence> masterColumns,
-                                           RecordSource<? extends Record> slaveSource,
-                                           ObjList<CharSequence> slaveColumns) {
-        RecordMetadata mm = masterSource.getMetadata();
-        for (int i = 0, k = masterColumns.size(); i < k; i++) {
-            int index = mm.getColumnIndex(masterColumns.getQuick(i));
-            this.masterColIndex.add(index);
-            this.masterColumns.add(mm.getColumnQuick(index));
+    private void buildRowIdTable() {
+        rowIdTable.clear();
+        spilled = false;
+        boolean canSpill = masterSource.supportsRowIdAccess();
+        for (Record r : slaveCursor) {
+            long key = slaveKey(r);
+            if (spilled) {
+                slaveSpill[spillPartition(key)].write(key, r.getRowId());
+            } else {
+                rowIdTable.add(key, r.getRowId());
+                if (canSpill && rowIdTable.getMemorySize() > memoryBudget) {
+                    spill();
+                }
+            }
         }
 
-        RecordMetadata sm = slaveSource.getMetadata();
-        ObjList<RecordColumnMetadata> keyCols = new ObjList<>();
-        for (int i = 0, k = slaveColumns.size(); i < k; i++) {
-            int index = sm.getColumnIndex(slaveColumns.getQuick(i));
-            this.slaveColIndex.add(index);
-            this.slaveColumns.add(sm.getColumnQuick(index));
-            keyCols.add(sm.getColumnQuick(index));
+        if (spilled) {
+            for (Record r : masterCursor) {
+                long key = masterKey(r);
+                masterSpill[spillPartition(key)].write(key, r.getRowId());
+            }
+            spillPartition = -1;
         }
-        return byRowId ? new MultiRecordMap(keyCols, rowIdRecord.getMetadata()) : new MultiRecordMap(keyCols, slaveSource.getMetadata());
+        built = true;
+    }
+
+    private void closeSpill() {
+        for (int i = 0; i < SPILL_PARTITIONS; i++) {
+            if (slaveSpill[i] != null) {
+                slaveSpill[i].close();
+                slaveSpill[i] = null;
+            }
+
+            if (masterSpill[i] != null) {
+                masterSpill[i].close();
+                masterSpill[i] = null;
+            }
+        }
+        spillReader = null;
+        spilled = false;
     }
 
     private boolean hasNext0() {
@@ -176,14 +296,16 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
             Record r = masterCursor.next();
             currentRecord.setA(r);
 
-            MultiMap.KeyWriter key = hashTable.claimKey();
-
-            for (int i = 0, k = masterColumns.size(); i < k; i++) {
-                setKey(key, r, masterColumns.getQuick(i).getType(), masterColIndex.getQuick(i));
+            if (keyType != null) {
+                hashTableCursor = hashTable.get(masterKey(r));
+            } else {
+                MultiMap.KeyWriter key = hashTable.claimKey();
+                for (int i = 0, k = masterColumns.size(); i < k; i++) {
+                    setKey(key, r, masterColumns.getQuick(i).getType(), masterColIndex.getQuick(i));
+                }
+                hashTableCursor = hashTable.get(key);
             }
 
-            hashTableCursor = hashTable.get(key);
-
             if (hashTableCursor.hasNext()) {
                 if (byRowId) {
                     currentRecord.setB(slaveCursor.getByRowId(hashTableCursor.next().getLong(0)));
@@ -199,4 +321,160 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
         }
         return false;
     }
+
+    private boolean hasNextRowId() {
+        while (masterCursor.hasNext()) {
+            Record r = masterCursor.next();
+            if (probe(r, masterKey(r))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasNextSpilled() {
+        while (true) {
+            if (spillReader == null) {
+                if (++spillPartition == SPILL_PARTITIONS) {
+                    return false;
+                }
+
+                // load slave partition, both files are consumed and removed
+                rowIdTable.clear();
+                SpillFile f = slaveSpill[spillPartition];
+                f.openRead();
+                while (f.hasNext()) {
+                    f.next();
+                    rowIdTable.add(f.getKey(), f.getValue());
+                }
+                f.close();
+                slaveSpill[spillPartition] = null;
+
+                spillReader = masterSpill[spillPartition];
+                masterSpill[spillPartition] = null;
+                spillReader.openRead();
+            }
+
+            if (spillReader.hasNext()) {
+                spillReader.next();
+                if (probe(masterCursor.getByRowId(spillReader.getValue()), spillReader.getKey())) {
+                    return true;
+                }
+            } else {
+                spillReader.close();
+                spillReader = null;
+            }
+        }
+    }
+
+    private ObjList<RecordColumnMetadata> mapColumns(RecordSource<? extends Record> masterSource,
+                                                     ObjList<CharSequence> masterColumns,
+                                                     RecordSource<? extends Record> slaveSource,
+                                                     ObjList<CharSequence> slaveColumns) {
+        RecordMetadata mm = masterSource.getMetadata();
+        for (int i = 0, k = masterColumns.size(); i < k; i++) {
+            int index = mm.getColumnIndex(masterColumns.getQuick(i));
+            this.masterColIndex.add(index);
+            this.masterColumns.add(mm.getColumnQuick(index));
+        }
+
+        RecordMetadata sm = slaveSource.getMetadata();
+        ObjList<RecordColumnMetadata> keyCols = new ObjList<>();
+        for (int i = 0, k = slaveColumns.size(); i < k; i++) {
+            int index = sm.getColumnIndex(slaveColumns.getQuick(i));
+            this.slaveColIndex.add(index);
+            this.slaveColumns.add(sm.getColumnQuick(index));
+            keyCols.add(sm.getColumnQuick(index));
+        }
+        return keyCols;
+    }
+
+    private long masterKey(Record r) {
+        int index = masterColIndex.getQuick(0);
+        switch (keyType) {
+            case INT:
+                return r.getInt(index);
+            case SYMBOL:
+                int key = r.getInt(index);
+                if (key < 0) {
+                    // nulls do not match
+                    return SymbolTable.VALUE_NOT_FOUND;
+                }
+
+                int slaveKey = symbolKeys.get(key);
+                if (slaveKey == -1) {
+                    slaveKey = slaveSymbols.getQuick(r.getSym(index));
+                    symbolKeys.put(key, slaveKey);
+                }
+                return slaveKey;
+            case DATE:
+                return r.getDate(index);
+            default:
+                return r.getLong(index);
+        }
+    }
+
+    private ColumnType primitiveKeyType() {
+        if (masterColumns.size() != 1) {
+            return null;
+        }
+
+        ColumnType type = masterColumns.getQuick(0).getType();
+        if (type != slaveColumns.getQuick(0).getType()) {
+            return null;
+        }
+
+        switch (type) {
+            case INT:
+            case LONG:
+            case DATE:
+                return type;
+            case SYMBOL:
+                // symbol keys are translated via symbol table of slave journal
+                return byRowId ? type : null;
+            default:
+                return null;
+        }
+    }
+
+    private boolean probe(Record master, long key) {
+        currentRecord.setA(master);
+        rowIdCursor = rowIdTable.get(key);
+        if (rowIdCursor.hasNext()) {
+            currentRecord.setB(slaveCursor.getByRowId(rowIdCursor.next()));
+            return true;
+        } else if (outer) {
+            rowIdCursor = null;
+            currentRecord.setB(nullRecord);
+            return true;
+        }
+        return false;
+    }
+
+    private long slaveKey(Record r) {
+        int index = slaveColIndex.getQuick(0);
+        switch (keyType) {
+            case INT:
+            case SYMBOL:
+                return r.getInt(index);
+            case DATE:
+                return r.getDate(index);
+            default:
+                return r.getLong(index);
+        }
+    }
+
+    private void spill() {
+        for (int i = 0; i < SPILL_PARTITIONS; i++) {
+            slaveSpill[i] = new SpillFile("join", spillDirectory);
+            masterSpill[i] = new SpillFile("join", spillDirectory);
+        }
+
+        for (long i = 0, n = rowIdTable.size(); i < n; i++) {
+            long key = rowIdTable.getKey(i);
+            slaveSpill[spillPartition(key)].write(key, rowIdTable.getValue(i));
+        }
+        rowIdTable.clear();
+        spilled = true;
+    }
 }
@@ -23,8 +23,11 @@ package com.nfsdb.ql.impl;
 
 import com.nfsdb.Partition;
 import com.nfsdb.collections.DirectInputStream;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.configuration.RecordMetadata;
 import com.nfsdb.io.sink.CharSink;
+import com.nfsdb.utils.Rows;
 
 import java.io.OutputStream;
 
@@ -86,9 +89,12 @@ public class JournalRecord extends AbstractRecord {
         return partition.getLong(rowid, col);
     }
 
+    /**
+     * @return journal-wide row id, which includes partition index.
+     */
     @Override
     public long getRowId() {
-        return rowid;
+        return Rows.toRowID(partition.getPartitionIndex(), rowid);
     }
 
     @Override
@@ -111,6 +117,26 @@ public class JournalRecord extends AbstractRecord {
         return partition.getSym(rowid, col);
     }
 
+    /**
+     * Positions record at journal-wide row id, as returned by {@link #getRowId()}. Partition is
+     * looked up via journal of current partition, so record must have been positioned before.
+     *
+     * @param rowId journal-wide row id
+     * @return this record
+     */
+    public JournalRecord seek(long rowId) {
+        int partitionIndex = Rows.toPartitionIndex(rowId);
+        if (partition.getPartitionIndex() != partitionIndex) {
+            try {
+                partition = partition.getJournal().getPartition(partitionIndex, true);
+            } catch (JournalException e) {
+                throw new JournalRuntimeException(e);
+            }
+        }
+        this.rowid = Rows.toLocalRowID(rowId);
+        return this;
+    }
+
     @Override
     public String toString() {
         return "DataItem{" +
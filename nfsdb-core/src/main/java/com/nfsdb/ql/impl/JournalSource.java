@@ -31,6 +31,7 @@ public class JournalSource extends AbstractJournalSource<JournalRecord> implemen
     private final PartitionSource partitionSource;
     private final RowSource rowSource;
     private final JournalRecord rec = new JournalRecord(this);
+    private final JournalRecord rowIdRec = new JournalRecord(this);
     private PartitionCursor partitionCursor;
     private RowCursor cursor;
 
@@ -44,8 +45,11 @@ public class JournalSource extends AbstractJournalSource<JournalRecord> implemen
 
     @Override
     public JournalRecord getByRowId(long rowId) {
-        rec.rowid = rowId;
-        return rec;
+        // separate record, random access must not move record of iteration
+        if (rowIdRec.partition == null) {
+            rowIdRec.partition = rec.partition;
+        }
+        return rowIdRec.seek(rowId);
     }
 
     @Override
@@ -62,6 +66,7 @@ public class JournalSource extends AbstractJournalSource<JournalRecord> implemen
     public RecordCursor<JournalRecord> prepareCursor(JournalReaderFactory factory) throws JournalException {
         this.partitionCursor = partitionSource.prepareCursor(factory);
         this.rowSource.prepare(partitionCursor.getStorageFacade());
+        this.rowIdRec.partition = null;
         return this;
     }
 
@@ -241,7 +241,8 @@ public class MemoryRecordAccessor extends AbstractRecord {
 
     @Override
     public String getSym(int col) {
-        return getStr(col).toString();
+        // symbols are kept as keys
+        return metadata.getColumnQuick(col).getSymbolTable().value(getInt(col));
     }
 
     public int getFixedBlockLength() {
@@ -0,0 +1,202 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.Partition;
+import com.nfsdb.collections.LongList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.collections.ObjectPoolFactory;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.ql.*;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Journal record source that evaluates row sources on a pool of worker threads. Each worker
+ * collects matching row ids of a partition slice into a list, lists are emitted in the order
+ * slices were published, so record order is the same as that of {@link JournalSource}.
+ * <p>
+ * Each worker owns a row source instance, because row sources are not safe to share between
+ * threads. Workers are started on first call to hasNext() and released when cursor is exhausted
+ * or source is reset. Workers of abandoned cursor exit on their own, see {@link SliceScanner}.
+ */
+@SuppressFBWarnings({"CD_CIRCULAR_DEPENDENCY"})
+public class ParallelJournalSource extends AbstractJournalSource<JournalRecord> implements RecordSource<JournalRecord>, RecordCursor<JournalRecord> {
+    private static final ObjectPoolFactory<LongList> LIST_FACTORY = new ObjectPoolFactory<LongList>() {
+        @Override
+        public LongList newInstance() {
+            return new LongList();
+        }
+    };
+    private final PartitionSource partitionSource;
+    private final ObjList<RowSource> rowSources;
+    private final ExecutorService executor;
+    private final long sliceRows;
+    private final SliceScanner<LongList> scanner;
+    private final JournalRecord rec = new JournalRecord(this);
+    private final JournalRecord rowIdRec = new JournalRecord(this);
+    private LongList rows;
+    private int rowPos;
+
+    /**
+     * @param partitionSource source of partition slices, iterated on the calling thread.
+     * @param rowSources      row source for each worker, instances must not be shared.
+     * @param executor        executor to run workers on.
+     * @param sliceRows       maximum number of rows in a unit of work. Partition slices larger than this
+     *                        are split, which balances load when there are fewer partitions than workers.
+     */
+    @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
+    public ParallelJournalSource(PartitionSource partitionSource, ObjList<RowSource> rowSources, ExecutorService executor, long sliceRows) {
+        super(partitionSource.getMetadata());
+        this.partitionSource = partitionSource;
+        this.rowSources = rowSources;
+        this.executor = executor;
+        this.sliceRows = sliceRows;
+        ObjList<RowSourceWorker> workers = new ObjList<>(rowSources.size());
+        for (int i = 0, n = rowSources.size(); i < n; i++) {
+            RowSource rs = rowSources.getQuick(i);
+            rs.configure(partitionSource.getMetadata());
+            workers.add(new RowSourceWorker(rs));
+        }
+        this.scanner = new SliceScanner<>(partitionSource, workers, LIST_FACTORY, executor, sliceRows);
+        this.rows = scanner.getResult();
+    }
+
+    @Override
+    public JournalRecord getByRowId(long rowId) {
+        // separate record, random access must not move record of iteration
+        if (rowIdRec.partition == null) {
+            rowIdRec.partition = rec.partition;
+        }
+        return rowIdRec.seek(rowId);
+    }
+
+    @Override
+    public StorageFacade getSymFacade() {
+        return scanner.getStorageFacade();
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return this;
+    }
+
+    @Override
+    public RecordCursor<JournalRecord> prepareCursor(JournalReaderFactory factory) throws JournalException {
+        scanner.prepare(factory);
+        rowPos = 0;
+        rows.clear();
+        rowIdRec.partition = null;
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        scanner.reset();
+        for (int i = 0, n = rowSources.size(); i < n; i++) {
+            rowSources.getQuick(i).reset();
+        }
+        rowPos = 0;
+        rows.clear();
+    }
+
+    @Override
+    public boolean supportsRowIdAccess() {
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (rowPos >= rows.size()) {
+            if (!scanner.next()) {
+                return false;
+            }
+            rows = scanner.getResult();
+            rec.partition = scanner.getPartition();
+            rowPos = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public JournalRecord next() {
+        rec.rowid = rows.getQuick(rowPos++);
+        return rec;
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelJournalSource{" +
+                "partitionSource=" + partitionSource +
+                ", rowSource=" + rowSources.getQuick(0) +
+                ", workers=" + rowSources.size() +
+                '}';
+    }
+
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    PartitionSource getPartitionSource() {
+        return partitionSource;
+    }
+
+    ObjList<RowSource> getRowSources() {
+        return rowSources;
+    }
+
+    long getSliceRows() {
+        return sliceRows;
+    }
+
+    private static class RowSourceWorker extends SliceScanner.Worker<LongList> {
+        private final RowSource rowSource;
+        private final PartitionSlice slice = new PartitionSlice();
+
+        private RowSourceWorker(RowSource rowSource) {
+            this.rowSource = rowSource;
+        }
+
+        @Override
+        public void prepare(StorageFacade facade) {
+            rowSource.prepare(facade);
+        }
+
+        @Override
+        public void scan(Partition partition, long lo, long hi, LongList rows) {
+            slice.partition = partition;
+            slice.lo = lo;
+            slice.hi = hi;
+            slice.calcHi = false;
+
+            RowCursor cursor = rowSource.prepareCursor(slice);
+            if (cursor != null) {
+                while (cursor.hasNext()) {
+                    rows.add(cursor.next());
+                }
+            }
+        }
+    }
+}
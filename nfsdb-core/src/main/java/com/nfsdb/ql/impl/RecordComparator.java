@@ -0,0 +1,169 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.IntList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.ql.Record;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.Chars;
+
+/**
+ * Compares records by list of key columns, each in ascending or descending order.
+ */
+class RecordComparator {
+    private final RecordMetadata metadata;
+    private final IntList columns = new IntList();
+    private final ObjList<ColumnType> types = new ObjList<>();
+    private final IntList descending = new IntList();
+
+    RecordComparator(RecordMetadata metadata) {
+        this.metadata = metadata;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            b.append(metadata.getColumnQuick(columns.getQuick(i)).getName());
+            if (descending.getQuick(i) == 1) {
+                b.append(" desc");
+            }
+        }
+        return b.toString();
+    }
+
+    void add(CharSequence column, boolean descending) {
+        int index = metadata.getColumnIndex(column);
+        ColumnType type = metadata.getColumnQuick(index).getType();
+        if (type == ColumnType.BINARY) {
+            throw new JournalRuntimeException("Cannot order by binary column %s", column);
+        }
+        this.columns.add(index);
+        this.types.add(type);
+        this.descending.add(descending ? 1 : 0);
+    }
+
+    int compare(Record l, Record r) {
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            int c = compare(l, r, columns.getQuick(i), types.getQuick(i));
+            if (c != 0) {
+                return descending.getQuick(i) == 1 ? -c : c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return true when there is single key column, which {@link #key(Record)} can convert to long.
+     */
+    boolean isPrimitive() {
+        if (columns.size() != 1) {
+            return false;
+        }
+
+        switch (types.getQuick(0)) {
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case DATE:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Converts key of record to long, which compares as key value does in the order requested.
+     * Valid only when {@link #isPrimitive()} is true.
+     */
+    long key(Record r) {
+        int col = columns.getQuick(0);
+        long k;
+        switch (types.getQuick(0)) {
+            case BOOLEAN:
+                k = r.getBool(col) ? 1 : 0;
+                break;
+            case BYTE:
+                k = r.get(col);
+                break;
+            case SHORT:
+                k = r.getShort(col);
+                break;
+            case INT:
+                k = r.getInt(col);
+                break;
+            case DATE:
+                k = r.getDate(col);
+                break;
+            case FLOAT:
+                // flip all but sign bit of negative values to make bits of floats compare as signed ints
+                int f = Float.floatToRawIntBits(r.getFloat(col));
+                k = f ^ ((f >> 31) & Integer.MAX_VALUE);
+                break;
+            case DOUBLE:
+                long d = Double.doubleToRawLongBits(r.getDouble(col));
+                k = d ^ ((d >> 63) & Long.MAX_VALUE);
+                break;
+            default:
+                k = r.getLong(col);
+                break;
+        }
+        return descending.getQuick(0) == 1 ? ~k : k;
+    }
+
+    private static int compare(Record l, Record r, int col, ColumnType type) {
+        switch (type) {
+            case BOOLEAN:
+                return Boolean.compare(l.getBool(col), r.getBool(col));
+            case BYTE:
+                return Byte.compare(l.get(col), r.get(col));
+            case SHORT:
+                return Short.compare(l.getShort(col), r.getShort(col));
+            case INT:
+                return Integer.compare(l.getInt(col), r.getInt(col));
+            case LONG:
+                return Long.compare(l.getLong(col), r.getLong(col));
+            case DATE:
+                return Long.compare(l.getDate(col), r.getDate(col));
+            case FLOAT:
+                return Float.compare(l.getFloat(col), r.getFloat(col));
+            case DOUBLE:
+                return Double.compare(l.getDouble(col), r.getDouble(col));
+            case STRING:
+                return Chars.compare(l.getFlyweightStr(col), r.getFlyweightStr(col));
+            case SYMBOL:
+                return Chars.compare(l.getSym(col), r.getSym(col));
+            default:
+                throw new JournalRuntimeException("Unsupported type: " + type);
+        }
+    }
+}
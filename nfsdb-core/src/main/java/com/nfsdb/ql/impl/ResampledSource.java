@@ -22,8 +22,11 @@
 package com.nfsdb.ql.impl;
 
 
+import com.nfsdb.Partition;
 import com.nfsdb.collections.AbstractImmutableIterator;
+import com.nfsdb.collections.Mutable;
 import com.nfsdb.collections.ObjList;
+import com.nfsdb.collections.ObjectPoolFactory;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.JournalReaderFactory;
@@ -31,24 +34,49 @@ import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.factory.configuration.RecordColumnMetadata;
 import com.nfsdb.factory.configuration.RecordMetadata;
 import com.nfsdb.ql.*;
+import com.nfsdb.ql.collections.FixedKeyMap;
 import com.nfsdb.ql.collections.MapRecordValueInterceptor;
 import com.nfsdb.ql.collections.MapValues;
 import com.nfsdb.ql.collections.MultiMap;
+import com.nfsdb.storage.ColumnType;
 import com.nfsdb.utils.Dates;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+/**
+ * Aggregates records by time sample and key columns. Records are expected in timestamp order,
+ * which is the order journal sources produce them in. Samples are aggregated and emitted one at a
+ * time as soon as timestamp crosses sample boundary, so that memory is proportional to number of
+ * keys in a sample rather than to number of samples.
+ * <p>
+ * When underlying source is {@link ParallelJournalSource}, partition slices are aggregated on
+ * its worker threads, each into a map of its own. Entries of partial maps are then merged in slice
+ * order on the calling thread via {@link AggregatorFunction#combine(MapValues, MapValues)}, one
+ * sample at a time, so that output is the same as that of sequential aggregation.
+ * <p>
+ * Sample and at most one INT, SYMBOL, LONG or DATE key column are kept in {@link FixedKeyMap},
+ * which takes key values as they are instead of writing them out and hashing memory.
+ */
 @SuppressFBWarnings({"LII_LIST_INDEXED_ITERATING"})
 public class ResampledSource extends AbstractImmutableIterator<Record> implements RecordSource<Record>, RecordCursor<Record> {
 
+    // maps hold one sample, or one slice in case of partials, and grow when there are more keys
+    private static final int MAP_CAPACITY = 1024;
+    private static final int MAP_DATA_SIZE = 64 * 1024;
     private final MultiMap map;
+    private final FixedKeyMap fixedMap;
     private final RecordSource<? extends Record> recordSource;
     private final int[] keyIndices;
+    private final ColumnType[] keyTypes;
     private final int tsIndex;
+    private final int sampleIndex;
     private final ObjList<AggregatorFunction> aggregators;
     private final SampleBy sampleBy;
+    private final SliceScanner<Partial> scanner;
     private RecordCursor<? extends Record> recordCursor;
     private RecordCursor<Record> mapRecordSource;
     private Record nextRecord = null;
+    private RecordCursor<Record> partialCursor;
+    private Partial partial;
 
     @SuppressFBWarnings({"LII_LIST_INDEXED_ITERATING"})
     public ResampledSource(
@@ -61,9 +89,10 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
 
         int keyColumnsSize = keyColumns.size();
         this.keyIndices = new int[keyColumnsSize];
+        this.keyTypes = new ColumnType[keyColumnsSize];
         // define key columns
 
-        ObjList<RecordColumnMetadata> keyCols = new ObjList<>();
+        final ObjList<RecordColumnMetadata> keyCols = new ObjList<>();
 
         RecordMetadata rm = recordSource.getMetadata();
         this.tsIndex = rm.getColumnIndex(timestampMetadata.name);
@@ -72,12 +101,13 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
             ColumnMetadata cm = keyColumns.getQuick(i);
             keyCols.add(cm);
             keyIndices[i] = rm.getColumnIndex(cm.name);
+            keyTypes[i] = rm.getColumnQuick(keyIndices[i]).getType();
         }
 
         this.aggregators = aggregators;
 
-        ObjList<RecordColumnMetadata> valueCols = new ObjList<>();
-        ObjList<MapRecordValueInterceptor> interceptors = new ObjList<>();
+        final ObjList<RecordColumnMetadata> valueCols = new ObjList<>();
+        final ObjList<MapRecordValueInterceptor> interceptors = new ObjList<>();
         // take value columns from aggregator function
         int index = 0;
         for (int i = 0, sz = aggregators.size(); i < sz; i++) {
@@ -96,9 +126,38 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
             }
         }
 
-        this.map = new MultiMap(valueCols, keyCols, interceptors);
+        // sample is the first key column
+        this.sampleIndex = valueCols.size();
+        final boolean fixed = FixedKeyMap.supports(keyCols);
+        if (fixed) {
+            this.fixedMap = new FixedKeyMap(MAP_CAPACITY, 0.5f, valueCols, keyCols, interceptors);
+            this.map = null;
+        } else {
+            this.fixedMap = null;
+            this.map = new MultiMap(MAP_CAPACITY, MAP_DATA_SIZE, 0.5f, valueCols, keyCols, interceptors);
+        }
         this.recordSource = recordSource;
         this.sampleBy = sampleBy;
+
+        if (recordSource instanceof ParallelJournalSource) {
+            ParallelJournalSource src = (ParallelJournalSource) recordSource;
+            ObjList<RowSource> rowSources = src.getRowSources();
+            ObjList<AggregatingWorker> workers = new ObjList<>(rowSources.size());
+            for (int i = 0, n = rowSources.size(); i < n; i++) {
+                workers.add(new AggregatingWorker(rowSources.getQuick(i), rm));
+            }
+
+            this.scanner = new SliceScanner<>(src.getPartitionSource(), workers, new ObjectPoolFactory<Partial>() {
+                @Override
+                public Partial newInstance() {
+                    return fixed ?
+                            new Partial(null, new FixedKeyMap(MAP_CAPACITY, 0.5f, valueCols, keyCols, interceptors)) :
+                            new Partial(new MultiMap(MAP_CAPACITY, MAP_DATA_SIZE, 0.5f, valueCols, keyCols, interceptors), null);
+                }
+            }, src.getExecutor(), src.getSliceRows());
+        } else {
+            this.scanner = null;
+        }
     }
 
     @Override
@@ -113,19 +172,31 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
 
     @Override
     public RecordMetadata getMetadata() {
-        return map.getMetadata();
+        return fixedMap != null ? fixedMap.getMetadata() : map.getMetadata();
     }
 
     @Override
     public RecordCursor<Record> prepareCursor(JournalReaderFactory factory) throws JournalException {
         this.recordCursor = recordSource.prepareCursor(factory);
+        if (scanner != null) {
+            scanner.prepare(factory);
+            partialCursor = null;
+        }
+        nextRecord = null;
+        mapRecordSource = null;
         return this;
     }
 
     @Override
     public void reset() {
         recordSource.reset();
-        map.clear();
+        clearMap();
+        if (scanner != null) {
+            scanner.reset();
+            partialCursor = null;
+        }
+        nextRecord = null;
+        mapRecordSource = null;
     }
 
     @Override
@@ -135,7 +206,7 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
 
     @Override
     public boolean hasNext() {
-        return mapRecordSource != null && mapRecordSource.hasNext() || buildMap();
+        return mapRecordSource != null && mapRecordSource.hasNext() || (scanner == null ? buildMap() : mergeMap());
     }
 
     @Override
@@ -143,6 +214,48 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
         return mapRecordSource.next();
     }
 
+    @Override
+    public String toString() {
+        return "ResampledSource{" +
+                "recordSource=" + recordSource +
+                ", sampleBy=" + sampleBy +
+                ", parallel=" + (scanner != null) +
+                '}';
+    }
+
+    private void aggregate(Partial partial, Record rec, long sample) {
+        aggregate(partial.map, partial.fixedMap, rec, sample);
+    }
+
+    private void aggregate(MultiMap map, FixedKeyMap fixedMap, Record rec, long sample) {
+        if (fixedMap != null) {
+            calculate(rec, fixedMap.getOrCreateValues(sample, keyIndices.length == 0 ? 0 : fixedKey(rec)));
+            return;
+        }
+
+        MultiMap.KeyWriter keyWriter = map.keyWriter();
+        keyWriter.putLong(sample);
+        for (int i = 0; i < keyIndices.length; i++) {
+            switch (keyTypes[i]) {
+                case LONG:
+                    keyWriter.putLong(rec.getLong(keyIndices[i]));
+                    break;
+                case INT:
+                    keyWriter.putInt(rec.getInt(keyIndices[i]));
+                    break;
+                case STRING:
+                    keyWriter.putStr(rec.getStr(keyIndices[i]));
+                    break;
+                case SYMBOL:
+                    keyWriter.putInt(rec.getInt(keyIndices[i]));
+                    break;
+                default:
+                    throw new JournalRuntimeException("Unsupported type: " + keyTypes[i]);
+            }
+        }
+        calculate(rec, map.getOrCreateValues(keyWriter));
+    }
+
     private boolean buildMap() {
 
         long current = 0;
@@ -151,7 +264,7 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
         Record rec;
 
 
-        map.clear();
+        clearMap();
 
         if (nextRecord != null) {
             rec = nextRecord;
@@ -163,25 +276,7 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
         }
 
         do {
-            switch (sampleBy) {
-                case YEAR:
-                    sample = Dates.floorYYYY(rec.getLong(tsIndex));
-                    break;
-                case MONTH:
-                    sample = Dates.floorMM(rec.getLong(tsIndex));
-                    break;
-                case DAY:
-                    sample = Dates.floorDD(rec.getLong(tsIndex));
-                    break;
-                case HOUR:
-                    sample = Dates.floorHH(rec.getLong(tsIndex));
-                    break;
-                case MINUTE:
-                    sample = Dates.floorMI(rec.getLong(tsIndex));
-                    break;
-                default:
-                    sample = 0;
-            }
+            sample = sample(rec.getLong(tsIndex));
 
             if (first) {
                 current = sample;
@@ -192,31 +287,7 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
             }
 
             // we are inside of time window, compute aggregates
-            MultiMap.KeyWriter keyWriter = map.keyWriter();
-            keyWriter.putLong(sample);
-            for (int i = 0; i < keyIndices.length; i++) {
-                switch (recordSource.getMetadata().getColumnQuick(i + 1).getType()) {
-                    case LONG:
-                        keyWriter.putLong(rec.getLong(keyIndices[i]));
-                        break;
-                    case INT:
-                        keyWriter.putInt(rec.getInt(keyIndices[i]));
-                        break;
-                    case STRING:
-                        keyWriter.putStr(rec.getStr(keyIndices[i]));
-                        break;
-                    case SYMBOL:
-                        keyWriter.putInt(rec.getInt(keyIndices[i]));
-                        break;
-                    default:
-                        throw new JournalRuntimeException("Unsupported type: " + recordSource.getMetadata().getColumn(i + 1).getType());
-                }
-            }
-            MapValues values = map.getOrCreateValues(keyWriter);
-
-            for (int i = 0, sz = aggregators.size(); i < sz; i++) {
-                aggregators.getQuick(i).calculate(rec, values);
-            }
+            aggregate(map, fixedMap, rec, sample);
 
             if (!recordCursor.hasNext()) {
                 nextRecord = null;
@@ -227,11 +298,169 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
 
         } while (true);
 
-        return (mapRecordSource = map.getCursor()).hasNext();
+        return (mapRecordSource = fixedMap != null ? fixedMap.getCursor() : map.getCursor()).hasNext();
+    }
+
+    /**
+     * Same as {@link #buildMap()}, except that records are entries of partial maps rather than
+     * records of underlying source. Partial entries come out in time order because slices are
+     * iterated in order and entries of a map come out in the order keys were added.
+     */
+    private boolean mergeMap() {
+        long current = 0;
+        long sample;
+        boolean first = true;
+        Record rec;
+
+        clearMap();
+
+        if (nextRecord != null) {
+            rec = nextRecord;
+        } else if ((rec = nextPartialRecord()) == null) {
+            return false;
+        }
+
+        do {
+            sample = rec.getLong(sampleIndex);
+
+            if (first) {
+                current = sample;
+                first = false;
+            } else if (sample != current) {
+                // record stays valid because partial cursor is not advanced until next call
+                nextRecord = rec;
+                break;
+            }
+
+            if (fixedMap != null) {
+                fixedMap.merge(partial.fixedMap, rec.getRowId(), aggregators);
+            } else {
+                map.merge(partial.map, rec.getRowId(), aggregators);
+            }
+
+            if ((rec = nextPartialRecord()) == null) {
+                nextRecord = null;
+                break;
+            }
+        } while (true);
+
+        return (mapRecordSource = fixedMap != null ? fixedMap.getCursor() : map.getCursor()).hasNext();
+    }
+
+    private Record nextPartialRecord() {
+        while (partialCursor == null || !partialCursor.hasNext()) {
+            if (!scanner.next()) {
+                return null;
+            }
+            partial = scanner.getResult();
+            partialCursor = partial.getCursor();
+        }
+        return partialCursor.next();
+    }
+
+    private void calculate(Record rec, MapValues values) {
+        for (int i = 0, sz = aggregators.size(); i < sz; i++) {
+            aggregators.getQuick(i).calculate(rec, values);
+        }
+    }
+
+    private void clearMap() {
+        if (fixedMap != null) {
+            fixedMap.clear();
+        } else {
+            map.clear();
+        }
+    }
+
+    private long fixedKey(Record rec) {
+        switch (keyTypes[0]) {
+            case LONG:
+                return rec.getLong(keyIndices[0]);
+            case DATE:
+                return rec.getDate(keyIndices[0]);
+            default:
+                return rec.getInt(keyIndices[0]);
+        }
     }
 
+    private long sample(long timestamp) {
+        switch (sampleBy) {
+            case YEAR:
+                return Dates.floorYYYY(timestamp);
+            case MONTH:
+                return Dates.floorMM(timestamp);
+            case DAY:
+                return Dates.floorDD(timestamp);
+            case HOUR:
+                return Dates.floorHH(timestamp);
+            case MINUTE:
+                return Dates.floorMI(timestamp);
+            case SECOND:
+                return Dates.floorSS(timestamp);
+            default:
+                return 0;
+        }
+    }
 
     public enum SampleBy {
         YEAR, MONTH, DAY, HOUR, MINUTE, SECOND
     }
+
+    private static class Partial implements Mutable {
+        private final MultiMap map;
+        private final FixedKeyMap fixedMap;
+
+        private Partial(MultiMap map, FixedKeyMap fixedMap) {
+            this.map = map;
+            this.fixedMap = fixedMap;
+        }
+
+        @Override
+        public void clear() {
+            if (fixedMap != null) {
+                fixedMap.clear();
+            } else {
+                map.clear();
+            }
+        }
+
+        private RecordCursor<Record> getCursor() {
+            return fixedMap != null ? fixedMap.getCursor() : map.getCursor();
+        }
+    }
+
+    private class AggregatingWorker extends SliceScanner.Worker<Partial> {
+        private final RowSource rowSource;
+        private final PartitionSlice slice = new PartitionSlice();
+        private final JournalRecord rec;
+
+        private AggregatingWorker(RowSource rowSource, RecordMetadata metadata) {
+            this.rowSource = rowSource;
+            this.rec = new JournalRecord(metadata);
+        }
+
+        @Override
+        public void prepare(StorageFacade facade) {
+            rowSource.prepare(facade);
+        }
+
+        @Override
+        public void scan(Partition partition, long lo, long hi, Partial result) {
+            slice.partition = partition;
+            slice.lo = lo;
+            slice.hi = hi;
+            slice.calcHi = false;
+
+            RowCursor cursor = rowSource.prepareCursor(slice);
+            if (cursor == null) {
+                return;
+            }
+
+            rec.partition = partition;
+            while (cursor.hasNext()) {
+                rec.rowid = cursor.next();
+                aggregate(result, rec, sample(rec.getLong(tsIndex)));
+            }
+        }
+    }
 }
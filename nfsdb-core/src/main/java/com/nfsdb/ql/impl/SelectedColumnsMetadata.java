@@ -113,6 +113,10 @@ public class SelectedColumnsMetadata implements RecordMetadata {
     }
 
     private RecordColumnMetadata meta(RecordColumnMetadata from, String newName) {
+        if (newName.equals(from.getName())) {
+            // symbol table of journal column is set when journal opens, copy would not see it
+            return from;
+        }
         ColumnMetadata m = new ColumnMetadata();
         m.name = newName;
         m.distinctCountHint = from.getBucketCount();
@@ -0,0 +1,520 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.Journal;
+import com.nfsdb.Partition;
+import com.nfsdb.collections.Mutable;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.collections.ObjectPoolFactory;
+import com.nfsdb.concurrent.*;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.JournalCachingFactory;
+import com.nfsdb.factory.JournalFactory;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.ql.PartitionCursor;
+import com.nfsdb.ql.PartitionSlice;
+import com.nfsdb.ql.PartitionSource;
+import com.nfsdb.ql.StorageFacade;
+import com.nfsdb.utils.Numbers;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Processes partition slices on a pool of worker threads and hands results back to the calling
+ * thread in the order slices were taken from partition source. Slices are published to workers
+ * via ring queue, each worker fills in result object and publishes it back. Result objects are
+ * pooled and exchanged between threads, so there is no allocation once scanner is warmed up.
+ * <p>
+ * Each worker opens its own journal reader through reader factory scanner is prepared with, because
+ * partitions are not safe to share between threads. Caching factory hands out one instance per journal,
+ * so workers open readers through plain factory of the same configuration instead. Worker readers are
+ * moved to transaction of calling thread's journal, so that workers see the same rows as the caller.
+ * <p>
+ * Workers are started on first call to next() and released when scan is exhausted, fails or scanner is
+ * reset. Caller can also abandon scan half way, for example when it needs only first few results. Workers,
+ * which have had nothing to do for {@link #IDLE_TIMEOUT} since caller last asked for result, exit and return
+ * their threads to executor. They keep result they could not publish and are started again if caller
+ * resumes the scan.
+ *
+ * @param <T> type of slice result
+ */
+@SuppressFBWarnings({"CD_CIRCULAR_DEPENDENCY"})
+public class SliceScanner<T extends Mutable> {
+    public static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+    private final PartitionSource partitionSource;
+    private final ObjList<? extends Worker<T>> workers;
+    private final ObjList<WorkerRunnable> runnables;
+    private final ExecutorService executor;
+    private final long sliceRows;
+    private final int cycle;
+    private final int mask;
+    private final RingQueue<SliceTask> tasks;
+    private final RingQueue<SliceResult<T>> results;
+    private final Object[] pendingResults;
+    private final Partition[] pendingPartitions;
+    private final boolean[] pendingReady;
+    private final WaitStrategy waitStrategy = new YieldingWaitStrategy();
+    private JournalReaderFactory factory;
+    private PartitionCursor partitionCursor;
+    private SPSequence taskPubSeq;
+    private MCSequence taskSubSeq;
+    private MPSequence resultPubSeq;
+    private SCSequence resultSubSeq;
+    private volatile boolean halted = true;
+    // time caller last asked for result, workers give up waiting when it is too long ago
+    private volatile long accessTime;
+    private boolean started = false;
+    private T result;
+    private Partition resultPartition;
+    private long published;
+    private long emitted;
+    private Partition partition;
+    private long sliceLo;
+    private long sliceHi;
+    private long txn;
+    private long txPin;
+
+    /**
+     * @param partitionSource source of partition slices, iterated on the calling thread.
+     * @param workers         slice workers, one thread is used per worker.
+     * @param resultFactory   creates result objects.
+     * @param executor        executor to run workers on.
+     * @param sliceRows       maximum number of rows in a unit of work. Partition slices larger than this
+     *                        are split, which balances load when there are fewer partitions than workers.
+     */
+    @SuppressWarnings("unchecked")
+    public SliceScanner(PartitionSource partitionSource, ObjList<? extends Worker<T>> workers, final ObjectPoolFactory<T> resultFactory, ExecutorService executor, long sliceRows) {
+        this.partitionSource = partitionSource;
+        this.workers = workers;
+        this.executor = executor;
+        this.sliceRows = sliceRows;
+        // allow two units of work in flight per worker
+        this.cycle = Numbers.ceilPow2(workers.size() * 2);
+        this.mask = cycle - 1;
+        this.tasks = new RingQueue<>(SliceTask.FACTORY, cycle);
+        this.results = new RingQueue<>(new RingEntryFactory<SliceResult<T>>() {
+            @Override
+            public SliceResult<T> newInstance() {
+                return new SliceResult<>(resultFactory.newInstance());
+            }
+        }, cycle);
+        this.pendingResults = new Object[cycle];
+        this.pendingPartitions = new Partition[cycle];
+        this.pendingReady = new boolean[cycle];
+        for (int i = 0; i < cycle; i++) {
+            pendingResults[i] = resultFactory.newInstance();
+        }
+        this.result = resultFactory.newInstance();
+        this.runnables = new ObjList<>(workers.size());
+        for (int i = 0, n = workers.size(); i < n; i++) {
+            runnables.add(new WorkerRunnable(workers.getQuick(i), resultFactory.newInstance()));
+        }
+    }
+
+    /**
+     * @return partition current result belongs to. This is partition instance of calling thread.
+     */
+    public Partition getPartition() {
+        return resultPartition;
+    }
+
+    public PartitionSource getPartitionSource() {
+        return partitionSource;
+    }
+
+    public T getResult() {
+        return result;
+    }
+
+    public StorageFacade getStorageFacade() {
+        return partitionCursor.getStorageFacade();
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * Advances to result of next slice, blocking until it is available.
+     *
+     * @return false when all slices have been processed.
+     */
+    public boolean next() {
+        if (!started) {
+            start();
+        }
+
+        accessTime = System.nanoTime();
+        publish();
+
+        if (emitted == published) {
+            // nothing in flight and nothing left to publish
+            halt();
+            return false;
+        }
+
+        int slot = (int) (emitted & mask);
+        while (!pendingReady[slot]) {
+            receive();
+        }
+
+        T t = result;
+        result = pendingResult(slot);
+        pendingResults[slot] = t;
+        pendingReady[slot] = false;
+        resultPartition = pendingPartitions[slot];
+        pendingPartitions[slot] = null;
+        emitted++;
+        return true;
+    }
+
+    public void prepare(JournalReaderFactory factory) throws JournalException {
+        halt();
+        this.factory = factory instanceof JournalCachingFactory ? new JournalFactory(factory.getConfiguration()) : factory;
+        this.partitionCursor = partitionSource.prepareCursor(factory);
+        this.started = false;
+    }
+
+    public void reset() {
+        halt();
+        if (partitionCursor != null) {
+            partitionCursor.reset();
+        }
+        started = false;
+    }
+
+    @Override
+    public String toString() {
+        return "SliceScanner{" +
+                "partitionSource=" + partitionSource +
+                ", workers=" + workers.size() +
+                '}';
+    }
+
+    private void halt() {
+        halted = true;
+        for (int i = 0, n = runnables.size(); i < n; i++) {
+            WorkerRunnable r = runnables.getQuick(i);
+            while (r.running) {
+                LockSupport.parkNanos(MAX_PARK);
+            }
+            r.held = false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T pendingResult(int slot) {
+        return (T) pendingResults[slot];
+    }
+
+    @SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CHECKED"})
+    private void publish() {
+        while (published - emitted < cycle) {
+            if (sliceLo > sliceHi) {
+                if (!partitionCursor.hasNext()) {
+                    return;
+                }
+
+                PartitionSlice slice = partitionCursor.next();
+                try {
+                    partition = slice.partition.open();
+                    Journal journal = partition.getJournal();
+                    txn = journal.getTxn();
+                    txPin = journal.getTxPin();
+                    sliceLo = slice.lo;
+                    sliceHi = slice.calcHi ? partition.size() - 1 : slice.hi;
+                } catch (JournalException e) {
+                    throw new JournalRuntimeException(e);
+                }
+                continue;
+            }
+
+            long cursor = taskPubSeq.next();
+            if (cursor < 0) {
+                return;
+            }
+
+            long hi = sliceHi - sliceLo < sliceRows ? sliceHi : sliceLo + sliceRows - 1;
+            SliceTask task = tasks.get(cursor);
+            task.seq = published;
+            task.txn = txn;
+            task.txPin = txPin;
+            task.partitionIndex = partition.getPartitionIndex();
+            task.lo = sliceLo;
+            task.hi = hi;
+            pendingPartitions[(int) (published & mask)] = partition;
+            sliceLo = hi + 1;
+            published++;
+            taskPubSeq.done(cursor);
+        }
+    }
+
+    private void receive() {
+        long cursor;
+        while ((cursor = resultSubSeq.next()) < 0) {
+            accessTime = System.nanoTime();
+            resume();
+            waitStrategy.await((int) cursor);
+        }
+        SliceResult<T> r = results.get(cursor);
+        Throwable error = r.error;
+        if (error != null) {
+            r.error = null;
+            resultSubSeq.done(cursor);
+            halt();
+            throw new JournalRuntimeException(error);
+        }
+
+        int slot = (int) (r.seq & mask);
+        T t = pendingResult(slot);
+        pendingResults[slot] = r.result;
+        r.result = t;
+        pendingReady[slot] = true;
+        resultSubSeq.done(cursor);
+    }
+
+    private void start() {
+        taskPubSeq = new SPSequence(cycle);
+        taskSubSeq = new MCSequence(cycle, waitStrategy);
+        taskPubSeq.followedBy(taskSubSeq);
+        taskSubSeq.followedBy(taskPubSeq);
+
+        resultPubSeq = new MPSequence(cycle, waitStrategy);
+        resultSubSeq = new SCSequence(waitStrategy);
+        resultPubSeq.followedBy(resultSubSeq);
+        resultSubSeq.followedBy(resultPubSeq);
+
+        published = 0;
+        emitted = 0;
+        sliceLo = 0;
+        sliceHi = -1;
+        resultPartition = null;
+        Arrays.fill(pendingReady, false);
+        Arrays.fill(pendingPartitions, null);
+
+        halted = false;
+        accessTime = System.nanoTime();
+        resume();
+        started = true;
+    }
+
+    /**
+     * Starts workers, which are not running. Workers exit when they have been idle for too long and are
+     * started again here once caller comes back for results.
+     */
+    private void resume() {
+        for (int i = 0, n = runnables.size(); i < n; i++) {
+            WorkerRunnable r = runnables.getQuick(i);
+            if (!r.running) {
+                r.running = true;
+                executor.submit(r);
+            }
+        }
+    }
+
+    /**
+     * Processes slices on worker thread. Each instance is used by one thread at a time.
+     *
+     * @param <T> type of slice result
+     */
+    public abstract static class Worker<T extends Mutable> {
+        /**
+         * Called on worker thread before first slice of a scan.
+         *
+         * @param facade storage facade of worker's own journal reader.
+         */
+        public abstract void prepare(StorageFacade facade);
+
+        /**
+         * Processes rows lo..hi of partition. Result object is cleared before this call.
+         *
+         * @param partition partition instance of worker's own journal reader.
+         * @param lo        first row, inclusive
+         * @param hi        last row, inclusive
+         * @param result    result to fill in
+         */
+        public abstract void scan(Partition partition, long lo, long hi, T result);
+    }
+
+    private static class SliceTask {
+        private static final RingEntryFactory<SliceTask> FACTORY = new RingEntryFactory<SliceTask>() {
+            @Override
+            public SliceTask newInstance() {
+                return new SliceTask();
+            }
+        };
+        private long seq;
+        private long txn;
+        private long txPin;
+        private int partitionIndex;
+        private long lo;
+        private long hi;
+    }
+
+    private static class SliceResult<T> {
+        private long seq;
+        private T result;
+        private Throwable error;
+
+        private SliceResult(T result) {
+            this.result = result;
+        }
+    }
+
+    private class WorkerRunnable implements Runnable {
+        private final Worker<T> worker;
+        private final MasterStorageFacade storageFacade = new MasterStorageFacade();
+        // set by calling thread before worker is submitted and cleared by worker on exit
+        private volatile boolean running = false;
+        // result of slice worker could not publish before it exited
+        private boolean held = false;
+        private T result;
+        private long resultSeq;
+        private Throwable resultError;
+
+        private WorkerRunnable(Worker<T> worker, T result) {
+            this.worker = worker;
+            this.result = result;
+        }
+
+        @SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CONSTRAINTS"})
+        @Override
+        public void run() {
+            Journal journal = null;
+            Throwable error = null;
+            try {
+                journal = factory.reader(partitionSource.getMetadata());
+                storageFacade.setJournal(journal);
+                storageFacade.setFactory(factory);
+                worker.prepare(storageFacade);
+            } catch (Throwable e) {
+                error = e;
+            }
+
+            try {
+                while (true) {
+                    if (!held) {
+                        long cursor = nextTask();
+                        if (cursor < 0) {
+                            break;
+                        }
+                        SliceTask task = tasks.get(cursor);
+                        long txn = task.txn;
+                        long txPin = task.txPin;
+                        int partitionIndex = task.partitionIndex;
+                        long lo = task.lo;
+                        long hi = task.hi;
+                        resultSeq = task.seq;
+                        taskSubSeq.done(cursor);
+
+                        resultError = error;
+                        result.clear();
+                        if (error == null) {
+                            try {
+                                if ((journal.getTxn() != txn || journal.getTxPin() != txPin) && !journal.refresh(txn, txPin)) {
+                                    throw new JournalException("Transaction %d is not in transaction log of %s", txn, journal.getLocation());
+                                }
+                                worker.scan(journal.getPartition(partitionIndex, true), lo, hi, result);
+                            } catch (Throwable t) {
+                                resultError = t;
+                            }
+                        }
+                        held = true;
+                    }
+
+                    long cursor = nextResult();
+                    if (cursor < 0) {
+                        break;
+                    }
+
+                    SliceResult<T> r = results.get(cursor);
+                    T t = r.result;
+                    r.result = result;
+                    result = t;
+                    r.seq = resultSeq;
+                    r.error = resultError;
+                    resultError = null;
+                    held = false;
+                    resultPubSeq.done(cursor);
+                }
+            } finally {
+                if (journal != null) {
+                    journal.close();
+                }
+                running = false;
+            }
+        }
+
+        private boolean idle() {
+            return halted || System.nanoTime() - accessTime > IDLE_TIMEOUT;
+        }
+
+        private long nextResult() {
+            long park = 1;
+            while (true) {
+                long cursor = resultPubSeq.next();
+                if (cursor > -1) {
+                    return cursor;
+                }
+
+                if (idle()) {
+                    return -1;
+                }
+
+                if (cursor == -1) {
+                    LockSupport.parkNanos(park);
+                    park = Math.min(park << 1, MAX_PARK);
+                }
+            }
+        }
+
+        private long nextTask() {
+            long park = 1;
+            while (true) {
+                if (halted) {
+                    return -1;
+                }
+
+                long cursor = taskSubSeq.next();
+                if (cursor > -1) {
+                    return cursor;
+                }
+
+                if (idle()) {
+                    return -1;
+                }
+
+                if (cursor == -1) {
+                    LockSupport.parkNanos(park);
+                    park = Math.min(park << 1, MAX_PARK);
+                }
+            }
+        }
+    }
+}
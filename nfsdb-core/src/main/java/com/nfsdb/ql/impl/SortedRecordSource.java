@@ -0,0 +1,396 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.AbstractImmutableIterator;
+import com.nfsdb.collections.MinHeap;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.ql.RecordSource;
+import com.nfsdb.ql.StorageFacade;
+import com.nfsdb.storage.SequentialMemory;
+import com.nfsdb.utils.LongPairSort;
+import com.nfsdb.utils.Unsafe;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Sorts records of source by one or more columns, for example:
+ * <pre>
+ *     new SortedRecordSource(rs).orderBy("sym", false).orderBy("bid", true)
+ * </pre>
+ * When there is single key column of fixed size type and source supports row id access, only (key, row id)
+ * pairs are sorted. Keys are converted to longs, which compare as key values do, and pairs are radix sorted
+ * in off-heap memory. Should pairs grow beyond memory budget, they are sorted in runs, which are spilled
+ * to temporary files and merged when read. Records are then read from source by row id.
+ * <p>
+ * Otherwise records are copied to off-heap memory and their offsets are merge sorted. Sort is stable,
+ * records with equal keys keep source order, except when pairs are spilled. Copied records are not spilled,
+ * sort fails when they grow beyond memory budget.
+ */
+public class SortedRecordSource extends AbstractImmutableIterator<Record> implements RecordSource<Record>, Closeable, RecordCursor<Record> {
+    public static final long DEFAULT_MEMORY_BUDGET = 512 * 1024 * 1024L;
+    private static final int PAGE_SIZE = 4 * 1024 * 1024;
+    private static final long MIN_CAPACITY = 1024;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private final RecordSource<? extends Record> recordSource;
+    private final long memoryBudget;
+    private final File spillDirectory;
+    private final RecordComparator comparator;
+    private final ObjList<SpillFile> runs = new ObjList<>();
+    private RecordCursor<? extends Record> recordCursor;
+    private Record current;
+    private boolean sorted = false;
+    // (key, row id) pairs and scratch memory of the same size to sort them
+    private long pairs;
+    private long pairScratch;
+    private long pairCapacity;
+    // offsets of records in memory and scratch memory of the same size
+    private long offsets;
+    private long offsetScratch;
+    private long offsetCapacity;
+    private long count;
+    private long pos;
+    private SequentialMemory mem;
+    private MemoryRecordAccessor accessor;
+    private MemoryRecordAccessor left;
+    private MemoryRecordAccessor right;
+    private MinHeap heap;
+
+    public SortedRecordSource(RecordSource<? extends Record> recordSource) {
+        this(recordSource, DEFAULT_MEMORY_BUDGET, null);
+    }
+
+    /**
+     * @param memoryBudget   bytes of memory (key, row id) pairs are allowed to take before they are spilled
+     *                       to disk, or copied records are allowed to take before sort fails.
+     * @param spillDirectory directory for temporary files, null for default temporary directory.
+     */
+    public SortedRecordSource(RecordSource<? extends Record> recordSource, long memoryBudget, File spillDirectory) {
+        this.recordSource = recordSource;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.comparator = new RecordComparator(recordSource.getMetadata());
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeRuns();
+        pairs = free(pairs);
+        pairScratch = free(pairScratch);
+        pairCapacity = 0;
+        offsets = free(offsets);
+        offsetScratch = free(offsetScratch);
+        offsetCapacity = 0;
+        if (mem != null) {
+            mem.close();
+            mem = null;
+        }
+        sorted = false;
+    }
+
+    @Override
+    public Record getByRowId(long rowId) {
+        return byRowId() ? recordCursor.getByRowId(rowId) : null;
+    }
+
+    @Override
+    public StorageFacade getSymFacade() {
+        return recordCursor.getSymFacade();
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return recordSource.getMetadata();
+    }
+
+    /**
+     * Adds column to sort key. Records are ordered by first column, then by second and so on.
+     *
+     * @param column     column name
+     * @param descending true for descending order
+     * @return this source
+     */
+    public SortedRecordSource orderBy(CharSequence column, boolean descending) {
+        comparator.add(column, descending);
+        return this;
+    }
+
+    @Override
+    public RecordCursor<Record> prepareCursor(JournalReaderFactory factory) throws JournalException {
+        this.recordCursor = recordSource.prepareCursor(factory);
+        closeRuns();
+        sorted = false;
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        recordSource.reset();
+        closeRuns();
+        sorted = false;
+    }
+
+    @Override
+    public boolean supportsRowIdAccess() {
+        return byRowId();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!sorted) {
+            sort();
+        }
+
+        if (!byRowId()) {
+            if (pos < count) {
+                accessor.init(Unsafe.getUnsafe().getLong(offsets + pos++ * 8));
+                return true;
+            }
+            return false;
+        }
+
+        if (heap == null) {
+            if (pos < count) {
+                current = recordCursor.getByRowId(LongPairSort.second(pairs, pos++));
+                return true;
+            }
+            return false;
+        }
+        return hasNextMerged();
+    }
+
+    @SuppressFBWarnings({"IT_NO_SUCH_ELEMENT"})
+    @Override
+    public Record next() {
+        return byRowId() ? current : accessor;
+    }
+
+    @Override
+    public String toString() {
+        return "SortedRecordSource{" + comparator + '}';
+    }
+
+    RecordComparator getComparator() {
+        return comparator;
+    }
+
+    RecordSource<? extends Record> getRecordSource() {
+        return recordSource;
+    }
+
+    private static long free(long address) {
+        if (address != 0) {
+            Unsafe.getUnsafe().freeMemory(address);
+        }
+        return 0;
+    }
+
+    private void addOffset(long offset) {
+        if (count == offsetCapacity) {
+            offsetCapacity = Math.max(MIN_CAPACITY, offsetCapacity << 1);
+            offsets = offsets == 0 ? Unsafe.getUnsafe().allocateMemory(offsetCapacity * 8) : Unsafe.getUnsafe().reallocateMemory(offsets, offsetCapacity * 8);
+            free(offsetScratch);
+            offsetScratch = Unsafe.getUnsafe().allocateMemory(offsetCapacity * 8);
+        }
+        Unsafe.getUnsafe().putLong(offsets + count++ * 8, offset);
+    }
+
+    private void addPair(long key, long rowId) {
+        if (count == pairCapacity) {
+            // pairs and scratch are within budget together
+            long capacity = Math.max(INSERTION_SORT_THRESHOLD, Math.min(Math.max(MIN_CAPACITY, pairCapacity << 1), memoryBudget / (2 * LongPairSort.PAIR_SIZE)));
+            if (capacity > pairCapacity) {
+                pairCapacity = capacity;
+                pairs = pairs == 0 ? Unsafe.getUnsafe().allocateMemory(capacity * LongPairSort.PAIR_SIZE) : Unsafe.getUnsafe().reallocateMemory(pairs, capacity * LongPairSort.PAIR_SIZE);
+                free(pairScratch);
+                pairScratch = Unsafe.getUnsafe().allocateMemory(capacity * LongPairSort.PAIR_SIZE);
+            } else {
+                spill();
+            }
+        }
+        LongPairSort.put(pairs, count++, key, rowId);
+    }
+
+    private boolean byRowId() {
+        return comparator.isPrimitive() && recordSource.supportsRowIdAccess();
+    }
+
+    private void closeRuns() {
+        for (int i = 0, n = runs.size(); i < n; i++) {
+            runs.getQuick(i).close();
+        }
+        runs.clear();
+        heap = null;
+    }
+
+    private int compare(long a, long b) {
+        left.init(a);
+        right.init(b);
+        return comparator.compare(left, right);
+    }
+
+    private boolean hasNextMerged() {
+        if (!heap.hasNext()) {
+            return false;
+        }
+
+        int index = heap.popIndex();
+        SpillFile run = runs.getQuick(index);
+        long rowId = run.getValue();
+        if (run.hasNext()) {
+            run.next();
+            heap.popAndReplace(index, run.getKey());
+        } else {
+            heap.popValue();
+        }
+        current = recordCursor.getByRowId(rowId);
+        return true;
+    }
+
+    private void merge(long src, long dst, long lo, long mid, long hi) {
+        long i = lo;
+        long j = mid;
+        long k = lo;
+        while (i < mid && j < hi) {
+            long a = Unsafe.getUnsafe().getLong(src + i * 8);
+            long b = Unsafe.getUnsafe().getLong(src + j * 8);
+            if (compare(a, b) <= 0) {
+                Unsafe.getUnsafe().putLong(dst + k++ * 8, a);
+                i++;
+            } else {
+                Unsafe.getUnsafe().putLong(dst + k++ * 8, b);
+                j++;
+            }
+        }
+
+        if (i < mid) {
+            Unsafe.getUnsafe().copyMemory(src + i * 8, dst + k * 8, (mid - i) * 8);
+        } else if (j < hi) {
+            Unsafe.getUnsafe().copyMemory(src + j * 8, dst + k * 8, (hi - j) * 8);
+        }
+    }
+
+    private void sort() {
+        count = 0;
+        pos = 0;
+        if (byRowId()) {
+            sortPairs();
+        } else {
+            sortRecords();
+        }
+        sorted = true;
+    }
+
+    private void sortOffsets() {
+        for (long lo = 0; lo < count; lo += INSERTION_SORT_THRESHOLD) {
+            long hi = Math.min(lo + INSERTION_SORT_THRESHOLD, count);
+            for (long i = lo + 1; i < hi; i++) {
+                long v = Unsafe.getUnsafe().getLong(offsets + i * 8);
+                long j = i;
+                for (long p; j > lo && compare(p = Unsafe.getUnsafe().getLong(offsets + (j - 1) * 8), v) > 0; j--) {
+                    Unsafe.getUnsafe().putLong(offsets + j * 8, p);
+                }
+                Unsafe.getUnsafe().putLong(offsets + j * 8, v);
+            }
+        }
+
+        long src = offsets;
+        long dst = offsetScratch;
+        for (long width = INSERTION_SORT_THRESHOLD; width < count; width <<= 1) {
+            for (long lo = 0; lo < count; lo += width << 1) {
+                merge(src, dst, lo, Math.min(lo + width, count), Math.min(lo + (width << 1), count));
+            }
+            long t = src;
+            src = dst;
+            dst = t;
+        }
+
+        if (src != offsets) {
+            Unsafe.getUnsafe().copyMemory(src, offsets, count * 8);
+        }
+    }
+
+    private void sortPairs() {
+        for (Record r : recordCursor) {
+            addPair(comparator.key(r), r.getRowId());
+        }
+
+        if (runs.size() == 0) {
+            LongPairSort.radixSort(pairs, count, pairScratch);
+            return;
+        }
+
+        if (count > 0) {
+            spill();
+        }
+
+        heap = new MinHeap(runs.size());
+        for (int i = 0, n = runs.size(); i < n; i++) {
+            SpillFile run = runs.getQuick(i);
+            run.openRead();
+            if (run.hasNext()) {
+                run.next();
+                heap.add(i, run.getKey());
+            }
+        }
+    }
+
+    private void sortRecords() {
+        if (mem == null) {
+            mem = new SequentialMemory(PAGE_SIZE);
+            RecordMetadata m = recordSource.getMetadata();
+            accessor = new MemoryRecordAccessor(m, mem);
+            left = new MemoryRecordAccessor(m, mem);
+            right = new MemoryRecordAccessor(m, mem);
+        } else {
+            mem.clear();
+        }
+
+        for (Record r : recordCursor) {
+            addOffset(accessor.append(r));
+            // offsets and scratch count towards budget too
+            if (mem.size() + offsetCapacity * 16 > memoryBudget) {
+                throw new JournalRuntimeException("Records to sort exceed memory budget of %d bytes, only single fixed size key over source with row id access can spill to disk: %s", memoryBudget, this);
+            }
+        }
+        sortOffsets();
+    }
+
+    private void spill() {
+        LongPairSort.radixSort(pairs, count, pairScratch);
+        SpillFile run = new SpillFile("sort", spillDirectory);
+        for (long i = 0; i < count; i++) {
+            run.write(LongPairSort.first(pairs, i), LongPairSort.second(pairs, i));
+        }
+        runs.add(run);
+        count = 0;
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.exceptions.JournalRuntimeException;
+
+import java.io.*;
+
+/**
+ * Temporary file of key and row id pairs. File is written once, read once and removed.
+ */
+class SpillFile implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final File file;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private long count;
+    private long key;
+    private long value;
+
+    /**
+     * @param prefix    prefix of temporary file name
+     * @param directory directory for temporary file, null for default temporary directory
+     */
+    SpillFile(String prefix, File directory) {
+        try {
+            this.file = File.createTempFile(prefix, ".spill", directory);
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+
+            if (in != null) {
+                in.close();
+                in = null;
+            }
+        } catch (IOException e) {
+            throw new JournalRuntimeException(e);
+        } finally {
+            if (file.exists() && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    long getKey() {
+        return key;
+    }
+
+    long getValue() {
+        return value;
+    }
+
+    boolean hasNext() {
+        return count > 0;
+    }
+
+    void next() {
+        try {
+            key = in.readLong();
+            value = in.readLong();
+            count--;
+        } catch (IOException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    void openRead() {
+        try {
+            out.close();
+            out = null;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    void write(long key, long value) {
+        try {
+            out.writeLong(key);
+            out.writeLong(value);
+            count++;
+        } catch (IOException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+}
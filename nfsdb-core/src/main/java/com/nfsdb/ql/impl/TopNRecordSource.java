@@ -0,0 +1,384 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.AbstractImmutableIterator;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.ql.RecordSource;
+import com.nfsdb.ql.StorageFacade;
+import com.nfsdb.ql.ops.VirtualColumn;
+import com.nfsdb.storage.SequentialMemory;
+import com.nfsdb.utils.LongPairSort;
+import com.nfsdb.utils.Unsafe;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Returns first n records in order of {@link SortedRecordSource} without sorting whole source, for example:
+ * <pre>
+ *     new TopNRecordSource(new SortedRecordSource(rs).orderBy("bid", true), new LongConstant(20))
+ * </pre>
+ * Source is streamed and no more than n records are kept at any time, which takes O(N log n).
+ * <p>
+ * When there is single key column of fixed size type and source supports row id access, (key, row id) pairs are
+ * kept in off-heap heap. While keys arrive in reverse of requested order, as they do for "order by timestamp desc"
+ * over time series, heap is not needed: pairs are kept in a ring buffer of last n pairs instead. First key out of
+ * that order turns ring buffer into heap.
+ * <p>
+ * Otherwise records are copied to off-heap memory and heap keeps their offsets. Once heap has evicted as many
+ * records as it holds, retained records are copied to spare memory to reclaim space of evicted ones.
+ * <p>
+ * Unlike {@link SortedRecordSource} order of records with equal keys is not defined.
+ */
+public class TopNRecordSource extends AbstractImmutableIterator<Record> implements RecordSource<Record>, Closeable, RecordCursor<Record> {
+    private static final int PAGE_SIZE = 4 * 1024 * 1024;
+    private static final long MIN_CAPACITY = 1024;
+    private final RecordSource<? extends Record> recordSource;
+    private final RecordComparator comparator;
+    private final VirtualColumn limit;
+    private RecordCursor<? extends Record> recordCursor;
+    private Record current;
+    private boolean selected = false;
+    private long n;
+    // max-heap of (key, row id) pairs or of record offsets, sorted in place once source is exhausted
+    private long heap;
+    private long entrySize;
+    private long capacity;
+    private long size;
+    private long pos;
+    // when ring is true heap holds ring buffer, head is index of oldest pair once buffer is full
+    private boolean ring;
+    private long head;
+    private SequentialMemory mem;
+    private SequentialMemory spare;
+    private MemoryRecordAccessor left;
+    private MemoryRecordAccessor right;
+    private MemoryRecordAccessor spareLeft;
+    private MemoryRecordAccessor spareRight;
+    private long evicted;
+
+    /**
+     * @param source sorted source, which defines order of records
+     * @param limit  number of records to return
+     */
+    public TopNRecordSource(SortedRecordSource source, VirtualColumn limit) {
+        this.recordSource = source.getRecordSource();
+        this.comparator = source.getComparator();
+        this.limit = limit;
+    }
+
+    @Override
+    public void close() throws IOException {
+        heap = free(heap);
+        capacity = 0;
+        size = 0;
+        if (mem != null) {
+            mem.close();
+            spare.close();
+            mem = null;
+            spare = null;
+        }
+        selected = false;
+    }
+
+    @Override
+    public Record getByRowId(long rowId) {
+        return byRowId() ? recordCursor.getByRowId(rowId) : null;
+    }
+
+    @Override
+    public StorageFacade getSymFacade() {
+        return recordCursor.getSymFacade();
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return recordSource.getMetadata();
+    }
+
+    @Override
+    public RecordCursor<Record> prepareCursor(JournalReaderFactory factory) throws JournalException {
+        this.recordCursor = recordSource.prepareCursor(factory);
+        selected = false;
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        recordSource.reset();
+        selected = false;
+    }
+
+    @Override
+    public boolean supportsRowIdAccess() {
+        return byRowId();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!selected) {
+            select();
+        }
+
+        if (pos == size) {
+            return false;
+        }
+
+        if (!byRowId()) {
+            left.init(Unsafe.getUnsafe().getLong(heap + pos++ * 8));
+            current = left;
+        } else if (ring) {
+            // newest pair has the first key
+            current = recordCursor.getByRowId(LongPairSort.second(heap, (head + size - 1 - pos++) % size));
+        } else {
+            current = recordCursor.getByRowId(LongPairSort.second(heap, pos++));
+        }
+        return true;
+    }
+
+    @SuppressFBWarnings({"IT_NO_SUCH_ELEMENT"})
+    @Override
+    public Record next() {
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return "TopNRecordSource{" + comparator + '}';
+    }
+
+    private static long free(long address) {
+        if (address != 0) {
+            Unsafe.getUnsafe().freeMemory(address);
+        }
+        return 0;
+    }
+
+    private void addPair(long key, long rowId) {
+        if (size < n) {
+            if (size == capacity) {
+                grow();
+            }
+            LongPairSort.put(heap, size, key, rowId);
+            siftUp(size++);
+        } else if (key < LongPairSort.first(heap, 0)) {
+            LongPairSort.put(heap, 0, key, rowId);
+            siftDown(0, size);
+        }
+    }
+
+    private void addRecord(Record r) {
+        if (size < n) {
+            if (size == capacity) {
+                grow();
+            }
+            Unsafe.getUnsafe().putLong(heap + size * 8, left.append(r));
+            siftUp(size++);
+            return;
+        }
+
+        right.init(Unsafe.getUnsafe().getLong(heap));
+        if (comparator.compare(r, right) < 0) {
+            Unsafe.getUnsafe().putLong(heap, left.append(r));
+            siftDown(0, size);
+            if (++evicted == n) {
+                compact();
+            }
+        }
+    }
+
+    private boolean byRowId() {
+        return comparator.isPrimitive() && recordSource.supportsRowIdAccess();
+    }
+
+    private void compact() {
+        for (long i = 0; i < size; i++) {
+            long address = heap + i * 8;
+            left.init(Unsafe.getUnsafe().getLong(address));
+            Unsafe.getUnsafe().putLong(address, spareLeft.append(left));
+        }
+        mem.clear();
+
+        SequentialMemory m = mem;
+        mem = spare;
+        spare = m;
+
+        MemoryRecordAccessor a = left;
+        left = spareLeft;
+        spareLeft = a;
+
+        a = right;
+        right = spareRight;
+        spareRight = a;
+
+        evicted = 0;
+    }
+
+    private int compare(long i, long j) {
+        if (entrySize == LongPairSort.PAIR_SIZE) {
+            return Long.compare(LongPairSort.first(heap, i), LongPairSort.first(heap, j));
+        }
+        left.init(Unsafe.getUnsafe().getLong(heap + i * 8));
+        right.init(Unsafe.getUnsafe().getLong(heap + j * 8));
+        return comparator.compare(left, right);
+    }
+
+    private void grow() {
+        capacity = Math.min(n, Math.max(MIN_CAPACITY, capacity << 1));
+        heap = heap == 0 ? Unsafe.getUnsafe().allocateMemory(capacity * entrySize) : Unsafe.getUnsafe().reallocateMemory(heap, capacity * entrySize);
+    }
+
+    private void select() {
+        n = limit.getLong(null);
+        size = 0;
+        pos = 0;
+        ring = false;
+        if (n > 0) {
+            if (byRowId()) {
+                selectPairs();
+            } else {
+                selectRecords();
+            }
+        }
+        selected = true;
+    }
+
+    private void selectPairs() {
+        if (entrySize != LongPairSort.PAIR_SIZE) {
+            heap = free(heap);
+            capacity = 0;
+            entrySize = LongPairSort.PAIR_SIZE;
+        }
+
+        ring = true;
+        head = 0;
+        long last = Long.MAX_VALUE;
+        for (Record r : recordCursor) {
+            long key = comparator.key(r);
+            if (ring) {
+                if (key <= last) {
+                    last = key;
+                    if (size < n) {
+                        if (size == capacity) {
+                            grow();
+                        }
+                        LongPairSort.put(heap, size++, key, r.getRowId());
+                    } else {
+                        LongPairSort.put(heap, head, key, r.getRowId());
+                        head = (head + 1) % n;
+                    }
+                    continue;
+                }
+
+                // key is out of order, buffer holds pairs with first n keys seen so far
+                ring = false;
+                for (long i = size / 2 - 1; i >= 0; i--) {
+                    siftDown(i, size);
+                }
+            }
+            addPair(key, r.getRowId());
+        }
+
+        if (!ring) {
+            sort();
+        }
+    }
+
+    private void selectRecords() {
+        if (entrySize != 8) {
+            heap = free(heap);
+            capacity = 0;
+            entrySize = 8;
+        }
+
+        if (mem == null) {
+            RecordMetadata m = recordSource.getMetadata();
+            mem = new SequentialMemory(PAGE_SIZE);
+            spare = new SequentialMemory(PAGE_SIZE);
+            left = new MemoryRecordAccessor(m, mem);
+            right = new MemoryRecordAccessor(m, mem);
+            spareLeft = new MemoryRecordAccessor(m, spare);
+            spareRight = new MemoryRecordAccessor(m, spare);
+        } else {
+            mem.clear();
+            spare.clear();
+        }
+
+        evicted = 0;
+        for (Record r : recordCursor) {
+            addRecord(r);
+        }
+        sort();
+    }
+
+    private void siftDown(long i, long size) {
+        long c;
+        while ((c = 2 * i + 1) < size) {
+            if (c + 1 < size && compare(c + 1, c) > 0) {
+                c++;
+            }
+
+            if (compare(c, i) <= 0) {
+                break;
+            }
+            swap(i, c);
+            i = c;
+        }
+    }
+
+    private void siftUp(long i) {
+        while (i > 0) {
+            long p = (i - 1) / 2;
+            if (compare(p, i) >= 0) {
+                break;
+            }
+            swap(i, p);
+            i = p;
+        }
+    }
+
+    /**
+     * Sorts heap in place in ascending order.
+     */
+    private void sort() {
+        for (long end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void swap(long i, long j) {
+        for (long o = 0; o < entrySize; o += 8) {
+            long a = heap + i * entrySize + o;
+            long b = heap + j * entrySize + o;
+            long t = Unsafe.getUnsafe().getLong(a);
+            Unsafe.getUnsafe().putLong(a, Unsafe.getUnsafe().getLong(b));
+            Unsafe.getUnsafe().putLong(b, t);
+        }
+    }
+}
@@ -108,7 +108,7 @@ public class ExprNode implements Mutable {
     }
 
     public enum NodeType {
-        OPERATION, CONSTANT, LITERAL, FUNCTION, CONTROL, SET_OPERATION, LAMBDA
+        OPERATION, CONSTANT, LITERAL, FUNCTION, CONTROL, SET_OPERATION, LAMBDA, PARAMETER
     }
 
     private static final class ExprNodeFactory implements ObjectPoolFactory<ExprNode> {
@@ -24,6 +24,7 @@ package com.nfsdb.ql.model;
 import com.nfsdb.collections.CharSequenceHashSet;
 import com.nfsdb.collections.IntList;
 import com.nfsdb.collections.Mutable;
+import com.nfsdb.collections.ObjList;
 import com.nfsdb.collections.ObjectPoolFactory;
 import com.nfsdb.ql.impl.IntervalSource;
 import com.nfsdb.utils.Dates;
@@ -32,6 +33,8 @@ public class IntrinsicModel implements Mutable {
     public static final IntrinsicModelFactory FACTORY = new IntrinsicModelFactory();
     public final CharSequenceHashSet keyValues = new CharSequenceHashSet();
     public final IntList keyValuePositions = new IntList();
+    // conjuncts of filter, which bitmap indexes answer without reading column data
+    public final ObjList<ExprNode> bitmapNodes = new ObjList<>();
     public String keyColumn;
     public long intervalLo = Long.MIN_VALUE;
     public long intervalHi = Long.MAX_VALUE;
@@ -49,6 +52,7 @@ public class IntrinsicModel implements Mutable {
         keyColumn = null;
         keyValues.clear();
         keyValuePositions.clear();
+        bitmapNodes.clear();
         clearInterval();
         filter = null;
         millis = Long.MIN_VALUE;
@@ -32,11 +32,14 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 public class QueryModel implements Mutable {
     public static final QueryModelFactory FACTORY = new QueryModelFactory();
+    public static final int ORDER_DIRECTION_ASCENDING = 0;
+    public static final int ORDER_DIRECTION_DESCENDING = 1;
 
     private final ObjList<QueryColumn> columns = new ObjList<>();
     private final ObjList<QueryModel> joinModels = new ObjList<>();
-    private final ObjList<String> groupBy = new ObjList<>();
+    private final ObjList<ExprNode> groupBy = new ObjList<>();
     private final ObjList<ExprNode> orderBy = new ObjList<>();
+    private final IntList orderByDirection = new IntList();
     private final IntHashSet dependencies = new IntHashSet();
     private final IntList orderedJoinModels1 = new IntList();
     private final IntList orderedJoinModels2 = new IntList();
@@ -78,16 +81,17 @@ public class QueryModel implements Mutable {
         dependencies.add(index);
     }
 
-    public void addGroupBy(String name) {
-        groupBy.add(name);
+    public void addGroupBy(ExprNode node) {
+        groupBy.add(node);
     }
 
     public void addJoinModel(QueryModel model) {
         joinModels.add(model);
     }
 
-    public void addOrderBy(ExprNode node) {
+    public void addOrderBy(ExprNode node, int direction) {
         orderBy.add(node);
+        orderByDirection.add(direction);
     }
 
     public void addParsedWhereConst(int index) {
@@ -104,6 +108,7 @@ public class QueryModel implements Mutable {
         joinModels.add(this);
         groupBy.clear();
         orderBy.clear();
+        orderByDirection.clear();
         dependencies.clear();
         parsedWhere.clear();
         whereClause = null;
@@ -156,7 +161,7 @@ public class QueryModel implements Mutable {
         return dependencies;
     }
 
-    public ObjList<String> getGroupBy() {
+    public ObjList<ExprNode> getGroupBy() {
         return groupBy;
     }
 
@@ -232,6 +237,10 @@ public class QueryModel implements Mutable {
         return orderBy;
     }
 
+    public IntList getOrderByDirection() {
+        return orderByDirection;
+    }
+
     public IntList getOrderedJoinModels() {
         return orderedJoinModels;
     }
@@ -335,7 +344,9 @@ public class QueryModel implements Mutable {
 
                 // join type
                 sink.put('[').put(' ');
-                if (m.getJoinType() == QueryModel.JoinType.CROSS || cross) {
+                if (m.getJoinType() == QueryModel.JoinType.ASOF) {
+                    sink.put("asof");
+                } else if (m.getJoinType() == QueryModel.JoinType.CROSS || cross) {
                     sink.put("cross");
                 } else if (m.getJoinType() == QueryModel.JoinType.INNER) {
                     sink.put("inner");
@@ -416,7 +427,7 @@ public class QueryModel implements Mutable {
     }
 
     public enum JoinType {
-        INNER, OUTER, CROSS
+        INNER, OUTER, CROSS, ASOF
     }
 
     public static final class QueryModelFactory implements ObjectPoolFactory<QueryModel> {
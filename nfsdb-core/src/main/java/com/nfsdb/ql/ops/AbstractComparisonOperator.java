@@ -0,0 +1,85 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.ql.impl.JournalRecord;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.ZoneMap;
+
+/**
+ * Comparison of two values, which can be evaluated over blocks of rows when one side is
+ * a journal column and other side is a constant. Parameter counts as constant here because
+ * its value is read once per block.
+ */
+public abstract class AbstractComparisonOperator extends AbstractBinaryOperator implements VectorFilter {
+    // index of compared journal column, valid when operator is vectorizable
+    protected int columnIndex;
+    // true when column is left hand side of operator
+    protected boolean columnLhs;
+
+    protected AbstractComparisonOperator(ColumnType type) {
+        super(type);
+    }
+
+    @Override
+    public boolean isVectorizable() {
+        if (rhs.isConstant() || rhs instanceof Parameter) {
+            columnLhs = true;
+            columnIndex = columnIndexOf(lhs);
+        } else if (lhs.isConstant() || lhs instanceof Parameter) {
+            columnLhs = false;
+            columnIndex = columnIndexOf(rhs);
+        } else {
+            columnIndex = -1;
+        }
+        return columnIndex > -1;
+    }
+
+    @Override
+    public boolean mayMatch(JournalRecord rec, long lo, int count) {
+        ZoneMap zoneMap = rec.partition.getZoneMap(columnIndex);
+        if (zoneMap == null) {
+            return true;
+        }
+        long block = zoneMap.blockOf(lo, count);
+        return block == -1 || mayMatch(zoneMap, block);
+    }
+
+    /**
+     * Resolves index of column, values of which operator can read directly from partition.
+     *
+     * @param column operand of operator
+     * @return column index or -1 when operand is not suitable for block evaluation
+     */
+    protected abstract int columnIndexOf(VirtualColumn column);
+
+    /**
+     * Checks minimum and maximum of column values in block against constant.
+     *
+     * @return false when no value of block can match
+     */
+    protected abstract boolean mayMatch(ZoneMap zoneMap, long block);
+
+    protected VirtualColumn constant() {
+        return columnLhs ? rhs : lhs;
+    }
+}
@@ -30,11 +30,13 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 @SuppressFBWarnings({"EI_EXPOSE_REP"})
 public abstract class AbstractSingleColumnAggregatorFunction implements AggregatorFunction {
     private final ColumnMetadata[] meta = new ColumnMetadata[1];
+    private final String column;
     protected int recordIndex;
     protected int valueIndex;
 
     public AbstractSingleColumnAggregatorFunction(ColumnMetadata meta) {
         this.meta[0] = meta;
+        this.column = meta.name;
     }
 
     @Override
@@ -49,6 +51,11 @@ public abstract class AbstractSingleColumnAggregatorFunction implements Aggregat
 
     @Override
     public void prepareSource(RecordSource<? extends Record> source) {
-        this.recordIndex = source.getMetadata().getColumnIndex(meta[0].name);
+        this.recordIndex = source.getMetadata().getColumnIndex(column);
+    }
+
+    @Override
+    public void setName(String name) {
+        this.meta[0] = new ColumnMetadata().copy(meta[0]).setName(name);
     }
 }
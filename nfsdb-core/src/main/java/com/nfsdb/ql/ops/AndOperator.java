@@ -23,16 +23,37 @@ package com.nfsdb.ql.ops;
 
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.ql.Record;
+import com.nfsdb.ql.impl.JournalRecord;
 import com.nfsdb.storage.ColumnType;
 
-public class AndOperator extends AbstractBinaryOperator {
+public class AndOperator extends AbstractBinaryOperator implements VectorFilter {
 
     public static final AndOperator FACTORY = new AndOperator();
 
+    private long[] scratch;
+
     private AndOperator() {
         super(ColumnType.BOOLEAN);
     }
 
+    @Override
+    public void evaluate(JournalRecord rec, long lo, int count, long[] bitmap) {
+        if (VectorFilters.isVectorizable(lhs)) {
+            ((VectorFilter) lhs).evaluate(rec, lo, count, bitmap);
+            if (VectorFilters.isVectorizable(rhs)) {
+                scratch = VectorFilters.ensureCapacity(scratch, count);
+                ((VectorFilter) rhs).evaluate(rec, lo, count, scratch);
+                VectorFilters.and(bitmap, scratch, count);
+            } else {
+                // evaluate non-vectorizable side only for rows that survived
+                VectorFilters.refineAnd(rhs, rec, lo, count, bitmap);
+            }
+        } else {
+            ((VectorFilter) rhs).evaluate(rec, lo, count, bitmap);
+            VectorFilters.refineAnd(lhs, rec, lo, count, bitmap);
+        }
+    }
+
     @Override
     public boolean getBool(Record rec) {
         return lhs.getBool(rec) && rhs.getBool(rec);
@@ -47,6 +68,16 @@ public class AndOperator extends AbstractBinaryOperator {
         return (lhs.isConstant() && !lhs.getBool(null)) || (lhs.isConstant() && rhs.isConstant());
     }
 
+    @Override
+    public boolean isVectorizable() {
+        return VectorFilters.isVectorizable(lhs) || VectorFilters.isVectorizable(rhs);
+    }
+
+    @Override
+    public boolean mayMatch(JournalRecord rec, long lo, int count) {
+        return VectorFilters.mayMatch(lhs, rec, lo, count) && VectorFilters.mayMatch(rhs, rec, lo, count);
+    }
+
     @Override
     public Function newInstance(ObjList<VirtualColumn> args) {
         return new AndOperator();
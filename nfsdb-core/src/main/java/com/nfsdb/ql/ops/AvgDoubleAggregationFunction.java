@@ -33,6 +33,7 @@ import com.nfsdb.storage.ColumnType;
 public class AvgDoubleAggregationFunction implements AggregatorFunction, MapRecordValueInterceptor {
 
     private final ColumnMetadata sourceColumn;
+    private String name = "avg";
     private int columnIndex;
     private int countIdx;
     private int sumIdx;
@@ -58,12 +59,18 @@ public class AvgDoubleAggregationFunction implements AggregatorFunction, MapReco
         }
     }
 
+    @Override
+    public void combine(MapValues values, MapValues partial) {
+        values.putLong(countIdx, values.getLong(countIdx) + partial.getLong(countIdx));
+        values.putDouble(sumIdx, values.getDouble(sumIdx) + partial.getDouble(sumIdx));
+    }
+
     @Override
     public ColumnMetadata[] getColumns() {
         return new ColumnMetadata[]{
-                new ColumnMetadata().setName("$count").setType(ColumnType.LONG)
-                , new ColumnMetadata().setName("$sum").setType(ColumnType.DOUBLE)
-                , new ColumnMetadata().setName("avg").setType(ColumnType.DOUBLE)
+                new ColumnMetadata().setName("$count_" + name).setType(ColumnType.LONG)
+                , new ColumnMetadata().setName("$sum_" + name).setType(ColumnType.DOUBLE)
+                , new ColumnMetadata().setName(name).setType(ColumnType.DOUBLE)
         };
     }
 
@@ -88,4 +95,9 @@ public class AvgDoubleAggregationFunction implements AggregatorFunction, MapReco
     public void prepareSource(RecordSource<? extends Record> source) {
         this.columnIndex = source.getMetadata().getColumnIndex(sourceColumn.name);
     }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
 }
@@ -43,6 +43,11 @@ public class CountIntAggregatorFunction extends AbstractSingleColumnAggregatorFu
         }
     }
 
+    @Override
+    public void combine(MapValues values, MapValues partial) {
+        values.putInt(valueIndex, values.getInt(valueIndex) + partial.getInt(valueIndex));
+    }
+
     @Override
     public void prepareSource(RecordSource<? extends Record> source) {
         // do not call parent method, which will be trying to lookup column in record source.
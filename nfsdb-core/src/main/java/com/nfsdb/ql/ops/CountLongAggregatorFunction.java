@@ -42,6 +42,11 @@ public class CountLongAggregatorFunction extends AbstractSingleColumnAggregatorF
         }
     }
 
+    @Override
+    public void combine(MapValues values, MapValues partial) {
+        values.putLong(valueIndex, values.getLong(valueIndex) + partial.getLong(valueIndex));
+    }
+
     @Override
     public void prepareSource(RecordSource<? extends Record> source) {
         // do not call parent method, which will be trying to lookup column in record source.
@@ -23,9 +23,12 @@ package com.nfsdb.ql.ops;
 
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.ql.Record;
+import com.nfsdb.ql.impl.JournalRecord;
 import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.ZoneMap;
+import com.nfsdb.utils.Unsafe;
 
-public class DoubleLessOrEqualOperator extends AbstractBinaryOperator {
+public class DoubleLessOrEqualOperator extends AbstractComparisonOperator {
 
     public final static DoubleLessOrEqualOperator FACTORY = new DoubleLessOrEqualOperator();
 
@@ -33,6 +36,28 @@ public class DoubleLessOrEqualOperator extends AbstractBinaryOperator {
         super(ColumnType.BOOLEAN);
     }
 
+    @Override
+    public void evaluate(JournalRecord rec, long lo, int count, long[] bitmap) {
+        long address = rec.partition.getAddress(lo, columnIndex, count);
+        double c = constant().getDouble(null);
+        VectorFilters.clear(bitmap, count);
+        if (columnLhs) {
+            for (int i = 0; i < count; i++) {
+                double l = Unsafe.getUnsafe().getDouble(address + ((long) i << 3));
+                if (l <= c) {
+                    VectorFilters.set(bitmap, i);
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                double r = Unsafe.getUnsafe().getDouble(address + ((long) i << 3));
+                if (c <= r) {
+                    VectorFilters.set(bitmap, i);
+                }
+            }
+        }
+    }
+
     @Override
     public boolean getBool(Record rec) {
         return lhs.getDouble(rec) <= rhs.getDouble(rec);
@@ -42,4 +67,15 @@ public class DoubleLessOrEqualOperator extends AbstractBinaryOperator {
     public Function newInstance(ObjList<VirtualColumn> args) {
         return new DoubleLessOrEqualOperator();
     }
+
+    @Override
+    protected int columnIndexOf(VirtualColumn column) {
+        return column instanceof DoubleRecordSourceColumn ? ((DoubleRecordSourceColumn) column).getIndex() : -1;
+    }
+
+    @Override
+    protected boolean mayMatch(ZoneMap zoneMap, long block) {
+        double c = constant().getDouble(null);
+        return columnLhs ? zoneMap.getMinDouble(block) <= c : zoneMap.getMaxDouble(block) >= c;
+    }
 }
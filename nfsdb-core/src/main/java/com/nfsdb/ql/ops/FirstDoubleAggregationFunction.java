@@ -37,4 +37,9 @@ public class FirstDoubleAggregationFunction extends AbstractSingleColumnAggregat
             values.putDouble(valueIndex, rec.getDouble(recordIndex));
         }
     }
+
+    @Override
+    public void combine(MapValues values, MapValues partial) {
+        // target holds earlier rows
+    }
 }
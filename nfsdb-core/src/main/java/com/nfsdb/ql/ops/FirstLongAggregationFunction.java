@@ -37,4 +37,9 @@ public class FirstLongAggregationFunction extends AbstractSingleColumnAggregator
             values.putLong(valueIndex, rec.getLong(recordIndex));
         }
     }
+
+    @Override
+    public void combine(MapValues values, MapValues partial) {
+        // target holds earlier rows
+    }
 }
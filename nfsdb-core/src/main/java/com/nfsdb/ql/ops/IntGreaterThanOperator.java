@@ -23,9 +23,12 @@ package com.nfsdb.ql.ops;
 
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.ql.Record;
+import com.nfsdb.ql.impl.JournalRecord;
 import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.ZoneMap;
+import com.nfsdb.utils.Unsafe;
 
-public class IntGreaterThanOperator extends AbstractBinaryOperator {
+public class IntGreaterThanOperator extends AbstractComparisonOperator {
 
     public final static IntGreaterThanOperator FACTORY = new IntGreaterThanOperator();
 
@@ -33,6 +36,28 @@ public class IntGreaterThanOperator extends AbstractBinaryOperator {
         super(ColumnType.BOOLEAN);
     }
 
+    @Override
+    public void evaluate(JournalRecord rec, long lo, int count, long[] bitmap) {
+        long address = rec.partition.getAddress(lo, columnIndex, count);
+        int c = constant().getInt(null);
+        VectorFilters.clear(bitmap, count);
+        if (columnLhs) {
+            for (int i = 0; i < count; i++) {
+                int l = Unsafe.getUnsafe().getInt(address + ((long) i << 2));
+                if (l > c && c > Integer.MIN_VALUE) {
+                    VectorFilters.set(bitmap, i);
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                int r = Unsafe.getUnsafe().getInt(address + ((long) i << 2));
+                if (c > r && r > Integer.MIN_VALUE) {
+                    VectorFilters.set(bitmap, i);
+                }
+            }
+        }
+    }
+
     @Override
     public boolean getBool(Record rec) {
         int r = rhs.getInt(rec);
@@ -43,4 +68,15 @@ public class IntGreaterThanOperator extends AbstractBinaryOperator {
     public Function newInstance(ObjList<VirtualColumn> args) {
         return new IntGreaterThanOperator();
     }
+
+    @Override
+    protected int columnIndexOf(VirtualColumn column) {
+        return column instanceof IntRecordSourceColumn ? ((IntRecordSourceColumn) column).getIndex() : -1;
+    }
+
+    @Override
+    protected boolean mayMatch(ZoneMap zoneMap, long block) {
+        int c = constant().getInt(null);
+        return columnLhs ? zoneMap.getMax(block) > c : zoneMap.getMin(block) < c;
+    }
 }
@@ -33,6 +33,10 @@ public class IntRecordSourceColumn extends AbstractVirtualColumn {
         this.index = index;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public double getDouble(Record rec) {
         int v = rec.getInt(index);
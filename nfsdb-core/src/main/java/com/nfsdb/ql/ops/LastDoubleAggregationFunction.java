@@ -35,4 +35,9 @@ public class LastDoubleAggregationFunction extends AbstractSingleColumnAggregato
     public void calculate(Record rec, MapValues values) {
         values.putDouble(valueIndex, rec.getDouble(recordIndex));
     }
+
+    @Override
+    public void combine(MapValues values, MapValues partial) {
+        values.putDouble(valueIndex, partial.getDouble(valueIndex));
+    }
 }
@@ -35,4 +35,9 @@ public class LastLongAggregationFunction extends AbstractSingleColumnAggregatorF
     public void calculate(Record rec, MapValues values) {
         values.putLong(valueIndex, rec.getLong(recordIndex));
     }
+
+    @Override
+    public void combine(MapValues values, MapValues partial) {
+        values.putLong(valueIndex, partial.getLong(valueIndex));
+    }
 }
@@ -23,9 +23,12 @@ package com.nfsdb.ql.ops;
 
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.ql.Record;
+import com.nfsdb.ql.impl.JournalRecord;
 import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.ZoneMap;
+import com.nfsdb.utils.Unsafe;
 
-public class LongGreaterOrEqualOperator extends AbstractBinaryOperator {
+public class LongGreaterOrEqualOperator extends AbstractComparisonOperator {
 
     public final static LongGreaterOrEqualOperator FACTORY = new LongGreaterOrEqualOperator();
 
@@ -33,6 +36,28 @@ public class LongGreaterOrEqualOperator extends AbstractBinaryOperator {
         super(ColumnType.BOOLEAN);
     }
 
+    @Override
+    public void evaluate(JournalRecord rec, long lo, int count, long[] bitmap) {
+        long address = rec.partition.getAddress(lo, columnIndex, count);
+        long c = constant().getLong(null);
+        VectorFilters.clear(bitmap, count);
+        if (columnLhs) {
+            for (int i = 0; i < count; i++) {
+                long l = Unsafe.getUnsafe().getLong(address + ((long) i << 3));
+                if (l >= c && c > Long.MIN_VALUE) {
+                    VectorFilters.set(bitmap, i);
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                long r = Unsafe.getUnsafe().getLong(address + ((long) i << 3));
+                if (c >= r && r > Long.MIN_VALUE) {
+                    VectorFilters.set(bitmap, i);
+                }
+            }
+        }
+    }
+
     @Override
     public boolean getBool(Record rec) {
         long r = rhs.getLong(rec);
@@ -43,4 +68,15 @@ public class LongGreaterOrEqualOperator extends AbstractBinaryOperator {
     public Function newInstance(ObjList<VirtualColumn> args) {
         return new LongGreaterOrEqualOperator();
     }
+
+    @Override
+    protected int columnIndexOf(VirtualColumn column) {
+        return column instanceof LongRecordSourceColumn ? ((LongRecordSourceColumn) column).getIndex() : -1;
+    }
+
+    @Override
+    protected boolean mayMatch(ZoneMap zoneMap, long block) {
+        long c = constant().getLong(null);
+        return columnLhs ? zoneMap.getMax(block) >= c : zoneMap.getMin(block) <= c;
+    }
 }
@@ -33,6 +33,10 @@ public class LongRecordSourceColumn extends AbstractVirtualColumn {
         this.index = index;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public double getDouble(Record rec) {
         long v = getLong(rec);
@@ -23,9 +23,10 @@ package com.nfsdb.ql.ops;
 
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.ql.Record;
+import com.nfsdb.ql.impl.JournalRecord;
 import com.nfsdb.storage.ColumnType;
 
-public class NotOperator extends AbstractUnaryOperator {
+public class NotOperator extends AbstractUnaryOperator implements VectorFilter {
 
     public final static NotOperator FACTORY = new NotOperator();
 
@@ -33,11 +34,28 @@ public class NotOperator extends AbstractUnaryOperator {
         super(ColumnType.BOOLEAN);
     }
 
+    @Override
+    public void evaluate(JournalRecord rec, long lo, int count, long[] bitmap) {
+        ((VectorFilter) value).evaluate(rec, lo, count, bitmap);
+        VectorFilters.not(bitmap, count);
+    }
+
     @Override
     public boolean getBool(Record rec) {
         return !value.getBool(rec);
     }
 
+    @Override
+    public boolean isVectorizable() {
+        return VectorFilters.isVectorizable(value);
+    }
+
+    @Override
+    public boolean mayMatch(JournalRecord rec, long lo, int count) {
+        // block, where value cannot match, is where its negation matches everything
+        return true;
+    }
+
     @Override
     public Function newInstance(ObjList<VirtualColumn> args) {
         return new NotOperator();
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.collections.Mutable;
+import com.nfsdb.io.sink.CharSink;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.StorageFacade;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.Chars;
+
+/**
+ * Bind variable of prepared statement. Value is set between executions and read every time
+ * expression is evaluated, so that compiled query does not depend on it. Type is not known
+ * when parameter is created, compiler infers it from other operand of expression.
+ * <p>
+ * Parameter is not constant, compiler must not fold expressions around it. Operators, which
+ * read constant operand at cursor open or once per block of rows, may treat it as constant.
+ */
+public class Parameter extends AbstractVirtualColumn implements Mutable {
+    private ColumnType type;
+    private boolean bound = false;
+    private long longValue;
+    private double doubleValue;
+    private String strValue;
+
+    public Parameter() {
+        super(null);
+    }
+
+    @Override
+    public void clear() {
+        bound = false;
+        longValue = 0;
+        doubleValue = 0;
+        strValue = null;
+    }
+
+    @Override
+    public boolean getBool(Record rec) {
+        return longValue != 0;
+    }
+
+    @Override
+    public long getDate(Record rec) {
+        return longValue;
+    }
+
+    @Override
+    public double getDouble(Record rec) {
+        return doubleValue;
+    }
+
+    @Override
+    public float getFloat(Record rec) {
+        return (float) doubleValue;
+    }
+
+    @Override
+    public CharSequence getFlyweightStr(Record rec) {
+        return strValue;
+    }
+
+    @Override
+    public int getInt(Record rec) {
+        return (int) longValue;
+    }
+
+    @Override
+    public long getLong(Record rec) {
+        return longValue;
+    }
+
+    @Override
+    public short getShort(Record rec) {
+        return (short) longValue;
+    }
+
+    @Override
+    public CharSequence getStr(Record rec) {
+        return strValue;
+    }
+
+    @Override
+    public void getStr(Record rec, CharSink sink) {
+        sink.put(strValue);
+    }
+
+    @Override
+    public String getSym(Record rec) {
+        return strValue;
+    }
+
+    @Override
+    public ColumnType getType() {
+        return type;
+    }
+
+    public void setType(ColumnType type) {
+        this.type = type;
+    }
+
+    public boolean isBound() {
+        return bound;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return false;
+    }
+
+    @Override
+    public void prepare(StorageFacade facade) {
+    }
+
+    public void set(boolean value) {
+        set(value ? 1L : 0L);
+    }
+
+    public void set(long value) {
+        this.longValue = value;
+        this.doubleValue = value;
+        this.bound = true;
+    }
+
+    public void set(double value) {
+        this.longValue = (long) value;
+        this.doubleValue = value;
+        this.bound = true;
+    }
+
+    public void set(CharSequence value) {
+        this.strValue = Chars.toString(value);
+        this.bound = true;
+    }
+}
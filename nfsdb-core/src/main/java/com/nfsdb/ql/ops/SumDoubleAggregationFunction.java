@@ -38,4 +38,9 @@ public class SumDoubleAggregationFunction extends AbstractSingleColumnAggregator
             values.putDouble(valueIndex, values.getDouble(valueIndex) + rec.getDouble(recordIndex));
         }
     }
+
+    @Override
+    public void combine(MapValues values, MapValues partial) {
+        values.putDouble(valueIndex, values.getDouble(valueIndex) + partial.getDouble(valueIndex));
+    }
 }
@@ -38,4 +38,9 @@ public class SumIntAggregationFunction extends AbstractSingleColumnAggregatorFun
             values.putInt(valueIndex, values.getInt(valueIndex) + rec.getInt(recordIndex));
         }
     }
+
+    @Override
+    public void combine(MapValues values, MapValues partial) {
+        values.putInt(valueIndex, values.getInt(valueIndex) + partial.getInt(valueIndex));
+    }
 }
@@ -39,4 +39,9 @@ public class SumIntToLongAggregationFunction extends AbstractSingleColumnAggrega
             values.putLong(valueIndex, values.getLong(valueIndex) + rec.getInt(recordIndex));
         }
     }
+
+    @Override
+    public void combine(MapValues values, MapValues partial) {
+        values.putLong(valueIndex, values.getLong(valueIndex) + partial.getLong(valueIndex));
+    }
 }
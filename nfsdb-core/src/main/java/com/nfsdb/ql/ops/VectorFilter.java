@@ -0,0 +1,63 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.ql.impl.JournalRecord;
+
+/**
+ * Boolean expression, which can be evaluated over a block of partition rows at once. Result
+ * of evaluation is a bitmap, where bit "i" is set when row "lo + i" matches expression.
+ */
+public interface VectorFilter {
+
+    /**
+     * Evaluates expression for rows [lo, lo + count) of record's partition. Implementation must
+     * set bits of matching rows and clear all other bits in range [0, count). Record row id can be
+     * used by implementation as scratch space.
+     *
+     * @param rec    record pointing at partition to evaluate
+     * @param lo     first row of block
+     * @param count  number of rows in block
+     * @param bitmap bitmap to fill, it must accommodate at least "count" bits
+     */
+    void evaluate(JournalRecord rec, long lo, int count, long[] bitmap);
+
+    /**
+     * Checks if expression can be evaluated by {@link #evaluate(JournalRecord, long, int, long[])}.
+     * Typically this is the case when expression compares journal column to a constant.
+     *
+     * @return true if block evaluation is possible
+     */
+    boolean isVectorizable();
+
+    /**
+     * Checks block summaries of record's partition to tell if any of rows [lo, lo + count) can
+     * match expression. False positives are allowed, e.g. when summaries are not available, but
+     * false negatives are not.
+     *
+     * @param rec   record pointing at partition to evaluate
+     * @param lo    first row of block
+     * @param count number of rows in block
+     * @return false when none of rows can match
+     */
+    boolean mayMatch(JournalRecord rec, long lo, int count);
+}
@@ -0,0 +1,149 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.ql.impl.JournalRecord;
+
+import java.util.Arrays;
+
+public final class VectorFilters {
+
+    private VectorFilters() {
+    }
+
+    public static void and(long[] bitmap, long[] that, int count) {
+        for (int i = 0, n = words(count); i < n; i++) {
+            bitmap[i] &= that[i];
+        }
+    }
+
+    public static void clear(long[] bitmap, int count) {
+        Arrays.fill(bitmap, 0, words(count), 0L);
+    }
+
+    public static long[] ensureCapacity(long[] bitmap, int count) {
+        int n = words(count);
+        return bitmap == null || bitmap.length < n ? new long[n] : bitmap;
+    }
+
+    /**
+     * Evaluates filter over block of rows, falling back to row-by-row evaluation when filter is not vectorizable.
+     */
+    public static void evaluate(VirtualColumn filter, JournalRecord rec, long lo, int count, long[] bitmap) {
+        if (isVectorizable(filter)) {
+            ((VectorFilter) filter).evaluate(rec, lo, count, bitmap);
+        } else {
+            clear(bitmap, count);
+            for (int i = 0; i < count; i++) {
+                rec.rowid = lo + i;
+                if (filter.getBool(rec)) {
+                    set(bitmap, i);
+                }
+            }
+        }
+    }
+
+    public static boolean isVectorizable(VirtualColumn filter) {
+        return filter instanceof VectorFilter && ((VectorFilter) filter).isVectorizable();
+    }
+
+    /**
+     * Checks block summaries for filter, non-vectorizable filter can always match.
+     */
+    public static boolean mayMatch(VirtualColumn filter, JournalRecord rec, long lo, int count) {
+        return !isVectorizable(filter) || ((VectorFilter) filter).mayMatch(rec, lo, count);
+    }
+
+    /**
+     * Finds next set bit at or after "from".
+     *
+     * @return bit index or -1 if there are no more set bits
+     */
+    public static int nextSetBit(long[] bitmap, int from, int count) {
+        if (from >= count) {
+            return -1;
+        }
+
+        int w = from >>> 6;
+        long word = bitmap[w] & (-1L << from);
+        int n = words(count);
+        while (word == 0) {
+            if (++w == n) {
+                return -1;
+            }
+            word = bitmap[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    public static void not(long[] bitmap, int count) {
+        int n = words(count);
+        for (int i = 0; i < n; i++) {
+            bitmap[i] = ~bitmap[i];
+        }
+        // keep bits outside of block clear
+        if ((count & 63) != 0) {
+            bitmap[n - 1] &= (1L << count) - 1;
+        }
+    }
+
+    public static void or(long[] bitmap, long[] that, int count) {
+        for (int i = 0, n = words(count); i < n; i++) {
+            bitmap[i] |= that[i];
+        }
+    }
+
+    /**
+     * Clears bits of rows, which do not match filter. Only rows with bits set are evaluated.
+     */
+    public static void refineAnd(VirtualColumn filter, JournalRecord rec, long lo, int count, long[] bitmap) {
+        int i = -1;
+        while ((i = nextSetBit(bitmap, i + 1, count)) > -1) {
+            rec.rowid = lo + i;
+            if (!filter.getBool(rec)) {
+                bitmap[i >>> 6] &= ~(1L << i);
+            }
+        }
+    }
+
+    /**
+     * Sets bits of rows, which match filter. Only rows with bits clear are evaluated.
+     */
+    public static void refineOr(VirtualColumn filter, JournalRecord rec, long lo, int count, long[] bitmap) {
+        for (int i = 0; i < count; i++) {
+            if ((bitmap[i >>> 6] & (1L << i)) == 0) {
+                rec.rowid = lo + i;
+                if (filter.getBool(rec)) {
+                    set(bitmap, i);
+                }
+            }
+        }
+    }
+
+    public static void set(long[] bitmap, int i) {
+        bitmap[i >>> 6] |= 1L << i;
+    }
+
+    public static int words(int count) {
+        return (count + 63) >>> 6;
+    }
+}
@@ -161,6 +161,14 @@ public class ExprParser {
                     // If the token is a number, then add it to the output queue.
                     listener.onNode(exprNodePool.next().init(ExprNode.NodeType.LAMBDA, tok.toString(), 0, toks.position()));
                     break;
+                case ':':
+                    if (tok.length() < 2) {
+                        throw new ParserException(toks.position(), "Parameter name expected");
+                    }
+                    thisBranch = Branch.CONSTANT;
+                    // bind variable, compiler creates parameter for it
+                    listener.onNode(exprNodePool.next().init(ExprNode.NodeType.PARAMETER, tok.toString(), 0, toks.position()));
+                    break;
                 case '0':
                 case '1':
                 case '2':
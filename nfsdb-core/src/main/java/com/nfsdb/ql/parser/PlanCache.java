@@ -0,0 +1,93 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.parser;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe cache of prepared statements, which compilers of same database can share. Statements
+ * are keyed by query text with white space normalised. Compiled query is not thread-safe, so statement
+ * is taken out of cache by {@link QueryCompiler#prepare(CharSequence)} and returned when closed.
+ * Several idle statements of same query are kept for threads, which run it concurrently.
+ * <p>
+ * Literal values are part of the key, they are not lifted into parameters because compiler folds them
+ * into plan, for example as symbol keys of index lookups or as intervals. Only queries, which differ in
+ * values of explicit bind variables such as ":sym", share plans. Queries "tab where sym = 'A'" and
+ * "tab where sym = 'B'" are compiled and cached separately.
+ */
+public class PlanCache {
+    private final ConcurrentHashMap<String, ArrayBlockingQueue<PreparedStatement>> plans = new ConcurrentHashMap<>();
+    private final int maxQueries;
+    private final int maxStatements;
+
+    /**
+     * @param maxQueries    maximum number of distinct queries, statements of other queries are not cached
+     * @param maxStatements maximum number of idle statements kept for each query
+     */
+    public PlanCache(int maxQueries, int maxStatements) {
+        this.maxQueries = maxQueries;
+        this.maxStatements = maxStatements;
+    }
+
+    /**
+     * Frees idle statements. Statements in use are freed when they are closed.
+     */
+    public void clear() {
+        for (ArrayBlockingQueue<PreparedStatement> q : plans.values()) {
+            PreparedStatement s;
+            while ((s = q.poll()) != null) {
+                s.free();
+            }
+        }
+    }
+
+    /**
+     * @return number of idle statements
+     */
+    public int size() {
+        int size = 0;
+        for (ArrayBlockingQueue<PreparedStatement> q : plans.values()) {
+            size += q.size();
+        }
+        return size;
+    }
+
+    PreparedStatement poll(String query) {
+        ArrayBlockingQueue<PreparedStatement> q = plans.get(query);
+        return q == null ? null : q.poll();
+    }
+
+    boolean release(PreparedStatement statement) {
+        ArrayBlockingQueue<PreparedStatement> q = plans.get(statement.getQuery());
+        if (q == null) {
+            if (plans.size() >= maxQueries) {
+                return false;
+            }
+            ArrayBlockingQueue<PreparedStatement> n = new ArrayBlockingQueue<>(maxStatements);
+            if ((q = plans.putIfAbsent(statement.getQuery(), n)) == null) {
+                q = n;
+            }
+        }
+        return q.offer(statement);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.parser;
+
+import com.nfsdb.collections.CharSequenceObjHashMap;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.logging.Logger;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.ql.RecordSource;
+import com.nfsdb.ql.ops.Parameter;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Compiled query with bind variables, see {@link QueryCompiler#prepare(CharSequence)}. Parameters
+ * are named by their query tokens, for example ":sym", and can be bound again between executions
+ * without compiling query. Statement is not thread-safe, closing it returns compiled query to
+ * plan cache for reuse by any compiler. Literal values are compiled into statement, only values of
+ * bind variables can change between executions, see {@link PlanCache}.
+ */
+public class PreparedStatement implements Closeable {
+    private final static Logger LOGGER = Logger.getLogger(PreparedStatement.class);
+    private final String query;
+    private final PlanCache cache;
+    private final CharSequenceObjHashMap<Parameter> parameters = new CharSequenceObjHashMap<>();
+    private final ObjList<String> parameterNames = new ObjList<>();
+    private RecordSource<? extends Record> source;
+    private JournalReaderFactory factory;
+
+    PreparedStatement(String query, PlanCache cache) {
+        this.query = query;
+        this.cache = cache;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0, n = parameterNames.size(); i < n; i++) {
+            parameters.get(parameterNames.getQuick(i)).clear();
+        }
+        factory = null;
+        if (cache == null || !cache.release(this)) {
+            free();
+        }
+    }
+
+    /**
+     * Opens cursor with current parameter values. Previously opened cursor becomes invalid.
+     *
+     * @return cursor of query result
+     * @throws JournalException when journals cannot be read
+     */
+    public RecordCursor<? extends Record> execute() throws JournalException {
+        for (int i = 0, n = parameterNames.size(); i < n; i++) {
+            String name = parameterNames.getQuick(i);
+            if (!parameters.get(name).isBound()) {
+                throw new JournalRuntimeException("Parameter is not bound: %s", name);
+            }
+        }
+        source.reset();
+        return source.prepareCursor(factory);
+    }
+
+    public RecordMetadata getMetadata() {
+        return source.getMetadata();
+    }
+
+    public Parameter getParameter(CharSequence name) {
+        Parameter p = parameters.get(name);
+        if (p == null) {
+            throw new JournalRuntimeException("No such parameter: %s", name);
+        }
+        return p;
+    }
+
+    public int getParameterCount() {
+        return parameterNames.size();
+    }
+
+    /**
+     * @return query text with white space normalised, including literal values, it is key of statement in plan cache
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    Parameter getOrCreateParameter(String name) {
+        Parameter p = parameters.get(name);
+        if (p == null) {
+            p = new Parameter();
+            parameters.put(name, p);
+            parameterNames.add(name);
+        }
+        return p;
+    }
+
+    void free() {
+        if (source instanceof Closeable) {
+            try {
+                ((Closeable) source).close();
+            } catch (IOException e) {
+                LOGGER.warn("Caught exception: ", e);
+            }
+        }
+    }
+
+    void of(RecordSource<? extends Record> source) {
+        this.source = source;
+    }
+
+    void setFactory(JournalReaderFactory factory) {
+        this.factory = factory;
+    }
+}
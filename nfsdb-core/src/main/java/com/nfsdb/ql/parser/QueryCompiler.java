@@ -25,6 +25,7 @@ import com.nfsdb.JournalKey;
 import com.nfsdb.collections.*;
 import com.nfsdb.exceptions.*;
 import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.factory.configuration.JournalConfiguration;
 import com.nfsdb.factory.configuration.JournalMetadata;
 import com.nfsdb.factory.configuration.RecordColumnMetadata;
@@ -41,17 +42,30 @@ import com.nfsdb.utils.Numbers;
 import com.nfsdb.utils.Unsafe;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.io.File;
 import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
 
 public class QueryCompiler {
 
     private final static CharSequenceHashSet nullConstants = new CharSequenceHashSet();
+    private final static CharSequenceHashSet aggregateFunctions = new CharSequenceHashSet();
+    private final static CharSequenceHashSet constantArgFunctions = new CharSequenceHashSet();
     private final static NullConstant nullConstant = new NullConstant();
     private final static ObjObjHashMap<Signature, LatestByLambdaRowSourceFactory> LAMBDA_ROW_SOURCE_FACTORIES = new ObjObjHashMap<>();
     private final static LongConstant LONG_ZERO_CONST = new LongConstant(0L);
+    // maximum number of rows parallel scan worker takes at once
+    private final static long PARALLEL_SLICE_ROWS = 1024 * 1024;
+    // capacity of plan cache compiler creates when it is not given shared one
+    private final static int PLAN_CACHE_QUERIES = 1024;
+    private final static int PLAN_CACHE_STATEMENTS = 4;
     private final QueryParser parser = new QueryParser();
     private final JournalReaderFactory factory;
+    private final ExecutorService executor;
+    private final int parallelism;
     private final AssociativeCache<RecordSource<? extends Record>> cache = new AssociativeCache<>(8, 1024);
+    private final PlanCache planCache;
+    private final StringSink normalisedQuery = new StringSink();
     private final ArrayDeque<VirtualColumn> stack = new ArrayDeque<>();
     private final QueryFilterAnalyser queryFilterAnalyser = new QueryFilterAnalyser();
     private final VirtualColumnBuilder virtualColumnBuilderVisitor = new VirtualColumnBuilder();
@@ -89,11 +103,45 @@ public class QueryCompiler {
     private final IntList nullCounts = new IntList();
     private final ObjList<CharSequence> selectedColumns = new ObjList<>();
     private final CharSequenceObjHashMap<String> renameMap = new CharSequenceObjHashMap<>();
+    private final ObjList<QueryColumn> groupedColumns = new ObjList<>();
+    private final CharSequenceHashSet groupedNames = new CharSequenceHashSet();
     private ObjList<JoinContext> emittedJoinClauses;
+    // statement being prepared, parameters are only allowed when it is set
+    private PreparedStatement statement;
+    private long sortMemoryBudget = SortedRecordSource.DEFAULT_MEMORY_BUDGET;
+    private long joinMemoryBudget = HashJoinRecordSource.DEFAULT_MEMORY_BUDGET;
+    private File spillDirectory;
 
 
     public QueryCompiler(JournalReaderFactory factory) {
+        this(factory, null, 1);
+    }
+
+    /**
+     * Creates compiler, which scans partitions of filtered queries on multiple threads.
+     *
+     * @param factory     journal reader factory
+     * @param executor    executor to run scan workers on, it has to have at least one thread.
+     * @param parallelism number of scan workers per query, values below 2 disable parallel scanning.
+     */
+    public QueryCompiler(JournalReaderFactory factory, ExecutorService executor, int parallelism) {
+        this(factory, executor, parallelism, new PlanCache(PLAN_CACHE_QUERIES, PLAN_CACHE_STATEMENTS));
+    }
+
+    /**
+     * Creates compiler, which shares prepared statements with other compilers. Compilers, which share plan
+     * cache, have to read same database.
+     *
+     * @param factory     journal reader factory
+     * @param executor    executor to run scan workers on, it has to have at least one thread.
+     * @param parallelism number of scan workers per query, values below 2 disable parallel scanning.
+     * @param planCache   cache of prepared statements
+     */
+    public QueryCompiler(JournalReaderFactory factory, ExecutorService executor, int parallelism, PlanCache planCache) {
         this.factory = factory;
+        this.executor = executor;
+        this.parallelism = executor == null ? 1 : parallelism;
+        this.planCache = planCache;
 
         // seed column name assembly with default column prefix, which we will reuse
         columnNameAssembly.put("col");
@@ -125,10 +173,127 @@ public class QueryCompiler {
         return model.plan();
     }
 
+    /**
+     * Compiles query with bind variables, for example "quote where sym = :sym and bid > :bid". Compiled query
+     * is taken from plan cache when cache has idle statement for same query text, which allows to skip parsing
+     * and optimisation of queries, which differ only in values of parameters. Literals are not turned into
+     * parameters, queries, which differ in literal values, are compiled separately. Statement has to be closed
+     * to return it to cache.
+     *
+     * @param query query text
+     * @return statement, which has to be closed after use
+     * @throws ParserException  when query is invalid
+     * @throws JournalException when journals cannot be opened
+     */
+    public PreparedStatement prepare(CharSequence query) throws ParserException, JournalException {
+        normalisedQuery.clear();
+        parser.normalise(query, normalisedQuery);
+        String key = normalisedQuery.toString();
+
+        PreparedStatement ps = planCache.poll(key);
+        if (ps == null) {
+            ps = new PreparedStatement(key, planCache);
+            statement = ps;
+            try {
+                ps.of(resetAndCompile(parser.parse(query).getQueryModel(), factory));
+            } finally {
+                statement = null;
+            }
+        }
+        ps.setFactory(factory);
+        return ps;
+    }
+
+    /**
+     * Sets memory budget of hash joins, see {@link HashJoinRecordSource}. Applies to queries compiled after
+     * this call, queries already in cache keep budget they were compiled with.
+     *
+     * @param joinMemoryBudget bytes of memory hash table of join is allowed to take before join spills to disk
+     * @return this compiler
+     */
+    public QueryCompiler setJoinMemoryBudget(long joinMemoryBudget) {
+        this.joinMemoryBudget = joinMemoryBudget;
+        return this;
+    }
+
+    /**
+     * Sets memory budget of "order by", see {@link SortedRecordSource}. Applies to queries compiled after
+     * this call, queries already in cache keep budget they were compiled with.
+     *
+     * @param sortMemoryBudget bytes of memory sort is allowed to take before it spills to disk
+     * @return this compiler
+     */
+    public QueryCompiler setSortMemoryBudget(long sortMemoryBudget) {
+        this.sortMemoryBudget = sortMemoryBudget;
+        return this;
+    }
+
+    /**
+     * @param spillDirectory directory for temporary files of sorts and joins, null for default temporary directory
+     * @return this compiler
+     */
+    public QueryCompiler setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    private static String bitmapValue(ExprNode node) {
+        return Chars.equals("null", node.token) ? null : Chars.stripQuotes(node.token);
+    }
+
+    private static boolean hasAggregates(ObjList<QueryColumn> columns) {
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            if (isAggregate(columns.getQuick(i).getAst())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAggregate(ExprNode node) {
+        return node.type == ExprNode.NodeType.FUNCTION && aggregateFunctions.contains(node.token);
+    }
+
     private static Signature lbs(ColumnType master, boolean indexed, ColumnType lambda) {
         return new Signature().setName("").setParamCount(2).paramType(0, master, indexed).paramType(1, lambda, false);
     }
 
+    private void addBitmapLookups(BitmapIndexRowSource rs, ExprNode node) {
+        switch (node.token) {
+            case "and":
+                addBitmapLookups(rs, node.lhs);
+                addBitmapLookups(rs, node.rhs);
+                rs.and();
+                break;
+            case "or":
+                addBitmapLookups(rs, node.lhs);
+                addBitmapLookups(rs, node.rhs);
+                rs.or();
+                break;
+            case "in":
+                if (node.paramCount < 3) {
+                    rs.lookup(node.lhs.token, bitmapValue(node.rhs));
+                } else {
+                    String col = node.args.getLast().token;
+                    for (int i = node.paramCount - 2; i > -1; i--) {
+                        rs.lookup(col, bitmapValue(node.args.getQuick(i)));
+                        if (i < node.paramCount - 2) {
+                            rs.or();
+                        }
+                    }
+                }
+                break;
+            default:
+                // "=", analyser made sure it is column and constant
+                if (node.lhs.type == ExprNode.NodeType.LITERAL) {
+                    rs.lookup(node.lhs.token, bitmapValue(node.rhs));
+                } else {
+                    rs.lookup(node.rhs.token, bitmapValue(node.lhs));
+                }
+                break;
+        }
+    }
+
     private void addFilterOrEmitJoin(QueryModel parent, int idx, int ai, CharSequence an, ExprNode ao, int bi, CharSequence bn, ExprNode bo) {
         if (ai == bi && Chars.equals(an, bn)) {
             deletedContexts.add(idx);
@@ -285,6 +450,34 @@ public class QueryCompiler {
         }
     }
 
+    private RowSource buildBitmapRowSource(IntrinsicModel im) {
+        BitmapIndexRowSource rs = new BitmapIndexRowSource();
+        for (int i = 0, n = im.bitmapNodes.size(); i < n; i++) {
+            addBitmapLookups(rs, im.bitmapNodes.getQuick(i));
+            if (i > 0) {
+                rs.and();
+            }
+        }
+        return rs;
+    }
+
+    private RowSource buildRowSource(IntrinsicModel im, JournalMetadata metadata) throws ParserException {
+        if (im.keyColumn == null) {
+            return im.bitmapNodes.size() > 0 ? buildBitmapRowSource(im) : null;
+        }
+
+        switch (metadata.getColumn(im.keyColumn).getType()) {
+            case SYMBOL:
+                return buildRowSourceForSym(im);
+            case STRING:
+                return buildRowSourceForStr(im);
+            case INT:
+                return buildRowSourceForInt(im);
+            default:
+                return null;
+        }
+    }
+
     private RowSource buildRowSourceForInt(IntrinsicModel im) throws ParserException {
         int nSrc = im.keyValues.size();
         switch (nSrc) {
@@ -373,13 +566,15 @@ public class QueryCompiler {
     }
 
     private RecordSource<? extends Record> compile(QueryModel model, JournalReaderFactory factory) throws JournalException, ParserException {
-        return limit(
-                selectColumns(
-                        model.getJoinModels().size() > 1 ?
-                                optimise(model, factory).compileJoins(model, factory) :
-                                optimise(model, factory).compileSingleOrSubQuery(model, factory), model.getColumns()
-                ), model
-        );
+        RecordSource<? extends Record> rs = model.getJoinModels().size() > 1 ?
+                optimise(model, factory).compileJoins(model, factory) :
+                optimise(model, factory).compileSingleOrSubQuery(model, factory);
+
+        if (model.getGroupBy().size() > 0 || hasAggregates(model.getColumns())) {
+            // group by replaces aggregate functions in select list with columns it has calculated
+            return limit(order(selectColumns(groupBy(rs, model), groupedColumns), model), model);
+        }
+        return limit(order(selectColumns(rs, model.getColumns()), model), model);
     }
 
     private RecordSource<? extends Record> compileJoins(QueryModel model, JournalReaderFactory factory) throws JournalException, ParserException {
@@ -414,7 +609,7 @@ public class QueryCompiler {
                     ObjList<CharSequence> masterCols = null;
                     ObjList<CharSequence> slaveCols = null;
 
-                    for (int k = 0, kn = jc.aIndexes.size(); k < kn; k++) {
+                    for (int k = 0, kn = jc == null ? 0 : jc.aIndexes.size(); k < kn; k++) {
 
                         CharSequence ca = jc.aNames.getQuick(k);
                         CharSequence cb = jc.bNames.getQuick(k);
@@ -434,7 +629,15 @@ public class QueryCompiler {
                         masterCols.add(cb);
                         slaveCols.add(ca);
                     }
-                    current = new HashJoinRecordSource(current, masterCols, rs, slaveCols, m.getJoinType() == QueryModel.JoinType.OUTER);
+
+                    if (m.getJoinType() == QueryModel.JoinType.ASOF) {
+                        if (!rs.supportsRowIdAccess()) {
+                            throw new ParserException(position(m), "As of join requires row id access to journal");
+                        }
+                        current = new AsOfJoinRecordSource(current, timestampIndex(current, m), rs, timestampIndex(rs, m), masterCols, slaveCols);
+                    } else {
+                        current = new HashJoinRecordSource(current, masterCols, rs, slaveCols, m.getJoinType() == QueryModel.JoinType.OUTER, joinMemoryBudget, spillDirectory);
+                    }
                 }
             }
 
@@ -506,6 +709,9 @@ public class QueryCompiler {
         ExprNode where = model.getWhereClause();
         if (where != null) {
             IntrinsicModel im = queryFilterAnalyser.extract(where, journalMetadata, latestByCol);
+            if (latestByCol == null) {
+                queryFilterAnalyser.extractBitmapNodes(im, journalMetadata);
+            }
 
             VirtualColumn filter = im.filter != null ? createVirtualColumn(im.filter, journalMetadata) : null;
 
@@ -543,21 +749,23 @@ public class QueryCompiler {
                 }
 
                 if (latestByCol == null) {
-                    if (im.keyColumn != null) {
-                        switch (journalMetadata.getColumn(im.keyColumn).getType()) {
-                            case SYMBOL:
-                                rs = buildRowSourceForSym(im);
-                                break;
-                            case STRING:
-                                rs = buildRowSourceForStr(im);
-                                break;
-                            case INT:
-                                rs = buildRowSourceForInt(im);
-                        }
-                    }
+                    rs = buildRowSource(im, journalMetadata);
 
                     if (filter != null) {
                         rs = new FilteredRowSource(rs == null ? new AllRowSource() : rs, filter);
+
+                        if (parallelism > 1) {
+                            // each worker needs its own row source and filter instance
+                            ObjList<RowSource> workerRowSources = new ObjList<>(parallelism);
+                            workerRowSources.add(rs);
+                            for (int i = 1; i < parallelism; i++) {
+                                RowSource keys = buildRowSource(im, journalMetadata);
+                                workerRowSources.add(new FilteredRowSource(keys == null ? new AllRowSource() : keys, createVirtualColumn(im.filter, journalMetadata)));
+                            }
+                            // index lookups are not split because every slice would traverse index again
+                            boolean indexed = im.keyColumn != null || im.bitmapNodes.size() > 0;
+                            return new ParallelJournalSource(ps, workerRowSources, executor, indexed ? Long.MAX_VALUE : PARALLEL_SLICE_ROWS);
+                        }
                     }
                 } else {
                     if (im.keyColumn != null && im.keyValuesIsLambda) {
@@ -631,6 +839,11 @@ public class QueryCompiler {
     }
 
     private RecordSource<? extends Record> compileSourceInternal(CharSequence query) throws ParserException, JournalException {
+        if (statement != null) {
+            // prepared statement can be used by other compiler, it must not share sources with this one
+            return compile(parser.parseInternal(query).getQueryModel(), factory);
+        }
+
         RecordSource<? extends Record> rs = cache.get(query);
         if (rs == null) {
             rs = compile(parser.parseInternal(query).getQueryModel(), factory);
@@ -691,6 +904,78 @@ public class QueryCompiler {
         }
     }
 
+    private AggregatorFunction createAggregator(ExprNode node, RecordMetadata metadata, String name) throws ParserException {
+        AggregatorFunction func;
+        if (Chars.equals(node.token, "count")) {
+            // count() and count(x) are the same, we do not count nulls separately
+            func = new CountLongAggregatorFunction(name);
+        } else {
+            if (node.paramCount != 1 || node.rhs.type != ExprNode.NodeType.LITERAL) {
+                throw new ParserException(node.position, "Column name expected");
+            }
+
+            ExprNode arg = node.rhs;
+            if (metadata.invalidColumn(arg.token)) {
+                throw new InvalidColumnException(arg.position);
+            }
+
+            RecordColumnMetadata cm = metadata.getColumn(arg.token);
+            ColumnMetadata m = new ColumnMetadata().setName(cm.getName()).setType(cm.getType());
+            switch (node.token) {
+                case "sum":
+                    switch (cm.getType()) {
+                        case INT:
+                            func = new SumIntToLongAggregationFunction(m);
+                            break;
+                        case LONG:
+                            func = new SumLongAggregationFunction(m);
+                            break;
+                        case DOUBLE:
+                            func = new SumDoubleAggregationFunction(m);
+                            break;
+                        default:
+                            func = null;
+                    }
+                    break;
+                case "avg":
+                    func = cm.getType() == ColumnType.DOUBLE ? new AvgDoubleAggregationFunction(m) : null;
+                    break;
+                case "first":
+                    switch (cm.getType()) {
+                        case DOUBLE:
+                            func = new FirstDoubleAggregationFunction(m);
+                            break;
+                        case LONG:
+                        case DATE:
+                            func = new FirstLongAggregationFunction(m);
+                            break;
+                        default:
+                            func = null;
+                    }
+                    break;
+                default:
+                    switch (cm.getType()) {
+                        case DOUBLE:
+                            func = new LastDoubleAggregationFunction(m);
+                            break;
+                        case LONG:
+                        case DATE:
+                            func = new LastLongAggregationFunction(m);
+                            break;
+                        default:
+                            func = null;
+                    }
+                    break;
+            }
+
+            if (func == null) {
+                throw new ParserException(arg.position, "Unsupported type: " + cm.getType());
+            }
+        }
+        func.setName(name);
+        return func;
+    }
+
     private void createColumn(ExprNode node, RecordMetadata metadata) throws ParserException {
         mutableArgs.clear();
         mutableSig.clear();
@@ -706,6 +991,9 @@ public class QueryCompiler {
                     case CONSTANT:
                         stack.push(parseConstant(node));
                         break;
+                    case PARAMETER:
+                        stack.push(lookupParameter(node));
+                        break;
                     default:
                         // lookup zero arg function from symbol table
                         stack.push(lookupFunction(node, mutableSig.setName(node.token).setParamCount(0), null));
@@ -719,9 +1007,14 @@ public class QueryCompiler {
                     if (c == null) {
                         throw new ParserException(node.position, "Too few arguments");
                     }
-                    mutableSig.paramType(n, c.getType(), c.isConstant());
                     mutableArgs.setQuick(n, c);
                 }
+                inferParameterTypes(node, argCount);
+                for (int n = 0; n < argCount; n++) {
+                    VirtualColumn c = mutableArgs.getQuick(n);
+                    // parameter selects same function as constant, but it is not folded
+                    mutableSig.paramType(n, c.getType(), c.isConstant() || c instanceof Parameter);
+                }
                 stack.push(lookupFunction(node, mutableSig, mutableArgs));
         }
     }
@@ -736,6 +1029,98 @@ public class QueryCompiler {
         return dot == -1 ? token : csPool.next().of(token, dot + 1, token.length() - dot - 1);
     }
 
+    /**
+     * Aggregates records of given source by "group by" columns. Aggregate functions of select list
+     * are copied to {@link #groupedColumns} as literals naming columns of resulting record source,
+     * other select columns are copied as they are.
+     */
+    private RecordSource<? extends Record> groupBy(RecordSource<? extends Record> rs, QueryModel model) throws ParserException {
+        final RecordMetadata m = rs.getMetadata();
+        final ObjList<ExprNode> groupBy = model.getGroupBy();
+        final ObjList<QueryColumn> columns = model.getColumns();
+
+        ObjList<CharSequence> keys = new ObjList<>();
+        groupedNames.clear();
+        for (int i = 0, n = groupBy.size(); i < n; i++) {
+            ExprNode node = groupBy.getQuick(i);
+            if (node.type != ExprNode.NodeType.LITERAL) {
+                throw new ParserException(node.position, "Column name expected");
+            }
+
+            String key = node.token;
+            if (m.invalidColumn(key)) {
+                throw new InvalidColumnException(node.position);
+            }
+
+            if (m.getColumn(key).getType() == ColumnType.BINARY) {
+                throw new ParserException(node.position, "Cannot group by binary column");
+            }
+            keys.add(key);
+            groupedNames.add(key);
+        }
+
+        ObjList<AggregatorFunction> aggregators = new ObjList<>();
+        groupedColumns.clear();
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            QueryColumn qc = columns.getQuick(i);
+            ExprNode node = qc.getAst();
+
+            if (!isAggregate(node)) {
+                groupedColumns.add(qc);
+                continue;
+            }
+
+            String name = qc.getName();
+            if (name == null) {
+                name = node.token;
+                for (int k = 1; groupedNames.contains(name); k++) {
+                    name = node.token + k;
+                }
+            } else if (groupedNames.contains(name)) {
+                throw new ParserException(node.position, "Duplicate column name: " + name);
+            }
+            groupedNames.add(name);
+
+            aggregators.add(createAggregator(node, m, name));
+            groupedColumns.add(new QueryColumn(qc.getName(), exprNodePool.next().init(ExprNode.NodeType.LITERAL, name, 0, node.position)));
+        }
+
+        return new GroupByRecordSource(rs, keys, aggregators);
+    }
+
+    /**
+     * Parameters take type of other arguments of function, symbol arguments make them strings.
+     */
+    private void inferParameterTypes(ExprNode node, int argCount) throws ParserException {
+        ColumnType type = null;
+        boolean untyped = false;
+        for (int n = 0; n < argCount; n++) {
+            VirtualColumn c = mutableArgs.getQuick(n);
+            if (c instanceof Parameter && constantArgFunctions.contains(node.token)) {
+                throw new ParserException(node.position, "Parameter is not supported by: " + node.token);
+            }
+
+            if (c.getType() == null) {
+                untyped = true;
+            } else if (type == null) {
+                type = c.getType() == ColumnType.SYMBOL ? ColumnType.STRING : c.getType();
+            }
+        }
+
+        if (untyped) {
+            if (type == null) {
+                throw new ParserException(node.position, "Cannot infer type of parameter");
+            }
+
+            for (int n = 0; n < argCount; n++) {
+                VirtualColumn c = mutableArgs.getQuick(n);
+                if (c.getType() == null) {
+                    ((Parameter) c).setType(type);
+                }
+            }
+        }
+    }
+
     private boolean joinModelIsFalse(QueryModel model) throws ParserException {
         ExprNode current = null;
         IntHashSet constants = model.getParsedWhereConsts();
@@ -760,6 +1145,9 @@ public class QueryCompiler {
     private RecordSource<? extends Record> limit(RecordSource<? extends Record> rs, QueryModel model) {
         if (model.getLimitLoVc() == null || model.getLimitHiVc() == null) {
             return rs;
+        } else if (rs instanceof SortedRecordSource) {
+            // keep only records within limit instead of sorting all of them
+            return new TopRecordSource(new TopNRecordSource((SortedRecordSource) rs, model.getLimitHiVc()), model.getLimitLoVc(), model.getLimitHiVc());
         } else {
             return new TopRecordSource(rs, model.getLimitLoVc(), model.getLimitHiVc());
         }
@@ -821,6 +1209,13 @@ public class QueryCompiler {
         return f.isConstant() ? processConstantExpression(f) : f;
     }
 
+    private Parameter lookupParameter(ExprNode node) throws ParserException {
+        if (statement == null) {
+            throw new ParserException(node.position, "Parameters require prepared statement");
+        }
+        return statement.getOrCreateParameter(node.token);
+    }
+
     private JoinContext mergeContexts(QueryModel parent, JoinContext a, JoinContext b) {
         assert a.slaveIndex == b.slaveIndex;
 
@@ -1011,6 +1406,33 @@ public class QueryCompiler {
         return this;
     }
 
+    private RecordSource<? extends Record> order(RecordSource<? extends Record> rs, QueryModel model) throws ParserException {
+        ObjList<ExprNode> orderBy = model.getOrderBy();
+        if (orderBy.size() == 0) {
+            return rs;
+        }
+
+        RecordMetadata m = rs.getMetadata();
+        SortedRecordSource sorted = new SortedRecordSource(rs, sortMemoryBudget, spillDirectory);
+        IntList directions = model.getOrderByDirection();
+        for (int i = 0, n = orderBy.size(); i < n; i++) {
+            ExprNode node = orderBy.getQuick(i);
+            if (node.type != ExprNode.NodeType.LITERAL) {
+                throw new ParserException(node.position, "Column name expected");
+            }
+
+            if (m.invalidColumn(node.token)) {
+                throw new InvalidColumnException(node.position);
+            }
+
+            if (m.getColumn(node.token).getType() == ColumnType.BINARY) {
+                throw new ParserException(node.position, "Cannot order by binary column");
+            }
+            sorted.orderBy(node.token, directions.getQuick(i) == QueryModel.ORDER_DIRECTION_DESCENDING);
+        }
+        return sorted;
+    }
+
     private int orderJournals(QueryModel parent, IntList ordered) {
         tempCrossIndexes.clear();
         ordered.clear();
@@ -1113,6 +1535,11 @@ public class QueryCompiler {
         throw new ParserException(node.position, "Unknown value type: " + node.token);
     }
 
+    private int position(QueryModel m) {
+        ExprNode node = m.getAlias() != null ? m.getAlias() : m.getJournalName();
+        return node == null ? 0 : node.position;
+    }
+
     /**
      * Splits "where" clauses into "and" concatenated list of boolean expressions.
      *
@@ -1239,7 +1666,7 @@ public class QueryCompiler {
                 if (c != null && c.parents.size() > 0) {
                     m.setJoinType(QueryModel.JoinType.INNER);
                 }
-            } else {
+            } else if (m.getJoinType() != QueryModel.JoinType.ASOF) {
                 if (c == null || c.parents.size() == 0) {
                     m.setJoinType(QueryModel.JoinType.CROSS);
                 }
@@ -1360,12 +1787,12 @@ public class QueryCompiler {
      * @param to   target journal index
      * @param from source journal index
      * @param jc   context of target journal index
-     * @return false if "from" is outer joined journal, otherwise - true
+     * @return false if "from" is outer or as of joined journal, otherwise - true
      */
     private boolean swapJoinOrder(QueryModel parent, int to, int from, JoinContext jc) {
         ObjList<QueryModel> joinModels = parent.getJoinModels();
         QueryModel jm = joinModels.getQuick(from);
-        if (jm.getJoinType() == QueryModel.JoinType.OUTER) {
+        if (jm.getJoinType() == QueryModel.JoinType.OUTER || jm.getJoinType() == QueryModel.JoinType.ASOF) {
             return false;
         }
 
@@ -1396,6 +1823,23 @@ public class QueryCompiler {
         return true;
     }
 
+    /**
+     * Finds timestamp column of record source for as of join. When source is a join itself, its
+     * timestamp is that of master, which columns come first.
+     */
+    private int timestampIndex(RecordSource<? extends Record> rs, QueryModel m) throws ParserException {
+        RecordMetadata metadata = rs.getMetadata();
+        RecordColumnMetadata timestamp = metadata.getTimestampMetadata();
+        if (timestamp != null) {
+            for (int i = 0, n = metadata.getColumnCount(); i < n; i++) {
+                if (Chars.equals(metadata.getColumnQuick(i).getName(), timestamp.getName())) {
+                    return i;
+                }
+            }
+        }
+        throw new ParserException(position(m), "As of join requires timestamp");
+    }
+
     private int toInt(CharSequence cs, int pos) throws ParserException {
         try {
             return Numbers.parseInt(cs);
@@ -1627,4 +2071,18 @@ public class QueryCompiler {
         nullConstants.add("null");
         nullConstants.add("NaN");
     }
+
+    static {
+        aggregateFunctions.add("sum");
+        aggregateFunctions.add("count");
+        aggregateFunctions.add("avg");
+        aggregateFunctions.add("first");
+        aggregateFunctions.add("last");
+    }
+
+    static {
+        // these functions read constant arguments when they are compiled
+        constantArgFunctions.add("~");
+        constantArgFunctions.add("in");
+    }
 }
@@ -25,6 +25,8 @@ import com.nfsdb.collections.*;
 import com.nfsdb.exceptions.InvalidColumnException;
 import com.nfsdb.exceptions.NumericException;
 import com.nfsdb.exceptions.ParserException;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.factory.configuration.JournalMetadata;
 import com.nfsdb.factory.configuration.RecordColumnMetadata;
 import com.nfsdb.factory.configuration.RecordMetadata;
 import com.nfsdb.ql.impl.MillisIntervalSource;
@@ -33,6 +35,7 @@ import com.nfsdb.ql.impl.YearIntervalSource;
 import com.nfsdb.ql.model.ExprNode;
 import com.nfsdb.ql.model.IntrinsicModel;
 import com.nfsdb.ql.model.IntrinsicValue;
+import com.nfsdb.storage.ColumnType;
 import com.nfsdb.utils.Chars;
 import com.nfsdb.utils.Dates;
 import com.nfsdb.utils.Interval;
@@ -55,6 +58,10 @@ final class QueryFilterAnalyser {
     private RecordColumnMetadata timestamp;
     private String preferredKeyColumn;
 
+    private static boolean isConstant(ExprNode node) {
+        return node != null && node.type == ExprNode.NodeType.CONSTANT;
+    }
+
     private boolean analyzeEquals(IntrinsicModel model, ExprNode node, RecordMetadata m) throws ParserException {
         return node.paramCount == 2 && (analyzeEquals0(model, node, node.lhs, node.rhs, m) || analyzeEquals0(model, node, node.rhs, node.lhs, m));
     }
@@ -384,6 +391,16 @@ final class QueryFilterAnalyser {
         return false;
     }
 
+    private void collectBitmapNodes(IntrinsicModel model, ExprNode node, JournalMetadata m) {
+        if ("and".equals(node.token)) {
+            collectBitmapNodes(model, node.lhs, m);
+            collectBitmapNodes(model, node.rhs, m);
+        } else if (isBitmapPredicate(node, m)) {
+            node.intrinsicValue = IntrinsicValue.TRUE;
+            model.bitmapNodes.add(node);
+        }
+    }
+
     private ExprNode collapseIntrinsicNodes(ExprNode node) {
         if (node == null || node.intrinsicValue == IntrinsicValue.TRUE) {
             return null;
@@ -446,6 +463,63 @@ final class QueryFilterAnalyser {
         return model;
     }
 
+    /**
+     * Moves conjuncts of filter, which are equality, "in" or their and/or combinations on bitmap indexed
+     * symbols, from filter to list of bitmap nodes. Key column lookup takes precedence, bitmap indexes
+     * are used only when there is none.
+     */
+    void extractBitmapNodes(IntrinsicModel model, JournalMetadata m) {
+        if (model.keyColumn != null || model.filter == null) {
+            return;
+        }
+
+        collectBitmapNodes(model, model.filter, m);
+        if (model.bitmapNodes.size() > 0) {
+            model.filter = collapseIntrinsicNodes(model.filter);
+        }
+    }
+
+    private boolean isBitmapColumn(ExprNode node, JournalMetadata m) {
+        if (node == null || node.type != ExprNode.NodeType.LITERAL || m.invalidColumn(node.token)) {
+            return false;
+        }
+        ColumnMetadata meta = m.getColumn(node.token);
+        return meta.bitmapIndexed && meta.getType() == ColumnType.SYMBOL;
+    }
+
+    private boolean isBitmapPredicate(ExprNode node, JournalMetadata m) {
+        if (node == null) {
+            return false;
+        }
+
+        switch (node.token) {
+            case "and":
+            case "or":
+                return node.paramCount == 2 && isBitmapPredicate(node.lhs, m) && isBitmapPredicate(node.rhs, m);
+            case "=":
+                return node.paramCount == 2
+                        && ((isBitmapColumn(node.lhs, m) && isConstant(node.rhs)) || (isBitmapColumn(node.rhs, m) && isConstant(node.lhs)));
+            case "in":
+                if (node.paramCount < 2) {
+                    return false;
+                }
+                if (node.paramCount == 2) {
+                    return isBitmapColumn(node.lhs, m) && isConstant(node.rhs);
+                }
+                if (!isBitmapColumn(node.args.getLast(), m)) {
+                    return false;
+                }
+                for (int i = node.paramCount - 2; i > -1; i--) {
+                    if (!isConstant(node.args.getQuick(i))) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
     private boolean parseInterval(IntrinsicModel model, CharSequence seq, int position) throws ParserException {
         return parseInterval(model, seq, 0, seq.length(), position);
     }
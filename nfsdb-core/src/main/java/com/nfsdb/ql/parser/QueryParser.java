@@ -29,6 +29,7 @@ import com.nfsdb.exceptions.NumericException;
 import com.nfsdb.exceptions.ParserException;
 import com.nfsdb.factory.configuration.GenericIntBuilder;
 import com.nfsdb.factory.configuration.JournalStructure;
+import com.nfsdb.io.sink.CharSink;
 import com.nfsdb.ql.model.*;
 import com.nfsdb.storage.ColumnType;
 import com.nfsdb.utils.Chars;
@@ -67,6 +68,21 @@ final class QueryParser {
         return Chars.equals(tok, ')') || Chars.equals(tok, ',');
     }
 
+    /**
+     * Writes tokens of query to sink separated by single space. Queries, which differ only in
+     * white space, have same normalised text.
+     */
+    void normalise(CharSequence query, CharSink sink) {
+        toks.setContent(query);
+        CharSequence tok = optionTok();
+        while (tok != null) {
+            sink.put(tok);
+            if ((tok = optionTok()) != null) {
+                sink.put(' ');
+            }
+        }
+    }
+
     private String notTermTok() throws ParserException {
         CharSequence tok = tok();
         if (isFieldTerm(tok)) {
@@ -181,7 +197,10 @@ final class QueryParser {
             throw new ParserException(toks.position(), "Cross joins cannot have join clauses");
         }
 
-        if (type != QueryModel.JoinType.CROSS) {
+        if (type == QueryModel.JoinType.ASOF && (tok == null || !Chars.equals(tok, "on"))) {
+            // as of join can be on timestamps alone
+            toks.unparse();
+        } else if (type != QueryModel.JoinType.CROSS) {
             expectTok(tok, "on");
             ExprNode expr = expr();
             if (expr == null) {
@@ -340,7 +359,8 @@ final class QueryParser {
                     throw err("Column name expected");
                 }
 
-                model.addGroupBy(tok.toString());
+                toks.unparse();
+                model.addGroupBy(expr());
                 tok = optionTok();
             } while (tok != null && Chars.equals(tok, ","));
         }
@@ -357,8 +377,18 @@ final class QueryParser {
                 }
 
                 toks.unparse();
-                model.addOrderBy(expr());
+                ExprNode n = expr();
                 tok = optionTok();
+
+                if (tok != null && Chars.equals(tok, "desc")) {
+                    model.addOrderBy(n, QueryModel.ORDER_DIRECTION_DESCENDING);
+                    tok = optionTok();
+                } else {
+                    if (tok != null && Chars.equals(tok, "asc")) {
+                        tok = optionTok();
+                    }
+                    model.addOrderBy(n, QueryModel.ORDER_DIRECTION_ASCENDING);
+                }
             } while (tok != null && Chars.equals(tok, ","));
         }
 
@@ -432,6 +462,7 @@ final class QueryParser {
         aliasStopSet.add("inner");
         aliasStopSet.add("outer");
         aliasStopSet.add("cross");
+        aliasStopSet.add("asof");
         aliasStopSet.add("group");
         aliasStopSet.add("order");
         aliasStopSet.add("on");
@@ -444,5 +475,6 @@ final class QueryParser {
         joinStartSet.put("inner", QueryModel.JoinType.INNER);
         joinStartSet.put("outer", QueryModel.JoinType.OUTER);
         joinStartSet.put("cross", QueryModel.JoinType.CROSS);
+        joinStartSet.put("asof", QueryModel.JoinType.ASOF);
     }
 }
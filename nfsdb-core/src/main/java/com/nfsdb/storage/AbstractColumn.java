@@ -22,9 +22,13 @@
 package com.nfsdb.storage;
 
 import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.storage.codec.Codec;
 
 import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 public abstract class AbstractColumn implements Closeable {
     final MemoryFile mappedFile;
@@ -48,6 +52,17 @@ public abstract class AbstractColumn implements Closeable {
         mappedFile.compact();
     }
 
+    /**
+     * Writes copy of first rows of column into directory. Files of copy have the same names as those of column.
+     *
+     * @param dir  directory to write to
+     * @param rows number of rows to copy
+     * @throws JournalException when files cannot be written
+     */
+    public void copyTo(File dir, long rows) throws JournalException {
+        mappedFile.copyTo(new File(dir, mappedFile.getFile().getName()), rows < size() ? getOffset(rows) : getOffset());
+    }
+
     public void force() {
         mappedFile.force();
     }
@@ -62,10 +77,25 @@ public abstract class AbstractColumn implements Closeable {
 
     public abstract long getOffset(long localRowID);
 
+    public boolean isSealed() {
+        return mappedFile instanceof CompressedMemoryFile;
+    }
+
     public void preCommit(long appendOffset) {
         txAppendOffset = appendOffset;
     }
 
+    /**
+     * Writes compressed copy of column files next to them, see {@link CompressedMemoryFile}. Column
+     * itself is unaffected, compressed copy is used once originals are removed and column is reopened.
+     *
+     * @param codec codec of column values
+     * @throws JournalException when compressed file cannot be written
+     */
+    public void seal(Codec codec) throws JournalException {
+        CompressedMemoryFile.compress(mappedFile, codec);
+    }
+
     public abstract long size();
 
     @Override
@@ -73,5 +103,12 @@ public abstract class AbstractColumn implements Closeable {
         return this.getClass().getName() + "[file=" + mappedFile + ", size=" + size() + ']';
     }
 
+    /**
+     * Writes up to count bytes of column data at offset to channel, see {@link MemoryFile#transferTo}.
+     */
+    public long transferTo(long offset, long count, WritableByteChannel channel) throws IOException {
+        return mappedFile.transferTo(offset, count, channel);
+    }
+
     public abstract void truncate(long size);
 }
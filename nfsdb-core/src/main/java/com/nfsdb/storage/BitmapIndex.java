@@ -0,0 +1,367 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage;
+
+import com.nfsdb.collections.LongList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.utils.Unsafe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+
+/**
+ * Compressed bitmap index of symbol column. Rows are split into chunks of {@link #CHUNK_ROWS} and
+ * rows of each key in a chunk are kept in a container, which is either sorted array of 16-bit row
+ * offsets or, once there are more than {@link #ARRAY_MAX} of them, a plain bitmap. Containers are
+ * allocated off-heap.
+ * <p>
+ * Index is derived from symbol column rather than stored. It is built on first use and extended
+ * with rows appended since, which makes it suitable for low cardinality symbols, where it is cheap
+ * to keep and bitmaps of several columns can be combined without touching column data.
+ * <p>
+ * There is no index file on disk. Readers of the same partition, including readers opened by parallel
+ * scan workers, share one copy, see {@link #shared(File)}, which is built by reading entire symbol
+ * column on first query, extended by whichever reader has seen more committed rows and held off-heap
+ * until the last of these readers closes partition. Writer builds its own copy, which includes rows
+ * it has not committed yet.
+ */
+public class BitmapIndex implements Closeable {
+
+    public static final int CHUNK_BITS = 16;
+    public static final int CHUNK_ROWS = 1 << CHUNK_BITS;
+    public static final int BITMAP_WORDS = CHUNK_ROWS / 64;
+    private static final int ARRAY_MAX = 4096;
+    private static final int MIN_CAPACITY = 4;
+    /*
+        struct container {
+            int cardinality
+            int capacity, number of array elements or -1 for bitmap
+            short[capacity] or long[BITMAP_WORDS]
+        }
+     */
+    private static final int HEADER_SIZE = 8;
+    private static final int BITMAP = -1;
+    // indexes shared by readers, keyed by symbol column file
+    private static final HashMap<String, BitmapIndex> SHARED = new HashMap<>();
+    private final FixedColumn column;
+    // containers of key + 1, null key is -1
+    private final ObjList<LongList> keys = new ObjList<>();
+    private final String sharedKey;
+    private int refCount;
+    private volatile long size;
+
+    public BitmapIndex(FixedColumn column) {
+        this.column = column;
+        this.sharedKey = null;
+    }
+
+    private BitmapIndex(String sharedKey) {
+        this.column = null;
+        this.sharedKey = sharedKey;
+    }
+
+    /**
+     * Index shared by all readers of symbol column file. Index is released by {@link #close()}
+     * once each reader is done with it. Shared index is not truncated, it keeps rows seen by reader
+     * with most rows, so that readers have to ignore rows beyond their own partition size.
+     *
+     * @param file symbol column file
+     * @return shared index
+     * @throws JournalException when file cannot be read
+     */
+    public static BitmapIndex shared(File file) throws JournalException {
+        String key;
+        try {
+            // file, which is deleted and created again, must not reuse index of old one
+            key = file.getAbsolutePath() + '|' + Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            throw new JournalException("Cannot read attributes of %s", e, file);
+        }
+
+        synchronized (SHARED) {
+            BitmapIndex index = SHARED.get(key);
+            if (index == null) {
+                index = new BitmapIndex(key);
+                SHARED.put(key, index);
+            }
+            index.refCount++;
+            return index;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (sharedKey != null) {
+            synchronized (SHARED) {
+                if (refCount == 0 || --refCount > 0) {
+                    return;
+                }
+                SHARED.remove(sharedKey);
+            }
+        }
+
+        synchronized (this) {
+            free();
+            size = 0;
+        }
+    }
+
+    /**
+     * @param key symbol key or {@link SymbolTable#VALUE_IS_NULL}
+     * @return number of rows of key
+     */
+    public synchronized long getCardinality(int key) {
+        LongList chunks = keys.getQuiet(key + 1);
+        if (chunks == null) {
+            return 0;
+        }
+        long count = 0;
+        for (int i = 0, n = chunks.size(); i < n; i++) {
+            long c = chunks.getQuick(i);
+            if (c != 0) {
+                count += Unsafe.getUnsafe().getInt(c);
+            }
+        }
+        return count;
+    }
+
+    public long getChunkCount() {
+        return (size + CHUNK_ROWS - 1) >>> CHUNK_BITS;
+    }
+
+    /**
+     * Sets bits of rows of key in chunk, other bits are left as they are.
+     *
+     * @param key    symbol key or {@link SymbolTable#VALUE_IS_NULL}
+     * @param chunk  chunk number
+     * @param bitmap array, where {@link #BITMAP_WORDS} words of chunk bitmap start at offset
+     * @param offset offset of chunk bitmap in array
+     * @return false when key has no rows in chunk
+     */
+    public synchronized boolean or(int key, int chunk, long[] bitmap, int offset) {
+        long c = container(key, chunk);
+        if (c == 0) {
+            return false;
+        }
+
+        int cardinality = Unsafe.getUnsafe().getInt(c);
+        if (Unsafe.getUnsafe().getInt(c + 4) == BITMAP) {
+            long p = c + HEADER_SIZE;
+            for (int i = offset, lim = offset + BITMAP_WORDS; i < lim; i++, p += 8) {
+                Unsafe.arrayPut(bitmap, i, Unsafe.arrayGet(bitmap, i) | Unsafe.getUnsafe().getLong(p));
+            }
+        } else {
+            for (long p = c + HEADER_SIZE, lim = p + cardinality * 2; p < lim; p += 2) {
+                int v = Unsafe.getUnsafe().getShort(p) & 0xffff;
+                int i = offset + (v >>> 6);
+                Unsafe.arrayPut(bitmap, i, Unsafe.arrayGet(bitmap, i) | (1L << v));
+            }
+        }
+        return true;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Removes rows at or after size from index, rows before size are kept as they are.
+     *
+     * @param size number of rows to keep
+     */
+    public synchronized void truncate(long size) {
+        if (size >= this.size) {
+            return;
+        }
+
+        int chunk = (int) (size >>> CHUNK_BITS);
+        int v = (int) (size & (CHUNK_ROWS - 1));
+        for (int i = 0, n = keys.size(); i < n; i++) {
+            LongList chunks = keys.getQuick(i);
+            if (chunks == null) {
+                continue;
+            }
+            for (int j = chunks.size() - 1; j >= chunk; j--) {
+                long c = chunks.getQuick(j);
+                if (c == 0 || (j == chunk && v > 0 && trim(c, v) > 0)) {
+                    continue;
+                }
+                Unsafe.getUnsafe().freeMemory(c);
+                chunks.setQuick(j, 0);
+            }
+        }
+        this.size = size;
+    }
+
+    /**
+     * Indexes rows of column up to size. Smaller size than that already indexed means column was
+     * truncated, in which case index is rebuilt.
+     *
+     * @param size number of rows in column
+     */
+    public void update(long size) {
+        update(column, size);
+    }
+
+    /**
+     * Indexes rows of column up to size. Column is given by reader of shared index, rows of index
+     * {@link #shared(File)} created are not removed when reader has fewer rows than index.
+     *
+     * @param column symbol column, which index was created for
+     * @param size   number of rows in column
+     */
+    public synchronized void update(FixedColumn column, long size) {
+        if (size < this.size) {
+            if (sharedKey != null) {
+                return;
+            }
+            free();
+            this.size = 0;
+        }
+
+        for (long row = this.size; row < size; row++) {
+            add(column.getInt(row), row);
+        }
+        this.size = size;
+    }
+
+    private static long allocate(int capacity) {
+        long c = Unsafe.getUnsafe().allocateMemory(HEADER_SIZE + capacity * 2);
+        Unsafe.getUnsafe().putInt(c, 0);
+        Unsafe.getUnsafe().putInt(c + 4, capacity);
+        return c;
+    }
+
+    private static long toBitmap(long c) {
+        long b = Unsafe.getUnsafe().allocateMemory(HEADER_SIZE + BITMAP_WORDS * 8);
+        Unsafe.getUnsafe().setMemory(b + HEADER_SIZE, BITMAP_WORDS * 8, (byte) 0);
+        int cardinality = Unsafe.getUnsafe().getInt(c);
+        Unsafe.getUnsafe().putInt(b, cardinality);
+        Unsafe.getUnsafe().putInt(b + 4, BITMAP);
+        for (long p = c + HEADER_SIZE, lim = p + cardinality * 2; p < lim; p += 2) {
+            int v = Unsafe.getUnsafe().getShort(p) & 0xffff;
+            long w = b + HEADER_SIZE + ((v >>> 6) << 3);
+            Unsafe.getUnsafe().putLong(w, Unsafe.getUnsafe().getLong(w) | (1L << v));
+        }
+        Unsafe.getUnsafe().freeMemory(c);
+        return b;
+    }
+
+    /**
+     * Drops rows at or after v from container.
+     *
+     * @return number of rows left in container
+     */
+    private static int trim(long c, int v) {
+        int cardinality = Unsafe.getUnsafe().getInt(c);
+        if (Unsafe.getUnsafe().getInt(c + 4) == BITMAP) {
+            long w = c + HEADER_SIZE + ((v >>> 6) << 3);
+            Unsafe.getUnsafe().putLong(w, Unsafe.getUnsafe().getLong(w) & ((1L << v) - 1));
+            Unsafe.getUnsafe().setMemory(w + 8, (BITMAP_WORDS - (v >>> 6) - 1) * 8, (byte) 0);
+            cardinality = 0;
+            for (long p = c + HEADER_SIZE; p <= w; p += 8) {
+                cardinality += Long.bitCount(Unsafe.getUnsafe().getLong(p));
+            }
+        } else {
+            while (cardinality > 0 && (Unsafe.getUnsafe().getShort(c + HEADER_SIZE + (cardinality - 1) * 2) & 0xffff) >= v) {
+                cardinality--;
+            }
+        }
+        Unsafe.getUnsafe().putInt(c, cardinality);
+        return cardinality;
+    }
+
+    private void add(int key, long row) {
+        int slot = key + 1;
+        LongList chunks = keys.getQuiet(slot);
+        if (chunks == null) {
+            chunks = new LongList();
+            keys.extendAndSet(slot, chunks);
+        }
+
+        int chunk = (int) (row >>> CHUNK_BITS);
+        int v = (int) (row & (CHUNK_ROWS - 1));
+        long c = chunk < chunks.size() ? chunks.getQuick(chunk) : 0;
+
+        if (c == 0) {
+            c = allocate(MIN_CAPACITY);
+            chunks.extendAndSet(chunk, c);
+        }
+
+        int cardinality = Unsafe.getUnsafe().getInt(c);
+        int capacity = Unsafe.getUnsafe().getInt(c + 4);
+
+        if (capacity == BITMAP) {
+            long w = c + HEADER_SIZE + ((v >>> 6) << 3);
+            Unsafe.getUnsafe().putLong(w, Unsafe.getUnsafe().getLong(w) | (1L << v));
+        } else if (cardinality < capacity) {
+            // rows are appended in order, array stays sorted
+            Unsafe.getUnsafe().putShort(c + HEADER_SIZE + cardinality * 2, (short) v);
+        } else if (capacity < ARRAY_MAX) {
+            capacity = Math.min(capacity << 1, ARRAY_MAX);
+            c = Unsafe.getUnsafe().reallocateMemory(c, HEADER_SIZE + capacity * 2);
+            Unsafe.getUnsafe().putInt(c + 4, capacity);
+            Unsafe.getUnsafe().putShort(c + HEADER_SIZE + cardinality * 2, (short) v);
+            chunks.setQuick(chunk, c);
+        } else {
+            c = toBitmap(c);
+            long w = c + HEADER_SIZE + ((v >>> 6) << 3);
+            Unsafe.getUnsafe().putLong(w, Unsafe.getUnsafe().getLong(w) | (1L << v));
+            chunks.setQuick(chunk, c);
+        }
+        Unsafe.getUnsafe().putInt(c, cardinality + 1);
+    }
+
+    private long container(int key, int chunk) {
+        LongList chunks = keys.getQuiet(key + 1);
+        return chunks == null || chunk >= chunks.size() ? 0 : chunks.getQuick(chunk);
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        close();
+        super.finalize();
+    }
+
+    private void free() {
+        for (int i = 0, n = keys.size(); i < n; i++) {
+            LongList chunks = keys.getQuick(i);
+            if (chunks == null) {
+                continue;
+            }
+            for (int j = 0, m = chunks.size(); j < m; j++) {
+                long c = chunks.getQuick(j);
+                if (c != 0) {
+                    Unsafe.getUnsafe().freeMemory(c);
+                }
+            }
+            // list does not forget elements on clear()
+            keys.setQuick(i, null);
+        }
+        keys.clear();
+    }
+}
@@ -0,0 +1,392 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage;
+
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalNoSuchFileException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.storage.codec.Codec;
+import com.nfsdb.storage.codec.Codecs;
+import com.nfsdb.utils.ByteBuffers;
+import com.nfsdb.utils.Files;
+import com.nfsdb.utils.Unsafe;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only memory file of sealed partition. File content is split into blocks of {@link #BLOCK_SIZE}
+ * bytes, each compressed separately by column codec:
+ * <pre>
+ *     byte codec id
+ *     long size of uncompressed data
+ *     int  block count
+ *     long[block count + 1] file offsets of blocks, last one is end of file
+ *     compressed blocks
+ * </pre>
+ * Blocks are decompressed on access into off-heap cache of fixed number of block slots, least recently
+ * used block is evicted when cache is full. Memory held by file is therefore bounded by cache size rather
+ * than by size of uncompressed data. Ranges, which span blocks, are copied into stitch buffer, much like
+ * {@link MemoryFile} stitches pages. Addresses handed out by {@link #addressOf(long, int)} and buffers
+ * returned by {@link #getBuffer(long, int)} are valid until subsequent read evicts their block.
+ * <p>
+ * Same as {@link MemoryFile} this class is not thread-safe.
+ */
+@SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CONSTRAINTS", "REFL_REFLECTION_MAY_INCREASE_ACCESSIBILITY_OF_METHOD"})
+public class CompressedMemoryFile extends MemoryFile {
+    public static final String EXT = ".z";
+    private static final int BLOCK_BITS = 16;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int HEADER_SIZE = 13;
+    private static final int CACHE_BLOCKS = 16;
+    private static final Constructor<?> DIRECT_BUFFER;
+    private final File file;
+    private final long[] blockOffsets;
+    // cache slot of each block or -1
+    private final int[] blockSlots;
+    // block held by each cache slot or -1
+    private final int[] slotBlocks;
+    private final long[] slotAccess;
+    private final Codec codec;
+    // size of uncompressed data, blocks are decompressed to this size even when file is truncated
+    private final long dataSize;
+    private FileChannel channel;
+    private ByteBuffer scratch;
+    private long scratchAddress;
+    private long cacheAddress;
+    private long stitchAddress;
+    private int stitchSize;
+    private long accessCount;
+    private long size;
+
+    /**
+     * @param file    compressed file, see {@link #compressedFile(File)}
+     * @param bitHint bit hint of original file
+     * @throws JournalException when file cannot be read
+     */
+    public CompressedMemoryFile(File file, int bitHint) throws JournalException {
+        this(file, bitHint, CACHE_BLOCKS);
+    }
+
+    /**
+     * @param file        compressed file, see {@link #compressedFile(File)}
+     * @param bitHint     bit hint of original file
+     * @param cacheBlocks maximum number of decompressed blocks held in memory
+     * @throws JournalException when file cannot be read
+     */
+    public CompressedMemoryFile(File file, int bitHint, int cacheBlocks) throws JournalException {
+        super(file, bitHint);
+        this.file = file;
+        try {
+            this.channel = new RandomAccessFile(file, "r").getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            read(header, 0);
+            this.codec = Codecs.get(header.get(0));
+            this.size = this.dataSize = header.getLong(1);
+            int blockCount = header.getInt(9);
+
+            ByteBuffer offsets = ByteBuffer.allocate((blockCount + 1) * 8).order(ByteOrder.LITTLE_ENDIAN);
+            read(offsets, HEADER_SIZE);
+            this.blockOffsets = new long[blockCount + 1];
+            int max = 0;
+            for (int i = 0; i <= blockCount; i++) {
+                blockOffsets[i] = offsets.getLong(i * 8);
+                if (i > 0 && blockOffsets[i] - blockOffsets[i - 1] > max) {
+                    max = (int) (blockOffsets[i] - blockOffsets[i - 1]);
+                }
+            }
+            this.blockSlots = new int[blockCount];
+            Arrays.fill(blockSlots, -1);
+            int slotCount = Math.max(1, Math.min(cacheBlocks, blockCount));
+            this.slotBlocks = new int[slotCount];
+            Arrays.fill(slotBlocks, -1);
+            this.slotAccess = new long[slotCount];
+            this.scratch = ByteBuffer.allocateDirect(max);
+            this.scratchAddress = ByteBuffers.getAddress(scratch);
+            this.cacheAddress = Unsafe.getUnsafe().allocateMemory((long) slotCount << BLOCK_BITS);
+        } catch (FileNotFoundException e) {
+            throw new JournalNoSuchFileException(e);
+        } catch (IOException e) {
+            close();
+            throw new JournalException("Cannot read %s", e, file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Compresses content of memory file block by block and writes result next to it. Compressed file
+     * is written under temporary name and renamed when complete, so that it either exists in full or not at all.
+     *
+     * @param src   file to compress
+     * @param codec codec of column values
+     * @return compressed file
+     * @throws JournalException when file cannot be written
+     */
+    public static File compress(MemoryFile src, Codec codec) throws JournalException {
+        File dst = src.getFile();
+        File z = compressedFile(dst);
+        File tmp = new File(z.getAbsolutePath() + ".tmp");
+        long size = src.getAppendOffset();
+        int blockCount = (int) ((size + BLOCK_SIZE - 1) >>> BLOCK_BITS);
+        long[] offsets = new long[blockCount + 1];
+        long pos = HEADER_SIZE + (blockCount + 1) * 8L;
+
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            FileChannel ch = raf.getChannel();
+            ch.truncate(0);
+            ByteBuffer buf = ByteBuffer.allocateDirect(codec.getMaxCompressedSize(BLOCK_SIZE));
+            long bufAddress = ByteBuffers.getAddress(buf);
+
+            for (int i = 0; i < blockCount; i++) {
+                long lo = (long) i << BLOCK_BITS;
+                int len = (int) Math.min(BLOCK_SIZE, size - lo);
+                int n = codec.compress(src.addressOf(lo, len), len, bufAddress);
+                buf.clear();
+                buf.limit(n);
+                write(ch, buf, pos);
+                offsets[i] = pos;
+                pos += n;
+            }
+            offsets[blockCount] = pos;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + offsets.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+            header.put((byte) codec.getId());
+            header.putLong(size);
+            header.putInt(blockCount);
+            for (int i = 0; i < offsets.length; i++) {
+                header.putLong(offsets[i]);
+            }
+            header.flip();
+            write(ch, header, 0);
+            ch.force(true);
+        } catch (IOException e) {
+            Files.delete(tmp);
+            throw new JournalException("Cannot compress %s", e, dst.getAbsolutePath());
+        }
+
+        if (!tmp.renameTo(z)) {
+            Files.delete(tmp);
+            throw new JournalException("Cannot rename %s to %s", tmp.getAbsolutePath(), z.getAbsolutePath());
+        }
+        return z;
+    }
+
+    public static File compressedFile(File file) {
+        return new File(file.getParentFile(), file.getName() + EXT);
+    }
+
+    @Override
+    public long addressOf(long offset, int size) {
+        if (offset < 0 || offset + size > this.size) {
+            throw new JournalRuntimeException("Offset %d is beyond end of compressed file %s", offset + size, file.getAbsolutePath());
+        }
+
+        int lo = (int) (offset >>> BLOCK_BITS);
+        int hi = (int) ((offset + size - 1) >>> BLOCK_BITS);
+        if (lo == hi) {
+            return blockAddress(lo) + (offset & (BLOCK_SIZE - 1));
+        }
+        return stitch(offset, size);
+    }
+
+    @Override
+    public void close() {
+        if (cacheAddress != 0) {
+            Unsafe.getUnsafe().freeMemory(cacheAddress);
+            cacheAddress = 0;
+        }
+        if (stitchAddress != 0) {
+            Unsafe.getUnsafe().freeMemory(stitchAddress);
+            stitchAddress = 0;
+            stitchSize = 0;
+        }
+        scratch = ByteBuffers.release(scratch);
+        scratchAddress = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new JournalRuntimeException("Cannot close file", e);
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+    @Override
+    public void compact() {
+        // nothing to do, file is read-only
+    }
+
+    @Override
+    public void force() {
+        // nothing to do, file is read-only
+    }
+
+    @Override
+    public long getAppendOffset() {
+        return size;
+    }
+
+    /**
+     * Compressed file cannot grow. It can shrink when sealed partition is truncated ahead of its removal,
+     * new size is not persisted.
+     */
+    @Override
+    public void setAppendOffset(long offset) {
+        if (offset > size) {
+            throw new JournalRuntimeException("Cannot append to compressed file %s", file.getAbsolutePath());
+        }
+        size = offset;
+    }
+
+    @Override
+    public MappedByteBuffer getBuffer(long offset, int size) {
+        int len = Math.max(size, pageRemaining(offset));
+        long address = addressOf(offset, len);
+        try {
+            MappedByteBuffer buf = (MappedByteBuffer) DIRECT_BUFFER.newInstance(address, len);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            return buf;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    /**
+     * Remaining bytes of block rather than page. Callers, which read data a page at a time, decompress
+     * one block at a time.
+     */
+    @Override
+    public int pageRemaining(long offset) {
+        return (int) Math.min(BLOCK_SIZE - (offset & (BLOCK_SIZE - 1)), size - offset);
+    }
+
+    private static void write(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += ch.write(buf, pos);
+        }
+    }
+
+    private long blockAddress(int block) {
+        int slot = blockSlots[block];
+        if (slot == -1) {
+            slot = evict();
+            decodeBlock(block, slot);
+            blockSlots[block] = slot;
+            slotBlocks[slot] = block;
+        }
+        slotAccess[slot] = ++accessCount;
+        return cacheAddress + ((long) slot << BLOCK_BITS);
+    }
+
+    private void decodeBlock(int block, int slot) {
+        if (cacheAddress == 0) {
+            throw new JournalRuntimeException("Compressed file is closed: %s", file.getAbsolutePath());
+        }
+
+        int srcLen = (int) (blockOffsets[block + 1] - blockOffsets[block]);
+        long lo = (long) block << BLOCK_BITS;
+        try {
+            scratch.clear();
+            scratch.limit(srcLen);
+            read(scratch, blockOffsets[block]);
+        } catch (IOException e) {
+            throw new JournalRuntimeException("Cannot read block %d of %s", e, block, file.getAbsolutePath());
+        }
+        codec.decompress(scratchAddress, srcLen, cacheAddress + ((long) slot << BLOCK_BITS), (int) Math.min(BLOCK_SIZE, dataSize - lo));
+    }
+
+    /**
+     * Frees least recently used cache slot.
+     *
+     * @return index of free slot
+     */
+    private int evict() {
+        int slot = 0;
+        for (int i = 1; i < slotAccess.length; i++) {
+            if (slotAccess[i] < slotAccess[slot]) {
+                slot = i;
+            }
+        }
+        int block = slotBlocks[slot];
+        if (block != -1) {
+            blockSlots[block] = -1;
+            slotBlocks[slot] = -1;
+        }
+        return slot;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        close();
+        super.finalize();
+    }
+
+    private void read(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            pos += n;
+        }
+    }
+
+    private long stitch(long offset, int len) {
+        if (stitchSize < len) {
+            if (stitchAddress != 0) {
+                Unsafe.getUnsafe().freeMemory(stitchAddress);
+            }
+            stitchAddress = Unsafe.getUnsafe().allocateMemory(len);
+            stitchSize = len;
+        }
+
+        long p = offset;
+        long hi = offset + len;
+        while (p < hi) {
+            int n = (int) Math.min(BLOCK_SIZE - (p & (BLOCK_SIZE - 1)), hi - p);
+            Unsafe.getUnsafe().copyMemory(blockAddress((int) (p >>> BLOCK_BITS)) + (p & (BLOCK_SIZE - 1)), stitchAddress + p - offset, n);
+            p += n;
+        }
+        return stitchAddress;
+    }
+
+    static {
+        try {
+            Constructor<?> c = Class.forName("java.nio.DirectByteBuffer").getDeclaredConstructor(long.class, int.class);
+            c.setAccessible(true);
+            DIRECT_BUFFER = c;
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new JournalRuntimeException("Cannot access DirectByteBuffer", e);
+        }
+    }
+}
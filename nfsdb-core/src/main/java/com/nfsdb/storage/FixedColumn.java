@@ -21,6 +21,7 @@
 
 package com.nfsdb.storage;
 
+import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.utils.Unsafe;
 
 public class FixedColumn extends AbstractColumn {
@@ -63,6 +64,47 @@ public class FixedColumn extends AbstractColumn {
         Unsafe.getUnsafe().copyMemory(obj, offset, null, getAddress(), width);
     }
 
+    /**
+     * Appends "count" values laid out the same way they are in column, such as elements of primitive
+     * array. Values are copied a page at a time rather than one by one.
+     *
+     * @param obj    array of values or null when values are off-heap
+     * @param offset offset of first value in array or address of first value when obj is null
+     * @param count  number of values
+     */
+    public void copy(Object obj, long offset, int count) {
+        long appendOffset = mappedFile.getAppendOffset();
+        long len = (long) count * width;
+        preCommit(appendOffset + len);
+
+        while (len > 0) {
+            long address = mappedFile.addressOf(appendOffset, width);
+            long n = Math.min(len, mappedFile.pageRemaining(appendOffset));
+            Unsafe.getUnsafe().copyMemory(obj, offset, null, address, n);
+            appendOffset += n;
+            offset += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Address of "count" consecutive values starting with localRowID. Values are contiguous in memory,
+     * so that value of row localRowID + i is located at address + i * width. When block is inside region
+     * file is mapped as, address remains valid until column is closed. Otherwise address points to page
+     * or stitch buffer, which next read of this column can replace, and has to be used before that read.
+     *
+     * @param localRowID first row of block
+     * @param count      number of rows in block
+     * @return address of first value
+     */
+    public long getAddress(long localRowID, int count) {
+        long size = (long) count * width;
+        if (size > Integer.MAX_VALUE) {
+            throw new JournalRuntimeException("Block of %d rows is too large", count);
+        }
+        return mappedFile.addressOf(getOffset(localRowID), (int) size);
+    }
+
     public boolean getBool(long localRowID) {
         return Unsafe.getUnsafe().getByte(mappedFile.addressOf(getOffset(localRowID), 1)) == 1;
     }
@@ -75,6 +117,10 @@ public class FixedColumn extends AbstractColumn {
         return Unsafe.getUnsafe().getDouble(mappedFile.addressOf(getOffset(localRowID), 8));
     }
 
+    public void getDoubles(long localRowID, double[] values, int count) {
+        Unsafe.getUnsafe().copyMemory(null, getAddress(localRowID, count), values, Unsafe.DOUBLE_OFFSET, count * 8);
+    }
+
     public float getFloat(long localRowID) {
         return Unsafe.getUnsafe().getFloat(mappedFile.addressOf(getOffset(localRowID), 4));
     }
@@ -83,10 +129,18 @@ public class FixedColumn extends AbstractColumn {
         return Unsafe.getUnsafe().getInt(mappedFile.addressOf(getOffset(localRowID), 4));
     }
 
+    public void getInts(long localRowID, int[] values, int count) {
+        Unsafe.getUnsafe().copyMemory(null, getAddress(localRowID, count), values, Unsafe.INT_OFFSET, count * 4);
+    }
+
     public long getLong(long localRowID) {
         return Unsafe.getUnsafe().getLong(mappedFile.addressOf(getOffset(localRowID), 8));
     }
 
+    public void getLongs(long localRowID, long[] values, int count) {
+        Unsafe.getUnsafe().copyMemory(null, getAddress(localRowID, count), values, Unsafe.LONG_OFFSET, count * 8);
+    }
+
     @Override
     public long getOffset(long localRowID) {
         return localRowID * width;
@@ -105,6 +159,10 @@ public class FixedColumn extends AbstractColumn {
         preCommit(size * width);
     }
 
+    public int getWidth() {
+        return width;
+    }
+
     public short getShort(long localRowID) {
         return Unsafe.getUnsafe().getShort(mappedFile.addressOf(getOffset(localRowID), 2));
     }
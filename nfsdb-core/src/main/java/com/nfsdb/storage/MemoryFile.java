@@ -22,6 +22,7 @@
 package com.nfsdb.storage;
 
 import com.nfsdb.JournalMode;
+import com.nfsdb.collections.LongList;
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.JournalNoSuchFileException;
@@ -29,13 +30,17 @@ import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.logging.Logger;
 import com.nfsdb.utils.ByteBuffers;
 import com.nfsdb.utils.Files;
+import com.nfsdb.utils.Mmap;
 import com.nfsdb.utils.Unsafe;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
 
 @SuppressFBWarnings({"LII_LIST_INDEXED_ITERATING", "EXS_EXCEPTION_SOFTENING_NO_CONSTRAINTS", "EXS_EXCEPTION_SOFTENING_HAS_CHECKED"})
 public class MemoryFile implements Closeable {
@@ -47,6 +52,11 @@ public class MemoryFile implements Closeable {
     private final File file;
     private final JournalMode mode;
     private final int bitHint;
+    // when true data is mapped as single contiguous region and accessed by raw address
+    private final boolean direct;
+    // regions superseded by larger mapping, they stay mapped until file is closed
+    // to keep addresses already handed out valid. Stored as address, size pairs.
+    private final LongList retiredRegions = new LongList();
     private FileChannel channel;
     private MappedByteBuffer offsetBuffer;
     private ObjList<MappedByteBuffer> buffers;
@@ -57,6 +67,8 @@ public class MemoryFile implements Closeable {
     private long cachedAppendOffset = -1;
     private long cachedAddress;
     private long offsetDirectAddr;
+    private long regionAddress;
+    private long regionSize = -1;
 
     public MemoryFile(File file, int bitHint, JournalMode mode) throws JournalException {
         this.file = file;
@@ -65,17 +77,36 @@ public class MemoryFile implements Closeable {
             LOGGER.warn("BitHint is too small for %s", file);
         }
         this.bitHint = bitHint;
+        // bulk modes unmap pages behind current one to stop OS from paging
+        // large files, contiguous region would defeat that
+        this.direct = Mmap.isSupported() && (mode == JournalMode.READ || mode == JournalMode.APPEND);
         open();
         this.buffers = new ObjList<>((int) (size() >>> bitHint) + 1);
         this.stitches = new ObjList<>(buffers.size());
     }
 
+    /**
+     * For subclasses, which serve data other than by mapping file. File is not opened.
+     */
+    protected MemoryFile(File file, int bitHint) {
+        this.file = file;
+        this.mode = JournalMode.READ;
+        this.bitHint = bitHint;
+        this.direct = false;
+        this.buffers = new ObjList<>();
+        this.stitches = new ObjList<>();
+    }
+
     public long addressOf(long offset, int size) {
+        if (offset + size <= regionSize) {
+            return regionAddress + DATA_OFFSET + offset;
+        }
+
         if (offset > cachedBufferLo && offset + size < cachedBufferHi) {
             return cachedAddress + offset - cachedBufferLo - 1;
-        } else {
-            return allocateAddress(offset, size);
         }
+
+        return direct ? mapRegion(offset, size) : allocateAddress(offset, size);
     }
 
     @Override
@@ -118,6 +149,15 @@ public class MemoryFile implements Closeable {
     public void force() {
         int stitchesSize = stitches.size();
         offsetBuffer.force();
+        if (regionSize > -1) {
+            // there is no buffer object to force for raw region, but
+            // dirty pages of shared mapping are flushed by syncing file itself
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new JournalRuntimeException("Cannot force %s", e, getFullFileName());
+            }
+        }
         for (int i = 0, k = buffers.size(); i < k; i++) {
             MappedByteBuffer b = buffers.getQuick(i);
             if (b != null) {
@@ -161,6 +201,11 @@ public class MemoryFile implements Closeable {
     }
 
     public int pageRemaining(long offset) {
+        if (offset < regionSize) {
+            long remaining = regionSize - offset;
+            return remaining > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) remaining;
+        }
+
         if (offset > cachedBufferLo && offset < cachedBufferHi) {
             return (int) (cachedBufferHi - offset - 1);
         } else {
@@ -173,6 +218,65 @@ public class MemoryFile implements Closeable {
         return this.getClass().getName() + "[file=" + file + ", appendOffset=" + getAppendOffset() + ']';
     }
 
+    /**
+     * Writes up to count bytes of data at offset to target. When target is a socket or a file, bytes are sent
+     * by {@link FileChannel#transferTo}, which lets kernel copy file pages without passing them through
+     * user space. Other targets, such as SSL channel, are written from mapped page.
+     *
+     * @param offset data offset
+     * @param count  maximum number of bytes to write
+     * @param target channel to write to
+     * @return number of bytes written
+     * @throws IOException when target cannot be written to
+     */
+    public long transferTo(long offset, long count, WritableByteChannel target) throws IOException {
+        if (channel != null && (target instanceof FileChannel || target instanceof SelectableChannel)) {
+            return channel.transferTo(offset + DATA_OFFSET, count, target);
+        }
+
+        ByteBuffer buf = getBuffer(offset, 1);
+        int limit = buf.limit();
+        try {
+            if (count < buf.remaining()) {
+                buf.limit((int) (buf.position() + count));
+            }
+            return target.write(buf);
+        } finally {
+            buf.limit(limit);
+        }
+    }
+
+    /**
+     * Writes file, which has first size bytes of data of this one, as if this file was truncated to size.
+     * Data is copied by {@link FileChannel#transferTo}.
+     *
+     * @param to   file to write
+     * @param size number of bytes of data to copy
+     * @throws JournalException when file cannot be written
+     */
+    void copyTo(File to, long size) throws JournalException {
+        try (FileChannel out = new RandomAccessFile(to, "rw").getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(DATA_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(0, size);
+            out.write(header, 0);
+            out.position(DATA_OFFSET);
+            long pos = 0;
+            while (pos < size) {
+                pos += channel.transferTo(DATA_OFFSET + pos, size - pos, out);
+            }
+        } catch (IOException e) {
+            throw new JournalException("Cannot copy %s to %s", e, file, to);
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getRetiredRegionCount() {
+        return retiredRegions.size() / 2;
+    }
+
     private long allocateAddress(long offset, int size) {
         cachedBuffer = getBufferInternal(offset, size);
         cachedBufferLo = offset - cachedBuffer.position() - 1;
@@ -287,6 +391,47 @@ public class MemoryFile implements Closeable {
         }
     }
 
+    /**
+     * Maps data as single region large enough to contain [offset, offset + size). Region grows by doubling
+     * and is rounded to page size (1 &lt;&lt; bitHint), so that appends re-map rarely. Previous region remains mapped
+     * until file is closed. In read mode region is capped by file size, reads beyond that fall back to page buffers
+     * until file is at least twice the size of region, so that reader of file, which is growing one page at a time,
+     * does not re-map whole file on every page and keeps logarithmic number of retired regions.
+     */
+    private long mapRegion(long offset, int size) {
+        long required = offset + size;
+        long sz;
+        try {
+            if (mode == JournalMode.READ) {
+                sz = channel.size() - DATA_OFFSET;
+                if (sz < required || sz < regionSize << 1) {
+                    return allocateAddress(offset, size);
+                }
+            } else {
+                long pageSize = 1L << bitHint;
+                sz = (required + pageSize - 1) & -pageSize;
+                if (sz < regionSize << 1) {
+                    sz = regionSize << 1;
+                }
+                if (channel.size() < sz + DATA_OFFSET) {
+                    // extend file, touching mapped memory beyond end of file is fatal
+                    channel.write(ByteBuffer.allocate(1), sz + DATA_OFFSET - 1);
+                }
+            }
+        } catch (IOException e) {
+            throw new JournalRuntimeException("Failed to map region of %s", e, getFullFileName());
+        }
+
+        if (regionSize > -1) {
+            retiredRegions.add(regionAddress);
+            retiredRegions.add(regionSize + DATA_OFFSET);
+        }
+
+        regionAddress = Mmap.map(channel, sz + DATA_OFFSET, mode == JournalMode.READ);
+        regionSize = sz;
+        return regionAddress + DATA_OFFSET + offset;
+    }
+
     private void open() throws JournalException {
         String m;
         switch (mode) {
@@ -353,6 +498,15 @@ public class MemoryFile implements Closeable {
         buffers.clear();
         stitches.clear();
 
+        if (regionSize > -1) {
+            Mmap.unmap(regionAddress, regionSize + DATA_OFFSET);
+            regionSize = -1;
+        }
+        for (int i = 0, k = retiredRegions.size(); i < k; i += 2) {
+            Mmap.unmap(retiredRegions.getQuick(i), retiredRegions.getQuick(i + 1));
+        }
+        retiredRegions.clear();
+
         offsetBuffer = ByteBuffers.release(offsetBuffer);
         assert offsetBuffer == null;
     }
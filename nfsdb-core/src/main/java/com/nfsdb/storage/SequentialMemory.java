@@ -80,12 +80,20 @@ public class SequentialMemory implements Closeable, Mutable {
         return pageSize;
     }
 
+    /**
+     * @return bytes allocated since last clear()
+     */
+    public long size() {
+        return cachePageLo;
+    }
+
     private void allocateAddress(long index) {
         if (index > Integer.MAX_VALUE) {
             throw new OutOfMemoryError();
         }
 
-        if (index <= pages.size()) {
+        // pages are kept on clear() and reused
+        if (index >= pages.size()) {
             pages.extendAndSet((int) index, Unsafe.getUnsafe().allocateMemory(pageSize));
         }
 
@@ -29,6 +29,7 @@ import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.JournalInvalidSymbolValueException;
 import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.utils.ByteBuffers;
+import com.nfsdb.utils.Chars;
 import com.nfsdb.utils.Hash;
 import com.nfsdb.utils.Numbers;
 
@@ -167,6 +168,28 @@ public class SymbolTable implements Closeable {
         return key;
     }
 
+    /**
+     * Keys of values[lo..hi), values, which are not in table yet, are added. Runs of the same value,
+     * which are common in feeds, are looked up once.
+     *
+     * @param values symbol values, null values have key of {@link #VALUE_IS_NULL}
+     * @param lo     index of first value
+     * @param hi     index of last value + 1
+     * @param keys   array, which receives keys starting with index 0
+     */
+    public void put(CharSequence[] values, int lo, int hi, int[] keys) {
+        CharSequence last = null;
+        int key = VALUE_IS_NULL;
+        for (int i = lo; i < hi; i++) {
+            CharSequence value = values[i];
+            if (value != last && (value == null || last == null || !Chars.equals(value, last))) {
+                key = value == null ? VALUE_IS_NULL : put(value);
+                last = value;
+            }
+            keys[i - lo] = key;
+        }
+    }
+
     public int size() {
         return size;
     }
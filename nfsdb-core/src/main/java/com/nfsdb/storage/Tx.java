@@ -27,6 +27,7 @@ public class Tx {
 
     public static final byte TX_NORMAL = 0;
     public static final byte TX_FORCE = 1;
+    public static final byte TX_MERGE = 2;
     public long address;
     public long prevTxAddress;
     public byte command;
@@ -84,6 +84,18 @@ public class TxLog {
         return currentAddress;
     }
 
+    /**
+     * @return time current transaction was committed at, milliseconds since epoch
+     */
+    public long getCurrentTxTimestamp() {
+        long address = getCurrentTxAddress();
+        if (address == 0) {
+            return 0L;
+        }
+        hb.setPos(address + 24);
+        return hb.getLong();
+    }
+
     public final long getCurrentTxn() {
         long address = getCurrentTxAddress();
         if (address == 0) {
@@ -103,6 +115,36 @@ public class TxLog {
         return hb.getLong();
     }
 
+    /**
+     * @return address next transaction is written at
+     */
+    public long getNextTxAddress() {
+        return Math.max(9, hb.getAppendOffset());
+    }
+
+    /**
+     * Checks if transactions between two addresses have any of command bits set. Transactions are
+     * walked back from the newer address, transaction at the older address is not checked.
+     *
+     * @param a       address of transaction
+     * @param b       address of another transaction, can be older or newer than a
+     * @param command command bits, such as {@link Tx#TX_MERGE}
+     * @return true when transaction with any of command bits is found
+     */
+    public boolean hasCommand(long a, long b, byte command) {
+        long lo = Math.min(a, b);
+        long address = Math.max(a, b);
+        while (address > lo) {
+            hb.setPos(address + 32);
+            if ((hb.get() & command) != 0) {
+                return true;
+            }
+            hb.setPos(address);
+            address = hb.getLong();
+        }
+        return false;
+    }
+
     public boolean hasNext() {
         return readCurrentTxAddress() > headAddress;
     }
@@ -161,8 +203,27 @@ public class TxLog {
         return address;
     }
 
+    /**
+     * Reads transaction, which can be older than head, into tx and makes it current transaction of this log.
+     * Following call to head() then reads head even if it has not moved since.
+     *
+     * @param txn   transaction number
+     * @param txPin transaction pin
+     * @param tx    container to read transaction into
+     * @return false when transaction is not in log
+     */
+    public boolean seek(long txn, long txPin, Tx tx) {
+        currentAddress = readCurrentTxAddress();
+        long address = currentAddress == 0 ? -1 : findAddress(txn, txPin);
+        if (address == -1) {
+            return false;
+        }
+        read(headAddress = currentAddress = address, tx);
+        return true;
+    }
+
     public void write(Tx tx, boolean manualTxn) {
-        currentAddress = Math.max(9, hb.getAppendOffset());
+        currentAddress = getNextTxAddress();
         hb.setPos(currentAddress);
         hb.put(tx.prevTxAddress);
         hb.put(manualTxn ? txn = tx.txn : txn);
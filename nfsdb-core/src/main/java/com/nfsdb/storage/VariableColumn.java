@@ -26,9 +26,12 @@ import com.nfsdb.collections.DirectInputStream;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.io.sink.CharSink;
+import com.nfsdb.storage.codec.Codec;
+import com.nfsdb.storage.codec.DeltaOfDeltaCodec;
 import com.nfsdb.utils.Unsafe;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -43,6 +46,7 @@ public class VariableColumn extends AbstractColumn {
     private final DirectCharSequence charSequence = new DirectCharSequence();
     private char buffer[] = new char[32];
     private byte[] streamBuf;
+    private long[] offsets;
 
     public VariableColumn(MemoryFile dataFile, MemoryFile indexFile) {
         super(dataFile);
@@ -70,6 +74,12 @@ public class VariableColumn extends AbstractColumn {
         this.indexColumn.compact();
     }
 
+    @Override
+    public void copyTo(File dir, long rows) throws JournalException {
+        super.copyTo(dir, rows);
+        indexColumn.copyTo(dir, rows);
+    }
+
     @Override
     public void force() {
         super.force();
@@ -81,6 +91,15 @@ public class VariableColumn extends AbstractColumn {
         return indexColumn.getLong(localRowID);
     }
 
+    /**
+     * Compresses data file with codec and index file, which is ascending offsets, with {@link DeltaOfDeltaCodec}.
+     */
+    @Override
+    public void seal(Codec codec) throws JournalException {
+        super.seal(codec);
+        indexColumn.seal(new DeltaOfDeltaCodec());
+    }
+
     @Override
     public long size() {
         return indexColumn.size();
@@ -321,6 +340,42 @@ public class VariableColumn extends AbstractColumn {
         }
     }
 
+    /**
+     * Appends values[lo..hi) with one update of append offsets rather than one per value.
+     *
+     * @param values strings, null values are stored as null
+     * @param lo     index of first value
+     * @param hi     index of last value + 1
+     */
+    public void putStr(CharSequence[] values, int lo, int hi) {
+        int count = hi - lo;
+        if (offsets == null || offsets.length < count) {
+            offsets = new long[count];
+        }
+
+        long offset = getOffset();
+        for (int i = lo; i < hi; i++) {
+            CharSequence value = values[i];
+            offsets[i - lo] = offset;
+            if (value == null) {
+                Unsafe.getUnsafe().putInt(mappedFile.addressOf(offset, 4), -1);
+                offset += 4;
+            } else {
+                int l = value.length();
+                long address = mappedFile.addressOf(offset, l * 2 + 4);
+                Unsafe.getUnsafe().putInt(address, l);
+                address += 4;
+                for (int k = 0; k < l; k++) {
+                    Unsafe.getUnsafe().putChar(address, value.charAt(k));
+                    address += 2;
+                }
+                offset += l * 2 + 4;
+            }
+        }
+        preCommit(offset);
+        indexColumn.copy(offsets, Unsafe.LONG_OFFSET, count);
+    }
+
     private long commitAppend(long offset, int size) {
         preCommit(offset + size);
         return indexColumn.putLong(offset);
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage;
+
+import com.nfsdb.JournalMode;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.utils.Unsafe;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * Summary of fixed width numeric column in blocks of {@link #BLOCK_ROWS} rows. Summary of block is
+ * minimum and maximum of its values and count of nulls, where null values are not included in
+ * minimum and maximum. Block of nulls alone has empty range, e.g. minimum greater than maximum.
+ * <p>
+ * Summaries of INT, LONG and DATE columns are stored as longs, those of DOUBLE columns as doubles.
+ * Filters use summaries to skip blocks, which cannot have matching values.
+ */
+public class ZoneMap implements Closeable {
+
+    public static final int BLOCK_BITS = 12;
+    public static final int BLOCK_ROWS = 1 << BLOCK_BITS;
+    /*
+        struct entry {
+            long min
+            long max
+            long nullCount
+            long rowCount
+        }
+     */
+    private static final int ENTRY_SIZE = 32;
+    private static final int BIT_HINT = 16;
+    private final MemoryFile data;
+    private final FixedColumn column;
+    private final ColumnType type;
+
+    public ZoneMap(File file, JournalMode mode, FixedColumn column, ColumnType type) throws JournalException {
+        this.data = new MemoryFile(file, BIT_HINT, mode);
+        this.column = column;
+        this.type = type;
+    }
+
+    public static boolean isSupported(ColumnType type) {
+        switch (type) {
+            case INT:
+            case LONG:
+            case DATE:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Finds block, which summarises all of rows [lo, lo + count).
+     *
+     * @param lo    first row
+     * @param count number of rows
+     * @return block index or -1 when rows span blocks or are not summarised yet
+     */
+    public long blockOf(long lo, int count) {
+        long block = lo >>> BLOCK_BITS;
+        if (count < 1 || (lo + count - 1) >>> BLOCK_BITS != block || block >= getBlockCount()) {
+            return -1;
+        }
+        return lo + count <= (block << BLOCK_BITS) + getRowCount(block) ? block : -1;
+    }
+
+    @Override
+    public void close() {
+        data.close();
+    }
+
+    public void compact() throws JournalException {
+        data.compact();
+    }
+
+    public void force() {
+        data.force();
+    }
+
+    public long getBlockCount() {
+        return data.getAppendOffset() / ENTRY_SIZE;
+    }
+
+    public long getMax(long block) {
+        return Unsafe.getUnsafe().getLong(data.addressOf(block * ENTRY_SIZE + 8, 8));
+    }
+
+    public double getMaxDouble(long block) {
+        return Unsafe.getUnsafe().getDouble(data.addressOf(block * ENTRY_SIZE + 8, 8));
+    }
+
+    public long getMin(long block) {
+        return Unsafe.getUnsafe().getLong(data.addressOf(block * ENTRY_SIZE, 8));
+    }
+
+    public double getMinDouble(long block) {
+        return Unsafe.getUnsafe().getDouble(data.addressOf(block * ENTRY_SIZE, 8));
+    }
+
+    public long getNullCount(long block) {
+        return Unsafe.getUnsafe().getLong(data.addressOf(block * ENTRY_SIZE + 16, 8));
+    }
+
+    public long getRowCount(long block) {
+        return Unsafe.getUnsafe().getLong(data.addressOf(block * ENTRY_SIZE + 24, 8));
+    }
+
+    /**
+     * Drops summaries of blocks, which have rows at or after size. Used when rows are rewritten in place, so
+     * that these blocks are summarised again by {@link #update()}.
+     *
+     * @param size number of rows, which are left intact
+     */
+    public void truncate(long size) {
+        long blocks = Math.max(size, 0) >>> BLOCK_BITS;
+        if (blocks < getBlockCount()) {
+            data.setAppendOffset(blocks * ENTRY_SIZE);
+        }
+    }
+
+    /**
+     * Brings summaries in line with committed size of column. Last summarised block is
+     * recalculated when it is partial or when column was truncated, all other blocks are final.
+     */
+    public void update() {
+        long size = column.size();
+        long blocks = (size + BLOCK_ROWS - 1) >>> BLOCK_BITS;
+        long stored = getBlockCount();
+
+        long block = Math.min(stored, blocks) - 1;
+        if (block < 0) {
+            block = 0;
+        } else if (stored == blocks && getRowCount(block) == size - (block << BLOCK_BITS)) {
+            return;
+        }
+
+        for (; block < blocks; block++) {
+            long lo = block << BLOCK_BITS;
+            int count = (int) Math.min(BLOCK_ROWS, size - lo);
+            long entry = data.addressOf(block * ENTRY_SIZE, ENTRY_SIZE);
+            long address = column.getAddress(lo, count);
+            switch (type) {
+                case INT:
+                    summariseInts(address, count, entry);
+                    break;
+                case DOUBLE:
+                    summariseDoubles(address, count, entry);
+                    break;
+                default:
+                    summariseLongs(address, count, entry);
+                    break;
+            }
+            Unsafe.getUnsafe().putLong(entry + 24, count);
+        }
+        data.setAppendOffset(blocks * ENTRY_SIZE);
+    }
+
+    private static void summariseDoubles(long address, int count, long entry) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        long nulls = 0;
+        for (int i = 0; i < count; i++) {
+            double v = Unsafe.getUnsafe().getDouble(address + ((long) i << 3));
+            if (v != v) {
+                nulls++;
+            } else {
+                if (v < min) {
+                    min = v;
+                }
+                if (v > max) {
+                    max = v;
+                }
+            }
+        }
+        Unsafe.getUnsafe().putDouble(entry, min);
+        Unsafe.getUnsafe().putDouble(entry + 8, max);
+        Unsafe.getUnsafe().putLong(entry + 16, nulls);
+    }
+
+    private static void summariseInts(long address, int count, long entry) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        long nulls = 0;
+        for (int i = 0; i < count; i++) {
+            int v = Unsafe.getUnsafe().getInt(address + ((long) i << 2));
+            if (v == Integer.MIN_VALUE) {
+                nulls++;
+            } else {
+                if (v < min) {
+                    min = v;
+                }
+                if (v > max) {
+                    max = v;
+                }
+            }
+        }
+        Unsafe.getUnsafe().putLong(entry, min);
+        Unsafe.getUnsafe().putLong(entry + 8, max);
+        Unsafe.getUnsafe().putLong(entry + 16, nulls);
+    }
+
+    private static void summariseLongs(long address, int count, long entry) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long nulls = 0;
+        for (int i = 0; i < count; i++) {
+            long v = Unsafe.getUnsafe().getLong(address + ((long) i << 3));
+            if (v == Long.MIN_VALUE) {
+                nulls++;
+            } else {
+                if (v < min) {
+                    min = v;
+                }
+                if (v > max) {
+                    max = v;
+                }
+            }
+        }
+        Unsafe.getUnsafe().putLong(entry, min);
+        Unsafe.getUnsafe().putLong(entry + 8, max);
+        Unsafe.getUnsafe().putLong(entry + 16, nulls);
+    }
+}
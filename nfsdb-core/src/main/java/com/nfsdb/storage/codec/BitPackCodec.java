@@ -0,0 +1,107 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage.codec;
+
+import com.nfsdb.utils.Unsafe;
+
+/**
+ * Frame of reference codec of 4-byte integer values, such as symbol keys. Values are stored as
+ * offsets from minimum of block, packed in as many bits as it takes to store largest offset.
+ */
+public class BitPackCodec implements Codec {
+    public static final int ID = 3;
+    /*
+        struct header {
+            int min
+            byte width
+        }
+     */
+    private static final int HEADER_SIZE = 5;
+    private final BitWriter writer = new BitWriter();
+    private final BitReader reader = new BitReader();
+
+    @Override
+    public int compress(long src, int len, long dst) {
+        int count = len >>> 2;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int v = Unsafe.getUnsafe().getInt(src + i * 4L);
+            if (v < min) {
+                min = v;
+            }
+            if (v > max) {
+                max = v;
+            }
+        }
+
+        if (count == 0) {
+            min = max = 0;
+        }
+
+        long range = (long) max - min;
+        int width = range == 0 ? 0 : 64 - Long.numberOfLeadingZeros(range);
+        Unsafe.getUnsafe().putInt(dst, min);
+        Unsafe.getUnsafe().putByte(dst + 4, (byte) width);
+
+        int n = HEADER_SIZE;
+        if (width > 0) {
+            writer.of(dst + HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                writer.write((long) Unsafe.getUnsafe().getInt(src + i * 4L) - min, width);
+            }
+            n += writer.flush();
+        }
+        int tail = len & 3;
+        Unsafe.getUnsafe().copyMemory(src + len - tail, dst + n, tail);
+        return n + tail;
+    }
+
+    @Override
+    public void decompress(long src, int srcLen, long dst, int len) {
+        int count = len >>> 2;
+        int min = Unsafe.getUnsafe().getInt(src);
+        int width = Unsafe.getUnsafe().getByte(src + 4);
+        if (width == 0) {
+            for (int i = 0; i < count; i++) {
+                Unsafe.getUnsafe().putInt(dst + i * 4L, min);
+            }
+        } else {
+            reader.of(src + HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                Unsafe.getUnsafe().putInt(dst + i * 4L, (int) (min + reader.read(width)));
+            }
+        }
+        int tail = len & 3;
+        Unsafe.getUnsafe().copyMemory(src + srcLen - tail, dst + len - tail, tail);
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public int getMaxCompressedSize(int len) {
+        return HEADER_SIZE + len + 8 + 3;
+    }
+}
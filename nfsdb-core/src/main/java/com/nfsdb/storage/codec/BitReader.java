@@ -0,0 +1,66 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage.codec;
+
+import com.nfsdb.utils.Unsafe;
+
+/**
+ * Reads values written by {@link BitWriter}.
+ */
+final class BitReader {
+    private long address;
+    private long acc;
+    private int bits;
+
+    void of(long address) {
+        this.address = address;
+        this.acc = 0;
+        this.bits = 0;
+    }
+
+    /**
+     * @param n number of bits, 1 to 64
+     * @return value
+     */
+    long read(int n) {
+        long v;
+        if (n <= bits) {
+            v = acc & mask(n);
+            acc = n == 64 ? 0 : acc >>> n;
+            bits -= n;
+            return v;
+        }
+
+        // take what is left and top up from next long
+        int need = n - bits;
+        long next = Unsafe.getUnsafe().getLong(address);
+        address += 8;
+        v = acc | ((next & mask(need)) << bits);
+        acc = need == 64 ? 0 : next >>> need;
+        bits = 64 - need;
+        return v;
+    }
+
+    private static long mask(int n) {
+        return n == 64 ? -1L : (1L << n) - 1;
+    }
+}
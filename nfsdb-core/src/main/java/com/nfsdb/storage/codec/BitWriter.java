@@ -0,0 +1,71 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage.codec;
+
+import com.nfsdb.utils.Unsafe;
+
+/**
+ * Writes values of up to 64 bits into memory, least significant bits first. Memory is written in
+ * whole longs, so that {@link BitReader} never reads past written data.
+ */
+final class BitWriter {
+    private long address;
+    private long lo;
+    private long acc;
+    private int bits;
+
+    void of(long address) {
+        this.address = this.lo = address;
+        this.acc = 0;
+        this.bits = 0;
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    int flush() {
+        if (bits > 0) {
+            Unsafe.getUnsafe().putLong(address, acc);
+            address += 8;
+            acc = 0;
+            bits = 0;
+        }
+        return (int) (address - lo);
+    }
+
+    /**
+     * @param value value, bits above n must be zero
+     * @param n     number of bits, 1 to 64
+     */
+    void write(long value, int n) {
+        acc |= value << bits;
+        int total = bits + n;
+        if (total < 64) {
+            bits = total;
+        } else {
+            Unsafe.getUnsafe().putLong(address, acc);
+            address += 8;
+            bits = total - 64;
+            acc = bits == 0 ? 0 : value >>> (n - bits);
+        }
+    }
+}
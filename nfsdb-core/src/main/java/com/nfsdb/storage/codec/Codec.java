@@ -0,0 +1,52 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage.codec;
+
+/**
+ * Compresses block of column data. Block holds whole values, codecs of fixed width values copy
+ * trailing bytes of incomplete value as they are. Codec instances are not thread safe.
+ */
+public interface Codec {
+
+    /**
+     * @param src address of block
+     * @param len length of block in bytes
+     * @param dst address of at least {@link #getMaxCompressedSize(int)} bytes
+     * @return number of bytes written to dst
+     */
+    int compress(long src, int len, long dst);
+
+    /**
+     * @param src    address of compressed block
+     * @param srcLen length of compressed block
+     * @param dst    address of len bytes
+     * @param len    length of block before compression
+     */
+    void decompress(long src, int srcLen, long dst, int len);
+
+    /**
+     * @return id of codec stored alongside compressed data, see {@link Codecs#get(int)}
+     */
+    int getId();
+
+    int getMaxCompressedSize(int len);
+}
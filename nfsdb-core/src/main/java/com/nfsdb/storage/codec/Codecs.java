@@ -0,0 +1,77 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage.codec;
+
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.storage.ColumnType;
+
+public final class Codecs {
+
+    private Codecs() {
+    }
+
+    /**
+     * @param type type of fixed width column
+     * @return new instance of codec, which suits values of column type best
+     */
+    public static Codec forType(ColumnType type) {
+        switch (type) {
+            case LONG:
+            case DATE:
+                return new DeltaOfDeltaCodec();
+            case DOUBLE:
+                return new XorDoubleCodec();
+            case INT:
+            case SYMBOL:
+                return new BitPackCodec();
+            default:
+                return new LzCodec();
+        }
+    }
+
+    /**
+     * @param id codec id, see {@link Codec#getId()}
+     * @return new instance of codec
+     */
+    public static Codec get(int id) {
+        switch (id) {
+            case LzCodec.ID:
+                return new LzCodec();
+            case DeltaOfDeltaCodec.ID:
+                return new DeltaOfDeltaCodec();
+            case XorDoubleCodec.ID:
+                return new XorDoubleCodec();
+            case BitPackCodec.ID:
+                return new BitPackCodec();
+            default:
+                throw new JournalRuntimeException("Unknown codec: %d", id);
+        }
+    }
+
+    static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage.codec;
+
+import com.nfsdb.utils.Unsafe;
+
+/**
+ * Codec of 8-byte integer values, which change at steady pace, such as timestamps and offsets.
+ * First value is stored as is, the rest as difference of consecutive deltas in zig-zag variable
+ * length encoding. Regular series costs one byte per value.
+ */
+public class DeltaOfDeltaCodec implements Codec {
+    public static final int ID = 1;
+
+    @Override
+    public int compress(long src, int len, long dst) {
+        int count = len >>> 3;
+        long p = dst;
+        if (count > 0) {
+            long prev = Unsafe.getUnsafe().getLong(src);
+            long delta = 0;
+            Unsafe.getUnsafe().putLong(p, prev);
+            p += 8;
+            for (int i = 1; i < count; i++) {
+                long v = Unsafe.getUnsafe().getLong(src + i * 8L);
+                long d = v - prev;
+                p = putVarLong(p, Codecs.zigZag(d - delta));
+                delta = d;
+                prev = v;
+            }
+        }
+        int tail = len & 7;
+        Unsafe.getUnsafe().copyMemory(src + len - tail, p, tail);
+        return (int) (p - dst) + tail;
+    }
+
+    @Override
+    public void decompress(long src, int srcLen, long dst, int len) {
+        int count = len >>> 3;
+        long p = src;
+        if (count > 0) {
+            long prev = Unsafe.getUnsafe().getLong(p);
+            long delta = 0;
+            Unsafe.getUnsafe().putLong(dst, prev);
+            p += 8;
+            for (int i = 1; i < count; i++) {
+                long v = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = Unsafe.getUnsafe().getByte(p++);
+                    v |= (long) (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                delta += Codecs.unZigZag(v);
+                prev += delta;
+                Unsafe.getUnsafe().putLong(dst + i * 8L, prev);
+            }
+        }
+        int tail = len & 7;
+        Unsafe.getUnsafe().copyMemory(src + srcLen - tail, dst + len - tail, tail);
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public int getMaxCompressedSize(int len) {
+        return 8 + (len >>> 3) * 10 + 7;
+    }
+
+    private static long putVarLong(long p, long v) {
+        while ((v & ~0x7fL) != 0) {
+            Unsafe.getUnsafe().putByte(p++, (byte) (v | 0x80));
+            v >>>= 7;
+        }
+        Unsafe.getUnsafe().putByte(p++, (byte) v);
+        return p;
+    }
+}
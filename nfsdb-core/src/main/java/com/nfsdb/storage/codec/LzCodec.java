@@ -0,0 +1,164 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage.codec;
+
+import com.nfsdb.utils.Unsafe;
+
+import java.util.Arrays;
+
+/**
+ * LZ77 style byte codec for string and binary data and for values other codecs do not handle.
+ * Compressed block is a series of sequences:
+ * <pre>
+ *     token: literal length (4 bits) | match length - 4 (4 bits)
+ *     [literal length - 15, in bytes of 255 and remainder, when literal length nibble is 15]
+ *     literals
+ *     match offset (2 bytes)
+ *     [match length - 19, in bytes of 255 and remainder, when match length nibble is 15]
+ * </pre>
+ * Last sequence has literals only. Matches are found via hash of 4 bytes, hence blocks longer than
+ * 64K would miss matches further back than that.
+ */
+public class LzCodec implements Codec {
+    public static final int ID = 0;
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int HASH_BITS = 12;
+    private final int[] table = new int[1 << HASH_BITS];
+
+    @Override
+    public int compress(long src, int len, long dst) {
+        Arrays.fill(table, -1);
+        long p = dst;
+        int anchor = 0;
+        int i = 0;
+        int limit = len - MIN_MATCH;
+
+        while (i <= limit) {
+            int v = Unsafe.getUnsafe().getInt(src + i);
+            int h = (v * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+
+            if (ref > -1 && i - ref <= MAX_OFFSET && Unsafe.getUnsafe().getInt(src + ref) == v) {
+                int m = MIN_MATCH;
+                while (i + m < len && Unsafe.getUnsafe().getByte(src + ref + m) == Unsafe.getUnsafe().getByte(src + i + m)) {
+                    m++;
+                }
+                p = putSequence(p, src + anchor, i - anchor, i - ref, m);
+                i += m;
+                anchor = i;
+            } else {
+                i++;
+            }
+        }
+
+        if (anchor < len) {
+            p = putLiterals(p, src + anchor, len - anchor, 0);
+        }
+        return (int) (p - dst);
+    }
+
+    @Override
+    public void decompress(long src, int srcLen, long dst, int len) {
+        long sp = src;
+        long dp = dst;
+        long lim = dst + len;
+
+        while (dp < lim) {
+            int token = Unsafe.getUnsafe().getByte(sp++) & 0xff;
+
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    b = Unsafe.getUnsafe().getByte(sp++) & 0xff;
+                    literals += b;
+                } while (b == 255);
+            }
+            Unsafe.getUnsafe().copyMemory(sp, dp, literals);
+            sp += literals;
+            dp += literals;
+
+            if (dp >= lim) {
+                break;
+            }
+
+            int offset = Unsafe.getUnsafe().getShort(sp) & 0xffff;
+            sp += 2;
+
+            int m = token & 15;
+            if (m == 15) {
+                int b;
+                do {
+                    b = Unsafe.getUnsafe().getByte(sp++) & 0xff;
+                    m += b;
+                } while (b == 255);
+            }
+            m += MIN_MATCH;
+
+            // match can overlap bytes it produces, copy byte by byte
+            for (long from = dp - offset, end = dp + m; dp < end; ) {
+                Unsafe.getUnsafe().putByte(dp++, Unsafe.getUnsafe().getByte(from++));
+            }
+        }
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public int getMaxCompressedSize(int len) {
+        return len + len / 255 + 16;
+    }
+
+    private static long putLength(long p, int len) {
+        while (len >= 255) {
+            Unsafe.getUnsafe().putByte(p++, (byte) 255);
+            len -= 255;
+        }
+        Unsafe.getUnsafe().putByte(p++, (byte) len);
+        return p;
+    }
+
+    private static long putLiterals(long p, long src, int literals, int matchNibble) {
+        Unsafe.getUnsafe().putByte(p++, (byte) ((Math.min(literals, 15) << 4) | matchNibble));
+        if (literals >= 15) {
+            p = putLength(p, literals - 15);
+        }
+        Unsafe.getUnsafe().copyMemory(src, p, literals);
+        return p + literals;
+    }
+
+    private static long putSequence(long p, long src, int literals, int offset, int match) {
+        int m = match - MIN_MATCH;
+        p = putLiterals(p, src, literals, Math.min(m, 15));
+        Unsafe.getUnsafe().putShort(p, (short) offset);
+        p += 2;
+        if (m >= 15) {
+            p = putLength(p, m - 15);
+        }
+        return p;
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage.codec;
+
+import com.nfsdb.utils.Unsafe;
+
+/**
+ * Codec of 8-byte floating point values. Each value is XOR-ed with previous one, which leaves few
+ * meaningful bits when values are close. Repeated value costs one bit, otherwise value costs 13 bits
+ * of header, which are positions of meaningful bits, and meaningful bits themselves.
+ */
+public class XorDoubleCodec implements Codec {
+    public static final int ID = 2;
+    private final BitWriter writer = new BitWriter();
+    private final BitReader reader = new BitReader();
+
+    @Override
+    public int compress(long src, int len, long dst) {
+        int count = len >>> 3;
+        writer.of(dst);
+        if (count > 0) {
+            long prev = Unsafe.getUnsafe().getLong(src);
+            writer.write(prev, 64);
+            for (int i = 1; i < count; i++) {
+                long v = Unsafe.getUnsafe().getLong(src + i * 8L);
+                long x = v ^ prev;
+                if (x == 0) {
+                    writer.write(0, 1);
+                } else {
+                    int lz = Long.numberOfLeadingZeros(x);
+                    int tz = Long.numberOfTrailingZeros(x);
+                    int bits = 64 - lz - tz;
+                    writer.write(1 | (lz << 1) | ((bits - 1) << 7), 13);
+                    writer.write(x >>> tz, bits);
+                }
+                prev = v;
+            }
+        }
+        int n = writer.flush();
+        int tail = len & 7;
+        Unsafe.getUnsafe().copyMemory(src + len - tail, dst + n, tail);
+        return n + tail;
+    }
+
+    @Override
+    public void decompress(long src, int srcLen, long dst, int len) {
+        int count = len >>> 3;
+        reader.of(src);
+        if (count > 0) {
+            long prev = reader.read(64);
+            Unsafe.getUnsafe().putLong(dst, prev);
+            for (int i = 1; i < count; i++) {
+                if (reader.read(1) != 0) {
+                    int h = (int) reader.read(12);
+                    int tz = 64 - (h & 63) - ((h >>> 6) + 1);
+                    prev ^= reader.read((h >>> 6) + 1) << tz;
+                }
+                Unsafe.getUnsafe().putLong(dst + i * 8L, prev);
+            }
+        }
+        int tail = len & 7;
+        Unsafe.getUnsafe().copyMemory(src + srcLen - tail, dst + len - tail, tail);
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public int getMaxCompressedSize(int len) {
+        // 77 bits per value at worst, rounded up to whole longs
+        return 8 + (len >>> 3) * 10 + 8 + 7;
+    }
+}
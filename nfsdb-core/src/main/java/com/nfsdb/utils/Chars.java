@@ -29,6 +29,37 @@ public final class Chars {
     private Chars() {
     }
 
+    /**
+     * Compares char sequences lexicographically, null is less than any other value.
+     *
+     * @param l left sequence, can be null
+     * @param r right sequence, can be null
+     * @return negative, zero or positive value when left is less than, equal to or greater than right
+     */
+    public static int compare(CharSequence l, CharSequence r) {
+        if (l == r) {
+            return 0;
+        }
+
+        if (l == null) {
+            return -1;
+        }
+
+        if (r == null) {
+            return 1;
+        }
+
+        int ll = l.length();
+        int rl = r.length();
+        for (int i = 0, n = Math.min(ll, rl); i < n; i++) {
+            int d = l.charAt(i) - r.charAt(i);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return ll - rl;
+    }
+
     public static boolean equals(CharSequence l, CharSequence r) {
         if (l == r) {
             return true;
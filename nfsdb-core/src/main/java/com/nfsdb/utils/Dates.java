@@ -200,6 +200,10 @@ final public class Dates {
         return yearMillis(y = getYear(millis), l = isLeapYear(y)) + monthOfYearMillis(getMonthOfYear(millis, y, l), l);
     }
 
+    public static long floorSS(long millis) {
+        return millis - millis % SECOND_MILLIS;
+    }
+
     public static long floorYYYY(long millis) {
         int y;
         return yearMillis(y = getYear(millis), isLeapYear(y));
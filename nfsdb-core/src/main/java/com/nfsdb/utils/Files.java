@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 
 @SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CONSTRAINTS"})
@@ -39,6 +40,38 @@ public final class Files {
     private Files() {
     } // Prevent construction.
 
+    /**
+     * Copies file, or directory with all its contents, to location, which must not exist.
+     *
+     * @param from file or directory to copy
+     * @param to   location of copy
+     * @throws JournalException when copy cannot be made
+     */
+    public static void copyOrException(File from, File to) throws JournalException {
+        if (from.isDirectory()) {
+            if (!to.mkdirs()) {
+                throw new JournalException("Cannot create directory %s", to);
+            }
+            File[] files = from.listFiles();
+            if (files != null) {
+                for (int i = 0; i < files.length; i++) {
+                    copyOrException(files[i], new File(to, files[i].getName()));
+                }
+            }
+            return;
+        }
+
+        try (FileChannel in = new FileInputStream(from).getChannel(); FileChannel out = new FileOutputStream(to).getChannel()) {
+            long size = in.size();
+            long pos = 0;
+            while (pos < size) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+        } catch (IOException e) {
+            throw new JournalException("Cannot copy %s to %s", e, from, to);
+        }
+    }
+
     @SuppressFBWarnings("EXS_EXCEPTION_SOFTENING_RETURN_FALSE")
     public static boolean delete(File file) {
         try {
@@ -68,6 +101,21 @@ public final class Files {
         }
     }
 
+    /**
+     * Creates hard link to file, file is copied when file system does not support hard links.
+     *
+     * @param from existing file
+     * @param to   link to create
+     * @throws JournalException when neither link nor copy can be created
+     */
+    public static void linkOrCopy(File from, File to) throws JournalException {
+        try {
+            java.nio.file.Files.createLink(to.toPath(), from.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            copyOrException(from, to);
+        }
+    }
+
     public static File makeTempDir() {
         File result;
         try {
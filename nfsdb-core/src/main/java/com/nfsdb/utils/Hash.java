@@ -36,6 +36,23 @@ public final class Hash {
         return s == null ? -1 : (Chars.hashCode(s) & 0xFFFFFFF) & max;
     }
 
+    /**
+     * Mixes bits of 64-bit value so that both low and high bits of result depend on all bits
+     * of input. This is finalisation step of MurmurHash3.
+     *
+     * @param value value to hash
+     * @return hash code
+     */
+    public static long hashLong(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
     /**
      * Calculates positive integer hash of memory pointer using Java hashcode() algorithm.
      *
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.utils;
+
+/**
+ * Sorts off-heap array of (long, long) pairs in ascending order of first and then second element of pair.
+ * Pairs are typically (timestamp, position), in which case sort of pairs with unique positions is stable
+ * with respect to timestamp.
+ */
+public final class LongPairSort {
+    public static final int PAIR_SIZE = 16;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private LongPairSort() {
+    }
+
+    public static long first(long address, long i) {
+        return Unsafe.getUnsafe().getLong(address + i * PAIR_SIZE);
+    }
+
+    public static void put(long address, long i, long first, long second) {
+        long p = address + i * PAIR_SIZE;
+        Unsafe.getUnsafe().putLong(p, first);
+        Unsafe.getUnsafe().putLong(p + 8, second);
+    }
+
+    /**
+     * Sorts pairs in ascending order of first element only. Sort is stable, pairs with equal first
+     * element keep their order. This is LSD radix sort over bytes of first element, which makes it
+     * linear in number of pairs. Bytes, which are the same in all pairs, are skipped.
+     *
+     * @param address address of first pair
+     * @param count   number of pairs
+     * @param scratch address of memory for count pairs, contents are overwritten
+     */
+    public static void radixSort(long address, long count, long scratch) {
+        if (count < 2) {
+            return;
+        }
+
+        // byte histograms of first elements with sign bit flipped, so that bytes compare as unsigned
+        long counts[] = new long[8 * 256];
+        for (long i = 0; i < count; i++) {
+            long v = first(address, i) ^ Long.MIN_VALUE;
+            for (int d = 0; d < 8; d++) {
+                counts[(d << 8) + (int) ((v >>> (d << 3)) & 0xff)]++;
+            }
+        }
+
+        long src = address;
+        long dst = scratch;
+        long v0 = first(address, 0) ^ Long.MIN_VALUE;
+        for (int d = 0; d < 8; d++) {
+            int base = d << 8;
+            int shift = d << 3;
+            if (counts[base + (int) ((v0 >>> shift) & 0xff)] == count) {
+                continue;
+            }
+
+            long offset = 0;
+            for (int b = base, lim = base + 256; b < lim; b++) {
+                long c = counts[b];
+                counts[b] = offset;
+                offset += c;
+            }
+
+            for (long i = 0; i < count; i++) {
+                long first = first(src, i);
+                put(dst, counts[base + (int) (((first ^ Long.MIN_VALUE) >>> shift) & 0xff)]++, first, second(src, i));
+            }
+
+            long t = src;
+            src = dst;
+            dst = t;
+        }
+
+        if (src != address) {
+            Unsafe.getUnsafe().copyMemory(src, address, count * PAIR_SIZE);
+        }
+    }
+
+    public static long second(long address, long i) {
+        return Unsafe.getUnsafe().getLong(address + i * PAIR_SIZE + 8);
+    }
+
+    /**
+     * @param address address of first pair
+     * @param lo      index of first pair to sort
+     * @param hi      index of last pair to sort, inclusive
+     */
+    public static void sort(long address, long lo, long hi) {
+        while (hi - lo > INSERTION_SORT_THRESHOLD) {
+            long m = lo + ((hi - lo) >>> 1);
+            long first = first(address, m);
+            long second = second(address, m);
+            long i = lo;
+            long j = hi;
+            while (i <= j) {
+                while (less(address, i, first, second)) {
+                    i++;
+                }
+                while (greater(address, j, first, second)) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(address, i++, j--);
+                }
+            }
+
+            // recurse into smaller part to keep stack shallow
+            if (j - lo < hi - i) {
+                sort(address, lo, j);
+                lo = i;
+            } else {
+                sort(address, i, hi);
+                hi = j;
+            }
+        }
+
+        for (long i = lo + 1; i <= hi; i++) {
+            for (long j = i; j > lo && greater(address, j - 1, first(address, j), second(address, j)); j--) {
+                swap(address, j - 1, j);
+            }
+        }
+    }
+
+    private static boolean greater(long address, long i, long first, long second) {
+        long f = first(address, i);
+        return f > first || (f == first && second(address, i) > second);
+    }
+
+    private static boolean less(long address, long i, long first, long second) {
+        long f = first(address, i);
+        return f < first || (f == first && second(address, i) < second);
+    }
+
+    private static void swap(long address, long i, long j) {
+        long a = address + i * PAIR_SIZE;
+        long b = address + j * PAIR_SIZE;
+        long first = Unsafe.getUnsafe().getLong(a);
+        long second = Unsafe.getUnsafe().getLong(a + 8);
+        Unsafe.getUnsafe().putLong(a, Unsafe.getUnsafe().getLong(b));
+        Unsafe.getUnsafe().putLong(a + 8, Unsafe.getUnsafe().getLong(b + 8));
+        Unsafe.getUnsafe().putLong(b, first);
+        Unsafe.getUnsafe().putLong(b + 8, second);
+    }
+}
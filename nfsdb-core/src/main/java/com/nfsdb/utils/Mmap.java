@@ -0,0 +1,97 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.utils;
+
+import com.nfsdb.exceptions.JournalRuntimeException;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+
+/**
+ * Maps file regions into raw addresses, bypassing MappedByteBuffer and its
+ * 2GB limit. Relies on private methods of sun.nio.ch.FileChannelImpl, which are
+ * resolved once. When they are not accessible {@link #isSupported()} returns false
+ * and callers are expected to fall back to MappedByteBuffer paging.
+ */
+@SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CONSTRAINTS", "REFL_REFLECTION_MAY_INCREASE_ACCESSIBILITY_OF_METHOD"})
+public final class Mmap {
+    private static final int MAP_RO = 0;
+    private static final int MAP_RW = 1;
+    private static final Method MAP0;
+    private static final Method UNMAP0;
+
+    private Mmap() {
+    }
+
+    public static boolean isSupported() {
+        return MAP0 != null;
+    }
+
+    /**
+     * Maps "size" bytes of file starting from offset 0. File has to be at least "size" bytes long,
+     * touching memory beyond end of file will crash JVM.
+     *
+     * @param channel  file channel obtained from RandomAccessFile
+     * @param size     number of bytes to map
+     * @param readOnly true for read only mapping, false for shared read-write
+     * @return address of first mapped byte
+     */
+    public static long map(FileChannel channel, long size, boolean readOnly) {
+        try {
+            return (long) MAP0.invoke(channel, readOnly ? MAP_RO : MAP_RW, 0L, size);
+        } catch (InvocationTargetException e) {
+            throw new JournalRuntimeException("Failed to map %d bytes", e.getCause(), size);
+        } catch (IllegalAccessException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    public static void unmap(long address, long size) {
+        try {
+            UNMAP0.invoke(null, address, size);
+        } catch (InvocationTargetException e) {
+            throw new JournalRuntimeException("Failed to unmap %d bytes", e.getCause(), size);
+        } catch (IllegalAccessException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    static {
+        Method map0;
+        Method unmap0;
+        try {
+            Class<?> c = Class.forName("sun.nio.ch.FileChannelImpl");
+            map0 = c.getDeclaredMethod("map0", int.class, long.class, long.class);
+            unmap0 = c.getDeclaredMethod("unmap0", long.class, long.class);
+            map0.setAccessible(true);
+            unmap0.setAccessible(true);
+        } catch (Exception e) {
+            // either different JDK or access to internals is denied
+            map0 = null;
+            unmap0 = null;
+        }
+        MAP0 = map0;
+        UNMAP0 = unmap0;
+    }
+}
@@ -28,6 +28,7 @@ import java.lang.reflect.Field;
 public final class Unsafe {
     public static final long CHAR_OFFSET;
     public static final long BYTE_OFFSET;
+    public static final long DOUBLE_OFFSET;
     public final static int CACHE_LINE_SIZE = 64;
     public static final long INT_OFFSET;
     public static final long INT_SCALE;
@@ -96,6 +97,7 @@ public final class Unsafe {
 
             CHAR_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(char[].class);
             BYTE_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(byte[].class);
+            DOUBLE_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(double[].class);
 
             BOOL_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(boolean[].class);
             BOOL_SCALE = Unsafe.getUnsafe().arrayIndexScale(boolean[].class);
@@ -21,13 +21,19 @@
 
 package com.nfsdb;
 
+import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.factory.JournalFactory;
+import com.nfsdb.factory.configuration.JournalMetadata;
 import com.nfsdb.model.Quote;
 import com.nfsdb.test.tools.AbstractTest;
 import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Rnd;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 public class BulkTest extends AbstractTest {
     @Test
     public void testBulkWrite() throws Exception {
@@ -47,6 +53,109 @@ public class BulkTest extends AbstractTest {
         Assert.assertEquals(batchSize, count);
     }
 
+    @Test
+    public void testColumnWriter() throws Exception {
+        final int count = 30000;
+        final int batchSize = 7000;
+        String symbols[] = {"AGK.L", "BP.L", "TLW.L", "ABF.L", "LLOY.L", "BT-A.L", "WTB.L", "RRS.L", "ADM.L", "GKN.L", "HSBA.L"};
+        String sym[] = new String[count];
+        String ex[] = new String[count];
+        double bid[] = new double[count];
+        double ask[] = new double[count];
+        int bidSize[] = new int[count];
+        int askSize[] = new int[count];
+        long timestamp[] = new long[count];
+
+        // rows span three monthly partitions, partition boundaries fall inside batches
+        Rnd r = new Rnd();
+        long t = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+        for (int i = 0; i < count; i++) {
+            sym[i] = symbols[Math.abs(r.nextInt() % symbols.length)];
+            ex[i] = i % 100 == 0 ? null : "LXE";
+            bid[i] = Math.abs(r.nextDouble());
+            ask[i] = Math.abs(r.nextDouble());
+            bidSize[i] = Math.abs(r.nextInt());
+            askSize[i] = Math.abs(r.nextInt());
+            timestamp[i] = t;
+            t += 4 * 60 * 1000;
+        }
+
+        JournalWriter<Quote> expected = factory.writer(Quote.class, "expected");
+        Quote q = new Quote();
+        for (int i = 0; i < count; i++) {
+            q.clear();
+            q.setSym(sym[i]).setTimestamp(timestamp[i]);
+            q.setEx(ex[i]);
+            q.setBid(bid[i]);
+            q.setAsk(ask[i]);
+            q.setBidSize(bidSize[i]);
+            q.setAskSize(askSize[i]);
+            expected.append(q);
+        }
+        expected.commit();
+
+        JournalWriter<Quote> actual = factory.writer(Quote.class, "actual");
+        JournalMetadata<Quote> m = actual.getMetadata();
+        JournalColumnWriter w = actual.columnWriter();
+        for (int lo = 0; lo < count; lo += batchSize) {
+            int n = Math.min(batchSize, count - lo);
+            // "mode" column is not given and is null
+            w.putSym(m.getColumnIndex("sym"), copy(sym, lo, n));
+            w.putSym(m.getColumnIndex("ex"), copy(ex, lo, n));
+            w.putDouble(m.getColumnIndex("bid"), Arrays.copyOfRange(bid, lo, lo + n));
+            w.putDouble(m.getColumnIndex("ask"), Arrays.copyOfRange(ask, lo, lo + n));
+            w.putInt(m.getColumnIndex("bidSize"), Arrays.copyOfRange(bidSize, lo, lo + n));
+            w.putInt(m.getColumnIndex("askSize"), Arrays.copyOfRange(askSize, lo, lo + n));
+            w.putDate(m.getColumnIndex("timestamp"), Arrays.copyOfRange(timestamp, lo, lo + n));
+            w.append(n);
+        }
+        actual.commit();
+
+        Assert.assertEquals(3, actual.getPartitionCount());
+        TestUtils.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testColumnWriterOutOfOrder() throws Exception {
+        JournalWriter<Quote> writer = factory.writer(Quote.class);
+        JournalColumnWriter w = writer.columnWriter();
+        w.putDate(writer.getMetadata().getColumnIndex("timestamp"), new long[]{3, 4, 2});
+        try {
+            w.append(3);
+            Assert.fail();
+        } catch (JournalException e) {
+            Assert.assertTrue(e.getMessage().contains("out of order"));
+        }
+    }
+
+    @Test
+    public void testColumnWriterFailure() throws Exception {
+        JournalWriter<Quote> writer = factory.writer(Quote.class);
+        JournalColumnWriter w = writer.columnWriter();
+        int ts = writer.getMetadata().getColumnIndex("timestamp");
+        long t = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+        long month = 30 * Dates.DAY_MILLIS;
+
+        w.putDate(ts, new long[]{t, t + 1});
+        w.append(2);
+
+        // rows of first partition are written before rows of second partition are found out of order
+        w.putDate(ts, new long[]{t + 2, t + 3, t + month, t + month - 1});
+        try {
+            w.append(4);
+            Assert.fail();
+        } catch (JournalException e) {
+            Assert.assertTrue(e.getMessage().contains("out of order"));
+        }
+
+        w.putDate(ts, new long[]{t + 2});
+        w.append(1);
+        writer.commit();
+
+        Assert.assertEquals(3, writer.size());
+        Assert.assertEquals(t + 2, writer.getPartition(0, true).getTimestampColumn().getLong(2));
+    }
+
     @Test
     public void testDurable() throws Exception {
         JournalFactory f = factory;
@@ -73,4 +182,8 @@ public class BulkTest extends AbstractTest {
         }
         Assert.assertEquals(batchSize * iterations, count);
     }
+
+    private static String[] copy(String[] values, int lo, int n) {
+        return Arrays.copyOfRange(values, lo, lo + n);
+    }
 }
@@ -36,6 +36,70 @@ import java.util.Iterator;
 
 public class GenericInteropTest extends AbstractTest {
 
+    @Test
+    public void testColumnWriter() throws Exception {
+        JournalWriter writer = makeGenericWriter();
+        JournalColumnWriter w = writer.columnWriter();
+
+        // "nullable" column is not given
+        w.putSym(0, new String[]{"EURUSD", "EURUSD", "GBPUSD"});
+        w.putDate(1, new long[]{19999, 20000, 20001});
+        w.putDouble(2, new double[]{1.24, 1.23, 1.5});
+        w.putDouble(3, new double[]{1.25, 1.26, 1.6});
+        w.putInt(4, new int[]{10000, 11000, 12000});
+        w.putInt(5, new int[]{12000, 13000, 14000});
+        w.putInt(6, new int[]{1, 2, 1});
+        w.putStr(7, new String[]{"OK", "STALE", null});
+        w.putStr(8, new String[]{"system", "system", "user"});
+        w.putStr(9, new String[]{"EURUSD:GLOBAL", "EURUSD:GLOBAL", "GBPUSD:GLOBAL"});
+        w.putBool(10, new boolean[]{true, false, true});
+        w.putLong(12, new long[]{13141516, 23242526, 33343536});
+        w.putShort(13, new short[]{25000, 30000, 1});
+        w.append(3);
+        writer.commit();
+
+        RecordCursor<? extends Record> src = compiler.compile("test");
+        Record e;
+
+        Assert.assertTrue(src.hasNext());
+        Assert.assertNotNull(e = src.next());
+        Assert.assertEquals("EURUSD", e.getSym(0));
+        Assert.assertEquals(19999, e.getDate(1));
+        Assert.assertEquals(1.24, e.getDouble(2), 0.000001);
+        Assert.assertEquals(10000, e.getInt(4));
+        Assert.assertEquals("OK", e.getStr(7));
+        Assert.assertTrue(e.getBool(10));
+        Assert.assertNull(e.getStr(11));
+        Assert.assertEquals(13141516, e.getLong(12));
+        Assert.assertEquals(25000, e.getShort(13));
+
+        Assert.assertTrue(src.hasNext());
+        Assert.assertNotNull(e = src.next());
+        Assert.assertEquals("EURUSD", e.getSym(0));
+        Assert.assertEquals(1.26, e.getDouble(3), 0.000001);
+        Assert.assertEquals(2, e.getInt(6));
+        Assert.assertEquals("STALE", e.getStr(7));
+        Assert.assertFalse(e.getBool(10));
+        Assert.assertNull(e.getStr(11));
+
+        Assert.assertTrue(src.hasNext());
+        Assert.assertNotNull(e = src.next());
+        Assert.assertEquals("GBPUSD", e.getSym(0));
+        Assert.assertEquals(20001, e.getDate(1));
+        Assert.assertNull(e.getStr(7));
+        Assert.assertEquals("GBPUSD:GLOBAL", e.getStr(9));
+        Assert.assertEquals(33343536, e.getLong(12));
+        Assert.assertEquals(1, e.getShort(13));
+
+        Assert.assertFalse(src.hasNext());
+
+        Partition p = writer.getPartition(0, true);
+        Assert.assertEquals(2, p.getIndexForColumn("sym").getValueCount(0));
+        Assert.assertEquals(1, p.getIndexForColumn("sym").getValueCount(1));
+        Assert.assertEquals(2, p.getIndexForColumn("id").getValueCount(1));
+        Assert.assertEquals(2, p.getIndexForColumn("id").getValues(1).get(1));
+    }
+
     @Test
     public void testGenericAll() throws Exception {
         JournalWriter writer = makeGenericWriter();
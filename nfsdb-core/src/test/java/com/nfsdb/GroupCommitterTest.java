@@ -0,0 +1,185 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb;
+
+import com.nfsdb.model.Quote;
+import com.nfsdb.storage.TxListener;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.utils.Dates;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GroupCommitterTest extends AbstractTest {
+
+    @Test
+    public void testConcurrentAppenders() throws Exception {
+        final int threadCount = 4;
+        final int count = 2000;
+        final JournalWriter<Quote> writer = factory.writer(Quote.class);
+        final GroupCommitter committer = new GroupCommitter(writer, 16);
+        final long timestamp = Dates.parseDateTime("2013-10-05T10:00:00.000Z");
+        final CyclicBarrier start = new CyclicBarrier(threadCount);
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final AtomicInteger errors = new AtomicInteger();
+        final long rows[] = {0};
+
+        committer.start();
+        for (int i = 0; i < threadCount; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        Quote q = new Quote();
+                        for (int k = 0; k < count; k++) {
+                            synchronized (writer) {
+                                q.setSym("BP.L").setEx("LXE").setBid(k).setAsk(k);
+                                // timestamps stay in order across appenders
+                                q.setTimestamp(timestamp + rows[0]++ * 1000);
+                                writer.append(q);
+                            }
+
+                            Future<Void> f = committer.commitAsync(k % 10 == 0);
+                            if (k % 100 == 0) {
+                                f.get();
+                            }
+                        }
+                        committer.commitAsync(true).get();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        errors.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+        committer.halt();
+        Assert.assertEquals(0, errors.get());
+        // every request is satisfied, though not necessarily by a commit of its own
+        Assert.assertTrue(committer.getCommitCount() > 0);
+        Assert.assertTrue(committer.getCommitCount() <= threadCount * (count + 1));
+
+        Journal<Quote> reader = factory.reader(Quote.class);
+        Assert.assertEquals(threadCount * count, reader.size());
+        writer.close();
+    }
+
+    @Test
+    public void testHaltCompletesRacingRequests() throws Exception {
+        final JournalWriter<Quote> writer = factory.writer(Quote.class);
+        final int threadCount = 4;
+
+        for (int round = 0; round < 20; round++) {
+            final GroupCommitter committer = new GroupCommitter(writer, 16);
+            final CyclicBarrier start = new CyclicBarrier(threadCount + 1);
+            final CountDownLatch done = new CountDownLatch(threadCount);
+            final AtomicInteger hung = new AtomicInteger();
+
+            committer.start();
+            for (int i = 0; i < threadCount; i++) {
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            while (true) {
+                                Future<Void> f = committer.commitAsync(false);
+                                try {
+                                    f.get(10, TimeUnit.SECONDS);
+                                } catch (TimeoutException e) {
+                                    hung.incrementAndGet();
+                                } catch (ExecutionException ignore) {
+                                    // request raced with halt and was failed
+                                }
+                            }
+                        } catch (IllegalStateException ignore) {
+                            // committer is halted
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            hung.incrementAndGet();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+
+            start.await();
+            committer.halt();
+            Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+            Assert.assertEquals(0, hung.get());
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testHaltCommitsQueuedRequests() throws Exception {
+        JournalWriter<Quote> writer = factory.writer(Quote.class);
+        GroupCommitter committer = new GroupCommitter(writer);
+        final AtomicInteger commits = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        TxListener listener = new TxListener() {
+            @Override
+            public void onCommit() {
+                commits.incrementAndGet();
+            }
+
+            @Override
+            public void onError() {
+                errors.incrementAndGet();
+            }
+        };
+
+        committer.start();
+        Quote q = new Quote().setSym("BP.L").setEx("LXE");
+        long timestamp = Dates.parseDateTime("2013-10-05T10:00:00.000Z");
+        for (int i = 0; i < 100; i++) {
+            synchronized (writer) {
+                writer.append(q.setTimestamp(timestamp + i));
+            }
+            committer.commitAsync(false, listener);
+        }
+        committer.halt();
+
+        Assert.assertEquals(100, commits.get());
+        Assert.assertEquals(0, errors.get());
+        Assert.assertEquals(100, factory.reader(Quote.class).size());
+
+        try {
+            committer.commitAsync(false);
+            Assert.fail();
+        } catch (IllegalStateException ignore) {
+        }
+        writer.close();
+    }
+}
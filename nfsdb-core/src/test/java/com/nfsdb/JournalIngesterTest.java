@@ -0,0 +1,254 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb;
+
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.configuration.JournalMetadata;
+import com.nfsdb.model.Quote;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JournalIngesterTest extends AbstractTest {
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int threadCount = 4;
+        final int count = 10000;
+        final JournalWriter<Quote> writer = factory.writer(Quote.class);
+        // small buffers make producers hand over many batches
+        final JournalIngester ingester = new JournalIngester(writer, 4096, 4);
+        final long timestamp = Dates.parseDateTime("2013-10-05T10:00:00.000Z");
+        final CyclicBarrier start = new CyclicBarrier(threadCount);
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final AtomicInteger errors = new AtomicInteger();
+
+        ingester.start();
+        for (int i = 0; i < threadCount; i++) {
+            final int index = i;
+            new Thread() {
+                @Override
+                public void run() {
+                    try (JournalProducer p = ingester.producer()) {
+                        // producer holds back rows of others once it has handed over its first row
+                        put(p, writer.getMetadata(), timestamp, 0);
+                        p.flush();
+                        start.await();
+                        for (int k = 1; k < count; k++) {
+                            put(p, writer.getMetadata(), timestamp + k * threadCount + index, k);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        errors.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+        ingester.halt();
+        Assert.assertEquals(0, errors.get());
+
+        // rows of slower producers are not late, committer waits for them
+        Assert.assertEquals(0, ingester.getRejectCount());
+        Assert.assertEquals(threadCount * count, ingester.getRowCount());
+        Journal<Quote> reader = factory.reader(Quote.class);
+        Assert.assertEquals(ingester.getRowCount(), reader.size());
+        TestUtils.assertOrder(reader.bufferedIterator());
+        writer.close();
+    }
+
+    @Test
+    public void testHeldSizeLimit() throws Exception {
+        JournalWriter<Quote> writer = factory.writer(Quote.class);
+        JournalIngester ingester = new JournalIngester(writer, 4096, 4, 60000, 4096);
+        long timestamp = Dates.parseDateTime("2013-10-05T10:00:00.000Z");
+
+        ingester.start();
+        JournalProducer slow = ingester.producer();
+        put(slow, writer.getMetadata(), timestamp, 0);
+        slow.flush();
+        try (JournalProducer fast = ingester.producer()) {
+            for (int k = 0; k < 1000; k++) {
+                put(fast, writer.getMetadata(), timestamp + 1000 + k, k);
+            }
+        }
+
+        // rows held back by slow producer do not take more than 4K
+        Assert.assertTrue(waitForRows(ingester, 900));
+        Assert.assertTrue(ingester.getRowCount() < 1001);
+
+        slow.close();
+        ingester.halt();
+        Assert.assertEquals(0, ingester.getRejectCount());
+        Assert.assertEquals(1001, ingester.getRowCount());
+        TestUtils.assertOrder(factory.reader(Quote.class).bufferedIterator());
+        writer.close();
+    }
+
+    @Test
+    public void testIdleProducer() throws Exception {
+        JournalWriter<Quote> writer = factory.writer(Quote.class);
+        JournalIngester ingester = new JournalIngester(writer, 4096, 4, 50, 1024 * 1024);
+        long timestamp = Dates.parseDateTime("2013-10-05T10:00:00.000Z");
+
+        ingester.start();
+        JournalProducer idle = ingester.producer();
+        put(idle, writer.getMetadata(), timestamp, 0);
+        idle.flush();
+        try (JournalProducer p = ingester.producer()) {
+            for (int k = 0; k < 1000; k++) {
+                put(p, writer.getMetadata(), timestamp + 1000 + k, k);
+            }
+        }
+
+        // rows are committed once producer, which is behind, goes idle
+        Assert.assertTrue(waitForRows(ingester, 1001));
+
+        // late row of idle producer is rejected
+        put(idle, writer.getMetadata(), timestamp + 1, 1);
+        idle.close();
+        ingester.halt();
+        Assert.assertEquals(1, ingester.getRejectCount());
+        Assert.assertEquals(1001, ingester.getRowCount());
+        writer.close();
+    }
+
+    @Test
+    public void testSlowProducer() throws Exception {
+        JournalWriter<Quote> writer = factory.writer(Quote.class);
+        JournalIngester ingester = new JournalIngester(writer);
+        long timestamp = Dates.parseDateTime("2013-10-05T10:00:00.000Z");
+
+        ingester.start();
+        JournalProducer slow = ingester.producer();
+        put(slow, writer.getMetadata(), timestamp, 0);
+        slow.flush();
+        try (JournalProducer fast = ingester.producer()) {
+            for (int k = 0; k < 1000; k++) {
+                put(fast, writer.getMetadata(), timestamp + 1000 + k, k);
+            }
+        }
+
+        // rows of fast producer wait for slow producer, which is behind
+        for (int k = 1; k < 1000; k++) {
+            put(slow, writer.getMetadata(), timestamp + k, k);
+        }
+        slow.close();
+        ingester.halt();
+
+        Assert.assertEquals(0, ingester.getRejectCount());
+        Assert.assertEquals(2000, ingester.getRowCount());
+        Journal<Quote> reader = factory.reader(Quote.class);
+        Assert.assertEquals(2000, reader.size());
+        TestUtils.assertOrder(reader.bufferedIterator());
+        writer.close();
+    }
+
+    @Test
+    public void testUnflushedProducer() throws Exception {
+        JournalWriter<Quote> writer = factory.writer(Quote.class);
+        JournalIngester ingester = new JournalIngester(writer);
+        long timestamp = Dates.parseDateTime("2013-10-05T10:00:00.000Z");
+
+        ingester.start();
+        // producer, which has not given any rows, does not hold back rows of others
+        JournalProducer unflushed = ingester.producer();
+        try (JournalProducer p = ingester.producer()) {
+            for (int k = 0; k < 1000; k++) {
+                put(p, writer.getMetadata(), timestamp + k, k);
+            }
+        }
+        Assert.assertTrue(waitForRows(ingester, 1000));
+
+        unflushed.close();
+        ingester.halt();
+        Assert.assertEquals(0, ingester.getRejectCount());
+        Assert.assertEquals(1000, ingester.getRowCount());
+        writer.close();
+    }
+
+    @Test
+    public void testSortsBatch() throws Exception {
+        JournalWriter<Quote> writer = factory.writer(Quote.class);
+        JournalIngester ingester = new JournalIngester(writer);
+        long timestamp = Dates.parseDateTime("2013-10-05T10:00:00.000Z");
+
+        ingester.start();
+        try (JournalProducer p = ingester.producer()) {
+            // rows of one batch are given newest first
+            for (int k = 999; k >= 0; k--) {
+                put(p, writer.getMetadata(), timestamp + k, k);
+            }
+        }
+        ingester.halt();
+
+        Assert.assertEquals(1000, ingester.getRowCount());
+        Assert.assertEquals(0, ingester.getRejectCount());
+
+        JournalWriter<Quote> expected = factory.writer(Quote.class, "expected");
+        for (int k = 0; k < 1000; k++) {
+            expected.append(new Quote().setSym(k % 2 == 0 ? "BP.L" : null).setEx("LXE").setBid(k).setAsk(k + 1).setBidSize(k).setAskSize(-k).setTimestamp(timestamp + k));
+        }
+        expected.commit();
+        TestUtils.assertEquals(expected, factory.reader(Quote.class));
+
+        try (JournalProducer p = ingester.producer()) {
+            p.entryWriter(timestamp).append();
+            p.flush();
+            Assert.fail();
+        } catch (IllegalStateException ignore) {
+        }
+        writer.close();
+    }
+
+    private static boolean waitForRows(JournalIngester ingester, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (ingester.getRowCount() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static void put(JournalProducer p, JournalMetadata<Quote> m, long timestamp, int k) throws JournalException {
+        JournalEntryWriter w = p.entryWriter(timestamp);
+        w.putSym(m.getColumnIndex("sym"), k % 2 == 0 ? "BP.L" : null);
+        w.putSym(m.getColumnIndex("ex"), "LXE");
+        w.putDouble(m.getColumnIndex("bid"), k);
+        w.putDouble(m.getColumnIndex("ask"), k + 1);
+        w.putInt(m.getColumnIndex("bidSize"), k);
+        w.putInt(m.getColumnIndex("askSize"), -k);
+        w.append();
+    }
+}
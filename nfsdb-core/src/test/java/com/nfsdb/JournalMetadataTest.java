@@ -35,6 +35,23 @@ public class JournalMetadataTest {
     @Rule
     public final TemporaryFolder temp = new TemporaryFolder();
 
+    @Test
+    public void testMetadataReadWithoutBitmapFlags() throws Exception {
+        JournalMetadataBuilder<Quote> b = new JournalMetadataBuilder<>(Quote.class);
+        b.$sym("ex").bitmapIndex();
+
+        UnstructuredFile hb = new UnstructuredFile(temp.newFile(), 10, JournalMode.APPEND);
+        JournalMetadata m = (JournalMetadata) b.build();
+        m.write(hb);
+        // cut off bitmap flags to get layout of metadata written before them
+        hb.setAppendOffset(hb.getAppendOffset() - m.getColumnCount());
+        JournalMetadata metadata = new JournalMetadata(hb);
+        hb.close();
+        Assert.assertFalse(metadata.getColumn("ex").bitmapIndexed);
+        Assert.assertEquals(m.getLag(), metadata.getLag());
+        Assert.assertEquals(m.getKeyQuiet(), metadata.getKeyQuiet());
+    }
+
     @Test
     public void testMetadataWrite() throws Exception {
         JournalMetadataBuilder<Quote> b = new JournalMetadataBuilder<>(Quote.class);
@@ -46,4 +63,18 @@ public class JournalMetadataTest {
         hb.close();
         Assert.assertTrue(m.isCompatible(metadata, false));
     }
+
+    @Test
+    public void testMetadataWriteBitmapIndex() throws Exception {
+        JournalMetadataBuilder<Quote> b = new JournalMetadataBuilder<>(Quote.class);
+        b.$sym("ex").bitmapIndex();
+
+        UnstructuredFile hb = new UnstructuredFile(temp.newFile(), 10, JournalMode.APPEND);
+        JournalMetadata m = (JournalMetadata) b.build();
+        m.write(hb);
+        JournalMetadata metadata = new JournalMetadata(hb);
+        hb.close();
+        Assert.assertTrue(m.isCompatible(metadata, false));
+        Assert.assertTrue(metadata.getColumn("ex").bitmapIndexed);
+    }
 }
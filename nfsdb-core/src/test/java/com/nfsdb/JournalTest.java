@@ -377,6 +377,43 @@ public class JournalTest extends AbstractTest {
         TestUtils.assertEquals(origin, w);
     }
 
+    @Test
+    public void testTxRefreshToOldTx() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        JournalWriter<Quote> w2 = factory.writer(Quote.class, "ctrl");
+        TestUtils.generateQuoteData(w, 1000, Dates.parseDateTime("2014-01-30T00:11:00Z"), 60000);
+        w.commit();
+
+        long txn = w.getTxn();
+        long pin = w.getTxPin();
+        w2.append(w);
+        w2.commit();
+
+        // spill over to next partitions
+        for (int i = 0; i < 3; i++) {
+            TestUtils.generateQuoteData(w, 1000, w.getMaxTimestamp(), 3600000);
+            w.commit();
+        }
+
+        Journal<Quote> r = factory.reader(Quote.class);
+        Assert.assertTrue(r.refresh(txn, pin));
+        Assert.assertEquals(txn, r.getTxn());
+        TestUtils.assertDataEquals(w2, r);
+
+        Assert.assertTrue(r.refresh());
+        TestUtils.assertDataEquals(w, r);
+
+        Assert.assertFalse(r.refresh(txn, pin + 1));
+    }
+
+    @Test(expected = JournalException.class)
+    public void testTxRefreshWriterToOldTx() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 1000, w.getMaxTimestamp());
+        w.commit();
+        w.refresh(w.getTxn(), w.getTxPin());
+    }
+
     @Test
     public void testTxRollbackLag() throws JournalException, NumericException {
         int SIZE = 150000;
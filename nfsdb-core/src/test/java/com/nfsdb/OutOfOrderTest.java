@@ -0,0 +1,251 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb;
+
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.model.Quote;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class OutOfOrderTest extends AbstractTest {
+    private static final String SYMBOLS[] = {"AGK.L", "BP.L", "TLW.L", "ABF.L", "LLOY.L", "BT-A.L", "WTB.L", "RRS.L", "ADM.L", "GKN.L", "HSBA.L"};
+
+    @Test
+    public void testBeforeFirstPartition() throws Exception {
+        JournalWriter<Quote> writer = factory.writer(Quote.class);
+        long t = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+        writer.append(new Quote().setSym("BP.L").setTimestamp(t));
+        writer.commit();
+
+        List<Quote> late = new ArrayList<>();
+        late.add(new Quote().setSym("BP.L").setTimestamp(t - 1000));
+        late.add(new Quote().setSym("BP.L").setTimestamp(Dates.parseDateTime("2013-08-04T10:00:00.000Z")));
+        try {
+            writer.appendOutOfOrder(late);
+            Assert.fail();
+        } catch (JournalException e) {
+            Assert.assertTrue(e.getMessage().contains("There is no partition"));
+        }
+        Assert.assertEquals(1, writer.size());
+    }
+
+    @Test
+    public void testLateRowsAfterLastRowOfPartition() throws Exception {
+        Rnd rnd = new Rnd();
+        long t = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+        long step = 5 * 60 * 1000;
+        // last row of September
+        int last = 7655;
+
+        JournalWriter<Quote> before = factory.writer(Quote.class, "before");
+        JournalWriter<Quote> after = factory.writer(Quote.class, "after");
+        JournalWriter<Quote> writer = factory.writer(Quote.class, "actual");
+        List<Quote> late = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            Quote q = quote(rnd, i, t + i * step);
+            if (i > last - 10 && i <= last) {
+                late.add(q);
+            } else {
+                before.append(q);
+                writer.append(q);
+            }
+            after.append(q);
+        }
+        before.commit();
+        after.commit();
+        writer.commit();
+
+        // staged version of partition shares column files with the one reader has open
+        Journal<Quote> open = factory.reader(Quote.class, "actual");
+        TestUtils.assertEquals(before, open);
+
+        writer.appendOutOfOrder(late);
+        TestUtils.assertEquals(after, writer);
+        TestUtils.assertEquals(before, open);
+
+        Assert.assertTrue(open.refresh());
+        TestUtils.assertEquals(after, open);
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        Rnd rnd = new Rnd();
+        long t = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+        long step = 5 * 60 * 1000;
+        int count = 20000;
+
+        List<Quote> existing = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // all symbols are seen by first rows, so that both journals key them alike
+            existing.add(quote(rnd, i < SYMBOLS.length ? i : rnd.nextPositiveInt(), t + i * step));
+        }
+
+        // late rows spread over all partitions, some of them share timestamps with existing rows,
+        // few rows are newer than journal and are appended
+        List<Quote> incoming = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            long ts = t + SYMBOLS.length * step + (rnd.nextPositiveLong() % ((count - SYMBOLS.length) * step));
+            incoming.add(quote(rnd, rnd.nextPositiveInt(), i % 3 == 0 ? ts - ts % step : ts));
+        }
+        for (int i = 0; i < 100; i++) {
+            incoming.add(quote(rnd, rnd.nextPositiveInt(), t + (count + i) * step));
+        }
+
+        List<Quote> all = new ArrayList<>(existing);
+        all.addAll(incoming);
+        // stable sort keeps existing rows ahead of incoming ones of the same timestamp
+        Collections.sort(all, new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                return Long.compare(o1.getTimestamp(), o2.getTimestamp());
+            }
+        });
+
+        JournalWriter<Quote> expected = factory.writer(Quote.class, "expected");
+        for (int i = 0, n = all.size(); i < n; i++) {
+            expected.append(all.get(i));
+        }
+        expected.commit();
+
+        JournalWriter<Quote> actual = factory.writer(Quote.class, "actual");
+        for (int i = 0; i < count; i++) {
+            actual.append(existing.get(i));
+        }
+        actual.commit();
+
+        actual.appendOutOfOrder(incoming.subList(0, 1500));
+        actual.appendOutOfOrder(incoming.subList(1500, incoming.size()));
+
+        Assert.assertEquals(3, actual.getPartitionCount());
+        TestUtils.assertEquals(expected, actual);
+        TestUtils.assertEquals(expected, factory.reader(Quote.class, "actual"));
+    }
+
+    @Test
+    public void testReaderIsolation() throws Exception {
+        Rnd rnd = new Rnd();
+        long t = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+        long step = 5 * 60 * 1000;
+        int count = 20000;
+
+        JournalWriter<Quote> before = factory.writer(Quote.class, "before");
+        JournalWriter<Quote> after = factory.writer(Quote.class, "after");
+        JournalWriter<Quote> writer = factory.writer(Quote.class, "actual");
+        List<Quote> late = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Quote q = quote(rnd, i, t + i * step);
+            if (i % 10 == 5 && i > SYMBOLS.length && i < 1000) {
+                late.add(q);
+            } else {
+                before.append(q);
+                writer.append(q);
+            }
+            after.append(q);
+        }
+        before.commit();
+        after.commit();
+        writer.commit();
+
+        // one reader has all partitions open, the other opens them after merge
+        Journal<Quote> open = factory.reader(Quote.class, "actual");
+        TestUtils.assertEquals(before, open);
+        Journal<Quote> lazy = factory.reader(Quote.class, "actual");
+
+        writer.appendOutOfOrder(late);
+        TestUtils.assertEquals(after, writer);
+        TestUtils.assertEquals(before, open);
+        TestUtils.assertEquals(before, lazy);
+
+        Assert.assertTrue(open.refresh());
+        Assert.assertTrue(lazy.refresh());
+        TestUtils.assertEquals(after, open);
+        TestUtils.assertEquals(after, lazy);
+    }
+
+    @Test
+    public void testReplicated() throws Exception {
+        JournalWriter<Quote> writer = factory.writer(Quote.class);
+        long t = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+        writer.append(new Quote().setSym("BP.L").setTimestamp(t));
+        writer.commit();
+        writer.setReplicated(true);
+
+        try {
+            writer.appendOutOfOrder(Collections.singletonList(new Quote().setSym("BP.L").setTimestamp(t - 1000)));
+            Assert.fail();
+        } catch (JournalException e) {
+            Assert.assertTrue(e.getMessage().contains("replicated"));
+        }
+        Assert.assertEquals(1, writer.size());
+    }
+
+    @Test
+    public void testRollbackOnReopen() throws Exception {
+        Rnd rnd = new Rnd();
+        long t = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+        long step = 5 * 60 * 1000;
+
+        JournalWriter<Quote> expected = factory.writer(Quote.class, "expected");
+        JournalWriter<Quote> writer = factory.writer(Quote.class, "actual");
+        for (int i = 0; i < 20000; i++) {
+            Quote q = quote(rnd, i, t + i * step);
+            expected.append(q);
+            writer.append(q);
+        }
+        expected.commit();
+        writer.commit();
+
+        // writer dies half way through rewriting copy of partition
+        writer.setCommitOnClose(false);
+        writer.stagePartition(0, 10).truncate(10);
+        writer.close();
+
+        writer = factory.writer(Quote.class, "actual");
+        TestUtils.assertEquals(expected, writer);
+        TestUtils.assertEquals(expected, factory.reader(Quote.class, "actual"));
+        String[] dirs = writer.getLocation().list();
+        Assert.assertNotNull(dirs);
+        for (int i = 0; i < dirs.length; i++) {
+            Assert.assertFalse(dirs[i], dirs[i].startsWith("2013-09."));
+        }
+    }
+
+    private static Quote quote(Rnd rnd, int sym, long timestamp) {
+        return new Quote()
+                .setSym(SYMBOLS[sym % SYMBOLS.length])
+                .setEx(sym % 2 == 0 ? "LXE" : "SK")
+                .setBid(rnd.nextDouble())
+                .setAsk(rnd.nextDouble())
+                .setBidSize(rnd.nextInt())
+                .setAskSize(rnd.nextInt())
+                .setTimestamp(timestamp);
+    }
+}
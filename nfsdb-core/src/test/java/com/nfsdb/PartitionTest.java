@@ -26,11 +26,14 @@ import com.nfsdb.exceptions.NumericException;
 import com.nfsdb.model.Quote;
 import com.nfsdb.storage.BSearchType;
 import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
 import com.nfsdb.utils.Dates;
 import com.nfsdb.utils.Interval;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+
 public class PartitionTest extends AbstractTest {
 
     public <T> Partition<T> getPartitionForTimestamp(Journal<T> journal, long timestamp) throws JournalException {
@@ -103,4 +106,50 @@ public class PartitionTest extends AbstractTest {
         Assert.assertEquals(-1, result);
     }
 
+    @Test
+    public void testSeal() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 100000);
+        Assert.assertEquals(3, w.getPartitionCount());
+
+        String expected = toString(w);
+        File dir = w.getPartition(0, true).getPartitionDir();
+        long size = dirSize(dir);
+
+        w.seal();
+        Assert.assertTrue(w.getPartition(0, true).isSealed());
+        Assert.assertTrue(w.getPartition(1, true).isSealed());
+        Assert.assertFalse(w.getPartition(2, true).isSealed());
+        Assert.assertTrue(dirSize(dir) < size);
+        Assert.assertEquals(expected, toString(w));
+
+        // sealing is idempotent and last partition is still appendable
+        w.seal();
+        TestUtils.generateQuoteData(w, 10, Dates.parseDateTime("2013-11-05T10:00:00.000Z"));
+        w.commit();
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertEquals(100010, r.size());
+            Assert.assertEquals(expected, toString(r).substring(0, expected.length()));
+        }
+    }
+
+    private static long dirSize(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                size += f.length();
+            }
+        }
+        return size;
+    }
+
+    private static String toString(Journal<Quote> journal) {
+        StringBuilder b = new StringBuilder();
+        for (Quote q : journal) {
+            b.append(q).append('\n');
+        }
+        return b.toString();
+    }
 }
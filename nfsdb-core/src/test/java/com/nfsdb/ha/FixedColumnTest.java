@@ -27,10 +27,14 @@ import com.nfsdb.ha.comsumer.FixedColumnDeltaConsumer;
 import com.nfsdb.ha.producer.FixedColumnDeltaProducer;
 import com.nfsdb.storage.FixedColumn;
 import com.nfsdb.storage.MemoryFile;
+import com.nfsdb.storage.codec.DeltaOfDeltaCodec;
+import com.nfsdb.utils.Rnd;
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 public class FixedColumnTest {
 
@@ -61,6 +65,37 @@ public class FixedColumnTest {
         file2.close();
     }
 
+    @Test
+    public void testCompressed() throws Exception {
+        FixedColumn col1 = new FixedColumn(file, 8);
+        FixedColumn col2 = new FixedColumn(file2, 8);
+
+        FixedColumnDeltaProducer producer = new FixedColumnDeltaProducer(col1, new DeltaOfDeltaCodec());
+        ChannelConsumer consumer = new FixedColumnDeltaConsumer(col2, new DeltaOfDeltaCodec());
+
+        int max = 1500000;
+        Rnd rnd = new Rnd();
+
+        // regular values compress, random ones are sent as is
+        for (int i = 0; i < max; i++) {
+            col1.putLong(i < max / 2 ? i * 1000L : rnd.nextLong());
+            col1.commit();
+        }
+
+        producer.configure(col2.size(), col1.size());
+        Assert.assertTrue(producer.hasContent());
+        producer.write(channel);
+        Assert.assertTrue(channel.size() < max * 8);
+        consumer.read(channel);
+        col2.commit();
+
+        Assert.assertEquals(col1.size(), col2.size());
+
+        for (int i = 0; i < max; i++) {
+            Assert.assertEquals(col1.getLong(i), col2.getLong(i));
+        }
+    }
+
     @Test
     public void testConsumerEqualToProducer() throws Exception {
         FixedColumn col1 = new FixedColumn(file, 4);
@@ -242,4 +277,52 @@ public class FixedColumnTest {
         Assert.assertFalse(producer.hasContent());
         Assert.assertEquals(col1.size(), col2.size());
     }
+    @Test
+    public void testTransferToFileChannel() throws Exception {
+        FixedColumn col1 = new FixedColumn(file, 4);
+        FixedColumn col2 = new FixedColumn(file2, 4);
+
+        FixedColumnDeltaProducer producer = new FixedColumnDeltaProducer(col1);
+        ChannelConsumer consumer = new FixedColumnDeltaConsumer(col2);
+
+        int max = 1500000;
+
+        for (int i = 0; i < max; i++) {
+            col1.putInt(max - i);
+            col1.commit();
+        }
+
+        try (FileChannel fc = new RandomAccessFile(new File(temporaryFolder.getRoot(), "wire"), "rw").getChannel()) {
+            // large fragment is transferred from column file
+            producer.configure(col2.size(), col1.size());
+            Assert.assertTrue(producer.hasContent());
+            producer.write(fc);
+
+            for (int i = 0; i < 1000; i++) {
+                col1.putInt(-i);
+                col1.commit();
+            }
+
+            // small fragment goes out together with header
+            producer.configure(max, col1.size());
+            Assert.assertTrue(producer.hasContent());
+            producer.write(fc);
+
+            fc.position(0);
+            consumer.read(fc);
+            col2.commit();
+            consumer.read(fc);
+            col2.commit();
+        }
+
+        Assert.assertEquals(col1.size(), col2.size());
+
+        for (int i = 0; i < max; i++) {
+            Assert.assertEquals(max - i, col2.getInt(i));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(-i, col2.getInt(max + i));
+        }
+    }
 }
@@ -320,6 +320,144 @@ public class IntegrationTest extends AbstractTest {
         TestUtils.assertDataEquals(remote, local);
     }
 
+    @Test
+    public void testSingleJournalSyncCompressed() throws Exception {
+        int size = 100000;
+        JournalWriter<Quote> remote = factory.writer(Quote.class, "remote", 2 * size);
+        server.publish(remote);
+        server.start();
+
+        ClientConfig config = new ClientConfig("localhost");
+        config.setCompression(true);
+        JournalClient client = new JournalClient(config, factory);
+
+        final AtomicInteger counter = new AtomicInteger();
+        client.subscribe(Quote.class, "remote", "local", 2 * size, new TxListener() {
+            @Override
+            public void onCommit() {
+                counter.incrementAndGet();
+            }
+
+            @Override
+            public void onError() {
+
+            }
+        });
+        client.start();
+
+        TestUtils.generateQuoteData(remote, size);
+        TestUtils.assertCounter(counter, 1, 5, TimeUnit.SECONDS);
+
+        // small delta of active partition
+        TestUtils.generateQuoteData(remote, 1000, remote.getMaxTimestamp());
+        remote.commit();
+        TestUtils.assertCounter(counter, 2, 5, TimeUnit.SECONDS);
+
+        client.halt();
+        server.halt();
+        Journal<Quote> local = factory.reader(Quote.class, "local");
+        TestUtils.assertDataEquals(remote, local);
+    }
+
+    @Test
+    public void testSingleJournalSyncInChunks() throws Exception {
+        JournalWriter<Quote> remote = factory.writer(Quote.class, "remote");
+        long t = remote.getMaxTimestamp();
+        for (int i = 0; i < 20; i++) {
+            TestUtils.generateQuoteData(remote, 500, t, TimeUnit.HOURS.toMillis(1));
+            remote.commit();
+            t += TimeUnit.HOURS.toMillis(500);
+        }
+
+        JournalServer server = new JournalServer(new ServerConfig() {{
+            setHeartbeatFrequency(TimeUnit.MILLISECONDS.toMillis(100));
+            setEnableMultiCast(false);
+            setMaxDeltaRows(1000);
+        }}, factory);
+        server.publish(remote);
+        server.start();
+
+        final AtomicInteger counter = new AtomicInteger();
+        client.subscribe(Quote.class, "remote", "local", new TxListener() {
+            @Override
+            public void onCommit() {
+                counter.incrementAndGet();
+            }
+
+            @Override
+            public void onError() {
+
+            }
+        });
+        client.start();
+
+        Journal<Quote> local = factory.reader(Quote.class, "local");
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (local.size() < remote.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            local.refresh();
+        }
+
+        client.halt();
+        server.halt();
+
+        // each delta is at most two transactions of 500 rows
+        Assert.assertTrue(counter.get() >= 10);
+        TestUtils.assertDataEquals(remote, local);
+    }
+
+    @Test
+    public void testSingleJournalSyncStreaming() throws Exception {
+        JournalWriter<Quote> remote = factory.writer(Quote.class, "remote");
+        server.publish(remote);
+        server.start();
+
+        ClientConfig config = new ClientConfig("localhost");
+        config.setStreaming(true);
+        JournalClient client = new JournalClient(config, factory);
+
+        final AtomicInteger counter = new AtomicInteger();
+        client.subscribe(Quote.class, "remote", "local", new TxListener() {
+            @Override
+            public void onCommit() {
+                counter.incrementAndGet();
+            }
+
+            @Override
+            public void onError() {
+
+            }
+        });
+        client.start();
+
+        long t = remote.getMaxTimestamp();
+        for (int i = 0; i < 10; i++) {
+            TestUtils.generateQuoteData(remote, 100, t);
+            remote.commit();
+            t = remote.getMaxTimestamp();
+            TestUtils.assertCounter(counter, i + 1, 5, TimeUnit.SECONDS);
+        }
+        Assert.assertTrue(client.getLatency() >= 0);
+
+        // commits made in quick succession
+        for (int i = 0; i < 10; i++) {
+            TestUtils.generateQuoteData(remote, 100, t);
+            remote.commit();
+            t = remote.getMaxTimestamp();
+        }
+
+        Journal<Quote> local = factory.reader(Quote.class, "local");
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (local.size() < remote.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            local.refresh();
+        }
+
+        client.halt();
+        server.halt();
+        TestUtils.assertDataEquals(remote, local);
+    }
+
     @Test
     public void testTwoClientSync() throws Exception {
         int size = 10000;
@@ -401,6 +539,61 @@ public class IntegrationTest extends AbstractTest {
         server.halt();
     }
 
+    @Test
+    public void testTwoJournalsSnapshot() throws Exception {
+        int size = 1000;
+        JournalWriter<Quote> remote1 = factory.writer(Quote.class, "remote1");
+        JournalWriter<Quote> remote2 = factory.writer(Quote.class, "remote2");
+        server.publish(remote1);
+        server.publish(remote2);
+        server.start();
+
+        client.subscribe(Quote.class, "remote1", "local1");
+        client.subscribe(Quote.class, "remote2", "local2");
+        client.start();
+
+        TestUtils.generateQuoteData(remote1, size);
+        TestUtils.generateQuoteData(remote2, size);
+
+        Journal<Quote> local1 = factory.reader(Quote.class, "local1");
+        Journal<Quote> local2 = factory.reader(Quote.class, "local2");
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        ReplicaSnapshot snapshot;
+        while (true) {
+            snapshot = client.getSnapshot();
+            if (snapshot != null && snapshot.getTxn(0) == remote1.getTxn() && snapshot.getTxn(1) == remote2.getTxn()) {
+                break;
+            }
+            Assert.assertTrue("Timed out waiting for snapshot", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        TestUtils.generateQuoteData(remote1, size, remote1.getMaxTimestamp());
+        remote1.commit();
+        TestUtils.generateQuoteData(remote2, size, remote2.getMaxTimestamp());
+        remote2.commit();
+
+        while (local1.size() < 2 * size || local2.size() < 2 * size) {
+            Assert.assertTrue("Timed out waiting for data", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+            local1.refresh();
+            local2.refresh();
+        }
+
+        snapshot.apply(local1, local2);
+        Assert.assertEquals(size, local1.size());
+        Assert.assertEquals(size, local2.size());
+
+        client.halt();
+        server.halt();
+
+        local1.refresh();
+        local2.refresh();
+        TestUtils.assertDataEquals(remote1, local1);
+        TestUtils.assertDataEquals(remote2, local2);
+    }
+
     @Test
     public void testTwoJournalsSync() throws Exception {
         int size = 10000;
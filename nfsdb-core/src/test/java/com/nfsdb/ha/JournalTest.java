@@ -21,6 +21,7 @@
 
 package com.nfsdb.ha;
 
+import com.nfsdb.exceptions.IncompatibleJournalException;
 import com.nfsdb.model.Quote;
 import com.nfsdb.test.tools.TestUtils;
 import com.nfsdb.utils.Dates;
@@ -28,6 +29,8 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Collections;
+
 public class JournalTest extends AbstractJournalTest {
 
     @Before
@@ -37,6 +40,26 @@ public class JournalTest extends AbstractJournalTest {
         TestUtils.generateQuoteData(origin, 1000);
     }
 
+    @Test
+    public void testConsumerBehindMerge() throws Exception {
+        master.append(origin.query().all().asResultSet().subset(0, 500));
+        master.commit(false, 101L, 10);
+        slave.append(origin.query().all().asResultSet().subset(0, 500));
+        slave.commit(false, 101L, 10);
+
+        // late row goes ahead of rows slave already has
+        Quote late = origin.query().all().asResultSet().readFirst();
+        late.setTimestamp(late.getTimestamp() - 1000);
+        master.appendOutOfOrder(Collections.singletonList(late));
+
+        try {
+            executeSequence(true);
+            Assert.fail();
+        } catch (IncompatibleJournalException ignore) {
+        }
+        Assert.assertEquals(500, slave.size());
+    }
+
     @Test
     public void testConsumerEqualToProducer() throws Exception {
         master.append(origin);
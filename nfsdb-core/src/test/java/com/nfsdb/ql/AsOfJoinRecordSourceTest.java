@@ -0,0 +1,149 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.nfsdb.ql;
+
+import com.nfsdb.JournalWriter;
+import com.nfsdb.collections.LongList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.ParserException;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.model.Quote;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Chars;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Numbers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsOfJoinRecordSourceTest extends AbstractTest {
+
+    private final LongList timestamps = new LongList();
+    private final ObjList<String> symbols = new ObjList<>();
+    private final LongList asks = new LongList();
+
+    @Before
+    public void setUp() throws Exception {
+        // both journals span two monthly partitions, first few trades precede all quotes
+        JournalWriter<Quote> trades = factory.writer(Quote.class, "trades");
+        TestUtils.generateQuoteData(trades, 5000, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), 11 * Dates.MINUTE_MILLIS);
+        trades.commit();
+
+        JournalWriter<Quote> quotes = factory.writer(Quote.class, "quotes");
+        TestUtils.generateQuoteData(quotes, 20000, Dates.parseDateTime("2015-01-01T00:30:00.000Z"), 3 * Dates.MINUTE_MILLIS);
+        quotes.commit();
+
+        RecordSource<? extends Record> src = compiler.compileSource("quotes");
+        RecordMetadata m = src.getMetadata();
+        int ts = m.getColumnIndex("timestamp");
+        int sym = m.getColumnIndex("sym");
+        int ask = m.getColumnIndex("ask");
+        for (Record r : src.prepareCursor(factory)) {
+            timestamps.add(r.getDate(ts));
+            symbols.add(r.getSym(sym));
+            asks.add(Double.doubleToLongBits(r.getDouble(ask)));
+        }
+    }
+
+    @Test
+    public void testAsOfJoin() throws Exception {
+        assertAsOf("trades asof join quotes", false);
+    }
+
+    @Test
+    public void testAsOfJoinByKey() throws Exception {
+        assertAsOf("trades t asof join quotes q on t.sym = q.sym", true);
+    }
+
+    @Test
+    public void testAsOfJoinMasterOrder() throws Exception {
+        // clause names slave first, join order must still be that of query
+        assertAsOf("trades t asof join quotes q on q.sym = t.sym", true);
+    }
+
+    @Test
+    public void testAsOfJoinNoTimestamp() throws Exception {
+        try {
+            compiler.compileSource("trades asof join (select sym, ask from quotes) q");
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertTrue(e.getMessage().contains("timestamp"));
+        }
+    }
+
+    private void assertAsOf(String query, boolean byKey) throws Exception {
+        RecordSource<? extends Record> src = compiler.compileSource(query);
+        Assert.assertTrue(src.toString().contains("AsOfJoinRecordSource"));
+
+        RecordMetadata m = src.getMetadata();
+        int split = m.getColumnCount() / 2;
+        // column names are the same on both sides
+        int masterTs = 0;
+        int masterSym = 0;
+        int slaveAsk = 0;
+        for (int i = 0; i < split; i++) {
+            CharSequence name = m.getColumnQuick(i).getName();
+            if (Chars.equals(name, "timestamp")) {
+                masterTs = i;
+            } else if (Chars.equals(name, "sym")) {
+                masterSym = i;
+            } else if (Chars.equals(name, "ask")) {
+                slaveAsk = split + i;
+            }
+        }
+
+        int slaveTs = split + masterTs;
+        int count = 0;
+        int nulls = 0;
+        int slave = -1;
+        for (Record r : src.prepareCursor(factory)) {
+            long ts = r.getDate(masterTs);
+            Assert.assertTrue(ts > 0);
+
+            // last slave row that is not after master
+            while (slave + 1 < timestamps.size() && timestamps.getQuick(slave + 1) <= ts) {
+                slave++;
+            }
+
+            int expected = slave;
+            if (byKey) {
+                CharSequence sym = r.getSym(masterSym);
+                while (expected > -1 && !Chars.equals(symbols.getQuick(expected), sym)) {
+                    expected--;
+                }
+            }
+
+            if (expected == -1) {
+                Assert.assertEquals(Numbers.LONG_NaN, r.getDate(slaveTs));
+                nulls++;
+            } else {
+                Assert.assertEquals(timestamps.getQuick(expected), r.getDate(slaveTs));
+                Assert.assertEquals(asks.getQuick(expected), Double.doubleToLongBits(r.getDouble(slaveAsk)));
+            }
+            count++;
+        }
+        Assert.assertEquals(5000, count);
+        Assert.assertTrue(nulls > 0);
+    }
+}
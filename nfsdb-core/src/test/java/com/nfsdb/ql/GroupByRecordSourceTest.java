@@ -0,0 +1,140 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package com.nfsdb.ql;
+
+import com.nfsdb.Journal;
+import com.nfsdb.JournalWriter;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.factory.configuration.RecordMetadata;
+import com.nfsdb.model.Quote;
+import com.nfsdb.ql.impl.AllRowSource;
+import com.nfsdb.ql.impl.GroupByRecordSource;
+import com.nfsdb.ql.impl.JournalPartitionSource;
+import com.nfsdb.ql.impl.JournalSource;
+import com.nfsdb.ql.ops.CountLongAggregatorFunction;
+import com.nfsdb.ql.ops.SumDoubleAggregationFunction;
+import com.nfsdb.ql.ops.SumIntToLongAggregationFunction;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class GroupByRecordSourceTest extends AbstractTest {
+
+    @Test
+    public void testFixedAndGenericKeysAgree() throws Exception {
+        final Journal r = createQuotes();
+        Map<String, long[]> expected = totals(r, "timestamp");
+
+        // timestamps are distinct, map has to grow
+        ObjList<CharSequence> keys = new ObjList<>();
+        keys.add("timestamp");
+        assertTotals(expected, "timestamp", groupBy(r, keys));
+
+        keys.add("ex");
+        assertTotals(expected, "timestamp", groupBy(r, keys));
+    }
+
+    @Test
+    public void testSymbolAndGenericKeysAgree() throws Exception {
+        final Journal r = createQuotes();
+        Map<String, long[]> expected = totals(r, "sym");
+
+        ObjList<CharSequence> keys = new ObjList<>();
+        keys.add("sym");
+        // single symbol key is looked up by symbol value
+        assertTotals(expected, "sym", groupBy(r, keys));
+
+        // exchange is the same for all quotes, so groups are the same, but keys are hashed
+        keys.add("ex");
+        assertTotals(expected, "sym", groupBy(r, keys));
+    }
+
+    private static String key(Record rec, int index, RecordMetadata m) {
+        return m.getColumnQuick(index).getType() == ColumnType.SYMBOL ? rec.getSym(index) : Long.toString(rec.getDate(index));
+    }
+
+    private void assertTotals(Map<String, long[]> expected, String keyColumn, GroupByRecordSource rs) throws Exception {
+        try {
+            RecordCursor<Record> cursor = rs.prepareCursor(factory);
+            RecordMetadata m = rs.getMetadata();
+            int keyIndex = m.getColumnIndex(keyColumn);
+            int countIndex = m.getColumnIndex("count");
+            int sumIndex = m.getColumnIndex("sum");
+            for (int pass = 0; pass < 2; pass++) {
+                int groups = 0;
+                for (Record rec : cursor) {
+                    long[] totals = expected.get(key(rec, keyIndex, m));
+                    Assert.assertNotNull(totals);
+                    Assert.assertEquals(totals[0], rec.getLong(countIndex));
+                    Assert.assertEquals(totals[1], rec.getLong(sumIndex));
+                    groups++;
+                }
+                Assert.assertEquals(expected.size(), groups);
+                rs.reset();
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
+    private Journal createQuotes() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 10000, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), 1000);
+        w.commit();
+        return factory.reader(Quote.class.getName());
+    }
+
+    private GroupByRecordSource groupBy(Journal r, ObjList<CharSequence> keys) {
+        ObjList<AggregatorFunction> aggregators = new ObjList<>();
+        aggregators.add(new CountLongAggregatorFunction("count"));
+        SumIntToLongAggregationFunction sum = new SumIntToLongAggregationFunction(r.getMetadata().getColumn("askSize"));
+        sum.setName("sum");
+        aggregators.add(sum);
+        aggregators.add(new SumDoubleAggregationFunction(r.getMetadata().getColumn("bid")));
+        return new GroupByRecordSource(new JournalSource(new JournalPartitionSource(r.getMetadata(), false), new AllRowSource()), keys, aggregators);
+    }
+
+    private Map<String, long[]> totals(Journal r, String keyColumn) throws Exception {
+        Map<String, long[]> totals = new HashMap<>();
+        RecordCursor<? extends Record> c = new JournalSource(new JournalPartitionSource(r.getMetadata(), false), new AllRowSource()).prepareCursor(factory);
+        RecordMetadata m = c.getMetadata();
+        int keyIndex = m.getColumnIndex(keyColumn);
+        int askSizeIndex = m.getColumnIndex("askSize");
+        for (Record rec : c) {
+            String key = key(rec, keyIndex, m);
+            long[] t = totals.get(key);
+            if (t == null) {
+                totals.put(key, t = new long[2]);
+            }
+            t[0]++;
+            t[1] += rec.getInt(askSizeIndex);
+        }
+        return totals;
+    }
+}
@@ -22,6 +22,7 @@
 package com.nfsdb.ql;
 
 import com.nfsdb.JournalWriter;
+import com.nfsdb.PartitionType;
 import com.nfsdb.collections.CharSequenceObjHashMap;
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.exceptions.JournalConfigurationException;
@@ -33,11 +34,15 @@ import com.nfsdb.model.Album;
 import com.nfsdb.model.Band;
 import com.nfsdb.model.Quote;
 import com.nfsdb.ql.impl.*;
+import com.nfsdb.ql.ops.CountLongAggregatorFunction;
 import com.nfsdb.test.tools.JournalTestFactory;
 import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
 import com.nfsdb.utils.Files;
 import org.junit.*;
 
+import java.util.Arrays;
+
 public class HashJoinRecordSourceTest {
     private final static CharSequenceObjHashMap<String> EMPTY = new CharSequenceObjHashMap<>();
     @Rule
@@ -51,6 +56,7 @@ public class HashJoinRecordSourceTest {
                     new JournalConfigurationBuilder() {{
                         $(Band.class).$ts();
                         $(Album.class).$ts("releaseDate");
+                        $(Quote.class).partitionBy(PartitionType.MONTH).$sym("sym").$sym("ex").$sym("mode").$ts();
 
                     }}.build(Files.makeTempDir())
             );
@@ -65,6 +71,30 @@ public class HashJoinRecordSourceTest {
         aw = factory.writer(Album.class);
     }
 
+    @Test
+    public void testHashJoinFixedKey() throws Exception {
+        JournalWriter<Quote> w1 = factory.writer(Quote.class, "q1");
+        TestUtils.generateQuoteData(w1, 100, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), Dates.HOUR_MILLIS * 24);
+        w1.commit();
+
+        // first 100 quotes are the same as those of q1, others do not match
+        JournalWriter<Quote> w2 = factory.writer(Quote.class, "q2");
+        TestUtils.generateQuoteData(w2, 3000, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), Dates.HOUR_MILLIS);
+        w2.commit();
+
+        StringSink sink = new StringSink();
+        RecordSourcePrinter p = new RecordSourcePrinter(sink);
+        // two key columns take serialised key path
+        p.printCursor(groupedQuoteJoin(w1, w2, "askSize", "askSize").prepareCursor(factory));
+        String expected = sink.toString();
+        Assert.assertEquals(100, expected.split("\n").length);
+
+        // grouped slave does not support row id access, int key is kept in fixed key map
+        sink.clear();
+        p.printCursor(groupedQuoteJoin(w1, w2, "askSize").prepareCursor(factory));
+        TestUtils.assertEquals(expected, sink);
+    }
+
     @Test
     public void testHashJoinJournalRecordSource() throws Exception {
         bw.append(new Band().setName("band1").setType("rock").setUrl("http://band1.com"));
@@ -187,6 +217,50 @@ public class HashJoinRecordSourceTest {
                 "rock\n", sink.toString());
     }
 
+    @Test
+    public void testHashJoinSpill() throws Exception {
+        JournalWriter<Quote> w1 = factory.writer(Quote.class, "q1");
+        TestUtils.generateQuoteData(w1, 100, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), Dates.HOUR_MILLIS * 24);
+        w1.commit();
+
+        JournalWriter<Quote> w2 = factory.writer(Quote.class, "q2");
+        TestUtils.generateQuoteData(w2, 3000, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), Dates.HOUR_MILLIS);
+        w2.commit();
+
+        StringSink sink = new StringSink();
+        RecordSourcePrinter p = new RecordSourcePrinter(sink);
+        p.printCursor(quoteJoin(w1, w2, Long.MAX_VALUE, "sym").prepareCursor(factory));
+        String expected = sink.toString();
+
+        // no memory to speak of, every row goes to disk
+        sink.clear();
+        p.printCursor(quoteJoin(w1, w2, 0, "sym").prepareCursor(factory));
+        Assert.assertEquals(sortLines(expected), sortLines(sink.toString()));
+    }
+
+    @Test
+    public void testHashJoinSymbolKey() throws Exception {
+        JournalWriter<Quote> w1 = factory.writer(Quote.class, "q1");
+        TestUtils.generateQuoteData(w1, 100, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), Dates.HOUR_MILLIS * 24);
+        w1.commit();
+
+        // different symbol order and multiple partitions
+        JournalWriter<Quote> w2 = factory.writer(Quote.class, "q2");
+        TestUtils.generateQuoteData(w2, 3000, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), Dates.HOUR_MILLIS);
+        w2.commit();
+
+        StringSink sink = new StringSink();
+        RecordSourcePrinter p = new RecordSourcePrinter(sink);
+        // two key columns take serialised key path
+        p.printCursor(quoteJoin(w1, w2, Long.MAX_VALUE, "sym", "sym").prepareCursor(factory));
+        String expected = sink.toString();
+        Assert.assertTrue(expected.length() > 0);
+
+        sink.clear();
+        p.printCursor(quoteJoin(w1, w2, Long.MAX_VALUE, "sym").prepareCursor(factory));
+        TestUtils.assertEquals(expected, sink);
+    }
+
     @Test
     public void testOuterHashJoin() throws Exception {
         bw.append(new Band().setName("band1").setType("rock").setUrl("http://band1.com"));
@@ -232,4 +306,50 @@ public class HashJoinRecordSourceTest {
                 "rock\thttp://new.band1.com\n" +
                 "\thttp://new.band5.com\n", sink.toString());
     }
+
+    private static String sortLines(String s) {
+        String[] lines = s.split("\n");
+        Arrays.sort(lines);
+        return Arrays.toString(lines);
+    }
+
+    private RecordSource<Record> groupedQuoteJoin(JournalWriter<Quote> w1, JournalWriter<Quote> w2, final String... columns) {
+        ObjList<CharSequence> keys = new ObjList<>();
+        for (String c : columns) {
+            keys.add(c);
+        }
+        ObjList<AggregatorFunction> aggregators = new ObjList<>();
+        aggregators.add(new CountLongAggregatorFunction("count"));
+        return new SelectedColumnsRecordSource(
+                new HashJoinRecordSource(
+                        new JournalSource(new JournalPartitionSource(w1.getMetadata(), false), new AllRowSource()),
+                        keys,
+                        new GroupByRecordSource(new JournalSource(new JournalPartitionSource(w2.getMetadata(), false), new AllRowSource()), keys, aggregators),
+                        keys,
+                        false
+                ),
+                new ObjList<CharSequence>() {{
+                    add("timestamp");
+                    add("sym");
+                    add("count");
+                }},
+                EMPTY
+        );
+    }
+
+    private RecordSource<Record> quoteJoin(JournalWriter<Quote> w1, JournalWriter<Quote> w2, long memoryBudget, final String... columns) {
+        ObjList<CharSequence> keys = new ObjList<>();
+        for (String c : columns) {
+            keys.add(c);
+        }
+        return new HashJoinRecordSource(
+                new JournalSource(new JournalPartitionSource(w1.getMetadata(), false), new AllRowSource()),
+                keys,
+                new JournalSource(new JournalPartitionSource(w2.getMetadata(), false), new AllRowSource()),
+                keys,
+                true,
+                memoryBudget,
+                null
+        );
+    }
 }
@@ -28,21 +28,126 @@ import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.io.RecordSourcePrinter;
 import com.nfsdb.io.sink.StringSink;
 import com.nfsdb.model.Quote;
-import com.nfsdb.ql.impl.AllRowSource;
-import com.nfsdb.ql.impl.JournalPartitionSource;
-import com.nfsdb.ql.impl.JournalSource;
-import com.nfsdb.ql.impl.ResampledSource;
-import com.nfsdb.ql.ops.CountIntAggregatorFunction;
-import com.nfsdb.ql.ops.FirstDoubleAggregationFunction;
-import com.nfsdb.ql.ops.LastDoubleAggregationFunction;
+import com.nfsdb.ql.impl.*;
+import com.nfsdb.ql.ops.*;
 import com.nfsdb.test.tools.AbstractTest;
 import com.nfsdb.test.tools.TestUtils;
 import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.NamedDaemonThreadFactory;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class ResampledSourceTest extends AbstractTest {
 
+    @Test
+    public void testParallelResample() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 100000, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), 5 * Dates.MINUTE_MILLIS);
+        w.commit();
+
+        final Journal r = factory.reader(Quote.class.getName());
+        StringSink sink = new StringSink();
+        RecordSourcePrinter out = new RecordSourcePrinter(sink);
+
+        out.printCursor(resample(r, new JournalSource(new JournalPartitionSource(r.getMetadata(), false), new AllRowSource()), ResampledSource.SampleBy.DAY).prepareCursor(factory));
+        String expected = sink.toString();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4, new NamedDaemonThreadFactory("test-resample", true));
+        try {
+            ObjList<RowSource> rowSources = new ObjList<>();
+            for (int i = 0; i < 4; i++) {
+                rowSources.add(new AllRowSource());
+            }
+
+            // whole partitions, sample boundaries always coincide with slice boundaries
+            ResampledSource resampledSource = resample(r, new ParallelJournalSource(new JournalPartitionSource(r.getMetadata(), false), rowSources, executor, Long.MAX_VALUE), ResampledSource.SampleBy.DAY);
+            sink.clear();
+            out.printCursor(resampledSource.prepareCursor(factory));
+            TestUtils.assertEquals(expected, sink);
+
+            // slices split days, partials of the same day have to be combined
+            resampledSource = resample(r, new ParallelJournalSource(new JournalPartitionSource(r.getMetadata(), false), rowSources, executor, 1000), ResampledSource.SampleBy.DAY);
+            sink.clear();
+            out.printCursor(resampledSource.prepareCursor(factory));
+            TestUtils.assertEquals(expected, sink);
+
+            resampledSource.reset();
+            sink.clear();
+            out.printCursor(resampledSource);
+            TestUtils.assertEquals(expected, sink);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelResampleBySecond() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 20000, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), 250);
+        w.commit();
+
+        final Journal r = factory.reader(Quote.class.getName());
+        StringSink sink = new StringSink();
+        RecordSourcePrinter out = new RecordSourcePrinter(sink);
+
+        out.printCursor(resample(r, new JournalSource(new JournalPartitionSource(r.getMetadata(), false), new AllRowSource()), ResampledSource.SampleBy.SECOND).prepareCursor(factory));
+        String expected = sink.toString();
+        Assert.assertTrue(expected.contains("2015-01-01T01:23:19.000Z"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4, new NamedDaemonThreadFactory("test-resample", true));
+        try {
+            ObjList<RowSource> rowSources = new ObjList<>();
+            for (int i = 0; i < 4; i++) {
+                rowSources.add(new AllRowSource());
+            }
+
+            // almost every slice boundary splits a second
+            ResampledSource resampledSource = resample(r, new ParallelJournalSource(new JournalPartitionSource(r.getMetadata(), false), rowSources, executor, 333), ResampledSource.SampleBy.SECOND);
+            sink.clear();
+            out.printCursor(resampledSource.prepareCursor(factory));
+            TestUtils.assertEquals(expected, sink);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testResampleStringKey() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 20000, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), 250);
+        w.commit();
+
+        final Journal r = factory.reader(Quote.class.getName());
+        StringSink sink = new StringSink();
+        RecordSourcePrinter out = new RecordSourcePrinter(sink);
+
+        // sample and symbol keys are kept in fixed key map
+        out.printCursor(resample(r, new JournalSource(new JournalPartitionSource(r.getMetadata(), false), new AllRowSource()), ResampledSource.SampleBy.SECOND).prepareCursor(factory));
+        // exchange is the same for all quotes, string key only adds column to output
+        String expected = sink.toString().replace("\n", "\tLXE\n");
+
+        sink.clear();
+        out.printCursor(resample(r, new JournalSource(new JournalPartitionSource(r.getMetadata(), false), new AllRowSource()), ResampledSource.SampleBy.SECOND, "sym", "ex").prepareCursor(factory));
+        TestUtils.assertEquals(expected, sink);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4, new NamedDaemonThreadFactory("test-resample", true));
+        try {
+            ObjList<RowSource> rowSources = new ObjList<>();
+            for (int i = 0; i < 4; i++) {
+                rowSources.add(new AllRowSource());
+            }
+
+            sink.clear();
+            out.printCursor(resample(r, new ParallelJournalSource(new JournalPartitionSource(r.getMetadata(), false), rowSources, executor, 333), ResampledSource.SampleBy.SECOND, "sym", "ex").prepareCursor(factory));
+            TestUtils.assertEquals(expected, sink);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testResampleWithCount() throws Exception {
 
@@ -250,4 +355,31 @@ public class ResampledSourceTest extends AbstractTest {
             out.printCursor(resampledSource.prepareCursor(factory));
         Assert.assertEquals(expected, sink.toString());
     }
-}
\ No newline at end of file
+
+    private ResampledSource resample(final Journal r, RecordSource<? extends Record> source, ResampledSource.SampleBy sampleBy) {
+        return resample(r, source, sampleBy, "sym");
+    }
+
+    private ResampledSource resample(final Journal r, RecordSource<? extends Record> source, ResampledSource.SampleBy sampleBy, final String... keys) {
+        // select count(), first(ask), last(ask), sum(askSize), sym, ts sample by sym
+        // double sums are avoided because combining partials changes order of additions
+        return new ResampledSource(
+                source
+                ,
+                new ObjList<ColumnMetadata>() {{
+                    for (String key : keys) {
+                        add(r.getMetadata().getColumn(key));
+                    }
+                }}
+                ,
+                new ObjList<AggregatorFunction>() {{
+                    add(new CountIntAggregatorFunction("count"));
+                    add(new FirstDoubleAggregationFunction(r.getMetadata().getColumn("ask")));
+                    add(new LastDoubleAggregationFunction(r.getMetadata().getColumn("ask")));
+                    add(new SumIntToLongAggregationFunction(r.getMetadata().getColumn("askSize")));
+                }}
+                , r.getMetadata().getTimestampMetadata()
+                , sampleBy
+        );
+    }
+}
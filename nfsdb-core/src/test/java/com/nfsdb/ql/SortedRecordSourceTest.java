@@ -0,0 +1,209 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql;
+
+import com.nfsdb.JournalWriter;
+import com.nfsdb.PartitionType;
+import com.nfsdb.exceptions.JournalConfigurationException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.model.Quote;
+import com.nfsdb.ql.impl.AllRowSource;
+import com.nfsdb.ql.impl.JournalPartitionSource;
+import com.nfsdb.ql.impl.JournalSource;
+import com.nfsdb.ql.impl.SortedRecordSource;
+import com.nfsdb.test.tools.JournalTestFactory;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Files;
+import com.nfsdb.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class SortedRecordSourceTest {
+    @Rule
+    public final JournalTestFactory factory;
+    private JournalWriter<Quote> w;
+    private List<Quote> quotes;
+
+    public SortedRecordSourceTest() {
+        try {
+            this.factory = new JournalTestFactory(
+                    new JournalConfigurationBuilder() {{
+                        $(Quote.class).partitionBy(PartitionType.MONTH).$sym("sym").$sym("ex").$sym("mode").$ts();
+                    }}.build(Files.makeTempDir())
+            );
+        } catch (JournalConfigurationException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        w = factory.writer(Quote.class);
+        quotes = new ArrayList<>();
+        String symbols[] = {"AGK.L", "BP.L", "TLW.L", "ABF.L", "LLOY.L", "BT-A.L", "WTB.L", "RRS.L", "ADM.L", "GKN.L", "HSBA.L"};
+        Rnd r = new Rnd();
+        long timestamp = Dates.parseDateTime("2015-01-01T00:00:00.000Z");
+        for (int i = 0; i < 1000; i++) {
+            Quote q = new Quote()
+                    .setSym(symbols[Math.abs(r.nextInt() % symbols.length)])
+                    .setBid(r.nextDouble())
+                    .setAsk(r.nextInt() % 10)
+                    .setBidSize(r.nextInt())
+                    .setAskSize(r.nextInt() % 5)
+                    .setEx(i % 7 == 0 ? null : r.nextString(2))
+                    .setMode("Fast trading")
+                    .setTimestamp(timestamp += Dates.HOUR_MILLIS);
+            w.append(q);
+            quotes.add(q);
+        }
+        w.commit();
+    }
+
+    @Test
+    public void testAscendingDouble() throws Exception {
+        assertOrder(new SortedRecordSource(source()).orderBy("bid", false), new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                return Double.compare(o1.getBid(), o2.getBid());
+            }
+        }, true);
+    }
+
+    @Test
+    public void testBudgetExceeded() throws Exception {
+        // string key cannot spill, 1000 records do not fit 16K
+        SortedRecordSource rs = new SortedRecordSource(source(), 16 * 1024, null).orderBy("ex", true);
+        try {
+            rs.prepareCursor(factory).hasNext();
+            Assert.fail();
+        } catch (JournalRuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("exceed memory budget"));
+        } finally {
+            rs.close();
+        }
+    }
+
+    @Test
+    public void testDescendingInt() throws Exception {
+        assertOrder(new SortedRecordSource(source()).orderBy("bidSize", true), new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                return Integer.compare(o2.getBidSize(), o1.getBidSize());
+            }
+        }, true);
+    }
+
+    @Test
+    public void testMultipleColumns() throws Exception {
+        assertOrder(new SortedRecordSource(source()).orderBy("askSize", false).orderBy("ask", true), new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                int c = Integer.compare(o1.getAskSize(), o2.getAskSize());
+                return c != 0 ? c : Double.compare(o2.getAsk(), o1.getAsk());
+            }
+        }, true);
+    }
+
+    @Test(expected = JournalRuntimeException.class)
+    public void testNonExistingColumn() throws Exception {
+        new SortedRecordSource(source()).orderBy("xyz", false);
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        SortedRecordSource rs = new SortedRecordSource(source()).orderBy("sym", false);
+        Comparator<Quote> c = new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                return o1.getSym().compareTo(o2.getSym());
+            }
+        };
+        assertOrder(rs, c, true);
+        rs.reset();
+        assertOrder(rs, c, true);
+        rs.close();
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        File dir = Files.makeTempDir();
+        try {
+            // budget for 64 pairs forces 16 runs
+            SortedRecordSource rs = new SortedRecordSource(source(), 64 * 32, dir).orderBy("bidSize", false);
+            assertOrder(rs, new Comparator<Quote>() {
+                @Override
+                public int compare(Quote o1, Quote o2) {
+                    return Integer.compare(o1.getBidSize(), o2.getBidSize());
+                }
+            }, false);
+            rs.close();
+            String[] files = dir.list();
+            Assert.assertNotNull(files);
+            Assert.assertEquals(0, files.length);
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testString() throws Exception {
+        assertOrder(new SortedRecordSource(source()).orderBy("ex", true), new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                if (o1.getEx() == null) {
+                    return o2.getEx() == null ? 0 : 1;
+                }
+                return o2.getEx() == null ? -1 : o2.getEx().compareTo(o1.getEx());
+            }
+        }, true);
+    }
+
+    private void assertOrder(SortedRecordSource rs, Comparator<Quote> comparator, boolean stable) throws Exception {
+        List<Quote> expected = new ArrayList<>(quotes);
+        Collections.sort(expected, comparator);
+
+        int tsIndex = rs.getMetadata().getColumnIndex("timestamp");
+        int i = 0;
+        for (Record r : rs.prepareCursor(factory)) {
+            Quote q = expected.get(i++);
+            if (stable) {
+                Assert.assertEquals(q.getTimestamp(), r.getDate(tsIndex));
+            } else {
+                Assert.assertEquals(q.getBidSize(), r.getInt(rs.getMetadata().getColumnIndex("bidSize")));
+            }
+        }
+        Assert.assertEquals(expected.size(), i);
+    }
+
+    private JournalSource source() {
+        return new JournalSource(new JournalPartitionSource(w.getMetadata(), false), new AllRowSource());
+    }
+}
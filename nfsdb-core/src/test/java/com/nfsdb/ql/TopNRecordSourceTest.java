@@ -0,0 +1,192 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.ql;
+
+import com.nfsdb.JournalWriter;
+import com.nfsdb.PartitionType;
+import com.nfsdb.exceptions.JournalConfigurationException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.model.Quote;
+import com.nfsdb.ql.impl.*;
+import com.nfsdb.ql.ops.LongConstant;
+import com.nfsdb.test.tools.JournalTestFactory;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Files;
+import com.nfsdb.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class TopNRecordSourceTest {
+    private static final Comparator<Quote> BY_TIMESTAMP_DESC = new Comparator<Quote>() {
+        @Override
+        public int compare(Quote o1, Quote o2) {
+            return Long.compare(o2.getTimestamp(), o1.getTimestamp());
+        }
+    };
+    @Rule
+    public final JournalTestFactory factory;
+    private JournalWriter<Quote> w;
+    private List<Quote> quotes;
+
+    public TopNRecordSourceTest() {
+        try {
+            this.factory = new JournalTestFactory(
+                    new JournalConfigurationBuilder() {{
+                        $(Quote.class).partitionBy(PartitionType.MONTH).$sym("sym").$sym("ex").$sym("mode").$ts();
+                    }}.build(Files.makeTempDir())
+            );
+        } catch (JournalConfigurationException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        w = factory.writer(Quote.class);
+        quotes = new ArrayList<>();
+        String symbols[] = {"AGK.L", "BP.L", "TLW.L", "ABF.L", "LLOY.L", "BT-A.L", "WTB.L", "RRS.L", "ADM.L", "GKN.L", "HSBA.L"};
+        Rnd r = new Rnd();
+        long timestamp = Dates.parseDateTime("2015-01-01T00:00:00.000Z");
+        for (int i = 0; i < 1000; i++) {
+            Quote q = new Quote()
+                    .setSym(symbols[Math.abs(r.nextInt() % symbols.length)])
+                    .setBid(r.nextInt() * 0.001)
+                    .setAsk(r.nextInt() * 0.001)
+                    .setBidSize(r.nextInt())
+                    .setAskSize(1000 - i)
+                    .setEx(r.nextString(4))
+                    .setMode("Fast trading")
+                    .setTimestamp(timestamp += Dates.HOUR_MILLIS);
+            w.append(q);
+            quotes.add(q);
+        }
+        w.commit();
+    }
+
+    @Test
+    public void testHeap() throws Exception {
+        assertTop(new SortedRecordSource(source()).orderBy("bid", true), 10, new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                return Double.compare(o2.getBid(), o1.getBid());
+            }
+        });
+    }
+
+    @Test
+    public void testLimitOverSize() throws Exception {
+        assertTop(new SortedRecordSource(source()).orderBy("askSize", false), 5000, new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                return Integer.compare(o1.getAskSize(), o2.getAskSize());
+            }
+        });
+    }
+
+    @Test
+    public void testRecords() throws Exception {
+        // five records out of thousand make heap reclaim memory many times
+        assertTop(new SortedRecordSource(source()).orderBy("ex", false), 5, new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                return o1.getEx().compareTo(o2.getEx());
+            }
+        });
+    }
+
+    @Test
+    public void testRecordsMultipleColumns() throws Exception {
+        assertTop(new SortedRecordSource(source()).orderBy("sym", true).orderBy("ask", false), 100, new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                int c = o2.getSym().compareTo(o1.getSym());
+                return c != 0 ? c : Double.compare(o1.getAsk(), o2.getAsk());
+            }
+        });
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        TopNRecordSource rs = new TopNRecordSource(new SortedRecordSource(source()).orderBy("timestamp", true), new LongConstant(10));
+        assertTop(rs, 10, BY_TIMESTAMP_DESC);
+        rs.reset();
+        assertTop(rs, 10, BY_TIMESTAMP_DESC);
+        rs.close();
+    }
+
+    @Test
+    public void testRing() throws Exception {
+        assertTop(new SortedRecordSource(source()).orderBy("timestamp", true), 10, BY_TIMESTAMP_DESC);
+    }
+
+    @Test
+    public void testRingOutOfOrder() throws Exception {
+        // ask sizes decrease until these two quotes
+        long timestamp = quotes.get(quotes.size() - 1).getTimestamp();
+        for (int askSize : new int[]{500, -1}) {
+            Quote q = new Quote().setSym("BP.L").setEx("LXE").setTimestamp(++timestamp).setAskSize(askSize);
+            w.append(q);
+            quotes.add(q);
+        }
+        w.commit();
+
+        assertTop(new SortedRecordSource(source()).orderBy("askSize", false), 3, new Comparator<Quote>() {
+            @Override
+            public int compare(Quote o1, Quote o2) {
+                return Integer.compare(o1.getAskSize(), o2.getAskSize());
+            }
+        });
+    }
+
+    private void assertTop(SortedRecordSource sorted, int n, Comparator<Quote> comparator) throws Exception {
+        TopNRecordSource rs = new TopNRecordSource(sorted, new LongConstant(n));
+        try {
+            assertTop(rs, n, comparator);
+        } finally {
+            rs.close();
+        }
+    }
+
+    private void assertTop(TopNRecordSource rs, int n, Comparator<Quote> comparator) throws Exception {
+        List<Quote> expected = new ArrayList<>(quotes);
+        Collections.sort(expected, comparator);
+
+        int tsIndex = rs.getMetadata().getColumnIndex("timestamp");
+        int i = 0;
+        for (Record r : rs.prepareCursor(factory)) {
+            Assert.assertEquals(expected.get(i++).getTimestamp(), r.getDate(tsIndex));
+        }
+        Assert.assertEquals(Math.min(n, expected.size()), i);
+    }
+
+    private JournalSource source() {
+        return new JournalSource(new JournalPartitionSource(w.getMetadata(), false), new AllRowSource());
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.Journal;
+import com.nfsdb.JournalWriter;
+import com.nfsdb.Partition;
+import com.nfsdb.collections.LongList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.collections.ObjectPoolFactory;
+import com.nfsdb.factory.JournalCachingFactory;
+import com.nfsdb.factory.configuration.JournalMetadata;
+import com.nfsdb.io.RecordSourcePrinter;
+import com.nfsdb.io.sink.StringSink;
+import com.nfsdb.model.Quote;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.ql.RowSource;
+import com.nfsdb.ql.StorageFacade;
+import com.nfsdb.ql.ops.DoubleConstant;
+import com.nfsdb.ql.ops.DoubleGreaterThanOperator;
+import com.nfsdb.ql.ops.DoubleRecordSourceColumn;
+import com.nfsdb.ql.parser.QueryCompiler;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.NamedDaemonThreadFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class ParallelJournalSourceTest extends AbstractTest {
+
+    private final StringSink sink = new StringSink();
+    private final RecordSourcePrinter printer = new RecordSourcePrinter(sink);
+    private ExecutorService executor;
+    private QueryCompiler parallelCompiler;
+    private JournalMetadata metadata;
+    private JournalWriter<Quote> writer;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4, new NamedDaemonThreadFactory("test-scan", true));
+        parallelCompiler = new QueryCompiler(factory, executor, 4);
+
+        // about a year of monthly partitions, last one is lag partition
+        writer = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(writer, 100000, Dates.parseDateTime("2015-01-01T00:00:00.000Z"), 5 * Dates.MINUTE_MILLIS);
+        writer.commit();
+        metadata = writer.getMetadata();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testAbandonedCursor() throws Exception {
+        String query = "quote where bid > 0.25 and askSize > 100000000";
+        RecordCursor<? extends Record> cursor = parallelCompiler.compile(query);
+        for (int i = 0; i < 10 && cursor.hasNext(); i++) {
+            cursor.next();
+        }
+        // cached source is reset and scanned again from start
+        assertParallel(query);
+    }
+
+    @Test
+    public void testAbandonedCursorReleasesThreads() throws Exception {
+        RecordCursor<? extends Record> cursor = parallelCompiler.compile("quote where bid > 0.25");
+        for (int i = 0; i < 10 && cursor.hasNext(); i++) {
+            cursor.next();
+        }
+
+        // cursor is never reset, workers must give up waiting for it
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pool.getActiveCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    public void testCallerTransaction() throws Exception {
+        try (JournalCachingFactory cachingFactory = new JournalCachingFactory(factory.getConfiguration())) {
+            Journal r = cachingFactory.reader(metadata);
+            long txn = r.getTxn();
+
+            TestUtils.generateQuoteData(writer, 1000, Dates.parseDateTime("2016-01-01T00:00:00.000Z"), Dates.MINUTE_MILLIS);
+            writer.commit();
+            Assert.assertNotEquals(txn, writer.getTxn());
+
+            ObjList<TxnWorker> workers = new ObjList<>();
+            for (int i = 0; i < 3; i++) {
+                workers.add(new TxnWorker());
+            }
+            SliceScanner<LongList> scanner = new SliceScanner<>(new JournalPartitionSource(metadata, false), workers, new ObjectPoolFactory<LongList>() {
+                @Override
+                public LongList newInstance() {
+                    return new LongList();
+                }
+            }, executor, 1000);
+
+            // caching factory hands out reader of older transaction, workers must see the same
+            scanner.prepare(cachingFactory);
+            int count = 0;
+            while (scanner.next()) {
+                Assert.assertEquals(txn, scanner.getResult().getQuick(0));
+                count++;
+            }
+            Assert.assertTrue(count > 0);
+        }
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        assertParallel("quote where ask > 0.5 and bidSize < 1000000000");
+    }
+
+    @Test
+    public void testFilterAndInterval() throws Exception {
+        assertParallel("quote where bid < 0.1 and timestamp > '2015-03-10T12:00:00.000Z' and timestamp < '2015-07-15T00:00:00.000Z'");
+    }
+
+    @Test
+    public void testFilterAndKeys() throws Exception {
+        assertParallel("select sym, bid, ask, timestamp from quote where sym in ('BP.L', 'TLW.L', 'ADM.L') and ask > 0.5");
+    }
+
+    @Test
+    public void testResumeAfterIdle() throws Exception {
+        String query = "quote where bid > 0.25";
+        LongList expected = new LongList();
+        RecordCursor<? extends Record> cursor = compiler.compile(query);
+        while (cursor.hasNext()) {
+            expected.add(cursor.next().getRowId());
+        }
+
+        LongList actual = new LongList();
+        cursor = parallelCompiler.compile(query);
+        for (int i = 0; i < 10 && cursor.hasNext(); i++) {
+            actual.add(cursor.next().getRowId());
+        }
+        // workers exit while caller is away and are started again
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(SliceScanner.IDLE_TIMEOUT) * 2);
+        while (cursor.hasNext()) {
+            actual.add(cursor.next().getRowId());
+        }
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testSmallSlices() throws Exception {
+        ObjList<RowSource> rowSources = new ObjList<>();
+        for (int i = 0; i < 3; i++) {
+            DoubleGreaterThanOperator filter = (DoubleGreaterThanOperator) DoubleGreaterThanOperator.FACTORY.newInstance(null);
+            filter.setLhs(new DoubleRecordSourceColumn(metadata.getColumnIndex("bid")));
+            filter.setRhs(new DoubleConstant(0.5));
+            rowSources.add(new FilteredRowSource(new AllRowSource(), filter));
+        }
+
+        sink.clear();
+        printer.printCursor(compiler.compile("quote where bid > 0.5"));
+        String expected = sink.toString();
+
+        // slices are much smaller than partitions and do not align with filter blocks
+        ParallelJournalSource src = new ParallelJournalSource(new JournalPartitionSource(metadata, false), rowSources, executor, 777);
+        sink.clear();
+        printer.printCursor(src.prepareCursor(factory));
+        TestUtils.assertEquals(expected, sink);
+
+        src.reset();
+        sink.clear();
+        printer.printCursor(src);
+        TestUtils.assertEquals(expected, sink);
+    }
+
+    private void assertParallel(String query) throws Exception {
+        sink.clear();
+        printer.printCursor(compiler.compile(query));
+        String expected = sink.toString();
+        Assert.assertTrue(expected.length() > 0);
+
+        sink.clear();
+        printer.printCursor(parallelCompiler.compile(query));
+        TestUtils.assertEquals(expected, sink);
+        Assert.assertTrue(parallelCompiler.compileSource(query).toString().contains("ParallelJournalSource"));
+    }
+
+    private static class TxnWorker extends SliceScanner.Worker<LongList> {
+        @Override
+        public void prepare(StorageFacade facade) {
+        }
+
+        @Override
+        public void scan(Partition partition, long lo, long hi, LongList result) {
+            result.add(partition.getJournal().getTxn());
+        }
+    }
+}
@@ -29,6 +29,10 @@ import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.NumericException;
 import com.nfsdb.exceptions.ParserException;
 import com.nfsdb.factory.configuration.JournalStructure;
+import com.nfsdb.io.RecordSourcePrinter;
+import com.nfsdb.io.sink.StringSink;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
 import com.nfsdb.storage.SymbolTable;
 import com.nfsdb.test.tools.TestUtils;
 import com.nfsdb.utils.Dates;
@@ -37,6 +41,8 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 public class JoinQueryTest extends AbstractOptimiserTest {
 
     @BeforeClass
@@ -218,6 +224,17 @@ public class JoinQueryTest extends AbstractOptimiserTest {
                         " join suppliers on products.supplier = suppliers.supplier");
     }
 
+    @Test
+    public void testJoinMemoryBudget() throws Exception {
+        final String query = "customers join orders on customers.customerId = orders.customerId";
+        // hash table of orders does not fit budget and join spills, which changes order of rows
+        QueryCompiler spilling = new QueryCompiler(factory).setJoinMemoryBudget(1024);
+        String[] expected = sortedLines(compiler.compile(query));
+        String[] actual = sortedLines(spilling.compile(query));
+        Assert.assertTrue(expected.length > 1);
+        Assert.assertArrayEquals(expected, actual);
+    }
+
     @Test
     public void testJoinMultipleFields() throws Exception {
         assertPlan("+ 0[ cross ] orders\n" +
@@ -951,6 +968,14 @@ public class JoinQueryTest extends AbstractOptimiserTest {
         orderDetails.commit();
     }
 
+    private static String[] sortedLines(RecordCursor<? extends Record> cursor) {
+        StringSink sink = new StringSink();
+        new RecordSourcePrinter(sink).printCursor(cursor, false);
+        String[] lines = sink.toString().split("\n");
+        Arrays.sort(lines);
+        return lines;
+    }
+
     private void assertPlan(String expected, String query) throws ParserException, JournalException {
         TestUtils.assertEquals(expected, compiler.plan(query));
     }
@@ -21,6 +21,7 @@
 
 package com.nfsdb.ql.parser;
 
+import com.nfsdb.collections.ObjList;
 import com.nfsdb.exceptions.ParserException;
 import com.nfsdb.ql.model.ExprNode;
 import com.nfsdb.ql.model.QueryModel;
@@ -109,8 +110,12 @@ public class QueryParserTest extends AbstractTest {
     public void testGroupBy1() throws Exception {
         Statement statement = parser.parse("select x,y from tab group by x,y,z");
         Assert.assertNotNull(statement.getQueryModel());
-        Assert.assertEquals(3, statement.getQueryModel().getGroupBy().size());
-        Assert.assertEquals("[x,y,z]", statement.getQueryModel().getGroupBy().toString());
+        ObjList<ExprNode> groupBy = statement.getQueryModel().getGroupBy();
+        Assert.assertEquals(3, groupBy.size());
+        Assert.assertEquals("x", groupBy.getQuick(0).token);
+        Assert.assertEquals("y", groupBy.getQuick(1).token);
+        Assert.assertEquals("z", groupBy.getQuick(2).token);
+        Assert.assertEquals(33, groupBy.getQuick(2).position);
     }
 
     @Test
@@ -354,6 +359,19 @@ public class QueryParserTest extends AbstractTest {
         Assert.assertEquals("z", TestUtils.toRpn(statement.getQueryModel().getOrderBy().getQuick(2)));
     }
 
+    @Test
+    public void testOrderByDirection() throws Exception {
+        Statement statement = parser.parse("select x,y from tab order by x desc, y asc, z");
+        Assert.assertNotNull(statement.getQueryModel());
+        Assert.assertEquals(3, statement.getQueryModel().getOrderBy().size());
+        Assert.assertEquals("x", TestUtils.toRpn(statement.getQueryModel().getOrderBy().getQuick(0)));
+        Assert.assertEquals("y", TestUtils.toRpn(statement.getQueryModel().getOrderBy().getQuick(1)));
+        Assert.assertEquals("z", TestUtils.toRpn(statement.getQueryModel().getOrderBy().getQuick(2)));
+        Assert.assertEquals(QueryModel.ORDER_DIRECTION_DESCENDING, statement.getQueryModel().getOrderByDirection().getQuick(0));
+        Assert.assertEquals(QueryModel.ORDER_DIRECTION_ASCENDING, statement.getQueryModel().getOrderByDirection().getQuick(1));
+        Assert.assertEquals(QueryModel.ORDER_DIRECTION_ASCENDING, statement.getQueryModel().getOrderByDirection().getQuick(2));
+    }
+
     @Test
     public void testOuterJoin() throws Exception {
         Statement statement = parser.parse("select x from a a outer join b on b.x = a.x");
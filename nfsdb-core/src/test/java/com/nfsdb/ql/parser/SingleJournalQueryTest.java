@@ -26,12 +26,14 @@ import com.nfsdb.JournalWriter;
 import com.nfsdb.collections.ObjHashSet;
 import com.nfsdb.exceptions.InvalidColumnException;
 import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.exceptions.NumericException;
 import com.nfsdb.exceptions.ParserException;
 import com.nfsdb.factory.configuration.JournalStructure;
 import com.nfsdb.io.RecordSourcePrinter;
 import com.nfsdb.io.sink.StringSink;
 import com.nfsdb.model.Quote;
+import com.nfsdb.storage.ZoneMap;
 import com.nfsdb.test.tools.AbstractTest;
 import com.nfsdb.test.tools.TestUtils;
 import com.nfsdb.utils.Dates;
@@ -346,6 +348,67 @@ public class SingleJournalQueryTest extends AbstractTest {
         assertThat(expected, "select atoi(intC), intC from tab");
     }
 
+    @Test
+    public void testBitmapIndex() throws Exception {
+        // same data with and without bitmap indexes
+        JournalWriter w = factory.writer(
+                new JournalStructure("tab").
+                        $sym("ex").bitmapIndex().
+                        $sym("side").bitmapIndex().
+                        $sym("venue").
+                        $double("v").
+                        $ts()
+        );
+
+        JournalWriter w2 = factory.writer(
+                new JournalStructure("tab2").
+                        $sym("ex").
+                        $sym("side").
+                        $sym("venue").
+                        $double("v").
+                        $ts()
+        );
+
+        String ex[] = {"A", "B", "C", null};
+        String side[] = {"S", "B"};
+        String venue[] = {"V1", "V2", "V3", "V4"};
+        Rnd rnd = new Rnd();
+        long t = Dates.parseDateTime("2015-03-12T00:00:00.000Z");
+        for (int i = 0; i < 150000; i++) {
+            // first rows are sparse, which keeps containers as arrays
+            String e = i < 70000 && i % 100 != 0 ? "C" : ex[Math.abs(rnd.nextInt() % ex.length)];
+            String s = side[Math.abs(rnd.nextInt() % side.length)];
+            String vn = venue[Math.abs(rnd.nextInt() % venue.length)];
+            double v = rnd.nextDouble();
+            t += 10;
+
+            JournalEntryWriter ew = w.entryWriter();
+            ew.putSym(0, e);
+            ew.putSym(1, s);
+            ew.putSym(2, vn);
+            ew.putDouble(3, v);
+            ew.putDate(4, t);
+            ew.append();
+
+            ew = w2.entryWriter();
+            ew.putSym(0, e);
+            ew.putSym(1, s);
+            ew.putSym(2, vn);
+            ew.putDouble(3, v);
+            ew.putDate(4, t);
+            ew.append();
+        }
+        w.commit();
+        w2.commit();
+
+        assertBitmapIndex("where ex = 'A' and side = 'B'", true);
+        assertBitmapIndex("where ex in ('A', 'B') and (side = 'S' or venue = 'V1')", true);
+        assertBitmapIndex("where (ex = 'B' or side = 'S') and v > 0.5 and timestamp > '2015-03-12T00:10:00.000Z' and timestamp < '2015-03-12T00:20:00.000Z'", true);
+        assertBitmapIndex("where ex = null and side = 'S'", true);
+        assertBitmapIndex("where venue = 'V2' or ex = 'A'", false);
+        assertThat("", "tab where ex = 'Z' and side = 'S'");
+    }
+
     @Test
     public void testColumnAliases() throws Exception {
         createTabWithNaNs2();
@@ -512,6 +575,50 @@ public class SingleJournalQueryTest extends AbstractTest {
         assertThat(expected, "select id, x, -x, y from tab where -x <= y and id ~ 'MBP'");
     }
 
+    @Test
+    public void testGroupBy() throws Exception {
+        createGroupByTab();
+
+        final String expected = "AA\t25\t1200\t0.000000000000\t48.000000000000\n" +
+                "BB\t25\t1225\t0.500000000000\t48.500000000000\n" +
+                "CC\t25\t1250\t1.000000000000\t49.000000000000\n" +
+                "DD\t25\t1275\t1.500000000000\t49.500000000000\n";
+
+        // symbol key is looked up densely, string key is hashed, both have to agree
+        assertThat(expected, "select sym, count(), sum(q), first(px), last(px) from tab group by sym");
+        assertThat(expected, "select s, count(), sum(q), first(px), last(px) from tab group by s");
+    }
+
+    @Test
+    public void testGroupByInvalidColumn() throws Exception {
+        createGroupByTab();
+        try {
+            compiler.compile("select sym, count() from tab group by sym, z");
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertEquals(43, e.getPosition());
+        }
+    }
+
+    @Test
+    public void testGroupByNoKeys() throws Exception {
+        createGroupByTab();
+        assertThat("4950\t100\t24.750000000000\n", "select sum(q), count() c, avg(px) from tab");
+    }
+
+    @Test
+    public void testGroupByOrderBy() throws Exception {
+        createGroupByTab();
+
+        final String expected = "DD\t37.500000000000\n" +
+                "CC\t38.000000000000\n" +
+                "BB\t37.500000000000\n" +
+                "AA\t37.000000000000\n";
+
+        assertThat(expected, "select sym, avg(px) a from tab where q > 50 group by sym order by sym desc");
+        assertThat("CC\t38.000000000000\n", "select sym, avg(px) a from tab where q > 50 group by sym order by a desc limit 1");
+    }
+
     @Test
     public void testInAsColumn() throws Exception {
         JournalWriter<Quote> w = factory.writer(Quote.class, "q");
@@ -1946,6 +2053,131 @@ public class SingleJournalQueryTest extends AbstractTest {
         assertThat(expected, "tab where id = 'KKUSIMYDXUUSKCX'");
     }
 
+    @Test
+    public void testOrderBy() throws Exception {
+        createTabWithNaNs2();
+
+        final String expected = "CLLERSMKRZUDJGN\t-461\t2015-08-06T07:00:00.000Z\n" +
+                "CLLERSMKRZUDJGN\t-473\t2016-01-24T05:00:00.000Z\n" +
+                "CLLERSMKRZUDJGN\t-473\t2016-03-07T13:00:00.000Z\n" +
+                "CLLERSMKRZUDJGN\t-494\t2016-02-01T08:00:00.000Z\n" +
+                "CLLERSMKRZUDJGN\t-496\t2016-01-27T02:00:00.000Z\n";
+
+        assertThat(expected, "select id, w, timestamp from tab where id ~ 'LLER' and w < -450 order by w desc");
+
+        final String expected2 = "XTPNHTDCEBYWXBB\t-499\n" +
+                "TRDLVSYLMSRHGKR\t-499\n" +
+                "QZHEISQHNOJIGFI\t-499\n" +
+                "EENNEBQQEMXDKXE\t-499\n";
+
+        assertThat(expected2, "select id, w from tab where w < -498 order by id desc, w");
+    }
+
+    @Test
+    public void testOrderByLimit() throws Exception {
+        createTabWithNaNs2();
+
+        final String expected = "CLLERSMKRZUDJGN\t-473\t2016-03-07T13:00:00.000Z\n" +
+                "CLLERSMKRZUDJGN\t-494\t2016-02-01T08:00:00.000Z\n";
+
+        assertThat(expected, "select id, w, timestamp from tab where id ~ 'LLER' and w < -450 order by timestamp desc limit 2");
+
+        final String expected2 = "CLLERSMKRZUDJGN\t-496\t2016-01-27T02:00:00.000Z\n" +
+                "CLLERSMKRZUDJGN\t-494\t2016-02-01T08:00:00.000Z\n";
+
+        assertThat(expected2, "select id, w, timestamp from tab where id ~ 'LLER' and w < -450 order by w limit 2");
+
+        final String expected3 = "TRDLVSYLMSRHGKR\t-499\n" +
+                "QZHEISQHNOJIGFI\t-499\n";
+
+        assertThat(expected3, "select id, w from tab where w < -498 order by id desc, w limit 1,3");
+    }
+
+    @Test
+    public void testParameterWithoutPreparedStatement() throws Exception {
+        createGroupByTab();
+        try {
+            compiler.compile("tab where q > :q");
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertEquals(14, e.getPosition());
+        }
+
+        try (PreparedStatement ps = compiler.prepare("tab where q > :q")) {
+            ps.execute();
+            Assert.fail("Exception expected");
+        } catch (JournalRuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains(":q"));
+        }
+    }
+
+    @Test
+    public void testPreparedStatement() throws Exception {
+        createGroupByTab();
+        try (PreparedStatement ps = compiler.prepare("tab where sym = :sym and q > :q and px < :px")) {
+            Assert.assertEquals(3, ps.getParameterCount());
+
+            ps.getParameter(":sym").set("BB");
+            ps.getParameter(":q").set(80);
+            ps.getParameter(":px").set(49.0);
+            assertPrepared("tab where sym = 'BB' and q > 80 and px < 49.0", ps);
+
+            ps.getParameter(":sym").set("CC");
+            ps.getParameter(":q").set(10);
+            ps.getParameter(":px").set(20.0);
+            assertPrepared("tab where sym = 'CC' and q > 10 and px < 20.0", ps);
+
+            // symbol, which journal does not have
+            ps.getParameter(":sym").set("XX");
+            sink.clear();
+            printer.printCursor(ps.execute(), false);
+            Assert.assertEquals(0, sink.length());
+        }
+    }
+
+    @Test
+    public void testPreparedStatementSharedPlan() throws Exception {
+        createGroupByTab();
+        PlanCache cache = new PlanCache(16, 2);
+        QueryCompiler compiler1 = new QueryCompiler(factory, null, 1, cache);
+        QueryCompiler compiler2 = new QueryCompiler(factory, null, 1, cache);
+
+        PreparedStatement ps1 = compiler1.prepare("select sym, q from tab where s = :s and q >= :q");
+        ps1.close();
+        Assert.assertEquals(1, cache.size());
+
+        // same query, which differs in white space, reuses compiled plan
+        PreparedStatement ps2 = compiler2.prepare("select  sym,q   from tab where s=:s and q>=:q");
+        Assert.assertSame(ps1, ps2);
+        Assert.assertEquals(0, cache.size());
+
+        // statement in use is not shared
+        PreparedStatement ps3 = compiler1.prepare("select sym, q from tab where s = :s and q >= :q");
+        Assert.assertNotSame(ps2, ps3);
+
+        ps2.getParameter(":s").set("DD");
+        ps2.getParameter(":q").set(90);
+        ps3.getParameter(":s").set("AA");
+        ps3.getParameter(":q").set(90);
+        assertPrepared("select sym, q from tab where s = 'DD' and q >= 90", ps2);
+        assertPrepared("select sym, q from tab where s = 'AA' and q >= 90", ps3);
+
+        ps2.close();
+        ps3.close();
+        Assert.assertEquals(2, cache.size());
+
+        // literals are part of plan, query with different literal value does not reuse it
+        PreparedStatement ps4 = compiler2.prepare("select sym, q from tab where s = :s and q >= 10");
+        PreparedStatement ps5 = compiler2.prepare("select sym, q from tab where s = :s and q >= 20");
+        Assert.assertNotSame(ps4, ps5);
+        Assert.assertEquals(2, cache.size());
+        ps4.close();
+        ps5.close();
+        Assert.assertEquals(4, cache.size());
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
     @Test
     public void testScaledDoubleComparison() throws Exception {
         JournalWriter w = factory.writer(
@@ -2949,6 +3181,18 @@ public class SingleJournalQueryTest extends AbstractTest {
         assertThat(expected, "select id, x, y from tab where id = NaN and x > 120 and y < -400");
     }
 
+    @Test
+    public void testVectorizedFilter() throws Exception {
+        createTabWithNaNs();
+        // column arithmetic is not vectorizable, so second query is evaluated row by row
+        sink.clear();
+        printer.printCursor(compiler.compile("select id, x, z, w from tab where (x > 0.5 and z <= 100) or (not(w >= -100) and id ~ 'HBRO') or y < 0.0001"), false);
+        String expected = sink.toString();
+        Assert.assertTrue(expected.length() > 0);
+
+        assertThat(expected, "select id, x, z, w from tab where (x + 0 > 0.5 and z + 0 <= 100) or (not(w + 0 >= -100) and id ~ 'HBRO') or y + 0 < 0.0001");
+    }
+
     @Test
     public void testVirtualColumnQuery() throws Exception {
         JournalWriter<Quote> w = factory.writer(Quote.class, "q");
@@ -3058,6 +3302,64 @@ public class SingleJournalQueryTest extends AbstractTest {
         assertThat(expected, "select sym, 1-(bid+ask)/2 mid, bid, ask from q");
     }
 
+    @Test
+    public void testZoneMapFilter() throws Exception {
+        JournalWriter w = factory.writer(
+                new JournalStructure("tab").
+                        $long("seq").
+                        $int("k").
+                        $double("v").
+                        $ts()
+        );
+
+        Rnd rnd = new Rnd();
+        long t = Dates.parseDateTime("2015-03-12T00:00:00.000Z");
+        for (int i = 0; i < 20000; i++) {
+            JournalEntryWriter ew = w.entryWriter();
+            ew.putLong(0, i);
+            ew.putInt(1, rnd.nextInt() % 500);
+            ew.putDouble(2, rnd.nextDouble());
+            ew.putDate(3, t += 10);
+            ew.append();
+        }
+        w.commit();
+
+        ZoneMap zoneMap = factory.reader("tab").getPartition(0, true).getZoneMap(0);
+        Assert.assertNotNull(zoneMap);
+        Assert.assertEquals(5, zoneMap.getBlockCount());
+        Assert.assertEquals(2 * ZoneMap.BLOCK_ROWS, zoneMap.getMin(2));
+        Assert.assertEquals(3 * ZoneMap.BLOCK_ROWS - 1, zoneMap.getMax(2));
+
+        // first query skips all but last blocks, second one cannot use zone maps
+        sink.clear();
+        printer.printCursor(compiler.compile("tab where seq > 17000 and k < 100 or seq < 3 and v > 0.1"), false);
+        String expected = sink.toString();
+        Assert.assertTrue(expected.length() > 0);
+
+        assertThat(expected, "tab where seq + 0 > 17000 and k + 0 < 100 or seq + 0 < 3 and v + 0 > 0.1");
+        assertThat("", "tab where seq > 20000 or k >= 500");
+    }
+
+    private void assertBitmapIndex(String where, boolean indexed) throws JournalException, ParserException {
+        sink.clear();
+        printer.printCursor(compiler.compile("tab2 " + where), false);
+        String expected = sink.toString();
+        Assert.assertTrue(expected.length() > 0);
+        assertThat(expected, "tab " + where);
+        Assert.assertEquals(indexed, compiler.compileSource("tab " + where).toString().contains("BitmapIndexRowSource"));
+    }
+
+    private void assertPrepared(String query, PreparedStatement ps) throws JournalException, ParserException {
+        sink.clear();
+        printer.printCursor(compiler.compile(query), false);
+        String expected = sink.toString();
+        Assert.assertTrue(expected.length() > 0);
+
+        sink.clear();
+        printer.printCursor(ps.execute(), false);
+        TestUtils.assertEquals(expected, sink);
+    }
+
     private void assertNullSearch() throws JournalException, ParserException {
         final String expected = "null\t256.000000000000\t-455.750000000000\n" +
                 "null\t525.287368774414\t-470.171875000000\n" +
@@ -3099,6 +3401,32 @@ public class SingleJournalQueryTest extends AbstractTest {
         assertThat(expected, query, false);
     }
 
+    private void createGroupByTab() throws JournalException, NumericException {
+        JournalWriter w = factory.writer(
+                new JournalStructure("tab").
+                        $sym("sym").
+                        $str("s").
+                        $int("q").
+                        $double("px").
+                        $ts()
+
+        );
+
+        String[] syms = {"AA", "BB", "CC", "DD"};
+        long t = Dates.parseDateTime("2015-03-12T00:00:00.000Z");
+
+        for (int i = 0; i < 100; i++) {
+            JournalEntryWriter ew = w.entryWriter();
+            ew.putSym(0, syms[i % 4]);
+            ew.putStr(1, syms[i % 4]);
+            ew.putInt(2, i);
+            ew.putDouble(3, i * 0.5);
+            ew.putDate(4, t += 10);
+            ew.append();
+        }
+        w.commit();
+    }
+
     private void createIndexedTab() throws JournalException, NumericException {
         JournalWriter w = factory.writer(
                 new JournalStructure("tab").
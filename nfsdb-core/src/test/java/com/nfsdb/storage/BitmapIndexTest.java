@@ -0,0 +1,181 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage;
+
+import com.nfsdb.JournalMode;
+import com.nfsdb.exceptions.JournalException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class BitmapIndexTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testContainers() throws JournalException {
+        try (FixedColumn col = new FixedColumn(new MemoryFile(new File(temporaryFolder.getRoot(), "col.d"), 22, JournalMode.APPEND), 4)) {
+            // key 0 is sparse and stays in array containers, key 1 turns chunk into bitmap
+            for (int i = 0; i < 2 * BitmapIndex.CHUNK_ROWS + 10; i++) {
+                col.putInt(i % 100 == 0 ? 0 : (i % 7 == 0 ? SymbolTable.VALUE_IS_NULL : 1));
+                col.commit();
+            }
+
+            try (BitmapIndex index = new BitmapIndex(col)) {
+                index.update(col.size());
+                Assert.assertEquals(3, index.getChunkCount());
+
+                long[] bitmap = new long[BitmapIndex.BITMAP_WORDS * 2];
+                for (int chunk = 0; chunk < 3; chunk++) {
+                    assertChunk(col, index, chunk, 0, bitmap);
+                    assertChunk(col, index, chunk, 1, bitmap);
+                    assertChunk(col, index, chunk, SymbolTable.VALUE_IS_NULL, bitmap);
+                }
+
+                Assert.assertFalse(index.or(2, 0, bitmap, 0));
+                Assert.assertFalse(index.or(0, 3, bitmap, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testShared() throws JournalException {
+        File file = new File(temporaryFolder.getRoot(), "col.d");
+        try (FixedColumn col = new FixedColumn(new MemoryFile(file, 22, JournalMode.APPEND), 4)) {
+            append(col, 0, 1000);
+
+            BitmapIndex index1 = BitmapIndex.shared(file);
+            BitmapIndex index2 = BitmapIndex.shared(file);
+            Assert.assertSame(index1, index2);
+
+            index1.update(col, col.size());
+            Assert.assertEquals(500, index2.getCardinality(1));
+
+            // reader, which has not seen all rows, does not take them out of shared index
+            index2.update(col, 100);
+            Assert.assertEquals(1000, index1.size());
+
+            index1.close();
+            Assert.assertSame(index2, BitmapIndex.shared(file));
+            index2.close();
+            Assert.assertEquals(1000, index2.size());
+            index2.close();
+            Assert.assertEquals(0, index2.size());
+
+            // once released, index is built again
+            BitmapIndex index3 = BitmapIndex.shared(file);
+            Assert.assertNotSame(index2, index3);
+            Assert.assertEquals(0, index3.size());
+            index3.close();
+        }
+    }
+
+    @Test
+    public void testTruncate() throws JournalException {
+        try (FixedColumn col = new FixedColumn(new MemoryFile(new File(temporaryFolder.getRoot(), "col.d"), 22, JournalMode.APPEND), 4)) {
+            for (int i = 0; i < 2 * BitmapIndex.CHUNK_ROWS + 10; i++) {
+                col.putInt(i % 100 == 0 ? 0 : 1);
+                col.commit();
+            }
+
+            try (BitmapIndex index = new BitmapIndex(col)) {
+                index.update(col.size());
+
+                // rows are rewritten in place from the middle of first chunk, which is bitmap for key 1
+                long lo = BitmapIndex.CHUNK_ROWS / 2 + 3;
+                index.truncate(lo);
+                Assert.assertEquals(lo, index.size());
+                col.truncate(lo);
+                col.commit();
+                for (long i = lo; i < BitmapIndex.CHUNK_ROWS + 100; i++) {
+                    col.putInt(i % 3 == 0 ? 0 : SymbolTable.VALUE_IS_NULL);
+                    col.commit();
+                }
+                index.update(col.size());
+
+                long[] bitmap = new long[BitmapIndex.BITMAP_WORDS * 2];
+                for (int chunk = 0; chunk < 2; chunk++) {
+                    assertChunk(col, index, chunk, 0, bitmap);
+                    assertChunk(col, index, chunk, 1, bitmap);
+                    assertChunk(col, index, chunk, SymbolTable.VALUE_IS_NULL, bitmap);
+                }
+                Assert.assertEquals(lo - (lo + 99) / 100, index.getCardinality(1));
+                Assert.assertEquals(2, index.getChunkCount());
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateAndTruncate() throws JournalException {
+        try (FixedColumn col = new FixedColumn(new MemoryFile(new File(temporaryFolder.getRoot(), "col.d"), 22, JournalMode.APPEND), 4)) {
+            try (BitmapIndex index = new BitmapIndex(col)) {
+                append(col, 0, 1000);
+                index.update(col.size());
+                Assert.assertEquals(500, index.getCardinality(0));
+                Assert.assertEquals(500, index.getCardinality(1));
+
+                append(col, 1000, 5000);
+                index.update(col.size());
+                Assert.assertEquals(2500, index.getCardinality(0));
+
+                // rows beyond truncated size must not stay in index
+                col.truncate(100);
+                col.commit();
+                index.update(col.size());
+                Assert.assertEquals(100, index.size());
+                Assert.assertEquals(50, index.getCardinality(1));
+
+                append(col, 100, 102);
+                index.update(col.size());
+                Assert.assertEquals(51, index.getCardinality(1));
+            }
+        }
+    }
+
+    private static void append(FixedColumn col, int lo, int hi) {
+        for (int i = lo; i < hi; i++) {
+            col.putInt(i % 2);
+            col.commit();
+        }
+    }
+
+    private static void assertChunk(FixedColumn col, BitmapIndex index, int chunk, int key, long[] bitmap) {
+        // chunk bitmap is written at offset, words before it must be left alone
+        Arrays.fill(bitmap, 0);
+        index.or(key, chunk, bitmap, BitmapIndex.BITMAP_WORDS);
+        for (int i = 0; i < BitmapIndex.BITMAP_WORDS; i++) {
+            Assert.assertEquals(0, bitmap[i]);
+        }
+
+        long lo = (long) chunk * BitmapIndex.CHUNK_ROWS;
+        long hi = Math.min(lo + BitmapIndex.CHUNK_ROWS, col.size());
+        for (long row = lo; row < hi; row++) {
+            int v = (int) (row - lo);
+            boolean set = (bitmap[BitmapIndex.BITMAP_WORDS + (v >>> 6)] & (1L << v)) != 0;
+            Assert.assertEquals(col.getInt(row) == key, set);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.utils.ByteBuffers;
 import com.nfsdb.utils.Files;
 import com.nfsdb.utils.Rnd;
+import com.nfsdb.utils.Unsafe;
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
 
@@ -93,6 +94,79 @@ public class ColumnTest {
         }
     }
 
+    @Test
+    public void testFixedWidthBlocks() throws JournalException {
+        try (FixedColumn col = new FixedColumn(new MemoryFile(dataFile, 10, JournalMode.APPEND), 8)) {
+            for (int i = 0; i < 10000; i++) {
+                col.putDouble(i * 0.5);
+                col.commit();
+            }
+        }
+
+        try (FixedColumn col = new FixedColumn(new MemoryFile(dataFile, 10, JournalMode.READ), 8)) {
+            // block spans multiple pages
+            long address = col.getAddress(1000, 5000);
+            double sum = 0;
+            for (int i = 0; i < 5000; i++) {
+                sum += Unsafe.getUnsafe().getDouble(address + i * col.getWidth());
+            }
+
+            double expected = 0;
+            for (int i = 1000; i < 6000; i++) {
+                expected += col.getDouble(i);
+            }
+            Assert.assertEquals(expected, sum, 0.0000001);
+
+            double values[] = new double[300];
+            col.getDoubles(9700, values, values.length);
+            for (int i = 0; i < values.length; i++) {
+                Assert.assertEquals((9700 + i) * 0.5, values[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testFixedWidthRegionGrowth() throws JournalException {
+        // small page size forces region to be re-mapped many times
+        try (FixedColumn col = new FixedColumn(new MemoryFile(dataFile, 10, JournalMode.APPEND), 8)) {
+            for (int i = 0; i < 100000; i++) {
+                col.putLong(i);
+                col.commit();
+            }
+
+            for (long l = 0; l < col.size(); l++) {
+                Assert.assertEquals(l, col.getLong(l));
+            }
+        }
+
+        try (FixedColumn col = new FixedColumn(new MemoryFile(dataFile, 10, JournalMode.READ), 8)) {
+            Assert.assertEquals(100000, col.size());
+            for (long l = 0; l < col.size(); l++) {
+                Assert.assertEquals(l, col.getLong(l));
+            }
+        }
+    }
+
+    @Test
+    public void testFixedWidthTailingReader() throws JournalException {
+        // writer grows file one page at a time, reader follows it
+        try (FixedColumn w = new FixedColumn(new MemoryFile(dataFile, 10, JournalMode.BULK_APPEND), 8)) {
+            MemoryFile mf = new MemoryFile(dataFile, 10, JournalMode.READ);
+            try (FixedColumn r = new FixedColumn(mf, 8)) {
+                for (int i = 0; i < 100000; i++) {
+                    w.putLong(i);
+                    w.commit();
+                    Assert.assertEquals(i, r.getLong(i));
+                }
+
+                for (long l = 0; l < r.size(); l++) {
+                    Assert.assertEquals(l, r.getLong(l));
+                }
+                Assert.assertTrue(mf.getRetiredRegionCount() < 16);
+            }
+        }
+    }
+
     @Test
     public void testTruncate() throws JournalException {
 
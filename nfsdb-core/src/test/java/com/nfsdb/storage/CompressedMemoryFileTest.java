@@ -0,0 +1,185 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage;
+
+import com.nfsdb.JournalMode;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.storage.codec.*;
+import com.nfsdb.utils.Rnd;
+import com.nfsdb.utils.Unsafe;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class CompressedMemoryFileTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testBitPack() throws JournalException {
+        Rnd rnd = new Rnd();
+        try (FixedColumn col = column(4)) {
+            for (int i = 0; i < 100000; i++) {
+                // constant run, small keys and full range in turns
+                col.putInt(i < 70000 ? 5 : (i < 90000 ? rnd.nextPositiveInt() % 11 - 1 : rnd.nextInt()));
+                col.commit();
+            }
+            assertSealed(col, new BitPackCodec(), true);
+        }
+    }
+
+    @Test
+    public void testDeltaOfDelta() throws JournalException {
+        Rnd rnd = new Rnd();
+        try (FixedColumn col = column(8)) {
+            long ts = 1400000000000L;
+            for (int i = 0; i < 100000; i++) {
+                col.putLong(i % 50000 == 49999 ? rnd.nextLong() : ts);
+                col.commit();
+                ts += i < 30000 ? 1000 : rnd.nextPositiveInt() % 10000;
+            }
+            col.putLong(Long.MIN_VALUE);
+            col.commit();
+            col.putLong(Long.MAX_VALUE);
+            col.commit();
+            assertSealed(col, new DeltaOfDeltaCodec(), true);
+        }
+    }
+
+    @Test
+    public void testEmpty() throws JournalException {
+        try (FixedColumn col = column(8)) {
+            assertSealed(col, new DeltaOfDeltaCodec(), true);
+        }
+    }
+
+    @Test
+    public void testLz() throws JournalException {
+        Rnd rnd = new Rnd();
+        try (FixedColumn col = column(1)) {
+            for (int i = 0; i < 300000; i++) {
+                // repetitive text, long runs and noise
+                col.putByte(i < 100000 ? (byte) ("Fast trading ".charAt(i % 13)) : (i < 150000 ? 0 : (byte) rnd.nextInt()));
+                col.commit();
+            }
+            assertSealed(col, new LzCodec(), false);
+        }
+    }
+
+    @Test
+    public void testSmallCache() throws JournalException {
+        Rnd rnd = new Rnd();
+        try (FixedColumn col = column(8)) {
+            for (int i = 0; i < 100000; i++) {
+                col.putLong(rnd.nextLong());
+                col.commit();
+            }
+            File z = CompressedMemoryFile.compress(col.mappedFile, new LzCodec());
+            long size = col.getOffset();
+            // file has 13 blocks, cache holds two of them
+            try (CompressedMemoryFile mf = new CompressedMemoryFile(z, 22, 2)) {
+                for (int i = 0; i < 10000; i++) {
+                    int len = rnd.nextPositiveInt() % 200000 + 1;
+                    long lo = rnd.nextPositiveLong() % (size - len + 1);
+                    long a = mf.addressOf(lo, len);
+                    for (int k = 0; k < len; k += 997) {
+                        Assert.assertEquals(Unsafe.getUnsafe().getByte(col.mappedFile.addressOf(lo + k, 1)), Unsafe.getUnsafe().getByte(a + k));
+                    }
+                    Assert.assertEquals(Unsafe.getUnsafe().getByte(col.mappedFile.addressOf(lo + len - 1, 1)), Unsafe.getUnsafe().getByte(a + len - 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTail() throws JournalException {
+        // codecs of fixed width values keep bytes, which do not make up a whole value
+        Codec[] codecs = {new LzCodec(), new DeltaOfDeltaCodec(), new XorDoubleCodec(), new BitPackCodec()};
+        for (int k = 0; k < codecs.length; k++) {
+            File file = new File(temporaryFolder.getRoot(), "tail" + k + ".d");
+            try (FixedColumn col = new FixedColumn(new MemoryFile(file, 22, JournalMode.APPEND), 1)) {
+                for (int i = 0; i < 70003; i++) {
+                    col.putByte((byte) (i * 31));
+                    col.commit();
+                }
+                assertSealed(col, codecs[k], false);
+            }
+        }
+    }
+
+    @Test
+    public void testXorDouble() throws JournalException {
+        Rnd rnd = new Rnd();
+        try (FixedColumn col = column(8)) {
+            double price = 100;
+            for (int i = 0; i < 100000; i++) {
+                if (i % 3 == 0) {
+                    price += (rnd.nextPositiveInt() % 100 - 50) / 100.0;
+                }
+                col.putDouble(i % 10000 == 0 ? Double.NaN : (i % 20000 == 1 ? rnd.nextDouble() : price));
+                col.commit();
+            }
+            assertSealed(col, new XorDoubleCodec(), true);
+        }
+    }
+
+    private static void assertSealed(FixedColumn col, Codec codec, boolean compressible) throws JournalException {
+        File z = CompressedMemoryFile.compress(col.mappedFile, codec);
+        long size = col.getOffset();
+        try (CompressedMemoryFile mf = new CompressedMemoryFile(z, 22)) {
+            Assert.assertEquals(size, mf.getAppendOffset());
+            if (compressible) {
+                Assert.assertTrue(size < 1024 || z.length() < size);
+            }
+
+            // read back to front, blocks are decompressed out of order
+            for (long o = size - 1; o >= 0; o--) {
+                Assert.assertEquals(Unsafe.getUnsafe().getByte(col.mappedFile.addressOf(o, 1)), Unsafe.getUnsafe().getByte(mf.addressOf(o, 1)));
+            }
+
+            if (size > 0) {
+                // address of range spans block boundary
+                long lo = Math.min(65530, size - 1);
+                int len = (int) Math.min(16, size - lo);
+                long a = mf.addressOf(lo, len);
+                for (int i = 0; i < len; i++) {
+                    Assert.assertEquals(Unsafe.getUnsafe().getByte(col.mappedFile.addressOf(lo + i, 1)), Unsafe.getUnsafe().getByte(a + i));
+                }
+                Assert.assertEquals(mf.pageRemaining(lo), mf.getBuffer(lo, 1).remaining());
+            }
+
+            try {
+                mf.addressOf(size, 1);
+                Assert.fail();
+            } catch (JournalRuntimeException ignore) {
+            }
+        }
+    }
+
+    private FixedColumn column(int width) throws JournalException {
+        return new FixedColumn(new MemoryFile(new File(temporaryFolder.getRoot(), "col.d"), 22, JournalMode.APPEND), width);
+    }
+}
@@ -30,6 +30,18 @@ public class SequentialMemoryTest {
     @Rule
     public final ExpectedException exception = ExpectedException.none();
 
+    @Test
+    public void testClear() throws Exception {
+        try (SequentialMemory mem = new SequentialMemory(127)) {
+            for (int i = 0; i < 2; i++) {
+                Assert.assertEquals(0, mem.allocate(100));
+                Assert.assertEquals(128, mem.allocate(100));
+                Assert.assertEquals(256, mem.allocate(100));
+                mem.clear();
+            }
+        }
+    }
+
     @Test
     public void testGetWriteOffsetQuick() throws Exception {
         int pageLen = 128;
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ *  _  _ ___ ___     _ _
+ * | \| | __/ __| __| | |__
+ * | .` | _|\__ \/ _` | '_ \
+ * |_|\_|_| |___/\__,_|_.__/
+ *
+ * Copyright (c) 2014-2015. The NFSdb project and its contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package com.nfsdb.storage;
+
+import com.nfsdb.JournalMode;
+import com.nfsdb.exceptions.JournalException;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class ZoneMapTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File dataFile;
+    private File zoneFile;
+
+    @Before
+    public void setUp() {
+        dataFile = new File(temporaryFolder.getRoot(), "col.d");
+        zoneFile = new File(temporaryFolder.getRoot(), "col.zm");
+    }
+
+    @Test
+    public void testDoubles() throws JournalException {
+        try (FixedColumn col = new FixedColumn(new MemoryFile(dataFile, 22, JournalMode.APPEND), 8)) {
+            for (int i = 0; i < ZoneMap.BLOCK_ROWS + 10; i++) {
+                col.putDouble(i % 3 == 0 ? Double.NaN : i / 2.0);
+                col.commit();
+            }
+
+            try (ZoneMap zm = new ZoneMap(zoneFile, JournalMode.APPEND, col, ColumnType.DOUBLE)) {
+                zm.update();
+                Assert.assertEquals(2, zm.getBlockCount());
+                Assert.assertEquals(0.5, zm.getMinDouble(0), 0);
+                // last row of block is null
+                Assert.assertEquals((ZoneMap.BLOCK_ROWS - 2) / 2.0, zm.getMaxDouble(0), 0);
+                Assert.assertEquals((ZoneMap.BLOCK_ROWS + 2) / 3, zm.getNullCount(0));
+                Assert.assertEquals(10, zm.getRowCount(1));
+            }
+        }
+    }
+
+    @Test
+    public void testNulls() throws JournalException {
+        try (FixedColumn col = new FixedColumn(new MemoryFile(dataFile, 22, JournalMode.APPEND), 4)) {
+            for (int i = 0; i < 100; i++) {
+                col.putInt(Integer.MIN_VALUE);
+                col.commit();
+            }
+
+            try (ZoneMap zm = new ZoneMap(zoneFile, JournalMode.APPEND, col, ColumnType.INT)) {
+                zm.update();
+                Assert.assertEquals(100, zm.getNullCount(0));
+                // range of nulls alone is empty
+                Assert.assertTrue(zm.getMin(0) > zm.getMax(0));
+            }
+        }
+    }
+
+    @Test
+    public void testTruncate() throws JournalException {
+        try (FixedColumn col = new FixedColumn(new MemoryFile(dataFile, 22, JournalMode.APPEND), 8)) {
+            try (ZoneMap zm = new ZoneMap(zoneFile, JournalMode.APPEND, col, ColumnType.LONG)) {
+                append(col, 0, 2 * ZoneMap.BLOCK_ROWS + 5);
+                zm.update();
+
+                // rows are rewritten in place from the middle of first block, size does not change
+                long lo = ZoneMap.BLOCK_ROWS / 2;
+                zm.truncate(lo);
+                Assert.assertEquals(0, zm.getBlockCount());
+                col.truncate(lo);
+                col.commit();
+                append(col, -2 * ZoneMap.BLOCK_ROWS - 5, -lo);
+                zm.update();
+
+                Assert.assertEquals(3, zm.getBlockCount());
+                Assert.assertEquals(-2 * ZoneMap.BLOCK_ROWS - 5, zm.getMin(0));
+                Assert.assertEquals(lo - 1, zm.getMax(0));
+                Assert.assertEquals(-lo - 1, zm.getMax(2));
+
+                zm.truncate(2 * ZoneMap.BLOCK_ROWS);
+                Assert.assertEquals(2, zm.getBlockCount());
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateAndTruncate() throws JournalException {
+        try (FixedColumn col = new FixedColumn(new MemoryFile(dataFile, 22, JournalMode.APPEND), 8)) {
+            try (ZoneMap zm = new ZoneMap(zoneFile, JournalMode.APPEND, col, ColumnType.LONG)) {
+                append(col, 0, 100);
+                zm.update();
+                Assert.assertEquals(1, zm.getBlockCount());
+                Assert.assertEquals(100, zm.getRowCount(0));
+                Assert.assertEquals(99, zm.getMax(0));
+                Assert.assertEquals(-1, zm.blockOf(50, 100));
+
+                // partial block is summarised again as it grows
+                append(col, 100, 2 * ZoneMap.BLOCK_ROWS + 5);
+                zm.update();
+                Assert.assertEquals(3, zm.getBlockCount());
+                Assert.assertEquals(0, zm.getMin(0));
+                Assert.assertEquals(ZoneMap.BLOCK_ROWS - 1, zm.getMax(0));
+                Assert.assertEquals(2 * ZoneMap.BLOCK_ROWS, zm.getMin(2));
+                Assert.assertEquals(2 * ZoneMap.BLOCK_ROWS + 4, zm.getMax(2));
+                Assert.assertEquals(1, zm.blockOf(ZoneMap.BLOCK_ROWS + 10, 100));
+                Assert.assertEquals(-1, zm.blockOf(ZoneMap.BLOCK_ROWS - 10, 100));
+
+                // values of truncated rows must not stay in summary
+                col.truncate(ZoneMap.BLOCK_ROWS / 2);
+                col.commit();
+                zm.update();
+                Assert.assertEquals(1, zm.getBlockCount());
+                Assert.assertEquals(ZoneMap.BLOCK_ROWS / 2 - 1, zm.getMax(0));
+
+                append(col, -10, -5);
+                zm.update();
+                Assert.assertEquals(-10, zm.getMin(0));
+            }
+
+            // summary survives reopen
+            try (ZoneMap zm = new ZoneMap(zoneFile, JournalMode.READ, col, ColumnType.LONG)) {
+                Assert.assertEquals(1, zm.getBlockCount());
+                Assert.assertEquals(-10, zm.getMin(0));
+                Assert.assertEquals(ZoneMap.BLOCK_ROWS / 2 + 5, zm.getRowCount(0));
+            }
+        }
+    }
+
+    private static void append(FixedColumn col, long lo, long hi) {
+        for (long v = lo; v < hi; v++) {
+            col.putLong(v);
+            col.commit();
+        }
+    }
+}